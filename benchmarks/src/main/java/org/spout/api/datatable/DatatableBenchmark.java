@@ -0,0 +1,139 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.datatable;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading, writing and serializing the datatables of 10,000 entities, each with mostly int and float values.<br>
+ * <br>
+ * The heap retained by the datatables is printed once per trial, as bytes per entity.
+ * Run with "-prof gc" to compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class DatatableBenchmark {
+	private static final int ENTITIES = 10000;
+
+	@Param({"managed", "compact"})
+	public String map;
+
+	@Param({"8", "32"})
+	public int fields;
+
+	private SerializableMap[] maps;
+	private String[] keys;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		keys = new String[fields];
+		for (int i = 0; i < fields; i++) {
+			keys[i] = "Benchmark Field " + i;
+		}
+		// Register the keys before measuring, as the string map is shared
+		create();
+
+		long before = getUsedMemory();
+		maps = new SerializableMap[ENTITIES];
+		for (int i = 0; i < ENTITIES; i++) {
+			maps[i] = create();
+		}
+		long after = getUsedMemory();
+		System.out.println();
+		System.out.println("Retained bytes per entity: " + (after - before) / ENTITIES);
+	}
+
+	private SerializableMap create() {
+		SerializableMap m = map.equals("compact") ? new CompactManagedHashMap() : new ManagedHashMap();
+		for (int i = 0; i < fields; i++) {
+			Serializable value;
+			switch (i & 7) {
+				case 0:
+					value = i > 0 ? "Name " + i : Boolean.TRUE;
+					break;
+				case 1:
+				case 2:
+				case 3:
+					value = (float) i;
+					break;
+				case 4:
+					value = (double) i;
+					break;
+				default:
+					value = i * 1000;
+					break;
+			}
+			m.put(keys[i], value);
+		}
+		return m;
+	}
+
+	private static long getUsedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@Benchmark
+	public Serializable get() {
+		int n = next++;
+		return maps[n % ENTITIES].get(keys[n % fields]);
+	}
+
+	@Benchmark
+	public Serializable put() {
+		int n = next++;
+		int field = (n % (fields / 8)) * 8 + 5;
+		return maps[n % ENTITIES].put(keys[field], n);
+	}
+
+	@Benchmark
+	public byte[] serialize() {
+		return maps[next++ % ENTITIES].serialize();
+	}
+}
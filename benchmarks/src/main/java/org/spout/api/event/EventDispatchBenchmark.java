@@ -0,0 +1,112 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of calling an event with a number of registered handlers, using either reflective or generated executors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EventDispatchBenchmark {
+	@Param({"reflection", "generated"})
+	public String executor;
+	@Param({"1", "4", "16"})
+	public int listeners;
+
+	private EventManager eventManager;
+	private final BenchmarkEvent event = new BenchmarkEvent();
+
+	@Setup(Level.Trial)
+	public void setup() throws NoSuchMethodException {
+		eventManager = new SimpleEventManager();
+		Method method = BenchmarkListener.class.getMethod("onEvent", BenchmarkEvent.class);
+		for (int i = 0; i < listeners; i++) {
+			BenchmarkListener listener = new BenchmarkListener();
+			EventExecutor eventExecutor;
+			if (executor.equals("generated")) {
+				eventExecutor = EventExecutorFactory.createGenerated(listener, method);
+				if (eventExecutor == null) {
+					throw new IllegalStateException("Unable to generate executor");
+				}
+			} else {
+				eventExecutor = new MethodEventExecutor(listener, method);
+			}
+			eventManager.registerEvent(BenchmarkEvent.class, Order.DEFAULT, eventExecutor, listener);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		HandlerList.unregisterAll();
+	}
+
+	@Benchmark
+	public int callEvent() {
+		return eventManager.callEvent(event).count;
+	}
+
+	public static class BenchmarkEvent extends Event {
+		private static final HandlerList HANDLERS = new HandlerList();
+		private int count;
+
+		@Override
+		public HandlerList getHandlers() {
+			return HANDLERS;
+		}
+
+		public static HandlerList getHandlerList() {
+			return HANDLERS;
+		}
+	}
+
+	public static class BenchmarkListener implements Listener {
+		public void onEvent(BenchmarkEvent event) {
+			event.count++;
+		}
+	}
+}
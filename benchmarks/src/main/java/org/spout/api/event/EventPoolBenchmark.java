@@ -0,0 +1,137 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of calling a frequent event, which is created for each call, skipped when nothing listens, or taken from an {@link EventPool}.<br>
+ * <br>
+ * Run with "-prof gc" to compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EventPoolBenchmark {
+	@Param({"0", "1"})
+	public int listeners;
+
+	private EventManager eventManager;
+	private final EventPool<FrequentEvent> pool = new EventPool<FrequentEvent>() {
+		@Override
+		protected FrequentEvent createEvent() {
+			return new FrequentEvent();
+		}
+	};
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		eventManager = new SimpleEventManager();
+		for (int i = 0; i < listeners; i++) {
+			eventManager.registerEvents(new FrequentListener(), this);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		HandlerList.unregisterAll();
+	}
+
+	@Benchmark
+	public int allocate() {
+		FrequentEvent event = new FrequentEvent();
+		event.value = next++;
+		return eventManager.callEvent(event).value;
+	}
+
+	@Benchmark
+	public int skipWhenEmpty() {
+		if (!FrequentEvent.getHandlerList().hasListeners()) {
+			return next++;
+		}
+		FrequentEvent event = new FrequentEvent();
+		event.value = next++;
+		return eventManager.callEvent(event).value;
+	}
+
+	@Benchmark
+	public int pooled() {
+		if (!FrequentEvent.getHandlerList().hasListeners()) {
+			return next++;
+		}
+		FrequentEvent event = pool.acquire();
+		event.value = next++;
+		int value = eventManager.callEvent(event).value;
+		pool.release(event);
+		return value;
+	}
+
+	public static class FrequentEvent extends Event {
+		private static final HandlerList HANDLERS = new HandlerList();
+		private int value;
+
+		@Override
+		public HandlerList getHandlers() {
+			return HANDLERS;
+		}
+
+		@Override
+		protected void reset() {
+			super.reset();
+			value = 0;
+		}
+
+		public static HandlerList getHandlerList() {
+			return HANDLERS;
+		}
+	}
+
+	public static class FrequentListener implements Listener {
+		@EventHandler
+		public void onEvent(FrequentEvent event) {
+			event.value++;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.io.regionfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spout.api.util.map.concurrent.palette.AtomicShortIntArray;
+
+/**
+ * Measures compression and decompression throughput of the region file codecs for chunk sized payloads.<br>
+ * <br>
+ * Payloads are palette encoded block stores followed by light nibbles, as stored by the chunk serializer.  
+ * The compressed size for each codec and scenario is printed during setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SRFCodecBenchmark {
+	private static final int CHUNK_SIZE = 16;
+	private static final int VOLUME = CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE;
+
+	@Param({"stored", "deflate", "lz"})
+	public String codecName;
+
+	@Param({"air", "surface", "dense"})
+	public String scenario;
+
+	private SRFCodec codec;
+	private byte[] payload;
+	private byte[] compressed;
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream(VOLUME * 8);
+	private final byte[] buffer = new byte[4096];
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		if (codecName.equals("stored")) {
+			codec = SRFCodec.STORED;
+		} else if (codecName.equals("deflate")) {
+			codec = SRFCodec.DEFLATE;
+		} else if (codecName.equals("lz")) {
+			codec = SRFCodec.LZ;
+		} else {
+			throw new IllegalArgumentException("Unknown codec " + codecName);
+		}
+		payload = createPayload(scenario, new Random(0));
+		compressed = compress();
+		System.out.println();
+		System.out.println(codecName + "/" + scenario + ": " + payload.length + " bytes compressed to " + compressed.length + " bytes");
+	}
+
+	@Benchmark
+	public byte[] compress() throws IOException {
+		out.reset();
+		OutputStream compressor = codec.compress(out);
+		compressor.write(payload);
+		compressor.close();
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public void decompress(Blackhole bh) throws IOException {
+		InputStream in = codec.decompress(new ByteArrayInputStream(compressed));
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			bh.consume(read);
+		}
+		in.close();
+	}
+
+	private static byte[] createPayload(String scenario, Random r) throws IOException {
+		AtomicShortIntArray blocks = new AtomicShortIntArray(VOLUME);
+		byte[] light = new byte[VOLUME >> 1];
+		for (int y = 0; y < CHUNK_SIZE; y++) {
+			for (int z = 0; z < CHUNK_SIZE; z++) {
+				for (int x = 0; x < CHUNK_SIZE; x++) {
+					int index = (y << 8) | (z << 4) | x;
+					int id;
+					int lightLevel;
+					if (scenario.equals("air")) {
+						id = 0;
+						lightLevel = 15;
+					} else if (scenario.equals("surface")) {
+						if (y < 6) {
+							id = r.nextInt(32) == 0 ? 16 + r.nextInt(4) : 1;
+						} else if (y < 9) {
+							id = 3;
+						} else if (y == 9) {
+							id = 2;
+						} else {
+							id = r.nextInt(64) == 0 ? 31 : 0;
+						}
+						lightLevel = y < 10 ? 0 : 15;
+					} else if (scenario.equals("dense")) {
+						id = r.nextInt(48) << 4 | r.nextInt(4);
+						lightLevel = r.nextInt(16);
+					} else {
+						throw new IllegalArgumentException("Unknown scenario " + scenario);
+					}
+					blocks.set(index, id);
+					light[index >> 1] |= (index & 1) == 0 ? lightLevel : lightLevel << 4;
+				}
+			}
+		}
+		blocks.compress();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(bytes);
+		int[] palette = blocks.getPalette();
+		dos.writeInt(palette.length);
+		for (int id : palette) {
+			dos.writeInt(id);
+		}
+		int[] packed = blocks.getBackingArray();
+		dos.writeInt(blocks.width());
+		dos.writeInt(packed.length);
+		for (int word : packed) {
+			dos.writeInt(word);
+		}
+		dos.write(light);
+		dos.close();
+		return bytes.toByteArray();
+	}
+}
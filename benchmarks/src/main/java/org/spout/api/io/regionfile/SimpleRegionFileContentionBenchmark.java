@@ -0,0 +1,152 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.io.regionfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures block read and write throughput when many threads access disjoint blocks of the same region file, 
+ * comparing the single file monitor with concurrent mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SimpleRegionFileContentionBenchmark {
+	private static final int ENTRIES = 4096;
+	private static final int MAX_THREADS = 64;
+
+	@Param({"false", "true"})
+	public boolean concurrent;
+
+	@Param({"2048", "16384"})
+	public int blockSize;
+
+	private File file;
+	private SimpleRegionFile srf;
+	private byte[] data;
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+		private static final AtomicInteger threadCounter = new AtomicInteger(0);
+		private int offset;
+		private int next;
+		private final byte[] buffer = new byte[4096];
+
+		@Setup(Level.Trial)
+		public void setup() {
+			offset = threadCounter.getAndIncrement() % MAX_THREADS;
+			next = 0;
+		}
+
+		/**
+		 * Gets the next block index owned by this thread.  Threads never share block indexes.
+		 */
+		int nextEntry() {
+			int entry = offset + MAX_THREADS * next;
+			next = (next + 1) % (ENTRIES / MAX_THREADS);
+			return entry;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		file = File.createTempFile("contention", ".srf");
+		file.delete();
+		srf = new SimpleRegionFile(file, 8, ENTRIES, Integer.MAX_VALUE, concurrent);
+
+		Random r = new Random(0);
+		data = new byte[blockSize];
+		for (int i = 0; i < data.length; i += 4) {
+			data[i] = (byte) r.nextInt(16);
+		}
+
+		for (int i = 0; i < ENTRIES; i++) {
+			OutputStream out = srf.getOutputStream(i);
+			out.write(data);
+			out.close();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		srf.attemptClose();
+		file.delete();
+	}
+
+	@Benchmark
+	public void write(ThreadState state) throws IOException {
+		OutputStream out = srf.getOutputStream(state.nextEntry());
+		out.write(data);
+		out.close();
+	}
+
+	@Benchmark
+	public void read(ThreadState state, Blackhole bh) throws IOException {
+		InputStream in = srf.getInputStream(state.nextEntry());
+		int read;
+		while ((read = in.read(state.buffer)) != -1) {
+			bh.consume(read);
+		}
+		in.close();
+	}
+
+	@Benchmark
+	public void directRead(ThreadState state, Blackhole bh) throws IOException {
+		InputStream in = srf.getDirectInputStream(state.nextEntry());
+		int read;
+		while ((read = in.read(state.buffer)) != -1) {
+			bh.consume(read);
+		}
+		in.close();
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spout.api.chat.ChatArguments;
+import org.spout.api.command.Command;
+import org.spout.api.exception.UnknownPacketException;
+
+/**
+ * Compares encoding messages of typical sizes into a header buffer, a message buffer and a composite wrapping both,
+ * against encoding them into a single pre-sized buffer from a heap or a preallocated direct buffer factory.<br>
+ * <br>
+ * Run with "-prof gc" to compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CommonEncoderBenchmark {
+	private static final int HEADER_SIZE = 5;
+
+	/**
+	 * Payload sizes in bytes, from movement updates to chunk data
+	 */
+	@Param({"16", "256", "4096", "32768"})
+	public int size;
+
+	private CommonEncoder compositeEncoder;
+	private CommonEncoder heapEncoder;
+	private CommonEncoder directEncoder;
+	private PayloadMessage message;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		byte[] payload = new byte[size];
+		new Random(1).nextBytes(payload);
+		message = new PayloadMessage(7, 42L, payload);
+		compositeEncoder = createEncoder(false, HeapChannelBufferFactory.getInstance());
+		heapEncoder = createEncoder(true, HeapChannelBufferFactory.getInstance());
+		directEncoder = createEncoder(true, new DirectChannelBufferFactory());
+	}
+
+	private static CommonEncoder createEncoder(boolean singleBuffer, ChannelBufferFactory factory) {
+		CommonEncoder encoder = new CommonEncoder(false, factory);
+		encoder.setProtocol(new BenchmarkProtocol(singleBuffer));
+		return encoder;
+	}
+
+	@Benchmark
+	public Object composite() throws Exception {
+		return compositeEncoder.encode(null, null, message);
+	}
+
+	@Benchmark
+	public Object singleHeapBuffer() throws Exception {
+		return heapEncoder.encode(null, null, message);
+	}
+
+	@Benchmark
+	public Object singleDirectBuffer() throws Exception {
+		return directEncoder.encode(null, null, message);
+	}
+
+	public static class PayloadMessage implements Message {
+		private final int id;
+		private final long time;
+		private final byte[] payload;
+
+		public PayloadMessage(int id, long time, byte[] payload) {
+			this.id = id;
+			this.time = time;
+			this.payload = payload;
+		}
+
+		@Override
+		public boolean isAsync() {
+			return false;
+		}
+
+		@Override
+		public int getChannelId() {
+			return DEFAULT_CHANNEL;
+		}
+	}
+
+	public static class PayloadCodec extends MessageCodec<PayloadMessage> {
+		public PayloadCodec() {
+			super(PayloadMessage.class, 1);
+		}
+
+		@Override
+		public ChannelBuffer encode(PayloadMessage message) {
+			ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+			encode(false, message, buffer);
+			return buffer;
+		}
+
+		@Override
+		public int getEncodedSize(boolean upstream, PayloadMessage message) {
+			return 16 + message.payload.length;
+		}
+
+		@Override
+		public void encode(boolean upstream, PayloadMessage message, ChannelBuffer buffer) {
+			buffer.writeInt(message.id);
+			buffer.writeLong(message.time);
+			buffer.writeInt(message.payload.length);
+			buffer.writeBytes(message.payload);
+		}
+	}
+
+	private static class BenchmarkProtocol extends Protocol {
+		private final boolean singleBuffer;
+
+		public BenchmarkProtocol(boolean singleBuffer) {
+			super("Benchmark", 0, new BenchmarkCodecLookupService(), new HandlerLookupService() {});
+			this.singleBuffer = singleBuffer;
+		}
+
+		@Override
+		public MessageCodec<?> readHeader(ChannelBuffer buf) throws UnknownPacketException {
+			return null;
+		}
+
+		@Override
+		public ChannelBuffer writeHeader(MessageCodec<?> codec, ChannelBuffer data) {
+			ChannelBuffer header = ChannelBuffers.buffer(HEADER_SIZE);
+			header.writeByte(codec.getOpcode());
+			header.writeInt(data.readableBytes());
+			return header;
+		}
+
+		@Override
+		public int getMaxHeaderSize() {
+			return singleBuffer ? HEADER_SIZE : -1;
+		}
+
+		@Override
+		public void writeHeaderInPlace(MessageCodec<?> codec, ChannelBuffer buffer) {
+			int start = buffer.readerIndex() - HEADER_SIZE;
+			buffer.setByte(start, codec.getOpcode());
+			buffer.setInt(start + 1, buffer.readableBytes());
+			buffer.readerIndex(start);
+		}
+
+		@Override
+		public Message getKickMessage(ChatArguments message) {
+			return null;
+		}
+
+		@Override
+		public Message getCommandMessage(Command command, ChatArguments arguments) {
+			return null;
+		}
+
+		@Override
+		public Message getIntroductionMessage(String playerName, InetSocketAddress addr) {
+			return null;
+		}
+
+		@Override
+		public void initializeSession(Session session) {
+		}
+	}
+
+	private static class BenchmarkCodecLookupService extends CodecLookupService {
+		public BenchmarkCodecLookupService() {
+			super(2);
+			try {
+				bind(PayloadCodec.class);
+			} catch (InstantiationException e) {
+				throw new RuntimeException(e);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			} catch (InvocationTargetException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
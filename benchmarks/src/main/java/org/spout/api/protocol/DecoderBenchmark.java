@@ -0,0 +1,210 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of decoding an encrypted stream of length prefixed messages, received in TCP sized segments.<br>
+ * <br>
+ * The replaying path decodes the stream without using the length prefix, retrying partial messages, and processes the data by copying it through a {@link CommonChannelProcessor}.
+ * The framed paths wait for complete frames, and process the data either through the same processor or in place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@OperationsPerInvocation(DecoderBenchmark.MESSAGES)
+public class DecoderBenchmark {
+	public static final int MESSAGES = 256;
+	private static final int SEGMENT_SIZE = 1460;
+	private static final byte KEY = 0x5A;
+
+	/**
+	 * Payload sizes in bytes, from movement updates to chunk data
+	 */
+	@Param({"16", "256", "4096"})
+	public int size;
+
+	private final List<ChannelBuffer> segments = new ArrayList<ChannelBuffer>();
+	private DecoderEmbedder<byte[]> replaying;
+	private DecoderEmbedder<byte[]> framedCopying;
+	private DecoderEmbedder<byte[]> framedInPlace;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Random r = new Random(1);
+		ChannelBuffer stream = ChannelBuffers.dynamicBuffer();
+		for (int i = 0; i < MESSAGES; i++) {
+			byte[] payload = new byte[size];
+			r.nextBytes(payload);
+			stream.writeShort(payload.length);
+			stream.writeBytes(payload);
+		}
+		for (int i = stream.readerIndex(); i < stream.writerIndex(); i++) {
+			stream.setByte(i, stream.getByte(i) ^ KEY);
+		}
+		while (stream.readable()) {
+			segments.add(stream.readBytes(Math.min(SEGMENT_SIZE, stream.readableBytes())));
+		}
+		replaying = createEmbedder(false, new XorProcessor(512));
+		framedCopying = createEmbedder(true, new XorProcessor(512));
+		framedInPlace = createEmbedder(true, new XorInPlaceProcessor());
+	}
+
+	private static DecoderEmbedder<byte[]> createEmbedder(boolean framed, ChannelProcessor processor) {
+		LengthPrefixedDecoder decoder = new LengthPrefixedDecoder(framed);
+		decoder.setProcessor(processor);
+		return new DecoderEmbedder<byte[]>(decoder);
+	}
+
+	@Benchmark
+	public int replaying() {
+		return decode(replaying);
+	}
+
+	@Benchmark
+	public int framedCopying() {
+		return decode(framedCopying);
+	}
+
+	@Benchmark
+	public int framedInPlace() {
+		return decode(framedInPlace);
+	}
+
+	private int decode(DecoderEmbedder<byte[]> embedder) {
+		for (int i = 0; i < segments.size(); i++) {
+			embedder.offer(segments.get(i).duplicate());
+		}
+		int bytes = 0;
+		byte[] message;
+		while ((message = embedder.poll()) != null) {
+			bytes += message.length;
+		}
+		if (bytes != MESSAGES * size) {
+			throw new IllegalStateException("Decoded " + bytes + " bytes, expected " + MESSAGES * size);
+		}
+		return bytes;
+	}
+
+	private static class LengthPrefixedDecoder extends PreprocessReplayingDecoder {
+		private final boolean framed;
+
+		public LengthPrefixedDecoder(boolean framed) {
+			super(512);
+			this.framed = framed;
+		}
+
+		@Override
+		protected boolean isFramed(Channel channel) {
+			return framed;
+		}
+
+		@Override
+		protected int getFrameLength(Channel channel, ChannelBuffer buffer) {
+			if (buffer.readableBytes() < 2) {
+				return -1;
+			}
+			return 2 + buffer.getUnsignedShort(buffer.readerIndex());
+		}
+
+		@Override
+		protected Object decodeProcessed(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) {
+			byte[] payload = new byte[buffer.readUnsignedShort()];
+			buffer.readBytes(payload);
+			return payload;
+		}
+	}
+
+	private static class XorProcessor extends CommonChannelProcessor {
+		private final byte[] stored;
+		private int length;
+
+		public XorProcessor(int capacity) {
+			super(capacity);
+			stored = new byte[capacity];
+		}
+
+		@Override
+		protected void write(byte[] buf, int length) {
+			for (int i = 0; i < length; i++) {
+				stored[i] = (byte) (buf[i] ^ KEY);
+			}
+			this.length = length;
+		}
+
+		@Override
+		protected int read(byte[] buf) {
+			int read = length;
+			System.arraycopy(stored, 0, buf, 0, read);
+			length = 0;
+			return read;
+		}
+	}
+
+	private static class XorInPlaceProcessor extends CommonInPlaceChannelProcessor {
+		@Override
+		public void process(ChannelBuffer buffer, int index, int length) {
+			if (buffer.hasArray()) {
+				byte[] array = buffer.array();
+				int end = buffer.arrayOffset() + index + length;
+				for (int i = buffer.arrayOffset() + index; i < end; i++) {
+					array[i] ^= KEY;
+				}
+			} else {
+				for (int i = index; i < index + length; i++) {
+					buffer.setByte(i, buffer.getByte(i) ^ KEY);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.hashing;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures packing coordinates into keys and unpacking them again, for the key packers used by the chunk and region maps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class KeyPackingBenchmark {
+	private int x = -37;
+	private int y = 11;
+	private int z = 93;
+
+	private void step() {
+		x += 3;
+		y += 5;
+		z += 7;
+	}
+
+	@Benchmark
+	public int intPair() {
+		step();
+		long key = IntPairHashed.key(x, z);
+		return IntPairHashed.key1(key) + IntPairHashed.key2(key);
+	}
+
+	@Benchmark
+	public int shortPair() {
+		step();
+		int key = ShortPairHashed.key((short) x, (short) z);
+		return ShortPairHashed.key1(key) + ShortPairHashed.key2(key);
+	}
+
+	@Benchmark
+	public int byteTriple() {
+		step();
+		int key = ByteTripleHashed.key(x, y, z);
+		return ByteTripleHashed.key1(key) + ByteTripleHashed.key2(key) + ByteTripleHashed.key3(key);
+	}
+
+	@Benchmark
+	public int int21Triple() {
+		step();
+		long key = Int21TripleHashed.key(x, y, z);
+		return Int21TripleHashed.key1(key) + Int21TripleHashed.key2(key) + Int21TripleHashed.key3(key);
+	}
+
+	@Benchmark
+	public int signedTenBitTriple() {
+		step();
+		int key = SignedTenBitTripleHashed.key(x, y, z);
+		return SignedTenBitTripleHashed.key1(key) + SignedTenBitTripleHashed.key2(key) + SignedTenBitTripleHashed.key3(key);
+	}
+
+	@Benchmark
+	public int nibbleQuad() {
+		step();
+		short key = NibbleQuadHashed.key(x, y, z, x + z);
+		return NibbleQuadHashed.key1(key) + NibbleQuadHashed.key2(key) + NibbleQuadHashed.key3(key) + NibbleQuadHashed.key4(key);
+	}
+}
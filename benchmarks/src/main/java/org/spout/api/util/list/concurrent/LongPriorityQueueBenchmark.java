@@ -0,0 +1,143 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.list.concurrent;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures one server tick of dynamic block updates, with millions of updates pending.<br>
+ * <br>
+ * Each tick polls the updates which are due and queues each of them again, up to 10 seconds in the future.
+ * The heap is enlarged so that collecting the pending updates does not dominate the results.
+ * Run with "-prof gc" to compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class LongPriorityQueueBenchmark {
+	private static final long TICK_LENGTH = 50;
+	private static final int HORIZON = 10000;
+
+	@Param({"skipList", "timerWheel"})
+	public String queue;
+
+	@Param({"1000000", "4000000"})
+	public int pending;
+
+	/**
+	 * The resolution of the queue, in milliseconds
+	 */
+	@Param({"1", "50"})
+	public int resolution;
+
+	private ConcurrentLongPriorityQueue<Update> updates;
+	private final List<Update> due = new ArrayList<Update>();
+	private int[] delays;
+	private int nextDelay;
+	private long now;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		if (queue.equals("timerWheel")) {
+			updates = new TimerWheelLongPriorityQueue<Update>(resolution);
+		} else {
+			updates = new ConcurrentLongPriorityQueue<Update>(resolution);
+		}
+		Random r = new Random(1);
+		delays = new int[1 << 16];
+		for (int i = 0; i < delays.length; i++) {
+			delays[i] = 1 + r.nextInt(HORIZON);
+		}
+		now = 0;
+		for (int i = 0; i < pending; i++) {
+			updates.add(new Update(now + delays[nextDelay++ & (delays.length - 1)]));
+		}
+	}
+
+	@Benchmark
+	public int tick() {
+		now += TICK_LENGTH;
+		Queue<Update> q;
+		while ((q = updates.poll(now)) != null) {
+			boolean checkRequired = !updates.isFullyBelowThreshold(q, now);
+			Iterator<Update> itr = q.iterator();
+			while (itr.hasNext()) {
+				Update update = itr.next();
+				if (checkRequired && update.getPriority() > now) {
+					continue;
+				}
+				due.add(update);
+				itr.remove();
+			}
+			if (updates.complete(q, now)) {
+				break;
+			}
+		}
+		int count = due.size();
+		for (int i = 0; i < count; i++) {
+			Update update = due.get(i);
+			update.priority = now + delays[nextDelay++ & (delays.length - 1)];
+			updates.add(update);
+		}
+		due.clear();
+		return count;
+	}
+
+	private static class Update implements LongPrioritized {
+		private long priority;
+
+		public Update(long priority) {
+			this.priority = priority;
+		}
+
+		@Override
+		public long getPriority() {
+			return priority;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.list.concurrent.setqueue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures adding elements to a SetQueue and polling them back out, from one thread and from four threads sharing the queue.<br>
+ * <br>
+ * Each operation adds an element twice, so that the duplicate add is also measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SetQueueBenchmark {
+	private static final int ELEMENTS = 64;
+
+	private final SetQueue<Integer> queue = new SetQueue<Integer>(1024);
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+		private SetQueueElement<Integer>[] elements;
+		private int next;
+
+		@SuppressWarnings("unchecked")
+		@Setup(Level.Trial)
+		public void setup(SetQueueBenchmark benchmark) {
+			elements = new SetQueueElement[ELEMENTS];
+			for (int i = 0; i < ELEMENTS; i++) {
+				elements[i] = new SetQueueElement<Integer>(benchmark.queue, i) {
+					@Override
+					protected boolean isValid() {
+						return true;
+					}
+				};
+			}
+		}
+
+		SetQueueElement<Integer> nextElement() {
+			next = (next + 1) & (ELEMENTS - 1);
+			return elements[next];
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Integer addPoll(ThreadState state) {
+		SetQueueElement<Integer> element = state.nextElement();
+		element.add();
+		element.add();
+		return queue.poll();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Integer addPollShared(ThreadState state) {
+		SetQueueElement<Integer> element = state.nextElement();
+		element.add();
+		element.add();
+		return queue.poll();
+	}
+}
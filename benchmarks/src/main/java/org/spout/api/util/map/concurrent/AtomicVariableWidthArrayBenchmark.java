@@ -0,0 +1,123 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reads and updates of an AtomicVariableWidthArray for each entry width, from one thread and from four threads sharing the array.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AtomicVariableWidthArrayBenchmark {
+	private static final int LENGTH = 4096;
+
+	@Param({"1", "2", "4", "8", "16"})
+	public int width;
+
+	private AtomicVariableWidthArray array;
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+		private int next;
+		private int value;
+
+		int nextIndex() {
+			next = (next + 0x9E5) & (LENGTH - 1);
+			return next;
+		}
+
+		int nextValue(int maxValue) {
+			value = (value + 7) & maxValue;
+			return value;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		array = new AtomicVariableWidthArray(LENGTH, width);
+		for (int i = 0; i < LENGTH; i++) {
+			array.set(i, i & array.getMaxValue());
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public int get(ThreadState state) {
+		return array.get(state.nextIndex());
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void set(ThreadState state) {
+		array.set(state.nextIndex(), state.nextValue(array.getMaxValue()));
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean compareAndSet(ThreadState state) {
+		int i = state.nextIndex();
+		return array.compareAndSet(i, array.get(i), state.nextValue(array.getMaxValue()));
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int getShared(ThreadState state) {
+		return array.get(state.nextIndex());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void setShared(ThreadState state) {
+		array.set(state.nextIndex(), state.nextValue(array.getMaxValue()));
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean compareAndSetShared(ThreadState state) {
+		int i = state.nextIndex();
+		return array.compareAndSet(i, array.get(i), state.nextValue(array.getMaxValue()));
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.spout.api.util.hashing.IntPairHashed;
+
+/**
+ * Measures lookups and updates of a TSyncLongObjectHashMap keyed by packed chunk coordinates, for different numbers of internal maps.<br>
+ * <br>
+ * The shared variants run four threads against the same map, with one update for every {@link #READS_PER_WRITE} lookups.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TSyncLongObjectHashMapBenchmark {
+	private static final int SIDE = 64;
+	private static final int READS_PER_WRITE = 8;
+
+	@Param({"1", "16"})
+	public int mapCount;
+
+	private TSyncLongObjectHashMap<Object> map;
+	private final long[] keys = new long[SIDE * SIDE];
+	private final Object value = new Object();
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+		private int next;
+		private int operation;
+
+		int nextKey() {
+			next = (next + 0x9E5) & (SIDE * SIDE - 1);
+			return next;
+		}
+
+		boolean isWrite() {
+			return (++operation % READS_PER_WRITE) == 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		map = new TSyncLongObjectHashMap<Object>(mapCount);
+		int i = 0;
+		for (int x = 0; x < SIDE; x++) {
+			for (int z = 0; z < SIDE; z++) {
+				keys[i] = IntPairHashed.key(x - SIDE / 2, z - SIDE / 2);
+				if ((i & 1) == 0) {
+					map.put(keys[i], value);
+				}
+				i++;
+			}
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object get(ThreadState state) {
+		return map.get(keys[state.nextKey()]);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object putRemove(ThreadState state) {
+		long key = keys[state.nextKey()];
+		if (map.remove(key) == null) {
+			return map.put(key, value);
+		}
+		return null;
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object mixedShared(ThreadState state) {
+		long key = keys[state.nextKey()];
+		if (state.isWrite()) {
+			if (map.remove(key) == null) {
+				return map.putIfAbsent(key, value);
+			}
+			return null;
+		}
+		return map.get(key);
+	}
+}
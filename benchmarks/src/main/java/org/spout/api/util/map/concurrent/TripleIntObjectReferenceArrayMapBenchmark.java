@@ -0,0 +1,122 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures lookups and updates of a TripleIntObjectReferenceArrayMap holding a cube of region coordinates, for different tree widths.<br>
+ * <br>
+ * Half of the positions hold a value, so lookups hit and miss equally often.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TripleIntObjectReferenceArrayMapBenchmark {
+	private static final int SIDE = 16;
+	private static final int POSITIONS = SIDE * SIDE * SIDE;
+
+	@Param({"1", "2", "4"})
+	public int bits;
+
+	private TripleIntObjectReferenceArrayMap<Object> map;
+	private final Object value = new Object();
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+		private int next;
+
+		int nextPosition() {
+			next = (next + 0x9E5) & (POSITIONS - 1);
+			return next;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		map = new TripleIntObjectReferenceArrayMap<Object>(bits);
+		for (int i = 0; i < POSITIONS; i += 2) {
+			map.put(x(i), y(i), z(i), value);
+		}
+	}
+
+	private static int x(int position) {
+		return (position & (SIDE - 1)) - SIDE / 2;
+	}
+
+	private static int y(int position) {
+		return ((position >> 4) & (SIDE - 1)) - SIDE / 2;
+	}
+
+	private static int z(int position) {
+		return (position >> 8) - SIDE / 2;
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object get(ThreadState state) {
+		int i = state.nextPosition();
+		return map.get(x(i), y(i), z(i));
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object putRemove(ThreadState state) {
+		int i = state.nextPosition();
+		int x = x(i);
+		int y = y(i);
+		int z = z(i);
+		if (map.remove(x, y, z) == null) {
+			return map.put(x, y, z, value);
+		}
+		return null;
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object getShared(ThreadState state) {
+		int i = state.nextPosition();
+		return map.get(x(i), y(i), z(i));
+	}
+}
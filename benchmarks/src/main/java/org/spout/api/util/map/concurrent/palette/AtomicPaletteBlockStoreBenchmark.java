@@ -0,0 +1,135 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.map.concurrent.palette;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.spout.api.material.block.BlockFullState;
+
+/**
+ * Measures block updates to an AtomicPaletteBlockStore for chunks with different numbers of distinct block states.<br>
+ * <br>
+ * The fill benchmark writes every block of a new store, so it includes each palette growth step, and the change to a plain array once the palette is full.  
+ * The update benchmarks change blocks of a filled store, whose palette already holds every state used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AtomicPaletteBlockStoreBenchmark {
+	private static final int SHIFT = 4;
+	private static final int SIDE = 1 << SHIFT;
+	private static final int VOLUME = SIDE * SIDE * SIDE;
+	private static final int BATCH = 64;
+
+	@Param({"1", "16", "256", "4096"})
+	public int states;
+
+	private AtomicPaletteBlockStore store;
+	private short[] ids;
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+		private final Random random = new Random();
+		private final int[] indexes = new int[BATCH];
+		private final int[] batchStates = new int[BATCH];
+
+		int nextIndex() {
+			return random.nextInt(VOLUME);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		ids = new short[VOLUME];
+		Random random = new Random(1);
+		for (int i = 0; i < VOLUME; i++) {
+			ids[i] = (short) (i < states ? i : random.nextInt(states));
+		}
+		store = newStore();
+	}
+
+	@Setup(Level.Iteration)
+	public void resetDirty() {
+		store.resetDirtyArrays();
+	}
+
+	private AtomicPaletteBlockStore newStore() {
+		AtomicPaletteBlockStore newStore = new AtomicPaletteBlockStore(SHIFT, false, false);
+		for (int i = 0; i < VOLUME; i++) {
+			newStore.setBlock(i & (SIDE - 1), (i >> SHIFT) & (SIDE - 1), i >> (SHIFT << 1), ids[i], (short) 0);
+		}
+		return newStore;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public AtomicPaletteBlockStore fill() {
+		return newStore();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public int update(ThreadState state) {
+		int i = state.nextIndex();
+		return store.getAndSetBlock(i & (SIDE - 1), (i >> SHIFT) & (SIDE - 1), i >> (SHIFT << 1), ids[state.nextIndex()], (short) 0);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int updateShared(ThreadState state) {
+		int i = state.nextIndex();
+		return store.getAndSetBlock(i & (SIDE - 1), (i >> SHIFT) & (SIDE - 1), i >> (SHIFT << 1), ids[state.nextIndex()], (short) 0);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void updateBatch(ThreadState state) {
+		for (int i = 0; i < BATCH; i++) {
+			state.indexes[i] = state.nextIndex();
+			state.batchStates[i] = BlockFullState.getPacked(ids[state.nextIndex()], (short) 0);
+		}
+		store.setBlocks(state.indexes, state.batchStates, BATCH);
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.map.concurrent.palette;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of block updates to a shared AtomicShortIntArray, when the palette does not need to grow.<br>
+ * <br>
+ * The readLocked variant wraps each update in a ReentrantReadWriteLock read lock, which was the cost of the update path before it became lock-free.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AtomicShortIntArrayBenchmark {
+	private static final int LENGTH = 4096;
+	private static final int IDS = 16;
+
+	@Param({"lockFree", "readLocked"})
+	public String mode;
+
+	private AtomicShortIntArray array;
+	private boolean readLocked;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Lock updateLock = lock.readLock();
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+		private final Random random = new Random();
+		private int next;
+
+		int nextIndex() {
+			next = (next + 0x9E5) & (LENGTH - 1);
+			return next;
+		}
+
+		int nextId() {
+			return random.nextInt(IDS);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		readLocked = mode.equals("readLocked");
+		array = new AtomicShortIntArray(LENGTH);
+		// Fill the palette so that updates do not resize the store
+		for (int i = 0; i < LENGTH; i++) {
+			array.set(i, i % IDS);
+		}
+	}
+
+	@Benchmark
+	public int set(ThreadState state) {
+		int i = state.nextIndex();
+		int id = state.nextId();
+		if (readLocked) {
+			updateLock.lock();
+			try {
+				return array.set(i, id);
+			} finally {
+				updateLock.unlock();
+			}
+		}
+		return array.set(i, id);
+	}
+
+	@Benchmark
+	public boolean compareAndSet(ThreadState state) {
+		int i = state.nextIndex();
+		int id = state.nextId();
+		if (readLocked) {
+			updateLock.lock();
+			try {
+				return array.compareAndSet(i, array.get(i), id);
+			} finally {
+				updateLock.unlock();
+			}
+		}
+		return array.compareAndSet(i, array.get(i), id);
+	}
+}
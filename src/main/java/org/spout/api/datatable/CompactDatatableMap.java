@@ -0,0 +1,578 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.datatable;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.spout.api.util.StringMap;
+import org.spout.api.util.VarInt;
+
+/**
+ * A {@link DatatableMap} which stores its values in a few arrays rather than as {@link AbstractData} objects.<br>
+ * <br>
+ * Primitive values are stored unboxed in a single packed long array, and String and Serializable values in an object array.
+ * The keys and types of the values are stored in sorted arrays, which are replaced when a key is added or removed, or when the type of a value changes.<br>
+ * <br>
+ * Writes are synchronized on the map and increment a sequence number before and after the change.
+ * Reads of a single value do not lock, and reads of the whole map retry, or take the lock, if the sequence number changed while they were reading.<br>
+ * <br>
+ * The {@link AbstractData} objects returned by this map are copies, so changing them does not change the map.
+ * The compressed format is the same as for the {@link GenericDatatableMap}.
+ */
+class CompactDatatableMap implements DatatableMap {
+	private static final byte NULL = 0;
+	private static final byte BOOLEAN = 1;
+	private static final byte FLOAT = 2;
+	private static final byte INTEGER = 3;
+	private static final byte SERIALIZABLE = 4;
+	private static final byte LONG = 5;
+	private static final byte STRING = 6;
+	private static final byte DOUBLE = 7;
+	private static final byte SHORT = 8;
+	private static final byte BYTE = 9;
+	private static final Slots EMPTY = new Slots(new int[0], new byte[0]);
+	private final StringMap stringmap;
+	private volatile Slots slots = EMPTY;
+	private volatile int sequence = 0;
+
+	public CompactDatatableMap() {
+		stringmap = GenericDatatableMap.getStringMap();
+	}
+
+	@Override
+	public void set(AbstractData value) {
+		set(value.hashCode(), value);
+	}
+
+	@Override
+	public void set(int key, AbstractData value) {
+		getAndSet(key, value);
+	}
+
+	@Override
+	public void set(String key, AbstractData value) {
+		getAndSet(key, value);
+	}
+
+	@Override
+	public AbstractData setIfAbsent(AbstractData value) {
+		return setIfAbsent(value.hashCode(), value);
+	}
+
+	@Override
+	public AbstractData setIfAbsent(int key, AbstractData value) {
+		checkKey(key);
+		return setIfAbsentRaw(key, value);
+	}
+
+	@Override
+	public AbstractData setIfAbsent(String key, AbstractData value) {
+		return setIfAbsentRaw(stringmap.register(key), value);
+	}
+
+	private synchronized AbstractData setIfAbsentRaw(int key, AbstractData value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Value cannot be null, use NullData");
+		}
+		value.setKey(key);
+		Slots s = slots;
+		int index = Arrays.binarySearch(s.keys, key);
+		if (index >= 0 && (s.get(index) != null || value.get() == null)) {
+			return s.getData(index, key);
+		}
+		write(key, value.getObjectTypeId(), value.get());
+		return null;
+	}
+
+	@Override
+	public AbstractData getAndSet(int key, AbstractData value) {
+		checkKey(key);
+		return getAndSetRaw(key, value);
+	}
+
+	@Override
+	public AbstractData getAndSet(String key, AbstractData value) {
+		return getAndSetRaw(stringmap.register(key), value);
+	}
+
+	private synchronized AbstractData getAndSetRaw(int key, AbstractData value) {
+		value.setKey(key);
+		Slots s = slots;
+		int index = Arrays.binarySearch(s.keys, key);
+		AbstractData old = index >= 0 ? s.getData(index, key) : null;
+		write(key, value.getObjectTypeId(), value.get());
+		return old;
+	}
+
+	@Override
+	public Serializable getValue(int key) {
+		Slots s = slots;
+		int index = Arrays.binarySearch(s.keys, key);
+		return index >= 0 ? s.get(index) : null;
+	}
+
+	@Override
+	public synchronized Serializable setValue(int key, Serializable value) {
+		Serializable old = getValue(key);
+		write(key, getType(value), value);
+		return old;
+	}
+
+	@Override
+	public synchronized Serializable setValueIfAbsent(int key, Serializable value) {
+		Serializable old = getValue(key);
+		if (old != null || (value == null && contains(key))) {
+			return old;
+		}
+		write(key, getType(value), value);
+		return null;
+	}
+
+	@Override
+	public synchronized Serializable removeValue(int key) {
+		Slots s = slots;
+		int index = Arrays.binarySearch(s.keys, key);
+		if (index < 0) {
+			return null;
+		}
+		Serializable old = s.get(index);
+		sequence++;
+		try {
+			slots = s.remove(index);
+		} finally {
+			sequence++;
+		}
+		return old;
+	}
+
+	/**
+	 * Sets the value for a key.  This must be called while synchronized on the map.
+	 */
+	private void write(int key, byte type, Serializable value) {
+		sequence++;
+		try {
+			writeRaw(key, type, value);
+		} finally {
+			sequence++;
+		}
+	}
+
+	/**
+	 * Sets the value for a key without changing the sequence number.  This must be called while synchronized on the map, with an odd sequence number.
+	 */
+	private void writeRaw(int key, byte type, Serializable value) {
+		Slots s = slots;
+		int index = Arrays.binarySearch(s.keys, key);
+		if (index >= 0 && s.types[index] == type) {
+			s.set(index, value);
+		} else if (index >= 0) {
+			slots = s.replace(index, type, value);
+		} else {
+			slots = s.insert(-index - 1, key, type, value);
+		}
+	}
+
+	private void checkKey(int key) {
+		if (stringmap.getString(key) == null) {
+			throw new IllegalArgumentException("Key " + key + " does not have a matching string");
+		}
+	}
+
+	@Override
+	public int getIntKey(String key) {
+		return stringmap.register(key);
+	}
+
+	@Override
+	public String getStringKey(int key) {
+		return stringmap.getString(key);
+	}
+
+	@Override
+	public AbstractData get(String key) {
+		return get(getIntKey(key));
+	}
+
+	@Override
+	public AbstractData get(int key) {
+		Slots s = slots;
+		int index = Arrays.binarySearch(s.keys, key);
+		return index >= 0 ? s.getData(index, key) : new NullData(key);
+	}
+
+	@Override
+	public boolean contains(String key) {
+		return contains(getIntKey(key));
+	}
+
+	@Override
+	public boolean contains(int key) {
+		return Arrays.binarySearch(slots.keys, key) >= 0;
+	}
+
+	@Override
+	public AbstractData remove(String key) {
+		return remove(getIntKey(key));
+	}
+
+	@Override
+	public synchronized AbstractData remove(int key) {
+		Slots s = slots;
+		int index = Arrays.binarySearch(s.keys, key);
+		if (index < 0) {
+			return new NullData(key);
+		}
+		AbstractData old = s.getData(index, key);
+		removeValue(key);
+		return old;
+	}
+
+	@Override
+	public synchronized void clear() {
+		sequence++;
+		slots = EMPTY;
+		sequence++;
+	}
+
+	@Override
+	public int size() {
+		return slots.keys.length;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public Set<String> keySet() {
+		int[] keys = slots.keys;
+		HashSet<String> keyset = new HashSet<String>();
+		for (int key : keys) {
+			String string = stringmap.getString(key);
+			if (string != null) {
+				keyset.add(string);
+			}
+		}
+		return keyset;
+	}
+
+	@Override
+	public Collection<AbstractData> values() {
+		return Arrays.asList(snapshot());
+	}
+
+	/**
+	 * Gets a consistent copy of the contents of the map
+	 *
+	 * @return the contents of the map
+	 */
+	private AbstractData[] snapshot() {
+		int seq = sequence;
+		if ((seq & 1) == 0) {
+			AbstractData[] data = slots.getData();
+			if (sequence == seq) {
+				return data;
+			}
+		}
+		synchronized (this) {
+			return slots.getData();
+		}
+	}
+
+	@Override
+	public byte[] compress() {
+		AbstractData[] data = snapshot();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			VarInt.writeInt(out, data.length);
+			VarInt.writeInt(out, data.length);
+			for (AbstractData value : data) {
+				String stringKey = stringmap.getString(value.getKey());
+				if (stringKey == null) {
+					throw new IllegalStateException("Unable to compress CompactDatatableMap");
+				}
+				VarInt.writeInt(out, value.getKey());
+				VarInt.writeString(out, stringKey);
+			}
+			for (AbstractData value : data) {
+				value.output(out);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		return out.toByteArray();
+	}
+
+	@Override
+	public void decompress(byte[] compressedData) throws IOException {
+		decompress(compressedData, true);
+	}
+
+	@Override
+	public void decompress(byte[] compressedData, boolean wipe) throws IOException {
+		InputStream in = new ByteArrayInputStream(compressedData);
+		TIntIntHashMap keyReplacement = new TIntIntHashMap();
+		int strings = VarInt.readInt(in);
+		int objects = VarInt.readInt(in);
+		for (int i = 0; i < strings; i++) {
+			int key = VarInt.readInt(in);
+			String string = VarInt.readString(in);
+			keyReplacement.put(key, getIntKey(string));
+		}
+		AbstractData[] data = new AbstractData[objects];
+		for (int i = 0; i < objects; i++) {
+			data[i] = AbstractData.input(in);
+			if (!keyReplacement.contains(data[i].getKey())) {
+				throw new IOException("Unknown key when decompressing CompactDatatableMap");
+			}
+		}
+		// The whole map is replaced as a single write, so snapshots never see part of the data
+		synchronized (this) {
+			sequence++;
+			try {
+				if (wipe) {
+					slots = EMPTY;
+				}
+				for (AbstractData value : data) {
+					writeRaw(keyReplacement.get(value.getKey()), value.getObjectTypeId(), value.get());
+				}
+			} finally {
+				sequence++;
+			}
+		}
+	}
+
+	@Override
+	public void output(OutputStream out) throws IOException {
+		VarInt.writeInt(out, -1);
+		byte[] compressed = compress();
+		VarInt.writeInt(out, compressed.length);
+		out.write(compressed);
+	}
+
+	private static byte getType(Serializable value) {
+		if (value instanceof Boolean) {
+			return BOOLEAN;
+		} else if (value instanceof Double) {
+			return DOUBLE;
+		} else if (value instanceof Float) {
+			return FLOAT;
+		} else if (value instanceof Long) {
+			return LONG;
+		} else if (value instanceof Integer) {
+			return INTEGER;
+		} else if (value instanceof Short) {
+			return SHORT;
+		} else if (value instanceof Byte) {
+			return BYTE;
+		} else if (value instanceof String) {
+			return STRING;
+		} else if (value != null) {
+			return SERIALIZABLE;
+		} else {
+			return NULL;
+		}
+	}
+
+	private static boolean isObject(byte type) {
+		return type == STRING || type == SERIALIZABLE;
+	}
+
+	/**
+	 * The keys, types and values of a map.  The keys and types never change, but the values may be set.
+	 */
+	private static final class Slots {
+		private final int[] keys;
+		private final byte[] types;
+		private final AtomicLongArray primitives;
+		private final AtomicReferenceArray<Serializable> objects;
+
+		public Slots(int[] keys, byte[] types) {
+			this.keys = keys;
+			this.types = types;
+			this.primitives = new AtomicLongArray(keys.length);
+			boolean hasObjects = false;
+			for (byte type : types) {
+				hasObjects |= isObject(type);
+			}
+			this.objects = hasObjects ? new AtomicReferenceArray<Serializable>(keys.length) : null;
+		}
+
+		public Serializable get(int index) {
+			long bits = primitives.get(index);
+			switch (types[index]) {
+				case BOOLEAN:
+					return bits != 0;
+				case FLOAT:
+					return Float.intBitsToFloat((int) bits);
+				case INTEGER:
+					return (int) bits;
+				case LONG:
+					return bits;
+				case DOUBLE:
+					return Double.longBitsToDouble(bits);
+				case SHORT:
+					return (short) bits;
+				case BYTE:
+					return (byte) bits;
+				case STRING:
+				case SERIALIZABLE:
+					return objects.get(index);
+				default:
+					return null;
+			}
+		}
+
+		public void set(int index, Serializable value) {
+			switch (types[index]) {
+				case BOOLEAN:
+					primitives.set(index, ((Boolean) value) ? 1 : 0);
+					break;
+				case FLOAT:
+					primitives.set(index, Float.floatToRawIntBits(((Number) value).floatValue()));
+					break;
+				case DOUBLE:
+					primitives.set(index, Double.doubleToRawLongBits(((Number) value).doubleValue()));
+					break;
+				case INTEGER:
+				case LONG:
+				case SHORT:
+				case BYTE:
+					primitives.set(index, ((Number) value).longValue());
+					break;
+				case STRING:
+				case SERIALIZABLE:
+					objects.set(index, value);
+					break;
+				default:
+					break;
+			}
+		}
+
+		public AbstractData getData(int index, int key) {
+			Serializable value = get(index);
+			switch (types[index]) {
+				case BOOLEAN:
+					return new BooleanData(key, (Boolean) value);
+				case FLOAT:
+					return new FloatData(key, (Float) value);
+				case INTEGER:
+					return new IntegerData(key, (Integer) value);
+				case LONG:
+					return new LongData(key, (Long) value);
+				case DOUBLE:
+					return new DoubleData(key, (Double) value);
+				case SHORT:
+					return new ShortData(key, (Short) value);
+				case BYTE:
+					return new ByteData(key, (Byte) value);
+				case STRING:
+					return new StringData(key, (String) value);
+				case SERIALIZABLE:
+					return new SerializableData(key, value);
+				default:
+					return new NullData(key);
+			}
+		}
+
+		public AbstractData[] getData() {
+			AbstractData[] data = new AbstractData[keys.length];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = getData(i, keys[i]);
+			}
+			return data;
+		}
+
+		public Slots replace(int index, byte type, Serializable value) {
+			byte[] newTypes = types.clone();
+			newTypes[index] = type;
+			Slots s = new Slots(keys, newTypes);
+			s.copy(this, 0, 0, keys.length);
+			s.set(index, value);
+			return s;
+		}
+
+		public Slots insert(int index, int key, byte type, Serializable value) {
+			int[] newKeys = new int[keys.length + 1];
+			byte[] newTypes = new byte[keys.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, index);
+			System.arraycopy(types, 0, newTypes, 0, index);
+			System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+			System.arraycopy(types, index, newTypes, index + 1, keys.length - index);
+			newKeys[index] = key;
+			newTypes[index] = type;
+			Slots s = new Slots(newKeys, newTypes);
+			s.copy(this, 0, 0, index);
+			s.copy(this, index, index + 1, keys.length - index);
+			s.set(index, value);
+			return s;
+		}
+
+		public Slots remove(int index) {
+			if (keys.length == 1) {
+				return EMPTY;
+			}
+			int[] newKeys = new int[keys.length - 1];
+			byte[] newTypes = new byte[keys.length - 1];
+			System.arraycopy(keys, 0, newKeys, 0, index);
+			System.arraycopy(types, 0, newTypes, 0, index);
+			System.arraycopy(keys, index + 1, newKeys, index, newKeys.length - index);
+			System.arraycopy(types, index + 1, newTypes, index, newTypes.length - index);
+			Slots s = new Slots(newKeys, newTypes);
+			s.copy(this, 0, 0, index);
+			s.copy(this, index + 1, index, newKeys.length - index);
+			return s;
+		}
+
+		private void copy(Slots from, int fromIndex, int toIndex, int length) {
+			for (int i = 0; i < length; i++) {
+				if (isObject(types[toIndex + i])) {
+					if (isObject(from.types[fromIndex + i])) {
+						objects.set(toIndex + i, from.objects.get(fromIndex + i));
+					}
+				} else {
+					primitives.set(toIndex + i, from.primitives.get(fromIndex + i));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.datatable;
+
+import java.io.IOException;
+
+/**
+ * A {@link ManagedHashMap} which stores primitive values unboxed in packed arrays, rather than as an object per entry.<br>
+ * <br>
+ * This uses much less memory for maps with many primitive values, such as the datatables of entities.
+ * The serialized form is the same as for a {@link ManagedHashMap}, so either map can deserialize the data of the other.
+ */
+public class CompactManagedHashMap extends ManagedHashMap {
+	public CompactManagedHashMap() {
+		super(new CompactDatatableMap());
+	}
+
+	@Override
+	public SerializableMap deepCopy() {
+		SerializableMap map = new CompactManagedHashMap();
+		try {
+			map.deserialize(serialize(), true);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to create a deep copy", e);
+		}
+		return map;
+	}
+}
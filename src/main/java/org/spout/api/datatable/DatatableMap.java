@@ -28,6 +28,7 @@ package org.spout.api.datatable;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.Set;
 
@@ -143,6 +144,42 @@ interface DatatableMap {
 	 */
 	public AbstractData getAndSet(int key, AbstractData value);
 
+	/**
+	 * Gets the value corresponding to the given int key
+	 * 
+	 * @param key
+	 * @return the value, or null if the map does not contain the key
+	 */
+	public Serializable getValue(int key);
+
+	/**
+	 * Sets the value corresponding to the given int key, using the type of the value to choose the type of the DatatableTuple.
+	 * The given int must correspond to a String key.
+	 * 
+	 * @param key
+	 * @param value
+	 * @return the previous value, or null if there was none
+	 */
+	public Serializable setValue(int key, Serializable value);
+
+	/**
+	 * Sets the value corresponding to the given int key if the map does not contain the key, or the key has a null value.
+	 * The given int must correspond to a String key.
+	 * 
+	 * @param key
+	 * @param value
+	 * @return the current value if it was not replaced, or null if the value was set
+	 */
+	public Serializable setValueIfAbsent(int key, Serializable value);
+
+	/**
+	 * Removes the value associated with the int key
+	 * 
+	 * @param key
+	 * @return the previous value, or null if there was none
+	 */
+	public Serializable removeValue(int key);
+
 	/**
 	 * Gets if the map contains a particular key String
 	 * 
@@ -212,5 +249,7 @@ interface DatatableMap {
 
 	public void decompress(byte[] compressedData) throws IOException;
 
+	public void decompress(byte[] compressedData, boolean wipe) throws IOException;
+
 	public void output(OutputStream out) throws IOException;
 }
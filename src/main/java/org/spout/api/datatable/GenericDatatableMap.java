@@ -35,6 +35,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -144,6 +145,54 @@ class GenericDatatableMap implements DatatableMap {
 		value.setKey(key);
 		return map.put(key, value);
 	}
+
+	@Override
+	public Serializable getValue(int key) {
+		AbstractData value = map.get(key);
+		return value != null ? value.get() : null;
+	}
+
+	@Override
+	public Serializable setValue(int key, Serializable value) {
+		AbstractData old = setRaw(key, getAbstractDataValue(key, value));
+		return old != null ? old.get() : null;
+	}
+
+	@Override
+	public Serializable setValueIfAbsent(int key, Serializable value) {
+		AbstractData old = setIfAbsentRaw(key, getAbstractDataValue(key, value));
+		return old != null ? old.get() : null;
+	}
+
+	@Override
+	public Serializable removeValue(int key) {
+		AbstractData old = map.remove(key);
+		return old != null ? old.get() : null;
+	}
+
+	private AbstractData getAbstractDataValue(int intKey, Serializable value) {
+		if (value instanceof Boolean) {
+			return new BooleanData(intKey, (Boolean)value);
+		}  else if (value instanceof Double) {
+			return new DoubleData(intKey, (Double)value);
+		} else if (value instanceof Float) {
+			return new FloatData(intKey, (Float)value);
+		} else if (value instanceof Long) {
+			return new LongData(intKey, (Long)value);
+		} else if (value instanceof Integer) {
+			return new IntegerData(intKey, (Integer)value);
+		}  else if (value instanceof Short) {
+			return new ShortData(intKey, (Short)value);
+		}  else if (value instanceof Byte) {
+			return new ByteData(intKey, (Byte)value);
+		} else if (value instanceof String) {
+			return new StringData(intKey, (String)value);
+		} else if (value instanceof Serializable) {
+			return new SerializableData(intKey, value);
+		} else {
+			return new NullData(intKey);
+		}
+	}
 	
 	@Override
 	public AbstractData get(String key) {
@@ -183,6 +232,7 @@ class GenericDatatableMap implements DatatableMap {
 		return out.toByteArray();
 	}
 
+	@Override
 	public void decompress(byte[] compressedData, boolean wipe) throws IOException{
 		if (wipe) {
 			map.clear();
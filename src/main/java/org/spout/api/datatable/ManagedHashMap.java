@@ -46,9 +46,13 @@ import org.spout.api.map.DefaultedKey;
  * and network transfers.
  */
 public class ManagedHashMap implements SerializableMap {
-	final GenericDatatableMap map;
+	final DatatableMap map;
 	public ManagedHashMap() {
-		this.map = new GenericDatatableMap();
+		this(new GenericDatatableMap());
+	}
+
+	ManagedHashMap(DatatableMap map) {
+		this.map = map;
 	}
 
 	@Override
@@ -101,7 +105,7 @@ public class ManagedHashMap implements SerializableMap {
 		final String keyString = (String) key;
 		final T value;
 		try {
-			value = (T)map.get(keyString).get();
+			value = (T)map.getValue(map.getIntKey(keyString));
 		} catch (ClassCastException e) {
 			return defaultValue;
 		}
@@ -149,24 +153,12 @@ public class ManagedHashMap implements SerializableMap {
 
 	@Override
 	public Serializable putIfAbsent(String key, Serializable value) {
-		int intKey = map.getIntKey(key);
-		AbstractData data = map.setIfAbsent(intKey, getAbstractDataValue(intKey, value));
-		if (data == null) {
-			return null;
-		} else {
-			return data.get();
-		}
+		return map.setValueIfAbsent(map.getIntKey(key), value);
 	}
 
 	@Override
 	public Serializable put(String key, Serializable value) {
-		int intKey = map.getIntKey(key);
-		AbstractData data = map.getAndSet(intKey, getAbstractDataValue(intKey, value));
-		if (data == null) {
-			return null;
-		} else {
-			return data.get();
-		}
+		return map.setValue(map.getIntKey(key), value);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -191,7 +183,7 @@ public class ManagedHashMap implements SerializableMap {
 	}
 
 	public Serializable remove(String key) {
-		return map.remove(key).get();
+		return map.removeValue(map.getIntKey(key));
 	}
 
 	@Override
@@ -466,28 +458,4 @@ public class ManagedHashMap implements SerializableMap {
 		}
 		return map;
 	}
-
-	private final AbstractData getAbstractDataValue(int intKey, Serializable value) {
-		if (value instanceof Boolean) {
-			return new BooleanData(intKey, (Boolean)value);
-		}  else if (value instanceof Double) {
-			return new DoubleData(intKey, (Double)value);
-		} else if (value instanceof Float) {
-			return new FloatData(intKey, (Float)value);
-		} else if (value instanceof Long) {
-			return new LongData(intKey, (Long)value);
-		} else if (value instanceof Integer) {
-			return new IntegerData(intKey, (Integer)value);
-		}  else if (value instanceof Short) {
-			return new ShortData(intKey, (Short)value);
-		}  else if (value instanceof Byte) {
-			return new ByteData(intKey, (Byte)value);
-		} else if (value instanceof String) {
-			return new StringData(intKey, (String)value);
-		} else if (value instanceof Serializable) {
-			return new SerializableData(intKey, value);
-		} else {
-			return map.niltype;
-		}
-	}
 }
@@ -39,6 +39,10 @@ public abstract class Event {
 	 * Stores whether this event has already been called
 	 */
 	private boolean beenCalled = false;
+	/**
+	 * The pool entry holding this event, if it was taken from an {@link EventPool}
+	 */
+	private EventPool.Entry<?> poolEntry = null;
 
 	/**
 	 * Get the static handler list of this event subclass.
@@ -93,4 +97,23 @@ public abstract class Event {
 	void setHasBeenCalled(boolean beenCalled) {
 		this.beenCalled = beenCalled;
 	}
+
+	/**
+	 * Resets the state of this event, so that it can be reused.<br>
+	 * <br>
+	 * This is called by {@link EventPool} before a pooled event is handed out again.  
+	 * Subclasses which are pooled should override this to clear their own fields, and call the super method.
+	 */
+	protected void reset() {
+		cancelled = false;
+		beenCalled = false;
+	}
+
+	EventPool.Entry<?> getPoolEntry() {
+		return poolEntry;
+	}
+
+	void setPoolEntry(EventPool.Entry<?> poolEntry) {
+		this.poolEntry = poolEntry;
+	}
 }
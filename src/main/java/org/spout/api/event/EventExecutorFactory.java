@@ -0,0 +1,336 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates {@link EventExecutor}s for event handler methods.<br>
+ * <br>
+ * Where possible, a class which calls the handler method directly is generated for each handler.  
+ * This requires the method, its declaring class and its event class to be public.  Otherwise, the handler is called using reflection.
+ */
+public final class EventExecutorFactory {
+	private static final Logger LOGGER = Logger.getLogger(EventExecutorFactory.class.getCanonicalName());
+	private static final String SUPER_NAME = GeneratedEventExecutor.class.getName().replace('.', '/');
+	private static final AtomicInteger classCounter = new AtomicInteger(0);
+
+	private EventExecutorFactory() {
+	}
+
+	/**
+	 * Creates an executor for a handler method, generating a direct call executor if possible
+	 * 
+	 * @param listener the listener to call the method on
+	 * @param method the handler method, which must take a single event parameter
+	 * @return the executor
+	 */
+	public static EventExecutor create(Object listener, Method method) {
+		EventExecutor executor = createGenerated(listener, method);
+		if (executor == null) {
+			executor = new MethodEventExecutor(listener, method);
+		}
+		return executor;
+	}
+
+	/**
+	 * Creates a direct call executor for a handler method
+	 * 
+	 * @param listener the listener to call the method on
+	 * @param method the handler method, which must take a single event parameter
+	 * @return the executor, or null if a direct call executor cannot be generated for the method
+	 */
+	public static EventExecutor createGenerated(Object listener, Method method) {
+		Class<?> owner = method.getDeclaringClass();
+		Class<?>[] parameters = method.getParameterTypes();
+		if (parameters.length != 1 || !Modifier.isPublic(method.getModifiers()) || !isAccessible(owner) || !isAccessible(parameters[0]) || owner.isInterface()) {
+			return null;
+		}
+		try {
+			String name = SUPER_NAME + "$Executor" + classCounter.incrementAndGet();
+			byte[] bytecode = generate(name, method);
+			ExecutorClassLoader loader = new ExecutorClassLoader(owner.getClassLoader());
+			Class<?> executorClass = loader.define(name.replace('/', '.'), bytecode);
+			Constructor<?> constructor = executorClass.getConstructor(Object.class, Class.class);
+			return (EventExecutor) constructor.newInstance(listener, parameters[0]);
+		} catch (Throwable t) {
+			LOGGER.log(Level.FINE, "Unable to generate event executor for " + method + ", using reflection", t);
+			return null;
+		}
+	}
+
+	private static boolean isAccessible(Class<?> clazz) {
+		while (clazz != null) {
+			if (!Modifier.isPublic(clazz.getModifiers())) {
+				return false;
+			}
+			clazz = clazz.getEnclosingClass();
+		}
+		return true;
+	}
+
+	/**
+	 * Generates the class file for an executor.<br>
+	 * <br>
+	 * The class extends GeneratedEventExecutor.  Its constructor takes the listener and the event class, and its invoke method casts the event and calls the handler.
+	 */
+	private static byte[] generate(String name, Method method) throws IOException {
+		boolean isStatic = Modifier.isStatic(method.getModifiers());
+		String owner = method.getDeclaringClass().getName().replace('.', '/');
+		String ownerDescriptor = "L" + owner + ";";
+		String eventClass = method.getParameterTypes()[0].getName().replace('.', '/');
+		Class<?> returnType = method.getReturnType();
+
+		ConstantPool pool = new ConstantPool();
+		int thisClass = pool.classInfo(name);
+		int superClass = pool.classInfo(SUPER_NAME);
+		int superInit = pool.methodRef(SUPER_NAME, "<init>", "(Ljava/lang/Class;)V");
+		int listenerField = pool.fieldRef(name, "listener", ownerDescriptor);
+		int ownerClass = pool.classInfo(owner);
+		int eventClassInfo = pool.classInfo(eventClass);
+		int handler = pool.methodRef(owner, method.getName(), "(L" + eventClass + ";)" + descriptor(returnType));
+		int codeName = pool.utf8("Code");
+		int fieldName = pool.utf8("listener");
+		int fieldDescriptor = pool.utf8(ownerDescriptor);
+		int initName = pool.utf8("<init>");
+		int initDescriptor = pool.utf8("(Ljava/lang/Object;Ljava/lang/Class;)V");
+		int invokeName = pool.utf8("invoke");
+		int invokeDescriptor = pool.utf8("(Lorg/spout/api/event/Event;)V");
+
+		ByteArrayOutputStream init = new ByteArrayOutputStream();
+		init.write(0x2A);                    // aload_0
+		init.write(0x2C);                    // aload_2
+		init.write(0xB7);                    // invokespecial GeneratedEventExecutor.<init>(Class)
+		writeShort(init, superInit);
+		if (!isStatic) {
+			init.write(0x2A);                // aload_0
+			init.write(0x2B);                // aload_1
+			init.write(0xC0);                // checkcast owner
+			writeShort(init, ownerClass);
+			init.write(0xB5);                // putfield listener
+			writeShort(init, listenerField);
+		}
+		init.write(0xB1);                    // return
+
+		ByteArrayOutputStream invoke = new ByteArrayOutputStream();
+		if (!isStatic) {
+			invoke.write(0x2A);              // aload_0
+			invoke.write(0xB4);              // getfield listener
+			writeShort(invoke, listenerField);
+		}
+		invoke.write(0x2B);                  // aload_1
+		invoke.write(0xC0);                  // checkcast event class
+		writeShort(invoke, eventClassInfo);
+		invoke.write(isStatic ? 0xB8 : 0xB6); // invokestatic or invokevirtual handler
+		writeShort(invoke, handler);
+		if (returnType == long.class || returnType == double.class) {
+			invoke.write(0x58);              // pop2
+		} else if (returnType != void.class) {
+			invoke.write(0x57);              // pop
+		}
+		invoke.write(0xB1);                  // return
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);                   // minor version
+		out.writeShort(50);                  // major version, Java 6
+		pool.write(out);
+		out.writeShort(0x0031);              // public final super
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(0);                   // interfaces
+		if (isStatic) {
+			out.writeShort(0);
+		} else {
+			out.writeShort(1);
+			out.writeShort(0x0012);          // private final
+			out.writeShort(fieldName);
+			out.writeShort(fieldDescriptor);
+			out.writeShort(0);
+		}
+		out.writeShort(2);                   // methods
+		writeMethod(out, 0x0001, initName, initDescriptor, codeName, 2, 3, init.toByteArray());
+		writeMethod(out, 0x0004, invokeName, invokeDescriptor, codeName, 2, 2, invoke.toByteArray());
+		out.writeShort(0);                   // attributes
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static void writeMethod(DataOutputStream out, int access, int name, int descriptor, int codeName, int maxStack, int maxLocals, byte[] code) throws IOException {
+		out.writeShort(access);
+		out.writeShort(name);
+		out.writeShort(descriptor);
+		out.writeShort(1);                   // attributes
+		out.writeShort(codeName);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0);                   // exception table
+		out.writeShort(0);                   // code attributes
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value >> 8);
+		out.write(value);
+	}
+
+	private static String descriptor(Class<?> clazz) {
+		if (clazz == void.class) {
+			return "V";
+		} else if (clazz == boolean.class) {
+			return "Z";
+		} else if (clazz == byte.class) {
+			return "B";
+		} else if (clazz == char.class) {
+			return "C";
+		} else if (clazz == short.class) {
+			return "S";
+		} else if (clazz == int.class) {
+			return "I";
+		} else if (clazz == long.class) {
+			return "J";
+		} else if (clazz == float.class) {
+			return "F";
+		} else if (clazz == double.class) {
+			return "D";
+		} else if (clazz.isArray()) {
+			return clazz.getName().replace('.', '/');
+		}
+		return "L" + clazz.getName().replace('.', '/') + ";";
+	}
+
+	/**
+	 * The constant pool of a generated class.  Entries are deduplicated, and must all be added before the pool is written.
+	 */
+	private static class ConstantPool {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final Map<String, Integer> entries = new HashMap<String, Integer>();
+		private int count = 0;
+
+		int utf8(String value) throws IOException {
+			Integer index = entries.get("U" + value);
+			if (index == null) {
+				out.writeByte(1);
+				out.writeUTF(value);
+				index = add("U" + value);
+			}
+			return index;
+		}
+
+		int classInfo(String name) throws IOException {
+			Integer index = entries.get("C" + name);
+			if (index == null) {
+				int nameIndex = utf8(name);
+				out.writeByte(7);
+				out.writeShort(nameIndex);
+				index = add("C" + name);
+			}
+			return index;
+		}
+
+		int fieldRef(String owner, String name, String descriptor) throws IOException {
+			return memberRef(9, owner, name, descriptor);
+		}
+
+		int methodRef(String owner, String name, String descriptor) throws IOException {
+			return memberRef(10, owner, name, descriptor);
+		}
+
+		private int memberRef(int tag, String owner, String name, String descriptor) throws IOException {
+			String key = tag + owner + "." + name + descriptor;
+			Integer index = entries.get(key);
+			if (index == null) {
+				int ownerIndex = classInfo(owner);
+				int nameAndType = nameAndType(name, descriptor);
+				out.writeByte(tag);
+				out.writeShort(ownerIndex);
+				out.writeShort(nameAndType);
+				index = add(key);
+			}
+			return index;
+		}
+
+		private int nameAndType(String name, String descriptor) throws IOException {
+			String key = "N" + name + ":" + descriptor;
+			Integer index = entries.get(key);
+			if (index == null) {
+				int nameIndex = utf8(name);
+				int descriptorIndex = utf8(descriptor);
+				out.writeByte(12);
+				out.writeShort(nameIndex);
+				out.writeShort(descriptorIndex);
+				index = add(key);
+			}
+			return index;
+		}
+
+		private int add(String key) {
+			int index = ++count;
+			entries.put(key, index);
+			return index;
+		}
+
+		void write(DataOutputStream classOut) throws IOException {
+			out.flush();
+			classOut.writeShort(count + 1);
+			bytes.writeTo(classOut);
+		}
+	}
+
+	/**
+	 * Defines a generated executor.  Classes are resolved using the loader of the listener, and then the loader of the API, 
+	 * so that the executor can see both the listener and GeneratedEventExecutor.
+	 */
+	private static class ExecutorClassLoader extends ClassLoader {
+		ExecutorClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			return GeneratedEventExecutor.class.getClassLoader().loadClass(name);
+		}
+
+		Class<?> define(String name, byte[] bytecode) {
+			return defineClass(name, bytecode, 0, bytecode.length);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+import org.spout.api.util.pool.ObjectPool;
+import org.spout.api.util.pool.PoolableObject;
+
+/**
+ * A pool of reusable events, for events which are called often.<br>
+ * <br>
+ * Pooling is opt-in.  It is only safe for events which listeners do not keep a reference to after their handler returns.  
+ * An event is taken from the pool using {@link #acquire()}, filled in and called, and then given back using {@link #release(Event)}.  
+ * Acquired events are reset using {@link Event#reset()} before they are handed out.<br>
+ * <br>
+ * Each thread keeps a few released events, so that an event called and released on one thread is reused without touching the shared pool.  
+ * Events which are never released are returned to the shared pool when their entry is finalized.
+ * @param <T> the type of event
+ */
+public abstract class EventPool<T extends Event> {
+	private static final int THREAD_CACHE_SIZE = 4;
+	private final ObjectPool<Entry<T>> pool = new ObjectPool<Entry<T>>() {
+		@Override
+		protected Entry<T> createNew() {
+			return new Entry<T>(EventPool.this, createEvent());
+		}
+	};
+	private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>() {
+		@Override
+		protected ThreadCache initialValue() {
+			return new ThreadCache();
+		}
+	};
+
+	/**
+	 * Creates a new event for the pool
+	 * @return the event
+	 */
+	protected abstract T createEvent();
+
+	/**
+	 * Takes an event from the pool, or creates one if the pool is empty
+	 * @return the reset event
+	 */
+	public T acquire() {
+		Entry<T> entry = threadCache.get().poll();
+		if (entry == null) {
+			entry = pool.getInstance();
+		}
+		T event = entry.event;
+		event.reset();
+		event.setPoolEntry(entry);
+		return event;
+	}
+
+	/**
+	 * Returns an event to the pool.  The event must not be used after it has been released.
+	 * @param event the event, which must have been acquired from this pool
+	 */
+	public void release(T event) {
+		Entry<?> entry = event.getPoolEntry();
+		if (entry == null || entry.owner != this) {
+			throw new IllegalArgumentException("Event was not acquired from this pool");
+		}
+		event.setPoolEntry(null);
+		@SuppressWarnings("unchecked")
+		Entry<T> owned = (Entry<T>) entry;
+		if (!threadCache.get().offer(owned)) {
+			owned.free();
+		}
+	}
+
+	/**
+	 * A small stack of released entries, owned by one thread
+	 */
+	private final class ThreadCache {
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private final Entry<T>[] entries = new Entry[THREAD_CACHE_SIZE];
+		private int size = 0;
+
+		Entry<T> poll() {
+			if (size == 0) {
+				return null;
+			}
+			Entry<T> entry = entries[--size];
+			entries[size] = null;
+			return entry;
+		}
+
+		boolean offer(Entry<T> entry) {
+			if (size == entries.length) {
+				return false;
+			}
+			entries[size++] = entry;
+			return true;
+		}
+	}
+
+	/**
+	 * Holds a pooled event.  Events cannot extend PoolableObject, so the entry is pooled instead.
+	 */
+	static final class Entry<T extends Event> extends PoolableObject {
+		private final EventPool<T> owner;
+		private final T event;
+
+		Entry(EventPool<T> owner, T event) {
+			this.owner = owner;
+			this.event = event;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+import org.spout.api.exception.EventException;
+
+/**
+ * The base class for event executors generated by {@link EventExecutorFactory}.<br>
+ * <br>
+ * Subclasses call the handler method directly from {@link #invoke(Event)}.  This class handles the event type check and exception wrapping, 
+ * so generated executors behave the same way as {@link MethodEventExecutor}.
+ */
+public abstract class GeneratedEventExecutor implements EventExecutor {
+	private final Class<?> eventClass;
+
+	protected GeneratedEventExecutor(Class<?> eventClass) {
+		this.eventClass = eventClass;
+	}
+
+	@Override
+	public final void execute(Event event) throws EventException {
+		if (!eventClass.isInstance(event)) {
+			throw new EventException("Wrong event type passed to registered method");
+		}
+		try {
+			invoke(event);
+		} catch (EventException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new EventException(t);
+		}
+	}
+
+	/**
+	 * Calls the handler method
+	 * 
+	 * @param event the event, which is an instance of the handler's event class
+	 * @throws Throwable if the handler method throws an exception
+	 */
+	protected abstract void invoke(Event event) throws Throwable;
+}
@@ -196,6 +196,16 @@ public final class HandlerList {
 		return handlers;
 	}
 
+	/**
+	 * Gets if any listeners are registered to this handler list, or to a parent list.<br>
+	 * <br>
+	 * Callers of frequent events can check this before creating the event, to avoid the allocation when nothing would receive it.
+	 * @return true if calling an event with this handler list would notify at least one listener
+	 */
+	public boolean hasListeners() {
+		return getRegisteredListeners().length > 0;
+	}
+
 	protected void addChild(HandlerList handlerList) {
 		children.add(handlerList);
 	}
@@ -0,0 +1,70 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.spout.api.exception.EventException;
+
+/**
+ * An {@link EventExecutor} which calls an event handler method using reflection.
+ */
+public class MethodEventExecutor implements EventExecutor {
+	private final Object listener;
+	private final Method method;
+	private final Class<?> eventClass;
+
+	/**
+	 * @param listener the listener to call the method on
+	 * @param method the handler method, which must take a single event parameter
+	 */
+	public MethodEventExecutor(Object listener, Method method) {
+		this.listener = listener;
+		this.method = method;
+		this.eventClass = method.getParameterTypes()[0];
+		method.setAccessible(true);
+	}
+
+	@Override
+	public void execute(Event event) throws EventException {
+		try {
+			if (!eventClass.isAssignableFrom(event.getClass())) {
+				throw new EventException("Wrong event type passed to registered method");
+			}
+			method.invoke(listener, event);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof EventException) {
+				throw (EventException) e.getCause();
+			}
+
+			throw new EventException(e.getCause());
+		} catch (Throwable t) {
+			throw new EventException(t);
+		}
+	}
+}
@@ -26,7 +26,6 @@
  */
 package org.spout.api.event;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -39,8 +38,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.spout.api.Spout;
-import org.spout.api.exception.EventException;
 import org.spout.api.exception.IllegalPluginAccessException;
+import org.spout.api.scheduler.TickProfiler;
 
 /**
  * A simple implementation of the {@link EventManager} that handles all {@link Event}s for the server.
@@ -63,10 +62,18 @@ public class SimpleEventManager implements EventManager {
 		ListenerRegistration[] listeners = handlers.getRegisteredListeners();
 
 		if (listeners != null) {
+			TickProfiler profiler = TickProfiler.getProfiler();
 			for (ListenerRegistration listener : listeners) {
 				try {
 					if (!event.isCancelled() || listener.getOrder().ignoresCancelled()) {
-						listener.getExecutor().execute(event);
+						long start = profiler.start();
+						try {
+							listener.getExecutor().execute(event);
+						} finally {
+							if (start != 0) {
+								profiler.recordListener(listener.getOwner(), System.nanoTime() - start);
+							}
+						}
 					}
 				} catch (Throwable ex) {
 					LOGGER.log(Level.SEVERE, "Could not pass event " + event.getEventName() + " to " + listener.getOwner().getClass().getName(), ex);
@@ -155,25 +162,7 @@ public class SimpleEventManager implements EventManager {
 				eventSet = new HashSet<ListenerRegistration>();
 				ret.put(eventClass, eventSet);
 			}
-			eventSet.add(new ListenerRegistration(new EventExecutor() {
-				@Override
-				public void execute(Event event) throws EventException {
-					try {
-						if (!checkClass.isAssignableFrom(event.getClass())) {
-							throw new EventException("Wrong event type passed to registered method");
-						}
-						method.invoke(listener, event);
-					} catch (InvocationTargetException e) {
-						if (e.getCause() instanceof EventException) {
-							throw (EventException) e.getCause();
-						}
-
-						throw new EventException(e.getCause());
-					} catch (Throwable t) {
-						throw new EventException(t);
-					}
-				}
-			}, eh.order(), plugin));
+			eventSet.add(new ListenerRegistration(EventExecutorFactory.create(listener, method), eh.order(), plugin));
 		}
 		return ret;
 	}
@@ -308,7 +308,8 @@ public interface World extends AreaRegionAccess, AreaPhysicsAccess, Named, Compo
 	 * <br>
 	 * This task manager does not support async tasks.
 	 * <br>
-	 * If the Runnable for the task is a ParallelRunnable, then a new instance of the Runnable will be created for each region.
+	 * If the Runnable for the task is a ParallelRunnable, then a new instance of the Runnable will be created for each region.<br>
+	 * If it is a SplittableParallelRunnable, the work for each region is split into tasks which idle threads may steal.
 	 * @return the parallel task manager for the engine
 	 */
 	public TaskManager getParallelTaskManager();
@@ -46,11 +46,25 @@ public final class BAAOpenInProgress implements ByteArrayArray {
 		return null;
 	}
 
+	@Override
+	public DataInputStream getDirectInputStream(int i) throws IOException {
+		return null;
+	}
+
 	@Override
 	public DataOutputStream getOutputStream(int i) throws IOException {
 		return null;
 	}
 
+	@Override
+	public byte[] compress(byte[] data) throws IOException {
+		return null;
+	}
+
+	@Override
+	public void writeCompressed(int[] indexes, byte[][] compressed) throws IOException {
+	}
+
 	@Override
 	public boolean attemptClose() throws IOException {
 		return false;
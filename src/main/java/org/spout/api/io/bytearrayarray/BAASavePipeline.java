@@ -0,0 +1,206 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.io.bytearrayarray;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.spout.api.util.future.SimpleFuture;
+
+/**
+ * Saves blocks to a BAAWrapper in batches.<br>
+ * <br>
+ * Blocks are compressed in parallel on the given executor.  Compressed blocks are then committed as a group, 
+ * using a single batch write to the underlying array.  Blocks which are compressed while a commit is in progress are included in the next commit.<br>
+ * <br>
+ * If the same block is saved more than once, the most recent save always takes precedence, even if the saves are compressed out of order.
+ * A save which is superseded by a more recent save is not written, and its future gives the result of the write of the more recent save.
+ */
+public class BAASavePipeline {
+
+	private final BAAWrapper wrapper;
+	private final Executor executor;
+	private final Queue<PendingBlock> compressed = new ConcurrentLinkedQueue<PendingBlock>();
+	private final AtomicBoolean commitScheduled = new AtomicBoolean(false);
+	private final AtomicLong sequence = new AtomicLong(0);
+	// The most recent save committed for each block index
+	private final TIntObjectHashMap<PendingBlock> committed = new TIntObjectHashMap<PendingBlock>();
+	private final Runnable commitTask = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				commit();
+			} finally {
+				commitScheduled.set(false);
+				if (!compressed.isEmpty()) {
+					scheduleCommit();
+				}
+			}
+		}
+	};
+
+	/**
+	 * Creates a save pipeline
+	 * 
+	 * @param wrapper the wrapper to save to
+	 * @param executor the executor used to compress and commit blocks
+	 */
+	public BAASavePipeline(BAAWrapper wrapper, Executor executor) {
+		this.wrapper = wrapper;
+		this.executor = executor;
+	}
+
+	/**
+	 * Queues a block to be saved.<br>
+	 * <br>
+	 * The data array must not be modified after this method is called.
+	 * 
+	 * @param i the block index
+	 * @param data the uncompressed block data
+	 * @return a future which gives true once the block has been written and flushed, or false if the save failed
+	 */
+	public Future<Boolean> save(int i, byte[] data) {
+		final PendingBlock block = new PendingBlock(i, sequence.incrementAndGet(), data);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					block.compressed = wrapper.compressBlock(block.data);
+				} finally {
+					block.data = null;
+				}
+				if (block.compressed == null) {
+					block.future.setResult(false);
+					return;
+				}
+				compressed.add(block);
+				scheduleCommit();
+			}
+		});
+		return block.future;
+	}
+
+	private void scheduleCommit() {
+		if (commitScheduled.compareAndSet(false, true)) {
+			executor.execute(commitTask);
+		}
+	}
+
+	/**
+	 * Writes all compressed blocks as a single batch.  Only one commit runs at a time.
+	 */
+	private void commit() {
+		List<PendingBlock> batch = new ArrayList<PendingBlock>();
+		List<PendingBlock> superseded = new ArrayList<PendingBlock>();
+		PendingBlock block;
+		while ((block = compressed.poll()) != null) {
+			PendingBlock latest = committed.get(block.index);
+			if (latest != null && block.sequence < latest.sequence) {
+				superseded.add(block);
+				continue;
+			}
+			committed.put(block.index, block);
+			batch.add(block);
+		}
+
+		int[] indexes = new int[batch.size()];
+		byte[][] data = new byte[batch.size()][];
+		for (int j = 0; j < indexes.length; j++) {
+			block = batch.get(j);
+			if (block != committed.get(block.index)) {
+				// A newer save of the same block is in this batch
+				data[j] = null;
+			} else {
+				data[j] = block.compressed;
+			}
+			indexes[j] = block.index;
+		}
+
+		int count = 0;
+		for (int j = 0; j < indexes.length; j++) {
+			if (data[j] != null) {
+				indexes[count] = indexes[j];
+				data[count++] = data[j];
+			}
+		}
+
+		boolean success = count == 0 || wrapper.writeCompressedBlocks(trim(indexes, count), trim(data, count));
+
+		for (PendingBlock b : batch) {
+			b.compressed = null;
+			b.success = success;
+			b.future.setResult(success);
+		}
+		// The save which superseded a block was written by this commit or an earlier one
+		for (PendingBlock b : superseded) {
+			b.compressed = null;
+			b.future.setResult(committed.get(b.index).success);
+		}
+	}
+
+	private static int[] trim(int[] array, int length) {
+		if (array.length == length) {
+			return array;
+		}
+		int[] trimmed = new int[length];
+		System.arraycopy(array, 0, trimmed, 0, length);
+		return trimmed;
+	}
+
+	private static byte[][] trim(byte[][] array, int length) {
+		if (array.length == length) {
+			return array;
+		}
+		byte[][] trimmed = new byte[length][];
+		System.arraycopy(array, 0, trimmed, 0, length);
+		return trimmed;
+	}
+
+	private static class PendingBlock {
+		private final int index;
+		private final long sequence;
+		private final SimpleFuture<Boolean> future;
+		private byte[] data;
+		private byte[] compressed;
+		private boolean success;
+
+		public PendingBlock(int index, long sequence, byte[] data) {
+			this.index = index;
+			this.sequence = sequence;
+			this.data = data;
+			this.future = new SimpleFuture<Boolean>();
+		}
+	}
+}
@@ -33,6 +33,7 @@ import java.io.OutputStream;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.spout.api.Spout;
+import org.spout.api.io.regionfile.SRFCodec;
 import org.spout.api.io.regionfile.SimpleRegionFile;
 
 public class BAAWrapper {
@@ -45,12 +46,43 @@ public class BAAWrapper {
 	private final int segmentSize;
 	private final int entries;
 	private final int timeout;
+	private final boolean concurrent;
+	private final SRFCodec codec;
 	
 	public BAAWrapper(File file, int segmentSize, int entries, int timeout) {
+		this(file, segmentSize, entries, timeout, false);
+	}
+	
+	/**
+	 * Creates a wrapper for a region file
+	 * 
+	 * @param file the file
+	 * @param segmentSize log2(the segment size)
+	 * @param entries the number of blocks in the file
+	 * @param timeout the time in ms until the file times out for auto-closing
+	 * @param concurrent true to open the file in concurrent mode, where disjoint blocks can be read and written in parallel
+	 */
+	public BAAWrapper(File file, int segmentSize, int entries, int timeout, boolean concurrent) {
+		this(file, segmentSize, entries, timeout, concurrent, SRFCodec.DEFLATE);
+	}
+	
+	/**
+	 * Creates a wrapper for a region file
+	 * 
+	 * @param file the file
+	 * @param segmentSize log2(the segment size)
+	 * @param entries the number of blocks in the file
+	 * @param timeout the time in ms until the file times out for auto-closing
+	 * @param concurrent true to open the file in concurrent mode, where disjoint blocks can be read and written in parallel
+	 * @param codec the codec used to compress blocks if the file is created
+	 */
+	public BAAWrapper(File file, int segmentSize, int entries, int timeout, boolean concurrent, SRFCodec codec) {
 		this.file = file;
 		this.segmentSize = segmentSize;
 		this.entries = entries;
 		this.timeout = timeout;
+		this.concurrent = concurrent;
+		this.codec = codec;
 	}
 	
 
@@ -198,6 +230,89 @@ public class BAAWrapper {
 		}
 	}
 	
+	/**
+	 * Gets an InputStream which reads a given block directly from the backing storage.<br>
+	 * <br>
+	 * This avoids copying the block into a snapshot.<br>
+	 * <br>
+	 * WARNING: This block will be read locked until the stream is closed
+	 * 
+	 * @param i the block index
+	 * @return the InputStream
+	 */
+	public InputStream getBlockDirectInputStream(int i) {
+		while (true) {
+			ByteArrayArray baa = getByteArrayArray();
+			if (baa == null) {
+				return null;
+			}
+			if (baa == openInProgress) {
+				continue;
+			}
+			InputStream in;
+			try {
+				in = baa.getDirectInputStream(i);
+			} catch (BAAClosedException e) {
+				continue;
+			} catch (IOException e) {
+				return null;
+			}
+			return in;
+		}
+	}
+	
+	/**
+	 * Compresses data into the form in which it is stored in a block.
+	 * 
+	 * @param data the uncompressed data
+	 * @return the compressed data, or null on error
+	 */
+	public byte[] compressBlock(byte[] data) {
+		while (true) {
+			ByteArrayArray baa = getByteArrayArray();
+			if (baa == null) {
+				return null;
+			}
+			if (baa == openInProgress) {
+				continue;
+			}
+			try {
+				return baa.compress(data);
+			} catch (BAAClosedException e) {
+				continue;
+			} catch (IOException e) {
+				return null;
+			}
+		}
+	}
+	
+	/**
+	 * Writes a group of compressed blocks as a single batch.
+	 * 
+	 * @param indexes the block indexes
+	 * @param compressed the compressed data for each block, as returned by compressBlock
+	 * @return true if the write was successful
+	 */
+	public boolean writeCompressedBlocks(int[] indexes, byte[][] compressed) {
+		while (true) {
+			ByteArrayArray baa = getByteArrayArray();
+			if (baa == null) {
+				return false;
+			}
+			if (baa == openInProgress) {
+				continue;
+			}
+			try {
+				baa.writeCompressed(indexes, compressed);
+				return true;
+			} catch (BAAClosedException e) {
+				continue;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+	}
+	
 	/**
 	 * Gets the filename of the file handled by this wrapper
 	 * 
@@ -227,7 +342,7 @@ public class BAAWrapper {
 				baa = null; // not needed - already null
 				try {
 					try {
-						baa = new SimpleRegionFile(file, segmentSize, entries, timeout);
+						baa = new SimpleRegionFile(file, segmentSize, entries, timeout, concurrent, codec);
 					} catch (IOException e) {
 						e.printStackTrace();
 						baa = null; // not needed - already null. The assignment above comes after the potential IOException. 
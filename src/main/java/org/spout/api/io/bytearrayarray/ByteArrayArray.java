@@ -50,6 +50,19 @@ public interface ByteArrayArray {
 	 */
 	public InputStream getInputStream(int i) throws IOException;
 	
+	/**
+	 * Gets an InputStream for reading a block directly from the backing storage.<br>
+	 * <br>
+	 * Unlike getInputStream, no snapshot of the block is made.<br>
+	 * <br>
+	 * WARNING:  This read locks the block until the input stream is closed.<br>
+	 * 
+	 * @param i the index of the block
+	 * @return an InputStream for the block, or null if the block is empty
+	 * @throws IOException on error
+	 */
+	public InputStream getDirectInputStream(int i) throws IOException;
+	
 	/**
 	 * Gets a DataOutputStream for writing to a block.<br>
 	 * <br>
@@ -61,6 +74,29 @@ public interface ByteArrayArray {
 	 */
 	public OutputStream getOutputStream(int i) throws IOException;
 	
+	/**
+	 * Compresses data into the form in which it is stored in a block.<br>
+	 * <br>
+	 * This method does not access the stored blocks and may be called from any thread.
+	 * 
+	 * @param data the uncompressed block data
+	 * @return the compressed block data
+	 * @throws IOException
+	 */
+	public byte[] compress(byte[] data) throws IOException;
+	
+	/**
+	 * Writes a group of blocks, which have been compressed using compress(), as a single batch.<br>
+	 * <br>
+	 * The blocks are written in file order, followed by a single update of the block table and a single flush to disk.<br>
+	 * If a block index appears more than once, the last occurrence is written.
+	 * 
+	 * @param indexes the block indexes
+	 * @param compressed the compressed data for each block
+	 * @throws IOException
+	 */
+	public void writeCompressed(int[] indexes, byte[][] compressed) throws IOException;
+	
 	/**
 	 * Attempts to close the map.  This method will only succeed if no block DataOutputStreams are active.
 	 * 
@@ -30,17 +30,26 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileChannel;
-import java.util.ArrayList;
+import java.util.Arrays;
 
+/**
+ * A RandomAccessFile which is memory mapped in fixed size pages.<br>
+ * <br>
+ * The seek based methods share a single file position and must be externally synchronized.<br>
+ * <br>
+ * The positional methods, which take the file position as a parameter, are thread safe and may be used concurrently on disjoint regions of the file.
+ */
 public class MappedRandomAccessFile {
 
 	private final File filePath;
 	private final String permissions;
 	private long pos = 0;
-	private final ArrayList<MappedByteBuffer> pages = new ArrayList<MappedByteBuffer>();
+	private final Object mapSyncObject = new Object();
+	private volatile MappedByteBuffer[] pages = new MappedByteBuffer[0];
 	private final int PAGE_SHIFT;
 	private final int PAGE_SIZE;
 	private final long PAGE_MASK;
@@ -65,12 +74,27 @@ public class MappedRandomAccessFile {
 	}
 
 	public void close() throws IOException {
+		synchronized (mapSyncObject) {
+			for (MappedByteBuffer m : pages) {
+				if (m != null) {
+					m.force();
+				}
+			}
+			file.close();
+		}
+	}
+
+	/**
+	 * Forces any changes made to the mapped pages to be written to the storage device.
+	 * 
+	 * @throws IOException
+	 */
+	public void force() throws IOException {
 		for (MappedByteBuffer m : pages) {
 			if (m != null) {
 				m.force();
 			}
 		}
-		file.close();
 	}
 
 	byte[] intArray = new byte[4];
@@ -93,12 +117,26 @@ public class MappedRandomAccessFile {
 		return i;
 	}
 
+	/**
+	 * Gets a mapped page.  Pages are mapped on first access.<br>
+	 * <br>
+	 * The page array is copied whenever a new page is mapped, so that readers never see a partially published page.
+	 * 
+	 * @param pageIndex the index of the page
+	 * @return the page
+	 * @throws IOException
+	 */
 	private MappedByteBuffer getPage(int pageIndex) throws IOException {
-		while (pageIndex >= pages.size()) {
-			pages.add(null);
+		MappedByteBuffer[] localPages = pages;
+		if (pageIndex < localPages.length && localPages[pageIndex] != null) {
+			return localPages[pageIndex];
 		}
-		MappedByteBuffer page = pages.get(pageIndex);
-		if (page == null) {
+		synchronized (mapSyncObject) {
+			localPages = pages;
+			if (pageIndex < localPages.length && localPages[pageIndex] != null) {
+				return localPages[pageIndex];
+			}
+			MappedByteBuffer page = null;
 			long pagePosition = pageIndex << PAGE_SHIFT;
 			boolean interrupted = false;
 			boolean success = false;
@@ -119,10 +157,45 @@ public class MappedRandomAccessFile {
 					Thread.currentThread().interrupt();
 				}
 			}
-			pages.set(pageIndex, page);
+			MappedByteBuffer[] newPages = Arrays.copyOf(localPages, Math.max(pageIndex + 1, localPages.length));
+			newPages[pageIndex] = page;
+			pages = newPages;
+			return page;
 		}
-		return page;
+	}
+
+	/**
+	 * Gets read-only views of the mapped pages which cover a region of the file.<br>
+	 * <br>
+	 * The views share their content with the file, but have independent positions and limits, so they can be read without holding any lock on this object.
+	 * 
+	 * @param pos the position of the start of the region
+	 * @param length the length of the region, in bytes
+	 * @return the views, in file order
+	 * @throws IOException
+	 */
+	public ByteBuffer[] getReadOnlySlices(long pos, int length) throws IOException {
+		if (length <= 0) {
+			return new ByteBuffer[0];
+		}
+		int firstPage = (int)(pos >> PAGE_SHIFT);
+		int lastPage = (int)((pos + length - 1) >> PAGE_SHIFT);
+		int offset = (int)(pos & PAGE_MASK);
+		int remaining = length;
 
+		ByteBuffer[] slices = new ByteBuffer[lastPage - firstPage + 1];
+
+		for (int i = 0; i < slices.length; i++) {
+			int sliceLength = Math.min(remaining, PAGE_SIZE - offset);
+			ByteBuffer view = getPage(firstPage + i).duplicate();
+			view.limit(offset + sliceLength);
+			view.position(offset);
+			slices[i] = view.slice().asReadOnlyBuffer();
+			remaining -= sliceLength;
+			offset = 0;
+		}
+
+		return slices;
 	}
 
 	public void seek(long pos) throws IOException {
@@ -130,67 +203,62 @@ public class MappedRandomAccessFile {
 	}
 
 	public void readFully(byte[] b) throws IOException {
-		int pageIndex = (int)(pos >> PAGE_SHIFT);
-		int offset = (int)(pos & PAGE_MASK);
-		int endPageOne = Math.min(b.length + offset, PAGE_SIZE);
+		read(pos, b, 0, b.length);
+		pos += b.length;
+	}
 
-		MappedByteBuffer page = getPage(pageIndex);
+	public void write(byte[] b, int off, int len) throws IOException {
+		write(pos, b, off, len);
+		pos += len;
+	}
 
+	/**
+	 * Reads bytes from a given position in the file.  This method does not use or change the seek position.
+	 * 
+	 * @param pos the file position
+	 * @param b the destination array
+	 * @param off the offset in the destination array
+	 * @param len the number of bytes to read
+	 * @throws IOException
+	 */
+	public void read(long pos, byte[] b, int off, int len) throws IOException {
+		int pageIndex = (int)(pos >> PAGE_SHIFT);
+		int offset = (int)(pos & PAGE_MASK);
 		int j = 0;
 
-		int length = endPageOne - offset;
-
-		page.position(offset);
-
-		page.get(b, j, length);
-		j += length;
-
-		while (b.length > j) {
-			pageIndex++;
-			page = getPage(pageIndex);
-			page.position(0);
-			if (b.length - j > PAGE_SIZE) {
-				length = PAGE_SIZE;
-			} else {
-				length = b.length - j;
-			}
-
-			page.get(b, j, length);
+		while (len > j) {
+			ByteBuffer page = getPage(pageIndex).duplicate();
+			int length = Math.min(len - j, PAGE_SIZE - offset);
+			page.position(offset);
+			page.get(b, off + j, length);
 			j += length;
+			pageIndex++;
+			offset = 0;
 		}
-
-		pos += b.length;
 	}
 
-	public void write(byte[] b, int off, int len) throws IOException {
+	/**
+	 * Writes bytes to a given position in the file.  This method does not use or change the seek position.
+	 * 
+	 * @param pos the file position
+	 * @param b the source array
+	 * @param off the offset in the source array
+	 * @param len the number of bytes to write
+	 * @throws IOException
+	 */
+	public void write(long pos, byte[] b, int off, int len) throws IOException {
 		int pageIndex = (int)(pos >> PAGE_SHIFT);
 		int offset = (int)(pos & PAGE_MASK);
-		int endPageOne = Math.min(len + offset, PAGE_SIZE);
-
-		MappedByteBuffer page = getPage(pageIndex);
-
 		int j = 0;
-		
-		int length = endPageOne - offset;
-		
-		page.position(offset);
-		
-		page.put(b, off + j, length);
-		j += length;
 
 		while (len > j) {
-			pageIndex++;
-			page = getPage(pageIndex);
-			page.position(0);
-			if (len - j > PAGE_SIZE) {
-				length = PAGE_SIZE;
-			} else {
-				length = len - j;
-			}
+			ByteBuffer page = getPage(pageIndex).duplicate();
+			int length = Math.min(len - j, PAGE_SIZE - offset);
+			page.position(offset);
 			page.put(b, off + j, length);
 			j += length;
+			pageIndex++;
+			offset = 0;
 		}
-
-		pos += len;
 	}
 }
@@ -0,0 +1,90 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.io.regionfile;
+
+import java.util.zip.Inflater;
+
+import org.spout.api.util.pool.ObjectPool;
+import org.spout.api.util.pool.PoolableObject;
+
+/**
+ * An Inflater, together with input and output buffers, which can be reused between block reads.<br>
+ * <br>
+ * Instances should be obtained using getInstance() and returned using free().
+ */
+public class PooledInflater extends PoolableObject {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final ObjectPool<PooledInflater> pool = new ObjectPool<PooledInflater>() {
+		@Override
+		protected PooledInflater createNew() {
+			return new PooledInflater();
+		}
+	};
+
+	private final Inflater inflater = new Inflater();
+	private final byte[] inputBuffer = new byte[BUFFER_SIZE];
+	private final byte[] outputBuffer = new byte[BUFFER_SIZE];
+
+	private PooledInflater() {
+	}
+
+	/**
+	 * Gets a reset inflater from the pool, or creates a new one if the pool is empty
+	 * 
+	 * @return the inflater
+	 */
+	public static PooledInflater getInstance() {
+		return pool.getInstance();
+	}
+
+	public Inflater getInflater() {
+		return inflater;
+	}
+
+	public byte[] getInputBuffer() {
+		return inputBuffer;
+	}
+
+	public byte[] getOutputBuffer() {
+		return outputBuffer;
+	}
+
+	@Override
+	public void free() {
+		inflater.reset();
+		super.free();
+	}
+
+	/**
+	 * Unreachable inflaters are not returned to the pool, since their native state may have already been released.
+	 */
+	@Override
+	public void finalize() {
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.io.regionfile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compression codec for the blocks of a SimpleRegionFile.<br>
+ * <br>
+ * The id of the codec used by a region file is stored in the file header, so files can be read without knowing which codec was used to write them.  
+ * Codecs must be registered before a file which uses them is opened.
+ */
+public abstract class SRFCodec {
+
+	private static final ConcurrentHashMap<Integer, SRFCodec> codecs = new ConcurrentHashMap<Integer, SRFCodec>();
+
+	/**
+	 * Stores blocks without compression
+	 */
+	public static final SRFCodec STORED = register(new SRFStoredCodec());
+
+	/**
+	 * Compresses blocks using deflate at the default compression level.  This is the codec used by region files created before codecs were supported.
+	 */
+	public static final SRFCodec DEFLATE = register(new SRFDeflateCodec());
+
+	/**
+	 * Compresses blocks using a fast LZ77 based codec
+	 */
+	public static final SRFCodec LZ = register(new SRFLZCodec());
+
+	private final int id;
+
+	protected SRFCodec(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * Gets the id of the codec, as stored in the file header
+	 * 
+	 * @return the id
+	 */
+	public final int getId() {
+		return id;
+	}
+
+	/**
+	 * Wraps a stream so that data written to the wrapper is compressed and written to the stream.  Closing the wrapper closes the stream.
+	 * 
+	 * @param out the stream to write compressed data to
+	 * @return the compressing stream
+	 * @throws IOException
+	 */
+	public abstract OutputStream compress(OutputStream out) throws IOException;
+
+	/**
+	 * Wraps a stream so that data read from the wrapper is read from the stream and decompressed.  Closing the wrapper closes the stream.
+	 * 
+	 * @param in the stream to read compressed data from
+	 * @return the decompressing stream
+	 * @throws IOException
+	 */
+	public abstract InputStream decompress(InputStream in) throws IOException;
+
+	/**
+	 * Gets a stream which decompresses data directly from a sequence of buffers.<br>
+	 * <br>
+	 * Codecs may override this method to avoid copying the buffers.
+	 * 
+	 * @param slices the buffers containing the compressed data, in order
+	 * @return the decompressing stream
+	 * @throws IOException
+	 */
+	public InputStream decompress(ByteBuffer[] slices) throws IOException {
+		return decompress(new ByteBufferArrayInputStream(slices));
+	}
+
+	/**
+	 * Registers a codec.  A codec with the same id must not already be registered.
+	 * 
+	 * @param codec the codec
+	 * @return the codec
+	 */
+	public static <T extends SRFCodec> T register(T codec) {
+		SRFCodec old = codecs.putIfAbsent(codec.getId(), codec);
+		if (old != null) {
+			throw new IllegalStateException("Codec id " + codec.getId() + " is already registered to " + old);
+		}
+		return codec;
+	}
+
+	/**
+	 * Gets the registered codec with a given id
+	 * 
+	 * @param id the codec id
+	 * @return the codec, or null if no codec is registered with the id
+	 */
+	public static SRFCodec getCodec(int id) {
+		return codecs.get(id);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "{id=" + id + "}";
+	}
+
+	/**
+	 * An InputStream which reads from a sequence of buffers
+	 */
+	protected static class ByteBufferArrayInputStream extends InputStream {
+		private final ByteBuffer[] slices;
+		private int current = 0;
+
+		public ByteBufferArrayInputStream(ByteBuffer[] slices) {
+			this.slices = slices;
+		}
+
+		@Override
+		public int read() throws IOException {
+			ByteBuffer slice = currentSlice();
+			if (slice == null) {
+				return -1;
+			}
+			return slice.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			ByteBuffer slice = currentSlice();
+			if (slice == null) {
+				return -1;
+			}
+			int length = Math.min(len, slice.remaining());
+			slice.get(b, off, length);
+			return length;
+		}
+
+		@Override
+		public int available() throws IOException {
+			ByteBuffer slice = currentSlice();
+			return slice == null ? 0 : slice.remaining();
+		}
+
+		private ByteBuffer currentSlice() {
+			while (current < slices.length && !slices[current].hasRemaining()) {
+				current++;
+			}
+			return current < slices.length ? slices[current] : null;
+		}
+	}
+}
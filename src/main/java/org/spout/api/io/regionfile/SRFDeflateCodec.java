@@ -0,0 +1,101 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.io.regionfile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A codec which compresses blocks using deflate
+ */
+public class SRFDeflateCodec extends SRFCodec {
+
+	public static final int ID = 1;
+
+	private final int level;
+
+	protected SRFDeflateCodec() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates a deflate codec with a given compression level.<br>
+	 * <br>
+	 * The level is only used when writing, so a codec with any level can read all deflate compressed files.
+	 * 
+	 * @param level the compression level, from 0 to 9, or -1 for the default
+	 */
+	public SRFDeflateCodec(int level) {
+		super(ID);
+		if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level " + level);
+		}
+		this.level = level;
+	}
+
+	/**
+	 * Gets the compression level used when writing
+	 * 
+	 * @return the compression level
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	@Override
+	public OutputStream compress(OutputStream out) {
+		if (level == Deflater.DEFAULT_COMPRESSION) {
+			return new DeflaterOutputStream(out);
+		}
+		final Deflater deflater = new Deflater(level);
+		return new DeflaterOutputStream(out, deflater) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					deflater.end();
+				}
+			}
+		};
+	}
+
+	@Override
+	public InputStream decompress(InputStream in) {
+		return new InflaterInputStream(in);
+	}
+
+	@Override
+	public InputStream decompress(ByteBuffer[] slices) {
+		return new SRFInflaterInputStream(slices);
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.io.regionfile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An InputStream which inflates a block directly from read-only views of the mapped file, using a pooled Inflater.
+ */
+public class SRFInflaterInputStream extends InputStream {
+
+	private final ByteBuffer[] slices;
+	private final AtomicBoolean closed;
+	private PooledInflater pooled;
+	private Inflater inflater;
+	private byte[] inputBuffer;
+	private byte[] outputBuffer;
+	private int currentSlice;
+	private int outputPosition;
+	private int outputCount;
+
+	public SRFInflaterInputStream(ByteBuffer[] slices) {
+		this.slices = slices;
+		this.closed = new AtomicBoolean(false);
+		this.pooled = PooledInflater.getInstance();
+		this.inflater = pooled.getInflater();
+		this.inputBuffer = pooled.getInputBuffer();
+		this.outputBuffer = pooled.getOutputBuffer();
+		this.currentSlice = 0;
+		this.outputPosition = 0;
+		this.outputCount = 0;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (outputPosition >= outputCount) {
+			checkOpen();
+			outputCount = inflate(outputBuffer, 0, outputBuffer.length);
+			outputPosition = 0;
+			if (outputCount <= 0) {
+				outputCount = 0;
+				return -1;
+			}
+		}
+		return outputBuffer[outputPosition++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		} else if (len == 0) {
+			return 0;
+		}
+		checkOpen();
+		int buffered = outputCount - outputPosition;
+		if (buffered > 0) {
+			int length = Math.min(buffered, len);
+			System.arraycopy(outputBuffer, outputPosition, b, off, length);
+			outputPosition += length;
+			return length;
+		}
+		return inflate(b, off, len);
+	}
+
+	@Override
+	public int available() throws IOException {
+		checkOpen();
+		if (outputPosition < outputCount) {
+			return outputCount - outputPosition;
+		}
+		return inflater.finished() ? 0 : 1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed.compareAndSet(false, true)) {
+			pooled.free();
+			pooled = null;
+			inflater = null;
+			inputBuffer = null;
+			outputBuffer = null;
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed.get()) {
+			throw new SRFException("Attempt made to read from a closed block input stream");
+		}
+	}
+
+	/**
+	 * Inflates data into an array, feeding the inflater from the mapped slices as required
+	 * 
+	 * @return the number of bytes inflated, or -1 at the end of the block
+	 */
+	private int inflate(byte[] b, int off, int len) throws IOException {
+		try {
+			int n;
+			while ((n = inflater.inflate(b, off, len)) == 0) {
+				if (inflater.finished() || inflater.needsDictionary()) {
+					return -1;
+				}
+				if (inflater.needsInput()) {
+					fill();
+				}
+			}
+			return n;
+		} catch (DataFormatException e) {
+			throw new SRFException("Block data format error", e);
+		}
+	}
+
+	private void fill() throws IOException {
+		while (currentSlice < slices.length && !slices[currentSlice].hasRemaining()) {
+			currentSlice++;
+		}
+		if (currentSlice >= slices.length) {
+			throw new EOFException("Unexpected end of block data");
+		}
+		ByteBuffer slice = slices[currentSlice];
+		int length = Math.min(slice.remaining(), inputBuffer.length);
+		slice.get(inputBuffer, 0, length);
+		inflater.setInput(inputBuffer, 0, length);
+	}
+}
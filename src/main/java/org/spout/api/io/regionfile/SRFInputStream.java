@@ -0,0 +1,96 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.io.regionfile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * An InputStream which reads a block directly from read-only views of the mapped file.<br>
+ * <br>
+ * The block is read locked until the stream is closed.
+ */
+public class SRFInputStream extends FilterInputStream {
+
+	private final Lock lock;
+	private final AtomicBoolean lockUnlocked;
+
+	SRFInputStream(InputStream in, Lock lock) {
+		super(in);
+		this.lock = lock;
+		this.lockUnlocked = new AtomicBoolean(false);
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkOpen();
+		return super.read();
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkOpen();
+		return super.read(b, off, len);
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		checkOpen();
+		return super.skip(n);
+	}
+
+	@Override
+	public int available() throws IOException {
+		checkOpen();
+		return super.available();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.lockUnlocked.compareAndSet(false, true)) {
+			try {
+				super.close();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (lockUnlocked.get()) {
+			throw new SRFException("Attempt made to read from a closed block input stream");
+		}
+	}
+}
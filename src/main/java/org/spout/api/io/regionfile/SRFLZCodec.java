@@ -0,0 +1,469 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.io.regionfile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.spout.api.util.pool.ObjectPool;
+import org.spout.api.util.pool.PoolableObject;
+
+/**
+ * A codec which compresses blocks using a byte oriented LZ77 scheme, trading compression ratio for speed.<br>
+ * <br>
+ * Data is split into chunks of up to 64kB.  Each chunk starts with a type byte and the uncompressed length.  
+ * Compressed chunks are followed by their compressed length and then a sequence of literal runs and back references.  
+ * Chunks which do not compress are stored.  A final type byte marks the end of the stream.
+ */
+public class SRFLZCodec extends SRFCodec {
+
+	public static final int ID = 2;
+
+	private static final int CHUNK_SIZE = 65536;
+
+	private static final int TYPE_STORED = 0;
+	private static final int TYPE_COMPRESSED = 1;
+	private static final int TYPE_END = 2;
+
+	private static final int MIN_MATCH = 4;
+	private static final int LAST_LITERALS = 5;
+	private static final int MAX_OFFSET = 65535;
+	private static final int HASH_BITS = 12;
+
+	protected SRFLZCodec() {
+		super(ID);
+	}
+
+	@Override
+	public OutputStream compress(OutputStream out) {
+		return new LZOutputStream(out);
+	}
+
+	@Override
+	public InputStream decompress(InputStream in) {
+		return new LZInputStream(in);
+	}
+
+	/**
+	 * Gets the maximum compressed length of a chunk of a given length
+	 * 
+	 * @param length the uncompressed length
+	 * @return the maximum compressed length
+	 */
+	private static int maxCompressedLength(int length) {
+		return length + (length / 255) + 16;
+	}
+
+	private static int hash(int sequence) {
+		return (sequence * -1640531535) >>> (32 - HASH_BITS);
+	}
+
+	private static int readInt(byte[] b, int off) {
+		return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24);
+	}
+
+	/**
+	 * Compresses a chunk of data
+	 * 
+	 * @param src the source array
+	 * @param srcLength the number of bytes to compress, starting at index 0
+	 * @param dst the destination array, of at least maxCompressedLength(srcLength) bytes
+	 * @param table the hash table, of size 1 << HASH_BITS
+	 * @return the compressed length
+	 */
+	static int compress(byte[] src, int srcLength, byte[] dst, int[] table) {
+		Arrays.fill(table, -1);
+		int matchLimit = srcLength - LAST_LITERALS;
+		int anchor = 0;
+		int ip = 0;
+		int op = 0;
+		while (ip + MIN_MATCH <= matchLimit) {
+			int sequence = readInt(src, ip);
+			int h = hash(sequence);
+			int ref = table[h];
+			table[h] = ip;
+			if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+				ip++;
+				continue;
+			}
+			while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+				ip--;
+				ref--;
+			}
+			int matchLength = MIN_MATCH;
+			while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+				matchLength++;
+			}
+			op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength);
+			ip += matchLength;
+			anchor = ip;
+		}
+		return writeSequence(src, anchor, srcLength - anchor, dst, op, 0, 0);
+	}
+
+	/**
+	 * Writes a literal run, followed by a back reference if the match length is non-zero
+	 */
+	private static int writeSequence(byte[] src, int literalStart, int literalLength, byte[] dst, int op, int offset, int matchLength) {
+		int tokenPosition = op++;
+		int token;
+		if (literalLength >= 15) {
+			token = 15 << 4;
+			op = writeLength(dst, op, literalLength - 15);
+		} else {
+			token = literalLength << 4;
+		}
+		System.arraycopy(src, literalStart, dst, op, literalLength);
+		op += literalLength;
+		if (matchLength != 0) {
+			dst[op++] = (byte) offset;
+			dst[op++] = (byte) (offset >>> 8);
+			int length = matchLength - MIN_MATCH;
+			if (length >= 15) {
+				token |= 15;
+				op = writeLength(dst, op, length - 15);
+			} else {
+				token |= length;
+			}
+		}
+		dst[tokenPosition] = (byte) token;
+		return op;
+	}
+
+	private static int writeLength(byte[] dst, int op, int length) {
+		while (length >= 255) {
+			dst[op++] = (byte) 255;
+			length -= 255;
+		}
+		dst[op++] = (byte) length;
+		return op;
+	}
+
+	/**
+	 * Decompresses a chunk of data
+	 * 
+	 * @param src the source array
+	 * @param srcLength the compressed length, starting at index 0
+	 * @param dst the destination array
+	 * @param dstLength the expected uncompressed length
+	 * @throws SRFException if the data is corrupt
+	 */
+	static void decompress(byte[] src, int srcLength, byte[] dst, int dstLength) throws SRFException {
+		int ip = 0;
+		int op = 0;
+		try {
+			while (true) {
+				int token = src[ip++] & 0xFF;
+				int literalLength = token >>> 4;
+				if (literalLength == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						literalLength += b;
+					} while (b == 255);
+				}
+				if (ip + literalLength > srcLength || op + literalLength > dstLength) {
+					throw new SRFException("Literal run exceeds LZ chunk bounds");
+				}
+				System.arraycopy(src, ip, dst, op, literalLength);
+				ip += literalLength;
+				op += literalLength;
+				if (ip == srcLength) {
+					break;
+				}
+				int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+				ip += 2;
+				int matchLength = token & 15;
+				if (matchLength == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						matchLength += b;
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+				int ref = op - offset;
+				if (offset == 0 || ref < 0 || op + matchLength > dstLength) {
+					throw new SRFException("Back reference exceeds LZ chunk bounds");
+				}
+				if (offset >= matchLength) {
+					System.arraycopy(dst, ref, dst, op, matchLength);
+					op += matchLength;
+				} else {
+					// The reference overlaps the output, so the repeated pattern is copied in doubling steps
+					for (int end = op + matchLength; op < end;) {
+						int length = Math.min(op - ref, end - op);
+						System.arraycopy(dst, ref, dst, op, length);
+						op += length;
+					}
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new SRFException("LZ chunk data truncated", e);
+		}
+		if (op != dstLength) {
+			throw new SRFException("LZ chunk length mismatch, expected " + dstLength + " bytes, decompressed " + op);
+		}
+	}
+
+	/**
+	 * The chunk buffers and hash table used by a stream, which are reused between streams
+	 */
+	private static class LZBuffers extends PoolableObject {
+		private static final ObjectPool<LZBuffers> pool = new ObjectPool<LZBuffers>() {
+			@Override
+			protected LZBuffers createNew() {
+				return new LZBuffers();
+			}
+		};
+
+		private final byte[] buffer = new byte[CHUNK_SIZE];
+		private final byte[] compressed = new byte[maxCompressedLength(CHUNK_SIZE)];
+		private final int[] table = new int[1 << HASH_BITS];
+	}
+
+	private static class LZOutputStream extends OutputStream {
+		private final OutputStream out;
+		private LZBuffers buffers;
+		private byte[] buffer;
+		private byte[] compressed;
+		private int[] table;
+		private final byte[] header = new byte[9];
+		private int count = 0;
+		private boolean closed = false;
+
+		public LZOutputStream(OutputStream out) {
+			this.out = out;
+			this.buffers = LZBuffers.pool.getInstance();
+			this.buffer = buffers.buffer;
+			this.compressed = buffers.compressed;
+			this.table = buffers.table;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			checkOpen();
+			if (count == buffer.length) {
+				writeChunk();
+			}
+			buffer[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (off < 0 || len < 0 || len > b.length - off) {
+				throw new IndexOutOfBoundsException();
+			}
+			checkOpen();
+			while (len > 0) {
+				if (count == buffer.length) {
+					writeChunk();
+				}
+				int length = Math.min(len, buffer.length - count);
+				System.arraycopy(b, off, buffer, count, length);
+				count += length;
+				off += length;
+				len -= length;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			checkOpen();
+			writeChunk();
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			try {
+				writeChunk();
+				out.write(TYPE_END);
+			} finally {
+				closed = true;
+				buffers.free();
+				buffers = null;
+				buffer = null;
+				compressed = null;
+				table = null;
+				out.close();
+			}
+		}
+
+		private void writeChunk() throws IOException {
+			if (count == 0) {
+				return;
+			}
+			int compressedLength = count > LAST_LITERALS + MIN_MATCH ? SRFLZCodec.compress(buffer, count, compressed, table) : count;
+			if (compressedLength < count) {
+				header[0] = TYPE_COMPRESSED;
+				SimpleRegionFile.writeIntToArray(header, 1, count);
+				SimpleRegionFile.writeIntToArray(header, 5, compressedLength);
+				out.write(header, 0, 9);
+				out.write(compressed, 0, compressedLength);
+			} else {
+				header[0] = TYPE_STORED;
+				SimpleRegionFile.writeIntToArray(header, 1, count);
+				out.write(header, 0, 5);
+				out.write(buffer, 0, count);
+			}
+			count = 0;
+		}
+
+		private void checkOpen() throws IOException {
+			if (closed) {
+				throw new SRFException("Attempt made to write to a closed LZ stream");
+			}
+		}
+	}
+
+	private static class LZInputStream extends InputStream {
+		private final InputStream in;
+		private LZBuffers buffers;
+		private byte[] buffer;
+		private byte[] compressed;
+		private final byte[] header = new byte[8];
+		private int position = 0;
+		private int count = 0;
+		private boolean ended = false;
+		private boolean closed = false;
+
+		public LZInputStream(InputStream in) {
+			this.in = in;
+			this.buffers = LZBuffers.pool.getInstance();
+			this.buffer = buffers.buffer;
+			this.compressed = buffers.compressed;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (position >= count && !readChunk()) {
+				return -1;
+			}
+			return buffer[position++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (off < 0 || len < 0 || len > b.length - off) {
+				throw new IndexOutOfBoundsException();
+			} else if (len == 0) {
+				return 0;
+			}
+			if (position >= count && !readChunk()) {
+				return -1;
+			}
+			int length = Math.min(len, count - position);
+			System.arraycopy(buffer, position, b, off, length);
+			position += length;
+			return length;
+		}
+
+		@Override
+		public int available() throws IOException {
+			checkOpen();
+			return count - position;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				buffers.free();
+				buffers = null;
+				buffer = null;
+				compressed = null;
+				position = 0;
+				count = 0;
+				in.close();
+			}
+		}
+
+		/**
+		 * Reads the next chunk into the buffer
+		 * 
+		 * @return false if the end of the stream has been reached
+		 */
+		private boolean readChunk() throws IOException {
+			checkOpen();
+			while (!ended) {
+				int type = in.read();
+				if (type == TYPE_END || type == -1) {
+					ended = true;
+					return false;
+				}
+				readFully(header, 0, 4);
+				int length = SimpleRegionFile.readIntFromArray(header, 0);
+				if (length < 0 || length > CHUNK_SIZE) {
+					throw new SRFException("Invalid LZ chunk length " + length);
+				}
+				if (type == TYPE_STORED) {
+					readFully(buffer, 0, length);
+				} else if (type == TYPE_COMPRESSED) {
+					readFully(header, 4, 4);
+					int compressedLength = SimpleRegionFile.readIntFromArray(header, 4);
+					if (compressedLength < 0 || compressedLength > maxCompressedLength(CHUNK_SIZE)) {
+						throw new SRFException("Invalid LZ compressed chunk length " + compressedLength);
+					}
+					readFully(compressed, 0, compressedLength);
+					SRFLZCodec.decompress(compressed, compressedLength, buffer, length);
+				} else {
+					throw new SRFException("Unknown LZ chunk type " + type);
+				}
+				position = 0;
+				count = length;
+				if (length > 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void readFully(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int n = in.read(b, off, len);
+				if (n < 0) {
+					throw new EOFException("Unexpected end of LZ stream");
+				}
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void checkOpen() throws IOException {
+			if (closed) {
+				throw new SRFException("Attempt made to read from a closed LZ stream");
+			}
+		}
+	}
+}
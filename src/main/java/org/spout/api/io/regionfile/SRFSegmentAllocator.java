@@ -0,0 +1,269 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.io.regionfile;
+
+import java.util.Arrays;
+
+/**
+ * Tracks which segments of a region file are in use.<br>
+ * <br>
+ * Segment usage is stored as a bitmap of long words, so runs of used segments can be skipped a word at a time.  
+ * In addition, a search hint is kept for each power of two size class.  The hint for a size class is a segment index 
+ * before which there is known to be no free run at least as long as the size class, so allocations never rescan the 
+ * densely used start of the file.
+ */
+public class SRFSegmentAllocator {
+
+	private static final int SIZE_CLASSES = 32;
+
+	private long[] words;
+	private int usedSegments;
+	private final int[] hints = new int[SIZE_CLASSES];
+
+	public SRFSegmentAllocator() {
+		this.words = new long[16];
+		this.usedSegments = 0;
+	}
+
+	/**
+	 * Reserves a group of segments.  The segments are only reserved if they are all free.
+	 * 
+	 * @param start the index of the first segment
+	 * @param length the number of segments
+	 * @return true if the segments were reserved
+	 */
+	public synchronized boolean reserve(int start, int length) {
+		int end = start + length;
+		if (nextUsed(start, end) != end) {
+			return false;
+		}
+		ensureCapacity(end);
+		for (int i = start; i < end; i++) {
+			words[i >> 6] |= 1L << i;
+		}
+		usedSegments += length;
+		return true;
+	}
+
+	/**
+	 * Releases a group of segments.
+	 * 
+	 * @param start the index of the first segment
+	 * @param length the number of segments
+	 * @return true if all of the segments were in use
+	 */
+	public synchronized boolean release(int start, int length) {
+		if (length <= 0) {
+			return true;
+		}
+		boolean success = true;
+		int end = start + length;
+		for (int i = start; i < end; i++) {
+			if (!isUsedRaw(i)) {
+				success = false;
+				continue;
+			}
+			words[i >> 6] &= ~(1L << i);
+			usedSegments--;
+		}
+		// The released segments may have merged with a free run which starts earlier
+		int runStart = previousUsed(start) + 1;
+		for (int c = 0; c < SIZE_CLASSES; c++) {
+			if (hints[c] > runStart) {
+				hints[c] = runStart;
+			}
+		}
+		return success;
+	}
+
+	/**
+	 * Finds and reserves the first free run of segments of a given length.
+	 * 
+	 * @param length the number of segments
+	 * @return the index of the first segment of the run
+	 */
+	public synchronized int allocate(int length) {
+		return allocate(length, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Finds and reserves the first free run of segments of a given length, if it starts before a limit.
+	 * 
+	 * @param length the number of segments
+	 * @param limit the segment index that the run must start before
+	 * @return the index of the first segment of the run, or -1 if there is no such run
+	 */
+	public synchronized int allocate(int length, int limit) {
+		if (length <= 0) {
+			return 0;
+		}
+		int sizeClass = 31 - Integer.numberOfLeadingZeros(length);
+		int classLength = 1 << sizeClass;
+		int firstCandidate = -1;
+		int i = hints[sizeClass];
+		while (true) {
+			i = nextFree(i);
+			int runEnd = nextUsed(i, i + length);
+			if (firstCandidate == -1 && runEnd - i >= classLength) {
+				firstCandidate = i;
+			}
+			if (runEnd - i >= length) {
+				break;
+			}
+			i = runEnd;
+		}
+		hints[sizeClass] = firstCandidate;
+		if (i >= limit) {
+			return -1;
+		}
+		if (!reserve(i, length)) {
+			throw new IllegalStateException("Free run of segments could not be reserved");
+		}
+		return i;
+	}
+
+	/**
+	 * Gets if a segment is in use
+	 * 
+	 * @param i the segment index
+	 * @return true if the segment is in use
+	 */
+	public synchronized boolean isUsed(int i) {
+		return isUsedRaw(i);
+	}
+
+	/**
+	 * Gets the number of segments that are in use
+	 * 
+	 * @return the number of used segments
+	 */
+	public synchronized int getUsedSegments() {
+		return usedSegments;
+	}
+
+	/**
+	 * Gets the index after the last segment that is in use.  This is the minimum length of the file, in segments.
+	 * 
+	 * @return the end segment index
+	 */
+	public synchronized int getEndSegment() {
+		return previousUsed(words.length << 6) + 1;
+	}
+
+	/**
+	 * Gets statistics for the free runs of segments before the end segment.
+	 * 
+	 * @return an array containing the number of free runs and the length of the longest free run
+	 */
+	public synchronized int[] getFreeRuns() {
+		int end = getEndSegment();
+		int runs = 0;
+		int longest = 0;
+		int i = nextFree(0);
+		while (i < end) {
+			int runEnd = nextUsed(i, end);
+			runs++;
+			longest = Math.max(longest, runEnd - i);
+			i = nextFree(runEnd);
+		}
+		return new int[] {runs, longest};
+	}
+
+	private boolean isUsedRaw(int i) {
+		int w = i >> 6;
+		return w < words.length && (words[w] & (1L << i)) != 0;
+	}
+
+	private void ensureCapacity(int segments) {
+		int required = ((segments - 1) >> 6) + 1;
+		if (required > words.length) {
+			words = Arrays.copyOf(words, Math.max(required, words.length << 1));
+		}
+	}
+
+	/**
+	 * Gets the first free segment at or after a given index
+	 */
+	private int nextFree(int i) {
+		int w = i >> 6;
+		if (w >= words.length) {
+			return i;
+		}
+		long word = ~words[w] & (-1L << i);
+		while (word == 0) {
+			w++;
+			if (w >= words.length) {
+				return w << 6;
+			}
+			word = ~words[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * Gets the first used segment at or after a given index, or limit if there is no used segment before the limit
+	 */
+	private int nextUsed(int i, int limit) {
+		int w = i >> 6;
+		if (w >= words.length || i >= limit) {
+			return limit;
+		}
+		long word = words[w] & (-1L << i);
+		while (word == 0) {
+			w++;
+			if (w >= words.length || (w << 6) >= limit) {
+				return limit;
+			}
+			word = words[w];
+		}
+		return Math.min(limit, (w << 6) + Long.numberOfTrailingZeros(word));
+	}
+
+	/**
+	 * Gets the last used segment before a given index, or -1 if there is none
+	 */
+	private int previousUsed(int i) {
+		if (i <= 0) {
+			return -1;
+		}
+		i--;
+		int w = i >> 6;
+		if (w >= words.length) {
+			w = words.length - 1;
+			i = (w << 6) + 63;
+		}
+		long word = words[w] & (-1L >>> (63 - (i & 63)));
+		while (word == 0) {
+			w--;
+			if (w < 0) {
+				return -1;
+			}
+			word = words[w];
+		}
+		return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+	}
+}
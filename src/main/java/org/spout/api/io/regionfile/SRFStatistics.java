@@ -0,0 +1,143 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.io.regionfile;
+
+/**
+ * A snapshot of the space usage of a SimpleRegionFile
+ */
+public class SRFStatistics {
+
+	private final int segmentSize;
+	private final int fileSegments;
+	private final int usedSegments;
+	private final int freeRuns;
+	private final int largestFreeRun;
+	private final long storedBytes;
+
+	public SRFStatistics(int segmentSize, int fileSegments, int usedSegments, int freeRuns, int largestFreeRun, long storedBytes) {
+		this.segmentSize = segmentSize;
+		this.fileSegments = fileSegments;
+		this.usedSegments = usedSegments;
+		this.freeRuns = freeRuns;
+		this.largestFreeRun = largestFreeRun;
+		this.storedBytes = storedBytes;
+	}
+
+	/**
+	 * Gets the size of a segment in bytes
+	 * 
+	 * @return the segment size
+	 */
+	public int getSegmentSize() {
+		return 1 << segmentSize;
+	}
+
+	/**
+	 * Gets the number of segments up to and including the last segment in use
+	 * 
+	 * @return the number of segments
+	 */
+	public int getFileSegments() {
+		return fileSegments;
+	}
+
+	/**
+	 * Gets the number of segments in use by the header and blocks
+	 * 
+	 * @return the number of used segments
+	 */
+	public int getUsedSegments() {
+		return usedSegments;
+	}
+
+	/**
+	 * Gets the number of unused segments before the last segment in use
+	 * 
+	 * @return the number of free segments
+	 */
+	public int getFreeSegments() {
+		return fileSegments - usedSegments;
+	}
+
+	/**
+	 * Gets the number of separate free runs of segments
+	 * 
+	 * @return the number of free runs
+	 */
+	public int getFreeRuns() {
+		return freeRuns;
+	}
+
+	/**
+	 * Gets the length, in segments, of the largest free run of segments
+	 * 
+	 * @return the largest free run
+	 */
+	public int getLargestFreeRun() {
+		return largestFreeRun;
+	}
+
+	/**
+	 * Gets the number of bytes of header and block data stored in the file
+	 * 
+	 * @return the number of stored bytes
+	 */
+	public long getStoredBytes() {
+		return storedBytes;
+	}
+
+	/**
+	 * Gets the number of bytes, before the last segment in use, which do not hold header or block data.<br>
+	 * <br>
+	 * This includes free segments and the unused ends of the last segment of each block.
+	 * 
+	 * @return the number of wasted bytes
+	 */
+	public long getWastedBytes() {
+		return ((long) fileSegments << segmentSize) - storedBytes;
+	}
+
+	/**
+	 * Gets the fragmentation ratio of the free space.<br>
+	 * <br>
+	 * This is 0 if all free space is in a single run, and approaches 1 as the free space is split into many small runs.
+	 * 
+	 * @return the fragmentation ratio
+	 */
+	public double getFragmentationRatio() {
+		int free = getFreeSegments();
+		if (free == 0) {
+			return 0;
+		}
+		return 1.0 - ((double) largestFreeRun / free);
+	}
+
+	@Override
+	public String toString() {
+		return "SRFStatistics{segments=" + fileSegments + ", used=" + usedSegments + ", freeRuns=" + freeRuns + ", largestFreeRun=" + largestFreeRun + ", wastedBytes=" + getWastedBytes() + ", fragmentation=" + getFragmentationRatio() + "}";
+	}
+}
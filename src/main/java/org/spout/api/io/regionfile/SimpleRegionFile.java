@@ -29,19 +29,18 @@ package org.spout.api.io.regionfile;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
 
 import org.spout.api.io.bytearrayarray.ByteArrayArray;
 
@@ -49,15 +48,18 @@ public class SimpleRegionFile implements ByteArrayArray {
 	
 	private static ConcurrentHashMap<String, Boolean> openMap = new ConcurrentHashMap<String, Boolean>();
 	
-	private static final int VERSION = 1;
+	private static final int VERSION = 2;
 	private static final int DEFAULT_TIMEOUT = 120000; // timeout delay
 	public static final int FILE_CLOSED = -1;
 
 	private final File filePath;
 	private final Object fileSyncObject = new Object();
-	private MappedRandomAccessFile file;
-	@SuppressWarnings("unused")
+	private final Object headerSyncObject = new Object();
+	private volatile MappedRandomAccessFile file;
+	private final boolean concurrent;
 	private final int version;
+	private final int fatOffset;
+	private final SRFCodec codec;
 	private final int timeout;
 	
 	private final AtomicInteger[] blockSegmentStart;
@@ -68,7 +70,7 @@ public class SimpleRegionFile implements ByteArrayArray {
 	
 	private final AtomicLong lastAccess;
 	
-	private final AtomicReference<AtomicBoolean[]> inuse;
+	private final SRFSegmentAllocator allocator;
 	private final int segmentSize;
 	private final int segmentMask;
 	private final int entries;
@@ -95,8 +97,44 @@ public class SimpleRegionFile implements ByteArrayArray {
 	 * @throws IOException on error
 	 */
 	public SimpleRegionFile(File filePath, int desiredSegmentSize, int entries, int timeout) throws IOException {
+		this(filePath, desiredSegmentSize, entries, timeout, false);
+	}
+	
+	/**
+	 * Creates a SimpleRegionFile<br>
+	 * <br>
+	 * In concurrent mode, block reads and writes use positional access to the mapped file and are only serialized by the locks of the blocks involved.  
+	 * FAT entries are updated under a separate header lock.  Otherwise, all file access is serialized by a single file monitor.
+	 * 
+	 * @param filePath the path to the file
+	 * @param desiredSegmentSize log2(the desired segment size) 
+	 * @param entries the number of blocks (sub-files) in the RegionFile
+	 * @param timeout the time in ms until the file times out for auto-closing
+	 * @param concurrent true to allow disjoint blocks to be read and written in parallel
+	 * @throws IOException on error
+	 */
+	public SimpleRegionFile(File filePath, int desiredSegmentSize, int entries, int timeout, boolean concurrent) throws IOException {
+		this(filePath, desiredSegmentSize, entries, timeout, concurrent, SRFCodec.DEFLATE);
+	}
+	
+	/**
+	 * Creates a SimpleRegionFile<br>
+	 * <br>
+	 * The codec is only used if a new file is created.  Existing files are read and written using the codec recorded in their header.  
+	 * Files created before codecs were supported use deflate.
+	 * 
+	 * @param filePath the path to the file
+	 * @param desiredSegmentSize log2(the desired segment size) 
+	 * @param entries the number of blocks (sub-files) in the RegionFile
+	 * @param timeout the time in ms until the file times out for auto-closing
+	 * @param concurrent true to allow disjoint blocks to be read and written in parallel
+	 * @param codec the codec used to compress blocks in new files
+	 * @throws IOException on error
+	 */
+	public SimpleRegionFile(File filePath, int desiredSegmentSize, int entries, int timeout, boolean concurrent, SRFCodec codec) throws IOException {
 		
 		this.filePath = filePath;
+		this.concurrent = concurrent;
 		
 		this.timeout = timeout;
 		this.lastAccess = new AtomicLong(0);
@@ -108,13 +146,12 @@ public class SimpleRegionFile implements ByteArrayArray {
 			throw new SRFException("Unable to open region file " + this.filePath, e);
 		}
 		
-		int headerSize = getHeaderSize(entries);
-		
-		if (file.length() <= headerSize) {
+		if (file.length() <= getHeaderSize(getFATOffset(VERSION), entries)) {
 			file.seek(0);
 			file.writeInt(VERSION);
 			file.writeInt(desiredSegmentSize);
 			file.writeInt(entries);
+			file.writeInt(codec.getId());
 			for (int i = 0; i < entries << 1; i++) {
 				file.writeInt(0);
 			}
@@ -122,6 +159,10 @@ public class SimpleRegionFile implements ByteArrayArray {
 		
 		file.seek(0);
 		this.version = file.readInt();
+		if (version < 1 || version > VERSION) {
+			file.close();
+			throw new SRFException("Unsupported version " + version + " for file " + this.filePath);
+		}
 		this.segmentSize = file.readInt();
 		this.segmentMask = (1 << this.segmentSize) - 1;
 		this.entries = file.readInt();
@@ -131,12 +172,25 @@ public class SimpleRegionFile implements ByteArrayArray {
 			throw new SRFException("Number of entries mismatch for file " + this.filePath + ", expected " + entries + " got " + this.entries);
 		}
 		
-		inuse = new AtomicReference<AtomicBoolean[]>(new AtomicBoolean[0]);
+		int codecId = version == 1 ? SRFDeflateCodec.ID : file.readInt();
+		if (codecId == codec.getId()) {
+			this.codec = codec;
+		} else {
+			this.codec = SRFCodec.getCodec(codecId);
+			if (this.codec == null) {
+				file.close();
+				throw new SRFException("Unknown codec id " + codecId + " for file " + this.filePath);
+			}
+		}
+		
+		this.fatOffset = getFATOffset(version);
+		int headerSize = getHeaderSize(fatOffset, entries);
+		
+		allocator = new SRFSegmentAllocator();
 		
 		int headerSegments = sizeToSegments(headerSize);
 		
-		int segmentsLocked = reserveSegments(0, headerSegments);
-		if (segmentsLocked != headerSegments) {
+		if (!allocator.reserve(0, headerSegments)) {
 			throw new SRFException("Unabled to lock header segments");
 		}
 		
@@ -151,8 +205,7 @@ public class SimpleRegionFile implements ByteArrayArray {
 			blockActualLength[i] = new AtomicInteger(file.readInt());
 			blockSegmentLength[i] = new AtomicInteger(sizeToSegments(blockActualLength[i].get()));
 			blockLock[i] = new SRFReentrantReadWriteLock(numberBlocksLocked);
-			int length = reserveSegments(blockSegmentStart[i].get(), blockSegmentLength[i].get());
-			if (length != blockSegmentLength[i].get()) {
+			if (!allocator.reserve(blockSegmentStart[i].get(), blockSegmentLength[i].get())) {
 				throw new SRFException("Reserved segments for Block " + i + " overlap with another block");
 			}
 		}
@@ -203,19 +256,62 @@ public class SimpleRegionFile implements ByteArrayArray {
 			int start = blockSegmentStart[i].get() << segmentSize;
 			int actualLength = blockActualLength[i].get();
 			byte[] result = new byte[actualLength];
-			synchronized (fileSyncObject) {
-				if (file == null) {
-					this.file = new MappedRandomAccessFile(this.filePath, "rw");
+			if (concurrent) {
+				getFile().read(start, result, 0, actualLength);
+			} else {
+				synchronized (fileSyncObject) {
+					if (file == null) {
+						this.file = new MappedRandomAccessFile(this.filePath, "rw");
+					}
+					file.seek(start);
+					file.readFully(result);
 				}
-				file.seek(start);
-				file.readFully(result);
 			}
-			return new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(result)));
+			return new BufferedInputStream(codec.decompress(new ByteArrayInputStream(result)));
 		} finally {
 			lock.unlock();
 		}
 	}
 
+	@Override
+	public InputStream getDirectInputStream(int i) throws IOException {
+		if (i < 0 || i >= entries) {
+			throw new SRFException("Read block index out of range");
+		}
+		refreshAccess();
+		Lock lock = blockLock[i].readLock();
+		lock.lock();
+		boolean success = false;
+		try {
+			if (this.isClosed()) {
+				throw new SRFClosedException("File closed");
+			}
+			int actualLength = blockActualLength[i].get();
+			if (actualLength == 0) {
+				return null;
+			}
+			long start = (long) blockSegmentStart[i].get() << segmentSize;
+			ByteBuffer[] slices;
+			if (concurrent) {
+				slices = getFile().getReadOnlySlices(start, actualLength);
+			} else {
+				synchronized (fileSyncObject) {
+					if (file == null) {
+						this.file = new MappedRandomAccessFile(this.filePath, "rw");
+					}
+					slices = file.getReadOnlySlices(start, actualLength);
+				}
+			}
+			InputStream in = new SRFInputStream(codec.decompress(slices), lock);
+			success = true;
+			return in;
+		} finally {
+			if (!success) {
+				lock.unlock();
+			}
+		}
+	}
+
 	@Override
 	public OutputStream getOutputStream(int i) throws IOException {
 		if (i < 0 || i > entries) {
@@ -227,7 +323,7 @@ public class SimpleRegionFile implements ByteArrayArray {
 		if (this.isClosed()) {
 			throw new SRFClosedException("File closed");
 		}
-		return new BufferedOutputStream(new DeflaterOutputStream(new SRFOutputStream(this, i, this.segmentMask + 1, lock)));
+		return new BufferedOutputStream(codec.compress(new SRFOutputStream(this, i, this.segmentMask + 1, lock)));
 	}
 	
 	/**
@@ -243,6 +339,12 @@ public class SimpleRegionFile implements ByteArrayArray {
 	void write(int i, byte[] buf, int length) throws IOException {
 		refreshAccess();
 		int start = reserveBlockSegments(i, length);
+		if (concurrent) {
+			// The block data is written before the FAT entry that refers to it
+			getFile().write((long) start << segmentSize, buf, 0, length);
+			this.writeFAT(i, start, length);
+			return;
+		}
 		synchronized(fileSyncObject) {
 			if (file == null) {
 				this.file = new MappedRandomAccessFile(this.filePath, "rw");
@@ -270,17 +372,311 @@ public class SimpleRegionFile implements ByteArrayArray {
 				throw new SRFClosedException("File closed");
 			}
 			int start = reserveBlockSegments(i, 0);
-			synchronized(fileSyncObject) {
-				if (file == null) {
-					this.file = new MappedRandomAccessFile(this.filePath, "rw");
-				}
+			if (concurrent) {
 				this.writeFAT(i, start, 0);
+			} else {
+				synchronized(fileSyncObject) {
+					if (file == null) {
+						this.file = new MappedRandomAccessFile(this.filePath, "rw");
+					}
+					this.writeFAT(i, start, 0);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public byte[] compress(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(this.segmentMask + 1);
+		OutputStream compressor = codec.compress(out);
+		compressor.write(data);
+		compressor.close();
+		return out.toByteArray();
+	}
+	
+	@Override
+	public void writeCompressed(int[] indexes, byte[][] compressed) throws IOException {
+		if (indexes.length != compressed.length) {
+			throw new SRFException("Number of block indexes does not match number of blocks");
+		}
+		refreshAccess();
+		
+		// If a block index appears more than once, the last occurrence is written
+		long[] byIndex = new long[indexes.length];
+		for (int j = 0; j < indexes.length; j++) {
+			int i = indexes[j];
+			if (i < 0 || i >= entries) {
+				throw new SRFException("Write block index out of range");
+			}
+			byIndex[j] = ((long) i << 32) | j;
+		}
+		Arrays.sort(byIndex);
+		
+		int blocks = 0;
+		int[] sorted = new int[indexes.length];
+		for (int j = 0; j < byIndex.length; j++) {
+			if (j + 1 < byIndex.length && (byIndex[j + 1] >>> 32) == (byIndex[j] >>> 32)) {
+				continue;
+			}
+			sorted[blocks++] = (int) byIndex[j];
+		}
+		
+		// Block locks are acquired in index order
+		Lock[] locks = new Lock[blocks];
+		try {
+			for (int b = 0; b < blocks; b++) {
+				locks[b] = blockLock[indexes[sorted[b]]].writeLock();
+				locks[b].lock();
+			}
+			if (this.isClosed()) {
+				throw new SRFClosedException("File closed");
+			}
+			
+			long[] starts = new long[blocks];
+			int[] fatStarts = new int[blocks];
+			for (int b = 0; b < blocks; b++) {
+				int j = sorted[b];
+				int start = reserveBlockSegments(indexes[j], compressed[j].length);
+				starts[b] = ((long) start << 32) | j;
+				fatStarts[b] = start;
+			}
+			
+			// Data is written in file order, followed by a single pass over the FAT and a single flush
+			Arrays.sort(starts);
+			MappedRandomAccessFile localFile = getFile();
+			if (concurrent) {
+				writeBatchData(localFile, starts, blocks, compressed);
+				synchronized (headerSyncObject) {
+					writeBatchFAT(localFile, sorted, fatStarts, blocks, indexes, compressed);
+				}
+			} else {
+				synchronized (fileSyncObject) {
+					writeBatchData(localFile, starts, blocks, compressed);
+					writeBatchFAT(localFile, sorted, fatStarts, blocks, indexes, compressed);
+				}
+			}
+			localFile.force();
+		} finally {
+			for (int b = blocks - 1; b >= 0; b--) {
+				if (locks[b] != null) {
+					locks[b].unlock();
+				}
+			}
+		}
+	}
+	
+	private void writeBatchData(MappedRandomAccessFile localFile, long[] starts, int blocks, byte[][] compressed) throws IOException {
+		for (int b = 0; b < blocks; b++) {
+			int j = (int) starts[b];
+			localFile.write((starts[b] >>> 32) << segmentSize, compressed[j], 0, compressed[j].length);
+		}
+	}
+	
+	/**
+	 * Writes the FAT entries of a batch in index order.  The entries of consecutive blocks are written with a single write.
+	 */
+	private void writeBatchFAT(MappedRandomAccessFile localFile, int[] sorted, int[] fatStarts, int blocks, int[] indexes, byte[][] compressed) throws IOException {
+		byte[] entries = new byte[blocks << 3];
+		int runStart = 0;
+		for (int b = 0; b < blocks; b++) {
+			int j = sorted[b];
+			writeIntToArray(entries, b << 3, fatStarts[b]);
+			writeIntToArray(entries, (b << 3) + 4, compressed[j].length);
+			if (b + 1 == blocks || indexes[sorted[b + 1]] != indexes[j] + 1) {
+				localFile.write(fatOffset + (indexes[sorted[runStart]] << 3), entries, runStart << 3, (b + 1 - runStart) << 3);
+				runStart = b + 1;
+			}
+		}
+	}
+	
+	/**
+	 * Gets a snapshot of the space usage of the file
+	 * 
+	 * @return the statistics
+	 */
+	public SRFStatistics getStatistics() {
+		long storedBytes = getHeaderSize(fatOffset, entries);
+		for (int i = 0; i < entries; i++) {
+			storedBytes += blockActualLength[i].get();
+		}
+		int[] freeRuns = allocator.getFreeRuns();
+		return new SRFStatistics(segmentSize, allocator.getEndSegment(), allocator.getUsedSegments(), freeRuns[0], freeRuns[1], storedBytes);
+	}
+	
+	/**
+	 * Moves blocks towards the start of the file, to fill free runs of segments.<br>
+	 * <br>
+	 * Blocks are processed in file order.  A block is moved if there is a large enough free run before it.  
+	 * Each block is write locked while it is moved, so the file may be used normally during compaction.<br>
+	 * <br>
+	 * The length of the file is not reduced.  However, new blocks will be allocated at the start of the file.
+	 * 
+	 * @return the number of blocks moved
+	 * @throws IOException
+	 */
+	public int compact() throws IOException {
+		refreshAccess();
+		long[] byStart = new long[entries];
+		for (int i = 0; i < entries; i++) {
+			byStart[i] = ((long) blockSegmentStart[i].get() << 32) | i;
+		}
+		Arrays.sort(byStart);
+		
+		int moved = 0;
+		for (int b = 0; b < entries; b++) {
+			int i = (int) byStart[b];
+			Lock lock = blockLock[i].writeLock();
+			lock.lock();
+			try {
+				if (this.isClosed()) {
+					throw new SRFClosedException("File closed");
+				}
+				int oldStart = blockSegmentStart[i].get();
+				int length = blockSegmentLength[i].get();
+				int actualLength = blockActualLength[i].get();
+				if (length == 0) {
+					continue;
+				}
+				int newStart = allocator.allocate(length, oldStart);
+				if (newStart < 0) {
+					continue;
+				}
+				byte[] data = new byte[actualLength];
+				readRaw((long) oldStart << segmentSize, data);
+				writeRaw((long) newStart << segmentSize, data);
+				writeFAT(i, newStart, actualLength);
+				blockSegmentStart[i].set(newStart);
+				allocator.release(oldStart, length);
+				moved++;
+			} finally {
+				lock.unlock();
+			}
+		}
+		return moved;
+	}
+	
+	/**
+	 * Rewrites a region file so that its blocks are stored contiguously, in block order.  The file must not be open.<br>
+	 * <br>
+	 * The blocks are copied, without decompression, to a temporary file, which then replaces the original file.  
+	 * The compacted file uses the current header version and the same codec as the original file.
+	 * 
+	 * @param filePath the path to the file
+	 * @param entries the number of blocks (sub-files) in the RegionFile
+	 * @return the statistics for the compacted file
+	 * @throws IOException
+	 */
+	public static SRFStatistics compact(File filePath, int entries) throws IOException {
+		if (!filePath.exists()) {
+			throw new SRFException("Region file " + filePath + " does not exist");
+		}
+		File tempPath = new File(filePath.getPath() + ".compact");
+		if (tempPath.exists() && !tempPath.delete()) {
+			throw new SRFException("Unable to delete temporary file " + tempPath);
+		}
+		SimpleRegionFile source = new SimpleRegionFile(filePath, 0, entries);
+		SimpleRegionFile destination = null;
+		SRFStatistics statistics;
+		try {
+			destination = new SimpleRegionFile(tempPath, source.segmentSize, entries, DEFAULT_TIMEOUT, false, source.codec);
+			int batchSize = 256;
+			for (int start = 0; start < entries; start += batchSize) {
+				int end = Math.min(entries, start + batchSize);
+				int[] indexes = new int[end - start];
+				byte[][] blocks = new byte[end - start][];
+				int count = 0;
+				for (int i = start; i < end; i++) {
+					byte[] data = source.readCompressed(i);
+					if (data != null) {
+						indexes[count] = i;
+						blocks[count++] = data;
+					}
+				}
+				destination.writeCompressed(Arrays.copyOf(indexes, count), Arrays.copyOf(blocks, count));
 			}
+			statistics = destination.getStatistics();
+		} finally {
+			source.attemptClose();
+			if (destination != null) {
+				destination.attemptClose();
+			}
+		}
+		replaceFile(filePath, tempPath);
+		return statistics;
+	}
+
+	/**
+	 * Replaces a file with another file.  The original file is kept as a backup until the replacement has been renamed into place, and is restored if that fails.
+	 * 
+	 * @param filePath the file to replace
+	 * @param replacement the file to move to the path of the replaced file
+	 * @throws IOException if the file could not be replaced
+	 */
+	static void replaceFile(File filePath, File replacement) throws IOException {
+		File backupPath = new File(filePath.getPath() + ".backup");
+		if (backupPath.exists() && !backupPath.delete()) {
+			throw new SRFException("Unable to delete backup file " + backupPath);
+		}
+		if (!filePath.renameTo(backupPath)) {
+			throw new SRFException("Unable to move " + filePath + " to backup file " + backupPath);
+		}
+		if (!replacement.renameTo(filePath)) {
+			if (!backupPath.renameTo(filePath)) {
+				throw new SRFException("Unable to replace " + filePath + " with " + replacement + ", the original file was left at " + backupPath);
+			}
+			throw new SRFException("Unable to replace " + filePath + " with " + replacement);
+		}
+		backupPath.delete();
+	}
+	
+	/**
+	 * Reads the compressed data for a block
+	 * 
+	 * @param i the block index
+	 * @return the compressed data, or null if the block is empty
+	 * @throws IOException
+	 */
+	private byte[] readCompressed(int i) throws IOException {
+		Lock lock = blockLock[i].readLock();
+		lock.lock();
+		try {
+			if (this.isClosed()) {
+				throw new SRFClosedException("File closed");
+			}
+			int actualLength = blockActualLength[i].get();
+			if (actualLength == 0) {
+				return null;
+			}
+			byte[] data = new byte[actualLength];
+			readRaw((long) blockSegmentStart[i].get() << segmentSize, data);
+			return data;
 		} finally {
 			lock.unlock();
 		}
 	}
 	
+	private void readRaw(long position, byte[] data) throws IOException {
+		if (concurrent) {
+			getFile().read(position, data, 0, data.length);
+		} else {
+			synchronized (fileSyncObject) {
+				getFile().read(position, data, 0, data.length);
+			}
+		}
+	}
+	
+	private void writeRaw(long position, byte[] data) throws IOException {
+		if (concurrent) {
+			getFile().write(position, data, 0, data.length);
+		} else {
+			synchronized (fileSyncObject) {
+				getFile().write(position, data, 0, data.length);
+			}
+		}
+	}
+	
 	@Override
 	public boolean isTimedOut() {
 		return this.lastAccess.get() + this.timeout < System.currentTimeMillis();
@@ -336,11 +732,12 @@ public class SimpleRegionFile implements ByteArrayArray {
 	/**
 	 * Gets the size of the header in bytes
 	 * 
+	 * @param fatOffset the FAT base position
 	 * @param entries the number of entries
 	 * @return the header size
 	 */
-	private static int getHeaderSize(int entries) {
-		int headerSize = getFATOffset();
+	private static int getHeaderSize(int fatOffset, int entries) {
+		int headerSize = fatOffset;
 		headerSize += 4 * entries;  // start array (int[entries])
 		headerSize += 4 * entries;  // size array (int[entries])
 		return headerSize;
@@ -349,13 +746,17 @@ public class SimpleRegionFile implements ByteArrayArray {
 	/**
 	 * Gets the FAT base position
 	 * 
+	 * @param version the file version
 	 * @return the base position
 	 */
-	private static int getFATOffset() {
+	private static int getFATOffset(int version) {
 		int headerSize = 0;
 		headerSize += 4;            // Version (int)
 		headerSize += 4;            // Segment size (int)
 		headerSize += 4;            // entries (int)
+		if (version >= 2) {
+			headerSize += 4;        // codec id (int)
+		}
 		return headerSize;
 	}
 	
@@ -380,51 +781,6 @@ public class SimpleRegionFile implements ByteArrayArray {
 		return ((size - 1) >> segmentSize) + 1;
 	}
 	
-	/**
-	 * Releases a segment.
-	 * 
-	 * @param i the segment index
-	 * @return true on success
-	 */
-	private boolean releaseSegment(int i) {
-		boolean oldUsed = setInUse(i, false);
-		return oldUsed;
-	}
-	
-	/**
-	 * Reserves a segment.
-	 * 
-	 * @param i the segment index
-	 * @return true on success
-	 */
-	private boolean reserveSegment(int i) {
-		boolean oldUsed = setInUse(i, true);
-		return !oldUsed;
-	}
-	
-	/**
-	 * Reserves a group of segments.  If all segments can't be locked, any locked segments are immediately released.
-	 * 
-	 * @param start the index of the first segment
-	 * @param length the number of segments to lock
-	 * @return the number of segments locked (this is equal to length on success)
-	 * @throws IOException
-	 */
-	private int reserveSegments(int start, int length) throws IOException {
-		int end = start + length;
-		for (int i = start; i < end; i++) {
-			if (!reserveSegment(i)) {
-				for (int j = i - 1; j >= start; j--) {
-					if (!releaseSegment(j)) {
-						throw new SRFException("Release error when releasing a group of segments that had just been locked");
-					}
-				}
-				return i - start;
-			}
-		}
-		return length;
-	}
-	
 	/**
 	 * Reserves a contiguous group of segments for a block.<br>
 	 * <br>
@@ -432,7 +788,7 @@ public class SimpleRegionFile implements ByteArrayArray {
 	 * <br>
 	 * If there is space after the current allocation so that it can be expanded to the new size, then it is expanded.<br>
 	 * <br>
-	 * Otherwise, it scans from the start until it finds a large enough group of segments.<br>
+	 * Otherwise, the first large enough free run of segments is allocated.<br>
 	 * <br>
 	 * This may result in the file length needing to be increased.
 	 * 
@@ -454,10 +810,8 @@ public class SimpleRegionFile implements ByteArrayArray {
 		int newEnd = oldStart + newLength;
 		
 		if (newLength <= oldLength) { // file has shrunk
-			for (int j = newEnd; j < oldEnd; j++) {
-				if (!this.releaseSegment(j)) {
-					throw new SRFException("Unable to unlock blocks due to file shrinking");
-				}
+			if (!allocator.release(newEnd, oldEnd - newEnd)) {
+				throw new SRFException("Unable to unlock blocks due to file shrinking");
 			}
 			blockLength.set(newLength);
 			blockBytes.set(length);
@@ -465,27 +819,16 @@ public class SimpleRegionFile implements ByteArrayArray {
 		}
 		
 		int extraLength = newLength - oldLength;
-		int lockedSegments = this.reserveSegments(oldEnd, extraLength);
 		
-		if (lockedSegments == extraLength) {
+		if (allocator.reserve(oldEnd, extraLength)) {
 			blockLength.set(newLength);
 			blockBytes.set(length);
 			return oldStart;
 		}
 		
-		int newStart = 0;
-		lockedSegments = 0;
+		int newStart = allocator.allocate(newLength);
 		
-		while (lockedSegments != newLength) {
-			lockedSegments = this.reserveSegments(newStart, newLength);
-			if (lockedSegments != newLength) {
-				newStart = newStart + lockedSegments + 1;
-			}
-		}
-		
-		for (int j = oldStart; j < oldEnd; j++) {
-			releaseSegment(j);
-		}
+		allocator.release(oldStart, oldLength);
 		
 		blockStart.set(newStart);
 		blockLength.set(newLength);
@@ -493,65 +836,72 @@ public class SimpleRegionFile implements ByteArrayArray {
 		return newStart;
 	}
 
-	private void writeFAT(int i, int start, int actualLength) throws IOException {
-		int FATEntryPosition = getFATOffset() + (i << 3);
-		synchronized(fileSyncObject) {
-			if (file == null) {
-				this.file = new MappedRandomAccessFile(this.filePath, "rw");
-			}
-			file.seek(FATEntryPosition);
-			file.writeInt(start);
-			file.writeInt(actualLength);
-		}
+	/**
+	 * Gets the codec used to compress the blocks of this file
+	 * 
+	 * @return the codec
+	 */
+	public SRFCodec getCodec() {
+		return codec;
 	}
-	
+
 	/**
-	 * Sets an element in the in use array and returns the old value.
+	 * Gets if this file allows disjoint blocks to be read and written in parallel
 	 * 
-	 * @param i the segment index
-	 * @param used true if the segment should be in use
-	 * @return the old value
+	 * @return true if the file is in concurrent mode
 	 */
-	private boolean setInUse(int i, boolean used) {
-		AtomicBoolean[] localArray = inuse.get();
-		
-		if (localArray.length <= i) {
-			expandInUseArray(Math.max(i+1, localArray.length * 3 / 2));
-		}
-		
-		localArray = inuse.get();
-		
-		return localArray[i].getAndSet(used);
+	public boolean isConcurrent() {
+		return concurrent;
 	}
 	
 	/**
-	 * Expands the in use array.  When this method returns, the in use array will be at least newSize elements long
+	 * Gets the mapped file, reopening it if required
 	 * 
-	 * @param newSize the desired new size
+	 * @return the file
+	 * @throws IOException
 	 */
-	private void expandInUseArray(int newSize) {
-		
-		boolean success = false;
-		
-		while (!success) {
-			AtomicBoolean[] oldArray = inuse.get();
-
-			if (newSize <= oldArray.length) {
-				return;
+	private MappedRandomAccessFile getFile() throws IOException {
+		MappedRandomAccessFile localFile = file;
+		if (localFile == null) {
+			synchronized (fileSyncObject) {
+				if (file == null) {
+					this.file = new MappedRandomAccessFile(this.filePath, "rw");
+				}
+				localFile = file;
 			}
-			
-			AtomicBoolean[] newArray = new AtomicBoolean[newSize];
-			
-			for (int i = 0; i < oldArray.length; i++) {
-				newArray[i] = oldArray[i];
+		}
+		return localFile;
+	}
+
+	private void writeFAT(int i, int start, int actualLength) throws IOException {
+		int FATEntryPosition = fatOffset + (i << 3);
+		if (concurrent) {
+			byte[] entry = new byte[8];
+			writeIntToArray(entry, 0, start);
+			writeIntToArray(entry, 4, actualLength);
+			synchronized (headerSyncObject) {
+				getFile().write(FATEntryPosition, entry, 0, 8);
 			}
-			
-			for (int i = oldArray.length; i < newSize; i++) {
-				newArray[i] = new AtomicBoolean(false);
+			return;
+		}
+		synchronized(fileSyncObject) {
+			if (file == null) {
+				this.file = new MappedRandomAccessFile(this.filePath, "rw");
 			}
-			
-			success = inuse.compareAndSet(oldArray, newArray);
+			file.seek(FATEntryPosition);
+			file.writeInt(start);
+			file.writeInt(actualLength);
 		}
-		
+	}
+	
+	static void writeIntToArray(byte[] array, int off, int value) {
+		array[off + 0] = (byte) (value >> 24);
+		array[off + 1] = (byte) (value >> 16);
+		array[off + 2] = (byte) (value >> 8);
+		array[off + 3] = (byte) (value >> 0);
+	}
+	
+	static int readIntFromArray(byte[] array, int off) {
+		return ((array[off + 0] & 0xFF) << 24) | ((array[off + 1] & 0xFF) << 16) | ((array[off + 2] & 0xFF) << 8) | (array[off + 3] & 0xFF);
 	}
 }
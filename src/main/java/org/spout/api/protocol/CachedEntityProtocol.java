@@ -0,0 +1,155 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.spout.api.entity.Entity;
+import org.spout.api.geo.discrete.Transform;
+import org.spout.api.protocol.reposition.RepositionManager;
+import org.spout.api.scheduler.TickStage;
+
+/**
+ * An {@link EntityProtocol} which caches the update messages of each entity for the rest of the tick.<br>
+ * <br>
+ * The update messages are requested once for each player observing the entity. They only depend on the entity, its live transform, the
+ * reposition manager and the force flag, so the messages created for the first observer are shared with the others.
+ * Observers with a different reposition manager bypass the cache.<br>
+ * <br>
+ * The cache is keyed by entity id and is discarded when a new tick starts.
+ * The cached lists are unmodifiable, and the messages in them must not be modified, as they are sent to every observer.
+ */
+public class CachedEntityProtocol implements EntityProtocol {
+	private final EntityProtocol protocol;
+	private final AtomicReference<TickCache> cache = new AtomicReference<TickCache>(new TickCache(-1));
+
+	public CachedEntityProtocol(EntityProtocol protocol) {
+		if (protocol == null) {
+			throw new IllegalArgumentException("Protocol may not be null");
+		}
+		this.protocol = protocol;
+	}
+
+	/**
+	 * Gets the protocol which creates the messages
+	 *
+	 * @return the wrapped protocol
+	 */
+	public EntityProtocol getProtocol() {
+		return protocol;
+	}
+
+	@Override
+	public List<Message> getSpawnMessages(Entity entity, RepositionManager rm) {
+		return protocol.getSpawnMessages(entity, rm);
+	}
+
+	@Override
+	public List<Message> getDestroyMessages(Entity entity) {
+		return protocol.getDestroyMessages(entity);
+	}
+
+	@Override
+	public List<Message> getUpdateMessages(Entity entity, Transform liveTransform, RepositionManager rm, boolean force) {
+		UpdateEntry entry = getEntry(entity, rm);
+		if (entry.entity != entity || entry.rm != rm) {
+			return protocol.getUpdateMessages(entity, liveTransform, rm, force);
+		}
+		// Observers on other region threads wait for the first observer, so the messages are only created once
+		synchronized (entry) {
+			if (force) {
+				if (!entry.hasForced) {
+					entry.forced = unmodifiable(protocol.getUpdateMessages(entity, liveTransform, rm, true));
+					entry.hasForced = true;
+				}
+				return entry.forced;
+			} else {
+				if (!entry.hasUnforced) {
+					entry.unforced = unmodifiable(protocol.getUpdateMessages(entity, liveTransform, rm, false));
+					entry.hasUnforced = true;
+				}
+				return entry.unforced;
+			}
+		}
+	}
+
+	private UpdateEntry getEntry(Entity entity, RepositionManager rm) {
+		long tick = TickStage.getTick();
+		TickCache current = cache.get();
+		if (current.tick != tick) {
+			TickCache next = new TickCache(tick);
+			current = cache.compareAndSet(current, next) ? next : cache.get();
+		}
+		Integer id = entity.getId();
+		UpdateEntry entry = current.entries.get(id);
+		if (entry == null) {
+			entry = new UpdateEntry(entity, rm);
+			UpdateEntry previous = current.entries.putIfAbsent(id, entry);
+			if (previous != null) {
+				entry = previous;
+			}
+		}
+		return entry;
+	}
+
+	private static List<Message> unmodifiable(List<Message> messages) {
+		return messages == null ? null : Collections.unmodifiableList(messages);
+	}
+
+	/**
+	 * The entries for a single tick.  A new cache replaces the old one when a new tick starts.
+	 */
+	private static class TickCache {
+		private final long tick;
+		private final ConcurrentMap<Integer, UpdateEntry> entries = new ConcurrentHashMap<Integer, UpdateEntry>();
+
+		public TickCache(long tick) {
+			this.tick = tick;
+		}
+	}
+
+	/**
+	 * The update messages for an entity.  The messages are only accessed while synchronized on the entry.
+	 */
+	private static class UpdateEntry {
+		private final Entity entity;
+		private final RepositionManager rm;
+		private List<Message> unforced;
+		private List<Message> forced;
+		private boolean hasUnforced = false;
+		private boolean hasForced = false;
+
+		public UpdateEntry(Entity entity, RepositionManager rm) {
+			this.entity = entity;
+			this.rm = rm;
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+/**
+ * Controls the number of chunks sent to a player each tick.<br>
+ * <br>
+ * The budget is adjusted using additive increase, multiplicative decrease. While the connection keeps up and the budget
+ * was used in full, it grows by a fixed step each tick. When the outbound queue of the connection grows past a limit,
+ * or writes take too long to complete, the budget is cut by a factor. After a cut, further cuts are held off for a
+ * number of ticks, so that the effect of the previous cut can be observed.<br>
+ * <br>
+ * This class is not thread safe and should only be updated by the thread which sends the chunks, but the metrics may
+ * be read from any thread.
+ */
+public class ChunkSendRateController {
+	public static final int DEFAULT_INCREASE = 1;
+	public static final float DEFAULT_DECREASE_FACTOR = 0.5F;
+	public static final long DEFAULT_MAX_QUEUED_BYTES = 512 * 1024;
+	public static final long DEFAULT_MAX_WRITE_LATENCY = 250L * 1000L * 1000L;
+	public static final int DEFAULT_HOLD_TICKS = 10;
+
+	private final int minBudget;
+	private final int maxBudget;
+	private final int increase;
+	private final float decreaseFactor;
+	private final long maxQueuedBytes;
+	private final long maxWriteLatency;
+	private final int holdTicks;
+
+	private volatile int budget;
+	private int hold = 0;
+	private boolean budgetLimited = false;
+
+	private volatile boolean congested = false;
+	private volatile long queuedBytes = 0;
+	private volatile long writeLatency = 0;
+	private volatile long totalChunksSent = 0;
+	private volatile int decreases = 0;
+
+	/**
+	 * Creates a controller using the default congestion thresholds
+	 *
+	 * @param initialBudget the initial number of chunks per tick
+	 * @param minBudget the minimum number of chunks per tick
+	 * @param maxBudget the maximum number of chunks per tick
+	 */
+	public ChunkSendRateController(int initialBudget, int minBudget, int maxBudget) {
+		this(initialBudget, minBudget, maxBudget, DEFAULT_INCREASE, DEFAULT_DECREASE_FACTOR, DEFAULT_MAX_QUEUED_BYTES, DEFAULT_MAX_WRITE_LATENCY, DEFAULT_HOLD_TICKS);
+	}
+
+	/**
+	 * Creates a controller
+	 *
+	 * @param initialBudget the initial number of chunks per tick
+	 * @param minBudget the minimum number of chunks per tick
+	 * @param maxBudget the maximum number of chunks per tick
+	 * @param increase the number of chunks the budget grows by each uncongested tick
+	 * @param decreaseFactor the factor the budget is multiplied by when the connection is congested
+	 * @param maxQueuedBytes the number of pending outbound bytes above which the connection is congested
+	 * @param maxWriteLatency the average write latency, in nanoseconds, above which the connection is congested
+	 * @param holdTicks the number of ticks after a decrease before the budget may be decreased again
+	 */
+	public ChunkSendRateController(int initialBudget, int minBudget, int maxBudget, int increase, float decreaseFactor, long maxQueuedBytes, long maxWriteLatency, int holdTicks) {
+		if (minBudget < 1 || maxBudget < minBudget) {
+			throw new IllegalArgumentException("Budget range must satisfy 1 <= min <= max");
+		}
+		if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+			throw new IllegalArgumentException("Decrease factor must be between 0 and 1");
+		}
+		this.minBudget = minBudget;
+		this.maxBudget = maxBudget;
+		this.increase = increase;
+		this.decreaseFactor = decreaseFactor;
+		this.maxQueuedBytes = maxQueuedBytes;
+		this.maxWriteLatency = maxWriteLatency;
+		this.holdTicks = holdTicks;
+		this.budget = Math.max(minBudget, Math.min(maxBudget, initialBudget));
+	}
+
+	/**
+	 * Updates the budget at the start of a tick.<br>
+	 * <br>
+	 * If there is no monitor, the budget is left unchanged.
+	 *
+	 * @param monitor the traffic monitor of the connection, or null
+	 * @return the number of chunks which may be sent this tick
+	 */
+	public int update(OutboundTrafficMonitor monitor) {
+		if (monitor == null) {
+			return budget;
+		}
+		return update(monitor.getPendingBytes(), monitor.getWriteLatency());
+	}
+
+	/**
+	 * Updates the budget at the start of a tick
+	 *
+	 * @param queuedBytes the number of bytes waiting to be written to the connection
+	 * @param writeLatency the average write latency of the connection, in nanoseconds
+	 * @return the number of chunks which may be sent this tick
+	 */
+	public int update(long queuedBytes, long writeLatency) {
+		this.queuedBytes = queuedBytes;
+		this.writeLatency = writeLatency;
+		boolean congested = queuedBytes > maxQueuedBytes || writeLatency > maxWriteLatency;
+		this.congested = congested;
+		int budget = this.budget;
+		if (congested) {
+			if (hold == 0) {
+				budget = Math.max(minBudget, (int) (budget * decreaseFactor));
+				decreases++;
+				hold = holdTicks;
+			}
+		} else if (budgetLimited) {
+			budget = Math.min(maxBudget, budget + increase);
+		}
+		if (hold > 0) {
+			hold--;
+		}
+		budgetLimited = false;
+		this.budget = budget;
+		return budget;
+	}
+
+	/**
+	 * Records the chunks sent during a tick.<br>
+	 * <br>
+	 * The budget is only increased after ticks where it limited the number of chunks sent, so that an idle connection
+	 * does not build up a budget it has never been shown to handle.
+	 *
+	 * @param count the number of chunks sent
+	 * @param budgetLimited true if more chunks could have been sent without the budget
+	 */
+	public void chunksSent(int count, boolean budgetLimited) {
+		totalChunksSent += count;
+		this.budgetLimited = budgetLimited;
+	}
+
+	/**
+	 * Gets the current number of chunks which may be sent per tick
+	 *
+	 * @return the budget
+	 */
+	public int getBudget() {
+		return budget;
+	}
+
+	public int getMinBudget() {
+		return minBudget;
+	}
+
+	public int getMaxBudget() {
+		return maxBudget;
+	}
+
+	/**
+	 * Gets if the connection was congested at the last update
+	 *
+	 * @return true if congested
+	 */
+	public boolean isCongested() {
+		return congested;
+	}
+
+	/**
+	 * Gets the number of pending outbound bytes seen at the last update
+	 *
+	 * @return the number of queued bytes
+	 */
+	public long getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	/**
+	 * Gets the average write latency seen at the last update
+	 *
+	 * @return the write latency, in nanoseconds
+	 */
+	public long getWriteLatency() {
+		return writeLatency;
+	}
+
+	/**
+	 * Gets the total number of chunks sent
+	 *
+	 * @return the number of chunks
+	 */
+	public long getTotalChunksSent() {
+		return totalChunksSent;
+	}
+
+	/**
+	 * Gets the number of times the budget was decreased due to congestion
+	 *
+	 * @return the number of decreases
+	 */
+	public int getDecreaseCount() {
+		return decreases;
+	}
+}
@@ -46,21 +46,41 @@ public class CommonDecoder extends PreprocessReplayingDecoder {
 	private int opcodeCounter = 0;
 	private volatile Protocol protocol;
 	private final boolean upstream;
+	private final ProtocolMetrics metrics;
 
 	public CommonDecoder(boolean upstream) {
+		this(upstream, new ProtocolMetrics());
+	}
+
+	/**
+	 * Creates a new decoder.<br>
+	 * <br>
+	 * Decoded messages are recorded in the given session metrics and in the metrics of the protocol.
+	 *
+	 * @param upstream true if the messages are received from the server
+	 * @param metrics the metrics of the session
+	 */
+	public CommonDecoder(boolean upstream, ProtocolMetrics metrics) {
 		super(512);
 		this.upstream = upstream;
+		this.metrics = metrics;
+	}
+
+	@Override
+	protected boolean isFramed(Channel c) {
+		return getProtocol(c).isLengthPrefixed();
+	}
+
+	@Override
+	protected int getFrameLength(Channel c, ChannelBuffer buf) {
+		return getProtocol(c).getPacketLength(buf);
 	}
 
 	@Override
 	protected Object decodeProcessed(ChannelHandlerContext ctx, Channel c, ChannelBuffer buf) throws Exception {
-		if (protocol == null) {
-			if (Spout.getEngine() instanceof Client) {
-				protocol = ((Client) Spout.getEngine()).getAddress().getProtocol();
-			} else {
-				protocol = Spout.getEngine().getProtocol(c.getLocalAddress());
-			}
-		}
+		Protocol protocol = getProtocol(c);
+		long start = System.nanoTime();
+		int startIndex = buf.readerIndex();
 
 		MessageCodec<?> codec;
 		try {
@@ -80,8 +100,27 @@ public class CommonDecoder extends PreprocessReplayingDecoder {
 			return buf;
 		}
 
-		previousOpcodes[(opcodeCounter++) & previousMask] = codec.getOpcode();
-		return codec.decode(upstream, buf);
+		int opcode = codec.getOpcode();
+		previousOpcodes[(opcodeCounter++) & previousMask] = opcode;
+		Message message = codec.decode(upstream, buf);
+		int bytes = buf.readerIndex() - startIndex;
+		long nanos = System.nanoTime() - start;
+		metrics.recordDecode(opcode, bytes, nanos);
+		protocol.getMetrics().recordDecode(opcode, bytes, nanos);
+		return message;
+	}
+
+	private Protocol getProtocol(Channel c) {
+		Protocol protocol = this.protocol;
+		if (protocol == null) {
+			if (Spout.getEngine() instanceof Client) {
+				protocol = ((Client) Spout.getEngine()).getAddress().getProtocol();
+			} else {
+				protocol = Spout.getEngine().getProtocol(c.getLocalAddress());
+			}
+			this.protocol = protocol;
+		}
+		return protocol;
 	}
 
 	void setProtocol(Protocol proto) {
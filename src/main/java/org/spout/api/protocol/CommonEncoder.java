@@ -27,11 +27,14 @@
 package org.spout.api.protocol;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
 import org.spout.api.Client;
 import org.spout.api.Spout;
@@ -45,14 +48,40 @@ public class CommonEncoder extends PostprocessEncoder {
 
 	private final boolean upstream;
 
+	private final ChannelBufferFactory bufferFactory;
+
+	private final ProtocolMetrics metrics;
+
 	public CommonEncoder(boolean upstream) {
+		this(upstream, null);
+	}
+
+	public CommonEncoder(boolean upstream, ChannelBufferFactory bufferFactory) {
+		this(upstream, bufferFactory, new ProtocolMetrics());
+	}
+
+	/**
+	 * Creates a new encoder.<br>
+	 * <br>
+	 * Messages whose codecs provide a size estimate are encoded into a single buffer from the buffer factory.
+	 * If no factory is given, the factory configured for the channel is used, which allows servers to use a
+	 * {@link org.jboss.netty.buffer.DirectChannelBufferFactory} to slice buffers out of preallocated direct memory.<br>
+	 * <br>
+	 * Encoded messages are recorded in the given session metrics and in the metrics of the protocol.
+	 *
+	 * @param upstream true if the messages are sent to the server
+	 * @param bufferFactory the factory to allocate buffers from, or null to use the channel's factory
+	 * @param metrics the metrics of the session
+	 */
+	public CommonEncoder(boolean upstream, ChannelBufferFactory bufferFactory, ProtocolMetrics metrics) {
 		this.upstream = upstream;
+		this.bufferFactory = bufferFactory;
+		this.metrics = metrics;
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	protected Object encode(ChannelHandlerContext ctx, Channel c, Object msg) throws Exception {
-		if (msg instanceof Message) {
+		if (msg instanceof Message || msg instanceof MessageBatch) {
 			if (protocol == null) {
 				if (Spout.getEngine() instanceof Client) {
 					protocol = ((Client) Spout.getEngine()).getAddress().getProtocol();
@@ -60,21 +89,65 @@ public class CommonEncoder extends PostprocessEncoder {
 					protocol = Spout.getEngine().getProtocol(c.getLocalAddress());
 				}
 			}
-			Message message = (Message) msg;
+			if (msg instanceof MessageBatch) {
+				// A message which cannot be encoded only fails its own future, the rest of the batch is still written
+				MessageBatch batch = (MessageBatch) msg;
+				List<Message> messages = batch.getMessages();
+				ChannelBuffer[] buffers = new ChannelBuffer[messages.size()];
+				for (int i = 0; i < buffers.length; i++) {
+					try {
+						buffers[i] = encode(c, messages.get(i));
+					} catch (Exception e) {
+						batch.setFailure(i, e);
+						buffers[i] = ChannelBuffers.EMPTY_BUFFER;
+						if (c != null) {
+							Channels.fireExceptionCaught(c, e);
+						}
+					}
+				}
+				return ChannelBuffers.wrappedBuffer(buffers);
+			}
+			return encode(c, (Message) msg);
+		}
+		return msg;
+	}
 
-			Class<? extends Message> clazz = message.getClass();
-			MessageCodec<Message> codec;
+	@SuppressWarnings("unchecked")
+	private ChannelBuffer encode(Channel c, Message message) throws IOException {
+		long start = System.nanoTime();
+		Class<? extends Message> clazz = message.getClass();
+		MessageCodec<Message> codec;
 
-			codec = (MessageCodec<Message>) protocol.getCodecLookupService().find(clazz);
-			if (codec == null) {
-				throw new IOException("Unknown message type: " + clazz + ".");
-			}
+		codec = (MessageCodec<Message>) protocol.getCodecLookupService().find(clazz);
+		if (codec == null) {
+			throw new IOException("Unknown message type: " + clazz + ".");
+		}
 
-			ChannelBuffer messageBuf = codec.encode(upstream, message);
-			ChannelBuffer headerBuf = protocol.writeHeader(codec, messageBuf);
-			return ChannelBuffers.wrappedBuffer(headerBuf, messageBuf);
+		int headerSize = protocol.getMaxHeaderSize();
+		if (headerSize >= 0) {
+			int size = codec.getEncodedSize(upstream, message);
+			if (size >= 0) {
+				ChannelBufferFactory factory = bufferFactory != null ? bufferFactory : c.getConfig().getBufferFactory();
+				ChannelBuffer buf = ChannelBuffers.dynamicBuffer(headerSize + size, factory);
+				buf.writerIndex(headerSize);
+				buf.readerIndex(headerSize);
+				codec.encode(upstream, message, buf);
+				protocol.writeHeaderInPlace(codec, buf);
+				recordEncode(codec.getOpcode(), buf.readableBytes(), start);
+				return buf;
+			}
 		}
-		return msg;
+
+		ChannelBuffer messageBuf = codec.encode(upstream, message);
+		ChannelBuffer headerBuf = protocol.writeHeader(codec, messageBuf);
+		recordEncode(codec.getOpcode(), headerBuf.readableBytes() + messageBuf.readableBytes(), start);
+		return ChannelBuffers.wrappedBuffer(headerBuf, messageBuf);
+	}
+
+	private void recordEncode(int opcode, int bytes, long start) {
+		long nanos = System.nanoTime() - start;
+		metrics.recordEncode(opcode, bytes, nanos);
+		protocol.getMetrics().recordEncode(opcode, bytes, nanos);
 	}
 
 	void setProtocol(Protocol protocol) {
@@ -26,6 +26,7 @@
  */
 package org.spout.api.protocol;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 
@@ -60,6 +61,16 @@ public class CommonHandler extends SimpleChannelUpstreamHandler {
 	private final CommonDecoder decoder;
 	private final CommonEncoder encoder;
 
+	/**
+	 * The metrics of the session
+	 */
+	private final ProtocolMetrics metrics;
+
+	/**
+	 * The executor for thread-safe message handlers, or null to handle them on the network thread
+	 */
+	private final Executor handlerExecutor;
+
 	/**
 	 * Creates a new network event handler.
 	 *
@@ -67,10 +78,35 @@ public class CommonHandler extends SimpleChannelUpstreamHandler {
 	 * @param upstream If the connections are going to the server
 	 */
 	public CommonHandler(Engine engine, CommonEncoder encoder, CommonDecoder decoder, boolean upstream) {
+		this(engine, encoder, decoder, upstream, new ProtocolMetrics());
+	}
+
+	/**
+	 * Creates a new network event handler.
+	 *
+	 * @param engine The engine.
+	 * @param upstream If the connections are going to the server
+	 * @param metrics The metrics of the session, shared with the encoder and decoder
+	 */
+	public CommonHandler(Engine engine, CommonEncoder encoder, CommonDecoder decoder, boolean upstream, ProtocolMetrics metrics) {
+		this(engine, encoder, decoder, upstream, metrics, null);
+	}
+
+	/**
+	 * Creates a new network event handler.
+	 *
+	 * @param engine The engine.
+	 * @param upstream If the connections are going to the server
+	 * @param metrics The metrics of the session, shared with the encoder and decoder
+	 * @param handlerExecutor The executor to run {@link MessageHandler#isThreadSafe() thread-safe} message handlers on, or null to run them on the network thread
+	 */
+	public CommonHandler(Engine engine, CommonEncoder encoder, CommonDecoder decoder, boolean upstream, ProtocolMetrics metrics, Executor handlerExecutor) {
 		this.engine = engine;
+		this.handlerExecutor = handlerExecutor;
 		this.upstream = upstream;
 		this.encoder = encoder;
 		this.decoder = decoder;
+		this.metrics = metrics;
 	}
 
 	@Override
@@ -114,8 +150,56 @@ public class CommonHandler extends SimpleChannelUpstreamHandler {
 
 	@Override
 	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
-		Session session = this.session.get();
-		session.messageReceived(upstream, (Message) e.getMessage());
+		final Session session = this.session.get();
+		final Message message = (Message) e.getMessage();
+		Protocol protocol = session.getProtocol();
+		if (protocol == null) {
+			// No handlers or metrics to look up, so let the session handle the message
+			session.messageReceived(upstream, message);
+			return;
+		}
+		long start = System.nanoTime();
+
+		final MessageHandler<Message> handler = getThreadSafeHandler(protocol, message);
+		if (handler == null) {
+			session.messageReceived(upstream, message);
+		} else if (handlerExecutor == null) {
+			handle(session, handler, message);
+		} else {
+			handlerExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					handle(session, handler, message);
+				}
+			});
+		}
+		long nanos = System.nanoTime() - start;
+
+		MessageCodec<?> codec = protocol.getCodecLookupService().find(message.getClass());
+		int opcode = codec == null ? ProtocolMetrics.UNKNOWN_OPCODE : codec.getOpcode();
+		metrics.recordDispatch(opcode, nanos);
+		protocol.getMetrics().recordDispatch(opcode, nanos);
+	}
+
+	@SuppressWarnings("unchecked")
+	private MessageHandler<Message> getThreadSafeHandler(Protocol protocol, Message message) {
+		HandlerLookupService lookup = protocol.getHandlerLookupService();
+		if (lookup == null) {
+			return null;
+		}
+		MessageHandler<Message> handler = (MessageHandler<Message>) lookup.find(message.getClass());
+		if (handler == null || !handler.isThreadSafe()) {
+			return null;
+		}
+		return handler;
+	}
+
+	private void handle(Session session, MessageHandler<Message> handler, Message message) {
+		try {
+			handler.handle(upstream, session, message);
+		} catch (Exception ex) {
+			session.getUncaughtExceptionHandler().uncaughtException(message, handler, ex);
+		}
 	}
 
 	@Override
@@ -135,6 +219,18 @@ public class CommonHandler extends SimpleChannelUpstreamHandler {
 		}
 	}
 
+	/**
+	 * Gets the metrics recorded for the session of this handler.<br>
+	 * <br>
+	 * The dispatch time only covers passing the message to the session, which may handle it later on another thread,
+	 * unless the message is handled directly by a {@link MessageHandler#isThreadSafe() thread-safe} handler.
+	 *
+	 * @return the metrics
+	 */
+	public ProtocolMetrics getMetrics() {
+		return metrics;
+	}
+
 	public Session getSession() {
 		return this.session.get();
 	}
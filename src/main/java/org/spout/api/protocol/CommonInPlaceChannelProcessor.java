@@ -0,0 +1,66 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandlerContext;
+
+/**
+ * Bridge class which implements the copying {@link ChannelProcessor} methods of an {@link InPlaceChannelProcessor}.<br>
+ * <br>
+ * The input is copied to the output buffer and then processed in place, so the processor can be used by decoders which do not process data in place.
+ */
+public abstract class CommonInPlaceChannelProcessor implements InPlaceChannelProcessor {
+
+	@Override
+	public final ChannelBuffer write(ChannelHandlerContext ctx, ChannelBuffer input) {
+		return write(ctx, input, null);
+	}
+
+	@Override
+	public final synchronized ChannelBuffer write(ChannelHandlerContext ctx, ChannelBuffer input, ChannelBuffer buffer) {
+		int length = input.readableBytes();
+		ChannelBuffer output;
+		if (buffer != null && buffer.writableBytes() >= length) {
+			output = buffer;
+		} else {
+			output = getNewBufferInstance(ctx, length);
+		}
+		int index = output.writerIndex();
+		output.writeBytes(input);
+		process(output, index, length);
+		if (buffer == null || output == buffer) {
+			return output;
+		}
+		return ChannelBuffers.wrappedBuffer(buffer, output);
+	}
+
+	private static ChannelBuffer getNewBufferInstance(ChannelHandlerContext ctx, int capacity) {
+		return ctx.getChannel().getConfig().getBufferFactory().getBuffer(capacity);
+	}
+}
@@ -26,6 +26,8 @@
  */
 package org.spout.api.protocol;
 
+import java.util.concurrent.Executor;
+
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.Channels;
@@ -48,6 +50,11 @@ public final class CommonPipelineFactory implements ChannelPipelineFactory {
 	 */
 	private final boolean upstream;
 
+	/**
+	 * The executor for thread-safe message handlers
+	 */
+	private final Executor handlerExecutor;
+
 	/**
 	 * Creates a new Minecraft pipeline factory.
 	 *
@@ -55,6 +62,17 @@ public final class CommonPipelineFactory implements ChannelPipelineFactory {
 	 * @param upstream true for connection to the server
 	 */
 	public CommonPipelineFactory(Engine engine, boolean upstream) {
+		this(engine, upstream, null);
+	}
+
+	/**
+	 * Creates a new Minecraft pipeline factory.
+	 *
+	 * @param engine The engine
+	 * @param upstream true for connection to the server
+	 * @param handlerExecutor the executor to run {@link MessageHandler#isThreadSafe() thread-safe} message handlers on, or null to run them on the network threads
+	 */
+	public CommonPipelineFactory(Engine engine, boolean upstream, Executor handlerExecutor) {
 		Platform p = engine.getPlatform();
 		if (upstream) {
 			if (p != Platform.CLIENT && p != Platform.PROXY) {
@@ -67,15 +85,20 @@ public final class CommonPipelineFactory implements ChannelPipelineFactory {
 		}
 		this.engine = engine;
 		this.upstream = upstream;
+		this.handlerExecutor = handlerExecutor;
 	}
 
 	@Override
 	public ChannelPipeline getPipeline() throws Exception {
-		CommonEncoder encoder = new CommonEncoder(upstream);
-		CommonDecoder decoder = new CommonDecoder(upstream);
-		CommonHandler handler = new CommonHandler(engine, encoder, decoder, upstream);
+		ProtocolMetrics metrics = new ProtocolMetrics();
+		CommonEncoder encoder = new CommonEncoder(upstream, null, metrics);
+		CommonDecoder decoder = new CommonDecoder(upstream, metrics);
+		CommonHandler handler = new CommonHandler(engine, encoder, decoder, upstream, metrics, handlerExecutor);
 		DynamicMessageDecoder dynamicDecoder = new DynamicMessageDecoder();
 		DynamicMessageEncoder dynamicEncoder = new DynamicMessageEncoder();
-		return Channels.pipeline(decoder, encoder, dynamicDecoder, dynamicEncoder, handler);
+		ChannelPipeline pipeline = Channels.pipeline(decoder, encoder, dynamicDecoder, dynamicEncoder, handler);
+		pipeline.addFirst(OutboundTrafficMonitor.NAME, new OutboundTrafficMonitor());
+		pipeline.addAfter(pipeline.getContext(encoder).getName(), OutboundBatchHandler.NAME, new OutboundBatchHandler());
+		return pipeline;
 	}
 }
@@ -33,13 +33,26 @@ import org.spout.api.util.concurrent.OptimisticReadWriteLock;
 /**
  * A store for storing EntityProtocols with fast array based lookup. Each entity
  * entity type will have a protocol store which contains methods for
- * creating the relevant network messages.
+ * creating the relevant network messages.<br>
+ * <br>
+ * Protocols are wrapped in a {@link CachedEntityProtocol}, so that the update
+ * messages for an entity are only created once per tick.
  */
 public class EntityProtocolStore {
 
 	private OptimisticReadWriteLock lock = new OptimisticReadWriteLock();
 	private AtomicReference<EntityProtocol[]> entityProtocols = new AtomicReference<EntityProtocol[]>();
 
+	/**
+	 * Gets the protocol for an id.<br>
+	 * <br>
+	 * The protocol is the {@link CachedEntityProtocol} which wraps the registered protocol, so it
+	 * can't be cast to the registered class. Use {@link #getRegisteredProtocol(int)} to get the
+	 * registered protocol. The update message lists returned by the wrapper are unmodifiable.
+	 *
+	 * @param id the protocol id
+	 * @return the protocol, or null if no protocol is registered for the id
+	 */
 	public EntityProtocol getEntityProtocol(int id) {
 		while (true) {
 			int seq = lock.readLock();
@@ -57,6 +70,20 @@ public class EntityProtocolStore {
 		}
 	}
 
+	/**
+	 * Gets the protocol which was registered for an id, without the caching wrapper
+	 *
+	 * @param id the protocol id
+	 * @return the registered protocol, or null if no protocol is registered for the id
+	 */
+	public EntityProtocol getRegisteredProtocol(int id) {
+		EntityProtocol protocol = getEntityProtocol(id);
+		if (protocol instanceof CachedEntityProtocol) {
+			return ((CachedEntityProtocol) protocol).getProtocol();
+		}
+		return protocol;
+	}
+
 	public void setEntityProtocol(int id, EntityProtocol protocol) {
 		if (id < 0) {
 			throw new IllegalArgumentException("Entity protocols ids must be positive");
@@ -78,6 +105,9 @@ public class EntityProtocolStore {
 				throw new IllegalStateException("Entity protocol id " + id + " used more than once");
 			}
 
+			if (protocol != null && !(protocol instanceof CachedEntityProtocol)) {
+				protocol = new CachedEntityProtocol(protocol);
+			}
 			protocols[id] = protocol;
 		} finally {
 			lock.writeUnlock(seq);
@@ -0,0 +1,52 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * A {@link ChannelProcessor} which can transform data without copying it, such as a stream cipher.<br>
+ * <br>
+ * Decoders using length prefixed framing append received data to a reusable buffer and process the new bytes in place,
+ * instead of passing them through {@link #write(org.jboss.netty.channel.ChannelHandlerContext, ChannelBuffer, ChannelBuffer)}.
+ * Other decoders still use the write methods, so processors should extend {@link CommonInPlaceChannelProcessor}, which implements them using
+ * {@link #process(ChannelBuffer, int, int)}.
+ */
+public interface InPlaceChannelProcessor extends ChannelProcessor {
+
+	/**
+	 * Processes a region of a buffer, replacing the data with the output.<br>
+	 * <br>
+	 * Regions are passed in the order the data was received, and the output must be the same length as the input.
+	 *
+	 * @param buffer the buffer containing the data
+	 * @param index the index of the first byte to process
+	 * @param length the number of bytes to process
+	 */
+	public void process(ChannelBuffer buffer, int index, int length);
+
+}
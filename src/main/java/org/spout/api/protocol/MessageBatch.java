@@ -0,0 +1,81 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A group of messages which are encoded into a single buffer and written to the channel together.<br>
+ * <br>
+ * Batches are created by the {@link OutboundBatchHandler} and encoded by the {@link CommonEncoder}.
+ */
+public final class MessageBatch {
+	private final List<Message> messages;
+	private Throwable[] failures = null;
+
+	public MessageBatch(List<Message> messages) {
+		this.messages = Collections.unmodifiableList(messages);
+	}
+
+	/**
+	 * Gets the messages in the batch, in the order they were sent
+	 *
+	 * @return the messages
+	 */
+	public List<Message> getMessages() {
+		return messages;
+	}
+
+	/**
+	 * Records that a message in the batch could not be encoded, so it was left out of the written buffer
+	 *
+	 * @param index the index of the message
+	 * @param cause the reason the message was not encoded
+	 */
+	synchronized void setFailure(int index, Throwable cause) {
+		if (failures == null) {
+			failures = new Throwable[messages.size()];
+		}
+		failures[index] = cause;
+	}
+
+	/**
+	 * Gets the reason a message in the batch was not written
+	 *
+	 * @param index the index of the message
+	 * @return the reason the message could not be encoded, or null if it was encoded
+	 */
+	public synchronized Throwable getFailure(int index) {
+		return failures == null ? null : failures[index];
+	}
+
+	@Override
+	public String toString() {
+		return "MessageBatch{messages=" + messages.size() + "}";
+	}
+}
@@ -68,6 +68,34 @@ public abstract class MessageCodec<T extends Message> {
 		return null;
 	}
 
+	/**
+	 * Gets an estimate of the number of bytes the message will be encoded to.<br>
+	 * <br>
+	 * Codecs which return an estimate are encoded into a single pre-sized buffer using {@link #encode(boolean, Message, ChannelBuffer)}.
+	 * The estimate does not have to be exact, as the buffer will grow if it is too small.
+	 *
+	 * @param upstream true if the message is being sent to the server
+	 * @param message the message
+	 * @return the estimated size, or -1 if the codec does not support encoding into an existing buffer
+	 */
+	public int getEncodedSize(boolean upstream, T message) {
+		return -1;
+	}
+
+	/**
+	 * Encodes a message by writing it to the end of an existing buffer.<br>
+	 * <br>
+	 * The default implementation copies the buffer returned by {@link #encode(boolean, Message)}, and should be overridden by codecs which return an estimate from {@link #getEncodedSize(boolean, Message)}.
+	 *
+	 * @param upstream true if the message is being sent to the server
+	 * @param message the message
+	 * @param buffer the buffer to write to
+	 * @throws IOException
+	 */
+	public void encode(boolean upstream, T message, ChannelBuffer buffer) throws IOException {
+		buffer.writeBytes(encode(upstream, message));
+	}
+
 	public ChannelBuffer encodeToClient(T message) throws IOException {
 		return encode(message);
 	}
@@ -27,7 +27,21 @@
 package org.spout.api.protocol;
 
 public abstract class MessageHandler<T extends Message> {
-	
+	/**
+	 * Gets if this handler can safely handle messages on any thread.<br>
+	 * <br>
+	 * Messages for thread-safe handlers are handled as soon as they are received, by the network thread or the executor
+	 * given to the {@link CommonPipelineFactory}, rather than being passed to {@link Session#messageReceived(boolean, Message)}.
+	 * They may be handled before messages received earlier which are still waiting for the main thread.<br>
+	 * <br>
+	 * Handlers which do not access world or entity state, such as chat, keep alive or plugin message handlers, should return true.
+	 *
+	 * @return true if the handler is thread-safe
+	 */
+	public boolean isThreadSafe() {
+		return false;
+	}
+
 	/**
 	 * Handles a message. If the message is a one way method, then this method can be overriden.
 	 *
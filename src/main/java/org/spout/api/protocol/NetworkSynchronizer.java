@@ -28,15 +28,21 @@ package org.spout.api.protocol;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.set.hash.TLongHashSet;
+
 import org.spout.api.Spout;
 import org.spout.api.entity.Entity;
 import org.spout.api.entity.Player;
@@ -57,6 +63,9 @@ import org.spout.api.protocol.reposition.NullRepositionManager;
 import org.spout.api.protocol.reposition.RepositionManager;
 import org.spout.api.scheduler.TickStage;
 import org.spout.api.util.OutwardIterator;
+import org.spout.api.util.hashing.Int21TripleHashed;
+import org.spout.api.util.map.concurrent.TSyncIntObjectHashMap;
+import org.spout.api.util.set.TLongLinkedHashSet;
 import org.spout.api.util.set.concurrent.TSyncIntHashSet;
 
 public abstract class NetworkSynchronizer {
@@ -65,20 +74,25 @@ public abstract class NetworkSynchronizer {
 	protected final AtomicReference<Protocol> protocol = new AtomicReference<Protocol>(null);
 
 	private final static int CHUNKS_PER_TICK = 20;
+	private final static int MAX_CHUNKS_PER_TICK = 4 * CHUNKS_PER_TICK;
 
 	private int viewDistance;
 	private final int blockMinimumViewDistance;
 
 	private Point lastChunkCheck =  Point.invalid;
 
-	// Base points used so as not to load chunks unnecessarily
-	private final Set<Point> chunkInitQueue = new LinkedHashSet<Point>();
-	private final Set<Point> priorityChunkSendQueue = new LinkedHashSet<Point>();
-	private final Set<Point> chunkSendQueue = new LinkedHashSet<Point>();
-	private final Set<Point> chunkFreeQueue = new LinkedHashSet<Point>();
+	// Chunk coordinates packed using Int21TripleHashed, used so as not to load chunks unnecessarily
+	private final TLongLinkedHashSet chunkInitQueue = new TLongLinkedHashSet();
+	private final TLongLinkedHashSet priorityChunkSendQueue = new TLongLinkedHashSet();
+	private final TLongLinkedHashSet chunkSendQueue = new TLongLinkedHashSet();
+	private final TLongLinkedHashSet chunkFreeQueue = new TLongLinkedHashSet();
+	// The world of the chunks in the init and send queues
+	private World queueWorld = null;
 
-	private final Set<Point> initializedChunks = new LinkedHashSet<Point>();
-	private final Set<Point> activeChunks = new LinkedHashSet<Point>();
+	private final TLongLinkedHashSet initializedChunks = new TLongLinkedHashSet();
+	private final TLongLinkedHashSet activeChunks = new TLongLinkedHashSet();
+	// The world of the initialized, active and freed chunks
+	private World chunkWorld = null;
 
 	private boolean removed = false;
 	private boolean first = true;
@@ -88,7 +102,19 @@ public abstract class NetworkSynchronizer {
 	private Point lastPosition = null;
 	private Point holdingPosition = null;
 	private final LinkedHashSet<Chunk> observed = new LinkedHashSet<Chunk>();
-	private final Set<Point> chunksToObserve = new LinkedHashSet<Point>();
+	private final TLongLinkedHashSet chunksToObserve = new TLongLinkedHashSet();
+	private final OutwardIterator viewIterator = new OutwardIterator();
+	// Initialized chunks outside the view volume which were kept because they are close to the holding position
+	private final TLongLinkedHashSet heldChunks = new TLongLinkedHashSet();
+	private boolean incrementalViewUpdates;
+	private final boolean pointViewVolume;
+	private boolean lastCheckValid = false;
+	private int lastCheckX;
+	private int lastCheckY;
+	private int lastCheckZ;
+	private int lastCheckViewDistance;
+	private final ChunkKeyList initScratch = new ChunkKeyList();
+	private final ChunkKeyList sendScratch = new ChunkKeyList();
 	private final Map<Class<? extends ProtocolEvent>, ProtocolEventExecutor> protocolEventMapping = new HashMap<Class<? extends ProtocolEvent>, ProtocolEventExecutor>();
 	
 	private final AtomicReference<RepositionManager> rm = new AtomicReference<RepositionManager>(NullRepositionManager.getInstance());
@@ -98,6 +124,12 @@ public abstract class NetworkSynchronizer {
 	
 	protected int tickCounter = 0;
 
+	// Pairs of squared distance and update interval, sorted by distance
+	private volatile long[] entityUpdateTiers = new long[0];
+	private final Object entityUpdateTiersLock = new Object();
+	// The transforms last sent to the client for entities updated less often than every tick
+	private final TSyncIntObjectHashMap<Transform> tieredTransforms = new TSyncIntObjectHashMap<Transform>();
+
 	public NetworkSynchronizer(Session session, int minViewDistance) {
 		this.session = session;
 		player = session.getPlayer();
@@ -109,6 +141,49 @@ public abstract class NetworkSynchronizer {
 		}
 
 		blockMinimumViewDistance = minViewDistance * Chunk.BLOCKS.SIZE;
+		incrementalViewUpdates = !overridesViewVolume(getClass());
+		pointViewVolume = overridesPointViewVolume(getClass());
+	}
+
+	/**
+	 * Checks if a synchronizer class changes the shape of the view volume.  The incremental view update assumes the default shape.
+	 */
+	private static boolean overridesViewVolume(Class<?> clazz) {
+		try {
+			return clazz.getMethod("getViewableVolume", int.class, int.class, int.class, int.class).getDeclaringClass() != NetworkSynchronizer.class
+					|| clazz.getMethod("isInViewVolume", int.class, int.class, int.class, int.class, int.class, int.class, int.class).getDeclaringClass() != NetworkSynchronizer.class
+					|| overridesPointViewVolume(clazz);
+		} catch (NoSuchMethodException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Checks if a synchronizer class overrides the deprecated Point based view volume test
+	 */
+	private static boolean overridesPointViewVolume(Class<?> clazz) {
+		try {
+			return clazz.getMethod("isInViewVolume", Point.class, Point.class, int.class).getDeclaringClass() != NetworkSynchronizer.class;
+		} catch (NoSuchMethodException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Sets if the chunk queues are updated incrementally when the player moves.<br>
+	 * <br>
+	 * When enabled, only the chunks entering and leaving the view volume are checked, rather than the whole view volume.  
+	 * It is enabled by default, unless the synchronizer overrides the shape of the view volume.
+	 * 
+	 * @param incremental true to enable incremental updates
+	 */
+	public void setIncrementalViewUpdates(boolean incremental) {
+		this.incrementalViewUpdates = incremental;
+		lastCheckValid = false;
+	}
+
+	public boolean isIncrementalViewUpdates() {
+		return incrementalViewUpdates;
 	}
 
 	public void setRespawned() {
@@ -215,18 +290,25 @@ public abstract class NetworkSynchronizer {
 	private void clearObservers() {
 		TickStage.checkStage(TickStage.FINALIZE);
 		chunksToObserve.clear();
-		for (Point p : initializedChunks) {
-			removeObserver(p);
+		TLongIterator i = initializedChunks.iterator();
+		while (i.hasNext()) {
+			removeObserver(chunkWorld, i.next());
 		}
 	}
 
 	/**
 	 * Called just before the pre-snapshot stage.<br>
 	 * This stage can make changes but they should be checked to make sure they
-	 * are non-conflicting.
+	 * are non-conflicting.<br>
+	 * <br>
+	 * Messages batched by the session since the last call are written to the client.
 	 */
 	public void finalizeTick() {
 		tickCounter++;
+		OutboundBatchHandler batchHandler = session.getBatchHandler();
+		if (batchHandler != null) {
+			batchHandler.endTick();
+		}
 		if (removed) {
 			return;
 		}
@@ -260,15 +342,19 @@ public abstract class NetworkSynchronizer {
 		}
 
 		if (!worldChanged) {
-			for (Point p : chunkFreeQueue) {
-				if (initializedChunks.contains(p)) {
-					removeObserver(p);
+			TLongIterator i = chunkFreeQueue.iterator();
+			while (i.hasNext()) {
+				long key = i.next();
+				if (initializedChunks.contains(key)) {
+					removeObserver(chunkWorld, key);
 				}
 			}
 
-			for (Point p : chunkInitQueue) {
-				if (!initializedChunks.contains(p)) {
-					addObserver(p);
+			i = chunkInitQueue.iterator();
+			while (i.hasNext()) {
+				long key = i.next();
+				if (!isInitialized(queueWorld, key)) {
+					addObserver(queueWorld, key);
 				}
 			}
 
@@ -288,18 +374,25 @@ public abstract class NetworkSynchronizer {
 		chunkInitQueue.clear();
 		activeChunks.clear();
 		initializedChunks.clear();
+		heldChunks.clear();
+		queueWorld = null;
+		chunkWorld = null;
+		lastCheckValid = false;
 		lastChunkCheck = Point.invalid;
 		synchronizedEntities.clear();
+		tieredTransforms.clear();
 	}
 	
 	private int chunksSent = 0;
-	private Set<Point> unsendable = new HashSet<Point>();
+	private final ChunkSendRateController sendRate = new ChunkSendRateController(CHUNKS_PER_TICK, 1, MAX_CHUNKS_PER_TICK);
+	private final TLongHashSet unsendable = new TLongHashSet();
 
 	public void preSnapshot() {
 		if (removed) {
 			removed = false;
-			for (Point p : initializedChunks) {
-				freeChunk(p);
+			TLongIterator i = initializedChunks.iterator();
+			while (i.hasNext()) {
+				freeChunk(toBase(chunkWorld, i.next()));
 			}
 		} else {
 			if (worldChanged) {
@@ -311,77 +404,100 @@ public abstract class NetworkSynchronizer {
 				
 				unsendable.clear();
 				
-				for (Point p : chunkFreeQueue) {
-					if (initializedChunks.remove(p)) {
-						freeChunk(p);
-						activeChunks.remove(p);
+				TLongIterator i = chunkFreeQueue.iterator();
+				while (i.hasNext()) {
+					long key = i.next();
+					if (initializedChunks.remove(key)) {
+						freeChunk(toBase(chunkWorld, key));
+						activeChunks.remove(key);
 					}
 				}
 
 				chunkFreeQueue.clear();
 
-				int modifiedChunksPerTick = (!priorityChunkSendQueue.isEmpty() ? 4 : 1) * CHUNKS_PER_TICK;
+				int chunksPerTick = sendRate.update(session.getTrafficMonitor());
+				int modifiedChunksPerTick = (!priorityChunkSendQueue.isEmpty() ? 4 : 1) * chunksPerTick;
 				chunksSent = Math.max(0, chunksSent - modifiedChunksPerTick);
 
-				for (Point p : chunkInitQueue) {
-					if (initializedChunks.add(p)) {
-						initChunk(p);
+				if (initializedChunks.isEmpty() && activeChunks.isEmpty()) {
+					chunkWorld = queueWorld;
+				}
+				i = chunkInitQueue.iterator();
+				while (i.hasNext()) {
+					long key = i.next();
+					if (initializedChunks.add(key)) {
+						initChunk(toBase(queueWorld, key));
 					}
 				}
 
 				chunkInitQueue.clear();
-				
-				Iterator<Point> i;
-				
-				i = priorityChunkSendQueue.iterator();
-				while (i.hasNext() && chunksSent < CHUNKS_PER_TICK) {
-					Point p = i.next();
-					i = attemptSendChunk(i, priorityChunkSendQueue, p, unsendable);
-				}
-				
-				if (!priorityChunkSendQueue.isEmpty()) {
-					return;
-				}
 
-				if (teleported && !player.getScene().isTransformDirty()) {
-					sendPosition(player.getScene().getPosition(), player.getScene().getRotation());
-					teleported = false;
-				}
+				int debt = chunksSent;
+				sendChunks(chunksPerTick);
+				sendRate.chunksSent(chunksSent - debt, chunksSent >= chunksPerTick);
+			}
+		}
 
-				boolean tickTimeRemaining = Spout.getScheduler().getRemainingTickTime() > 0;
+	}
 
-				i = chunkSendQueue.iterator();
-				while (i.hasNext() && chunksSent < CHUNKS_PER_TICK && tickTimeRemaining) {
-					Point p = i.next();
-					i = attemptSendChunk(i, chunkSendQueue, p, unsendable);
-					tickTimeRemaining = Spout.getScheduler().getRemainingTickTime() > 0;
-				}
-			}
+	private void sendChunks(int chunksPerTick) {
+		TLongIterator i = priorityChunkSendQueue.iterator();
+		while (i.hasNext() && chunksSent < chunksPerTick) {
+			long key = i.next();
+			i = attemptSendChunk(i, priorityChunkSendQueue, key, unsendable);
+		}
+
+		if (!priorityChunkSendQueue.isEmpty()) {
+			return;
 		}
 
+		if (teleported && !player.getScene().isTransformDirty()) {
+			sendPosition(player.getScene().getPosition(), player.getScene().getRotation());
+			teleported = false;
+		}
+
+		boolean tickTimeRemaining = Spout.getScheduler().getRemainingTickTime() > 0;
+
+		i = chunkSendQueue.iterator();
+		while (i.hasNext() && chunksSent < chunksPerTick && tickTimeRemaining) {
+			long key = i.next();
+			i = attemptSendChunk(i, chunkSendQueue, key, unsendable);
+			tickTimeRemaining = Spout.getScheduler().getRemainingTickTime() > 0;
+		}
+	}
+
+	/**
+	 * Gets the controller which sets the number of chunks sent to the player each tick.<br>
+	 * <br>
+	 * The controller also exposes metrics about the connection's congestion and the chunks sent.
+	 *
+	 * @return the send rate controller
+	 */
+	public ChunkSendRateController getSendRateController() {
+		return sendRate;
 	}
 	
 	protected boolean canSendChunk(Chunk c) {
 		return c.canSend();
 	}
 
-	private Iterator<Point> attemptSendChunk(Iterator<Point> i, Iterable<Point> queue, Point p, Set<Point> unsendable) {
-		Chunk c = p.getWorld().getChunkFromBlock(p, LoadOption.LOAD_ONLY);
+	private TLongIterator attemptSendChunk(TLongIterator i, TLongLinkedHashSet queue, long key, TLongHashSet unsendable) {
+		Chunk c = getChunk(queueWorld, key, LoadOption.LOAD_ONLY);
 		if (c == null) {
-			unsendable.add(p);
+			unsendable.add(key);
 			return i;
 		}
-		if (unsendable.contains(p)) {
+		if (unsendable.contains(key)) {
 			return i;
 		}
 		if (canSendChunk(c)) {
 			Collection<Chunk> sent = sendChunk(c, true);
-			activeChunks.add(c.getBase());
+			activeChunks.add(chunkKey(c));
 			i.remove();
 			if (sent != null) {
 				boolean updated = false;
 				for (Chunk s : sent) {
-					Point base = s.getBase();
+					long base = chunkKey(s);
 					boolean removed = priorityChunkSendQueue.remove(base);
 					removed |= chunkSendQueue.remove(base);
 					if (removed) {
@@ -399,19 +515,19 @@ public abstract class NetworkSynchronizer {
 			chunksSent++;
 
 		} else {
-			unsendable.add(p);
+			unsendable.add(key);
 		}
 		return i;
 	}
 
 	private void checkObserverUpdateQueue() {
-		Iterator<Point> i = chunksToObserve.iterator();
+		TLongIterator i = chunksToObserve.iterator();
 		while (i.hasNext()) {
-			Point p = i.next();
-			if (!chunkInitQueue.contains(p) && !this.initializedChunks.contains(p)) {
+			long key = i.next();
+			if (!chunkInitQueue.contains(key) && !isInitialized(queueWorld, key)) {
 				i.remove();
 			} else {
-				Chunk c = p.getWorld().getChunkFromBlock(p, LoadOption.NO_LOAD);
+				Chunk c = getChunk(queueWorld, key, LoadOption.NO_LOAD);
 				if (c != null) {
 					addObserver(c);
 					i.remove();
@@ -420,12 +536,12 @@ public abstract class NetworkSynchronizer {
 		}
 	}
 
-	private void addObserver(Point p) {
-		Chunk c = p.getWorld().getChunkFromBlock(p, LoadOption.NO_LOAD);
+	private void addObserver(World world, long key) {
+		Chunk c = getChunk(world, key, LoadOption.NO_LOAD);
 		if (c != null) {
 			addObserver(c);
 		} else {
-			chunksToObserve.add(p);
+			chunksToObserve.add(key);
 		}
 	}
 
@@ -434,12 +550,12 @@ public abstract class NetworkSynchronizer {
 		c.refreshObserver(player);
 	}
 
-	private void removeObserver(Point p) {
-		Chunk c = p.getWorld().getChunkFromBlock(p, LoadOption.NO_LOAD);
+	private void removeObserver(World world, long key) {
+		Chunk c = getChunk(world, key, LoadOption.NO_LOAD);
 		if (c != null) {
 			removeObserver(c);
 		}
-		chunksToObserve.remove(p);
+		chunksToObserve.remove(key);
 	}
 
 	private void removeObserver(Chunk c) {
@@ -448,13 +564,6 @@ public abstract class NetworkSynchronizer {
 	}
 
 	private void checkChunkUpdates(Point currentPosition) {
-
-		// Recalculating these
-		priorityChunkSendQueue.clear();
-		chunkSendQueue.clear();
-		chunkFreeQueue.clear();
-		chunkInitQueue.clear();
-
 		World world = currentPosition.getWorld();
 		int bx = (int) currentPosition.getX();
 		int by = (int) currentPosition.getY();
@@ -464,41 +573,238 @@ public abstract class NetworkSynchronizer {
 		int cy = by >> Chunk.BLOCKS.BITS;
 		int cz = bz >> Chunk.BLOCKS.BITS;
 
-		Point playerChunkBase = Chunk.pointToBase(currentPosition);
-		Point playerHoldingChunkBase = holdingPosition == null ? null : Chunk.pointToBase(holdingPosition);
+		int moved = Math.abs(cx - lastCheckX) + Math.abs(cy - lastCheckY) + Math.abs(cz - lastCheckZ);
+		boolean incremental = incrementalViewUpdates && lastCheckValid && viewDistance == lastCheckViewDistance && moved <= viewDistance
+				&& isSameWorld(world, queueWorld) && (initializedChunks.isEmpty() || isSameWorld(world, chunkWorld));
 
-		for (Point p : initializedChunks) {
-			if (!isInViewVolume(p, playerChunkBase, viewDistance)) {
-				if (playerHoldingChunkBase == null || p.getMaxDistance(playerHoldingChunkBase) > blockMinimumViewDistance) {
-					chunkFreeQueue.add(p);
-				}
-			}
+		if (incremental) {
+			updateViewVolume(world, cx, cy, cz, moved);
+		} else {
+			checkViewVolume(world, cx, cy, cz);
 		}
 
-		Iterator<IntVector3> itr = getViewableVolume(cx, cy, cz, viewDistance);
+		lastCheckValid = true;
+		lastCheckX = cx;
+		lastCheckY = cy;
+		lastCheckZ = cz;
+		lastCheckViewDistance = viewDistance;
+	}
+
+	/**
+	 * Recalculates the chunk queues by checking every initialized chunk and every chunk in the view volume
+	 */
+	private void checkViewVolume(World world, int cx, int cy, int cz) {
 
+		// Recalculating these
 		priorityChunkSendQueue.clear();
 		chunkSendQueue.clear();
+		chunkFreeQueue.clear();
+		chunkInitQueue.clear();
+		heldChunks.clear();
+
+		queueWorld = world;
+
+		boolean initializedInWorld = isSameWorld(world, chunkWorld);
+
+		TLongIterator i = initializedChunks.iterator();
+		while (i.hasNext()) {
+			long key = i.next();
+			if (!initializedInWorld || !isInViewVolume(cx, cy, cz, Int21TripleHashed.key1(key), Int21TripleHashed.key2(key), Int21TripleHashed.key3(key), viewDistance)) {
+				freeOrHold(key);
+			}
+		}
+
+		Iterator<IntVector3> itr = getViewableVolume(cx, cy, cz, viewDistance);
 
 		while (itr.hasNext()) {
 			IntVector3 v = itr.next();
-			Point base = new Point(world, v.getX() << Chunk.BLOCKS.BITS, v.getY() << Chunk.BLOCKS.BITS, v.getZ() << Chunk.BLOCKS.BITS);
-			boolean inTargetArea = playerChunkBase.getMaxDistance(base) <= blockMinimumViewDistance;
-			if (!activeChunks.contains(base)) {
-				if (inTargetArea) {
-					priorityChunkSendQueue.add(base);
+			int x = v.getX();
+			int y = v.getY();
+			int z = v.getZ();
+			long key = chunkKey(x, y, z);
+			if (!isActive(world, key)) {
+				if (isInTargetArea(cx, cy, cz, x, y, z)) {
+					priorityChunkSendQueue.add(key);
 				} else {
-					chunkSendQueue.add(base);
+					chunkSendQueue.add(key);
 				}
 			}
-			if (!initializedChunks.contains(base)) {
-				chunkInitQueue.add(base);
+			if (!isInitialized(world, key)) {
+				chunkInitQueue.add(key);
+			}
+		}
+	}
+
+	/**
+	 * Updates the chunk queues after the player moved by the given Manhattan distance, in chunks, since the last check.<br>
+	 * <br>
+	 * Only the shells of the old and new view volumes which can contain chunks entering or leaving the view are walked.  
+	 * The queued chunks which are still in view are kept and reordered by distance from the new position.
+	 */
+	private void updateViewVolume(World world, int cx, int cy, int cz, int moved) {
+		chunkFreeQueue.clear();
+
+		int ox = lastCheckX;
+		int oy = lastCheckY;
+		int oz = lastCheckZ;
+		int shellStart = Math.max(0, viewDistance - moved + 1);
+
+		// Held chunks may be freed if the holding position moved, or may be back in view
+		TLongIterator i = heldChunks.iterator();
+		while (i.hasNext()) {
+			long key = i.next();
+			int x = Int21TripleHashed.key1(key);
+			int y = Int21TripleHashed.key2(key);
+			int z = Int21TripleHashed.key3(key);
+			if (isInViewVolume(cx, cy, cz, x, y, z, viewDistance)) {
+				i.remove();
+			} else if (canFree(x, y, z)) {
+				chunkFreeQueue.add(key);
+				i.remove();
+			}
+		}
+
+		// Chunks leaving the view volume
+		if (moved > 0) {
+			viewIterator.reset(ox, oy, oz, shellStart, viewDistance);
+			while (viewIterator.hasNext()) {
+				IntVector3 v = viewIterator.next();
+				int x = v.getX();
+				int y = v.getY();
+				int z = v.getZ();
+				if (!isInViewVolume(cx, cy, cz, x, y, z, viewDistance)) {
+					long key = chunkKey(x, y, z);
+					if (initializedChunks.contains(key)) {
+						freeOrHold(key);
+					}
+				}
+			}
+		}
+
+		// Chunks which are still queued and still in view
+		initScratch.clear();
+		sendScratch.clear();
+		collectInView(chunkInitQueue, initScratch, cx, cy, cz);
+		collectInView(priorityChunkSendQueue, sendScratch, cx, cy, cz);
+		collectInView(chunkSendQueue, sendScratch, cx, cy, cz);
+
+		// Chunks entering the view volume
+		if (moved > 0) {
+			viewIterator.reset(cx, cy, cz, shellStart, viewDistance);
+			while (viewIterator.hasNext()) {
+				IntVector3 v = viewIterator.next();
+				int x = v.getX();
+				int y = v.getY();
+				int z = v.getZ();
+				if (!isInViewVolume(ox, oy, oz, x, y, z, viewDistance)) {
+					long key = chunkKey(x, y, z);
+					if (!isInitialized(world, key)) {
+						initScratch.add(key);
+					}
+					if (!isActive(world, key)) {
+						sendScratch.add(key);
+					}
+				}
+			}
+		}
+
+		chunkInitQueue.clear();
+		priorityChunkSendQueue.clear();
+		chunkSendQueue.clear();
+
+		initScratch.sortByDistance(cx, cy, cz);
+		for (int j = 0; j < initScratch.size; j++) {
+			chunkInitQueue.add(initScratch.keys[j]);
+		}
+
+		sendScratch.sortByDistance(cx, cy, cz);
+		for (int j = 0; j < sendScratch.size; j++) {
+			long key = sendScratch.keys[j];
+			if (isInTargetArea(cx, cy, cz, Int21TripleHashed.key1(key), Int21TripleHashed.key2(key), Int21TripleHashed.key3(key))) {
+				priorityChunkSendQueue.add(key);
+			} else {
+				chunkSendQueue.add(key);
+			}
+		}
+	}
+
+	/**
+	 * Adds the chunks in the queue which are in the view volume to the list
+	 */
+	private void collectInView(TLongLinkedHashSet queue, ChunkKeyList list, int cx, int cy, int cz) {
+		TLongIterator i = queue.iterator();
+		while (i.hasNext()) {
+			long key = i.next();
+			if (isInViewVolume(cx, cy, cz, Int21TripleHashed.key1(key), Int21TripleHashed.key2(key), Int21TripleHashed.key3(key), viewDistance)) {
+				list.add(key);
 			}
 		}
 	}
+
+	/**
+	 * Adds an initialized chunk outside of the view volume to the free queue, unless it is close to the holding position
+	 */
+	private void freeOrHold(long key) {
+		if (canFree(Int21TripleHashed.key1(key), Int21TripleHashed.key2(key), Int21TripleHashed.key3(key))) {
+			chunkFreeQueue.add(key);
+		} else {
+			heldChunks.add(key);
+		}
+	}
+
+	private boolean canFree(int x, int y, int z) {
+		if (holdingPosition == null || !isSameWorld(holdingPosition.getWorld(), chunkWorld)) {
+			return true;
+		}
+		int hx = (int) holdingPosition.getX() >> Chunk.BLOCKS.BITS;
+		int hy = (int) holdingPosition.getY() >> Chunk.BLOCKS.BITS;
+		int hz = (int) holdingPosition.getZ() >> Chunk.BLOCKS.BITS;
+		return getMaxDistance(hx, hy, hz, x, y, z) << Chunk.BLOCKS.BITS > blockMinimumViewDistance;
+	}
+
+	private boolean isInTargetArea(int cx, int cy, int cz, int x, int y, int z) {
+		return getMaxDistance(cx, cy, cz, x, y, z) << Chunk.BLOCKS.BITS <= blockMinimumViewDistance;
+	}
+
+	private boolean isInitialized(World world, long key) {
+		return initializedChunks.contains(key) && isSameWorld(world, chunkWorld);
+	}
+
+	private boolean isActive(World world, long key) {
+		return activeChunks.contains(key) && isSameWorld(world, chunkWorld);
+	}
+
+	private static boolean isSameWorld(World a, World b) {
+		return a == b || (a != null && a.equals(b));
+	}
+
+	private static int getMaxDistance(int x1, int y1, int z1, int x2, int y2, int z2) {
+		return Math.max(Math.abs(x1 - x2), Math.max(Math.abs(y1 - y2), Math.abs(z1 - z2)));
+	}
+
+	private static long chunkKey(int x, int y, int z) {
+		return Int21TripleHashed.key(x, y, z);
+	}
+
+	private static long chunkKey(Chunk c) {
+		return Int21TripleHashed.key(c.getX(), c.getY(), c.getZ());
+	}
+
+	private static Chunk getChunk(World world, long key, LoadOption loadopt) {
+		return world.getChunk(Int21TripleHashed.key1(key), Int21TripleHashed.key2(key), Int21TripleHashed.key3(key), loadopt);
+	}
+
+	private static Point toBase(World world, long key) {
+		int x = Int21TripleHashed.key1(key) << Chunk.BLOCKS.BITS;
+		int y = Int21TripleHashed.key2(key) << Chunk.BLOCKS.BITS;
+		int z = Int21TripleHashed.key3(key) << Chunk.BLOCKS.BITS;
+		return new Point(world, x, y, z);
+	}
 	
 	/**
-	 * Gets the viewable volume centred on the given chunk coordinates and the given view distance
+	 * Gets the viewable volume centred on the given chunk coordinates and the given view distance.<br>
+	 * <br>
+	 * The default implementation reuses the same iterator for each call, so the iterator is only valid until the next call.
 	 * 
 	 * @param cx
 	 * @param cy
@@ -507,7 +813,8 @@ public abstract class NetworkSynchronizer {
 	 * @return
 	 */
 	public Iterator<IntVector3> getViewableVolume(int cx, int cy, int cz, int viewDistance) {
-		return new OutwardIterator(cx, cy, cz, viewDistance);
+		viewIterator.reset(cx, cy, cz, viewDistance);
+		return viewIterator;
 	}
 	
 	/**
@@ -516,11 +823,36 @@ public abstract class NetworkSynchronizer {
 	 * @param playerChunkBase
 	 * @param testChunkBase
 	 * @return true if in the view volume
+	 * @deprecated use {@link #isInViewVolume(int, int, int, int, int, int, int)}
 	 */
+	@Deprecated
 	public boolean isInViewVolume(Point playerChunkBase, Point testChunkBase, int viewDistance) {
 		return testChunkBase.getManhattanDistance(playerChunkBase) <= (viewDistance << Chunk.BLOCKS.BITS);
 	}
 
+	/**
+	 * Test if a given chunk is in the view volume for a given player chunk.  The chunks must be in the same world.<br>
+	 * <br>
+	 * If a subclass overrides {@link #isInViewVolume(Point, Point, int)}, the default implementation calls that method.
+	 * 
+	 * @param playerX the x coordinate of the player's chunk
+	 * @param playerY the y coordinate of the player's chunk
+	 * @param playerZ the z coordinate of the player's chunk
+	 * @param x the x coordinate of the chunk to test
+	 * @param y the y coordinate of the chunk to test
+	 * @param z the z coordinate of the chunk to test
+	 * @param viewDistance the view distance, in chunks
+	 * @return true if in the view volume
+	 */
+	public boolean isInViewVolume(int playerX, int playerY, int playerZ, int x, int y, int z, int viewDistance) {
+		if (pointViewVolume) {
+			// The chunk being tested is passed first, as the full recalculation always did
+			int bits = Chunk.BLOCKS.BITS;
+			return isInViewVolume(new Point(queueWorld, x << bits, y << bits, z << bits), new Point(queueWorld, playerX << bits, playerY << bits, playerZ << bits), viewDistance);
+		}
+		return Math.abs(x - playerX) + Math.abs(y - playerY) + Math.abs(z - playerZ) <= viewDistance;
+	}
+
 	/**
 	 * Returns a copy of all currently active sent chunks to this player
 	 *
@@ -528,8 +860,14 @@ public abstract class NetworkSynchronizer {
 	 */
 	public Set<Chunk> getActiveChunks() {
 		HashSet<Chunk> chunks = new HashSet<Chunk>();
-		for (Point p : activeChunks) {
-			chunks.add(p.getWorld().getChunkFromBlock(p));
+		World world = chunkWorld;
+		if (world == null) {
+			return chunks;
+		}
+		TLongIterator i = activeChunks.iterator();
+		while (i.hasNext()) {
+			long key = i.next();
+			chunks.add(world.getChunk(Int21TripleHashed.key1(key), Int21TripleHashed.key2(key), Int21TripleHashed.key3(key)));
 		}
 		return chunks;
 	}
@@ -679,6 +1017,9 @@ public abstract class NetworkSynchronizer {
 	/**
 	 * Instructs the client to update the entities state and position<br><br>
 	 *
+	 * Implementations should create update messages using {@link #getEntityUpdateMessages(EntityProtocol, Entity, Transform, boolean)},
+	 * so that distant entities are updated at the configured intervals.
+	 *
 	 * @param e the entity
 	 * @param the live transform (latest) for the entity
 	 * @param spawn is True when the entity just spawned
@@ -690,9 +1031,128 @@ public abstract class NetworkSynchronizer {
 			synchronizedEntities.add(e.getId());
 		} else if (destroy) {
 			synchronizedEntities.remove(e.getId());
+			tieredTransforms.remove(e.getId());
 		}
 	}
 
+	/**
+	 * Sets how often entities at least a distance away from the player are updated.<br>
+	 * <br>
+	 * Entities closer than every tier distance are updated each tick. Setting an interval of 1 removes the tier.
+	 *
+	 * @param distance the distance from the player, in blocks
+	 * @param interval the number of ticks between updates
+	 */
+	public void setEntityUpdateInterval(int distance, int interval) {
+		if (distance < 0 || interval < 1) {
+			throw new IllegalArgumentException("Distance must be positive and interval must be at least 1");
+		}
+		long distanceSquared = (long) distance * distance;
+		synchronized (entityUpdateTiersLock) {
+			long[] old = entityUpdateTiers;
+			long[] tiers = new long[old.length + 2];
+			int j = 0;
+			boolean added = false;
+			for (int i = 0; i < old.length; i += 2) {
+				if (old[i] == distanceSquared) {
+					continue;
+				}
+				if (!added && old[i] > distanceSquared) {
+					j = addTier(tiers, j, distanceSquared, interval);
+					added = true;
+				}
+				tiers[j++] = old[i];
+				tiers[j++] = old[i + 1];
+			}
+			if (!added) {
+				j = addTier(tiers, j, distanceSquared, interval);
+			}
+			entityUpdateTiers = Arrays.copyOf(tiers, j);
+		}
+	}
+
+	private static int addTier(long[] tiers, int j, long distanceSquared, int interval) {
+		if (interval > 1) {
+			tiers[j++] = distanceSquared;
+			tiers[j++] = interval;
+		}
+		return j;
+	}
+
+	/**
+	 * Gets the number of ticks between updates for an entity, based on its distance from the player
+	 *
+	 * @param e the entity
+	 * @param liveTransform the live transform of the entity
+	 * @return the update interval, in ticks
+	 */
+	public int getEntityUpdateInterval(Entity e, Transform liveTransform) {
+		long[] tiers = entityUpdateTiers;
+		if (tiers.length == 0 || player == null) {
+			return 1;
+		}
+		Point position = player.getScene().getPosition();
+		Point entityPosition = liveTransform.getPosition();
+		if (position == null || entityPosition == null || position.getWorld() != entityPosition.getWorld()) {
+			return 1;
+		}
+		double distanceSquared = position.getSquaredDistance(entityPosition);
+		int interval = 1;
+		for (int i = 0; i < tiers.length && tiers[i] <= distanceSquared; i += 2) {
+			interval = (int) tiers[i + 1];
+		}
+		return interval;
+	}
+
+	/**
+	 * Gets if an entity should be updated this tick.<br>
+	 * <br>
+	 * Entities in the same tier are spread over the ticks of the interval using their ids.
+	 *
+	 * @param e the entity
+	 * @param liveTransform the live transform of the entity
+	 * @return true if the entity is due an update
+	 */
+	public boolean isEntityUpdateDue(Entity e, Transform liveTransform) {
+		return isEntityUpdateDue(e, getEntityUpdateInterval(e, liveTransform));
+	}
+
+	private boolean isEntityUpdateDue(Entity e, int interval) {
+		return interval == 1 || ((tickCounter + e.getId()) & Integer.MAX_VALUE) % interval == 0;
+	}
+
+	/**
+	 * Gets the update messages for an entity, if it is due an update this tick.<br>
+	 * <br>
+	 * Entities which are updated less often than every tick are sent forced updates if they moved since their last update, so that movement skipped between updates is not lost.
+	 *
+	 * @param protocol the entity protocol
+	 * @param e the entity
+	 * @param liveTransform the live transform of the entity
+	 * @param force true to send the full state of the entity, even if it is not due an update
+	 * @return the messages, which are empty if the entity is not due an update
+	 */
+	protected List<Message> getEntityUpdateMessages(EntityProtocol protocol, Entity e, Transform liveTransform, boolean force) {
+		int interval = getEntityUpdateInterval(e, liveTransform);
+		if (interval > 1) {
+			if (!force && !isEntityUpdateDue(e, interval)) {
+				return Collections.emptyList();
+			}
+			Transform last = tieredTransforms.get(e.getId());
+			if (force || last == null || !last.equals(liveTransform)) {
+				force = true;
+				tieredTransforms.put(e.getId(), liveTransform.copy());
+			}
+		} else {
+			tieredTransforms.remove(e.getId());
+		}
+		List<Message> messages = protocol.getUpdateMessages(e, liveTransform, rm.get(), force);
+		if (messages == null) {
+			return Collections.emptyList();
+		}
+		return messages;
+	}
+
 	/**
 	 * Sets the protocol associated with this network synchronizer
 	 *
@@ -726,4 +1186,50 @@ public abstract class NetworkSynchronizer {
 			this.rm.set(rm);
 		}
 	}
+
+	/**
+	 * A reusable list of chunk keys, which can be sorted by distance
+	 */
+	private static class ChunkKeyList {
+		private long[] keys = new long[64];
+		private long[] order = new long[64];
+		private long[] sorted = new long[64];
+		private int size = 0;
+
+		public void add(long key) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size << 1);
+			}
+			keys[size++] = key;
+		}
+
+		public void clear() {
+			size = 0;
+		}
+
+		/**
+		 * Sorts the keys by Manhattan distance from the given chunk.  Chunks at the same distance keep their order.
+		 */
+		public void sortByDistance(int cx, int cy, int cz) {
+			if (size <= 1) {
+				return;
+			}
+			if (order.length < size) {
+				order = new long[keys.length];
+				sorted = new long[keys.length];
+			}
+			for (int i = 0; i < size; i++) {
+				long key = keys[i];
+				int distance = Math.abs(Int21TripleHashed.key1(key) - cx) + Math.abs(Int21TripleHashed.key2(key) - cy) + Math.abs(Int21TripleHashed.key3(key) - cz);
+				order[i] = ((long) distance << 32) | i;
+			}
+			Arrays.sort(order, 0, size);
+			for (int i = 0; i < size; i++) {
+				sorted[i] = keys[(int) order[i]];
+			}
+			long[] temp = keys;
+			keys = sorted;
+			sorted = temp;
+		}
+	}
 }
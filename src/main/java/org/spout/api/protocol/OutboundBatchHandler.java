@@ -0,0 +1,305 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.LifeCycleAwareChannelHandler;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+
+/**
+ * A {@link SimpleChannelDownstreamHandler} which batches outgoing messages, so that the messages sent during a tick are written to the channel together.<br>
+ * <br>
+ * While batching is enabled, messages are held until {@link #flush()} is called, and then sent on as a single {@link MessageBatch}, which the {@link CommonEncoder} encodes into one buffer.
+ * If a message in a batch cannot be encoded, only the future of that message fails.
+ * Messages of the priority types bypass the batch and are written immediately, so latency sensitive messages such as chat or keep alives are not delayed.<br>
+ * <br>
+ * The handler must be placed after the {@link CommonEncoder} in the pipeline, so that it receives messages before they are encoded.
+ */
+public class OutboundBatchHandler extends SimpleChannelDownstreamHandler implements LifeCycleAwareChannelHandler {
+	/**
+	 * The name the handler is registered under in the pipeline
+	 */
+	public static final String NAME = "batchHandler";
+	/**
+	 * The default number of messages after which a batch is flushed, even if the tick has not ended
+	 */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 512;
+
+	private volatile ChannelHandlerContext ctx;
+	private volatile boolean batching = false;
+	private final int maxBatchSize;
+	private final Set<Class<? extends Message>> priorityTypes = new CopyOnWriteArraySet<Class<? extends Message>>();
+
+	private List<Message> messages = new ArrayList<Message>();
+	private List<ChannelFuture> futures = new ArrayList<ChannelFuture>();
+
+	private final AtomicInteger writes = new AtomicInteger(0);
+	private final AtomicInteger batchedMessages = new AtomicInteger(0);
+	private volatile int lastFlushWrites = 0;
+	private volatile int lastFlushMessages = 0;
+	private final AtomicLong totalWrites = new AtomicLong(0);
+	private final AtomicLong totalBatches = new AtomicLong(0);
+
+	public OutboundBatchHandler() {
+		this(DEFAULT_MAX_BATCH_SIZE);
+	}
+
+	/**
+	 * Creates a new batch handler
+	 *
+	 * @param maxBatchSize the number of messages after which a batch is flushed early
+	 */
+	public OutboundBatchHandler(int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("The max batch size must be at least 1");
+		}
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		Object message = e.getMessage();
+		if (batching && message instanceof Message && !(message instanceof ProcessorSetupMessage) && !priorityTypes.contains(message.getClass())) {
+			boolean full;
+			synchronized (this) {
+				messages.add((Message) message);
+				futures.add(e.getFuture());
+				full = messages.size() >= maxBatchSize;
+			}
+			if (full) {
+				flush();
+			}
+			return;
+		}
+		if (message instanceof ProcessorSetupMessage) {
+			// Held messages must be written using the old processor
+			flush();
+		}
+		writes.incrementAndGet();
+		totalWrites.incrementAndGet();
+		super.writeRequested(ctx, e);
+	}
+
+	@Override
+	public void disconnectRequested(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		flush();
+		super.disconnectRequested(ctx, e);
+	}
+
+	@Override
+	public void closeRequested(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		flush();
+		super.closeRequested(ctx, e);
+	}
+
+	/**
+	 * Writes all held messages to the channel as a single batch.<br>
+	 * <br>
+	 * Batches are also flushed early when they are full, when the processors are changed and when the channel is disconnected.
+	 */
+	public void flush() {
+		ChannelHandlerContext ctx = this.ctx;
+		if (ctx == null) {
+			return;
+		}
+		synchronized (this) {
+			int size = messages.size();
+			if (size > 0) {
+				final List<ChannelFuture> batchFutures = futures;
+				final MessageBatch batch = new MessageBatch(messages);
+				messages = new ArrayList<Message>(size);
+				futures = new ArrayList<ChannelFuture>(size);
+
+				ChannelFuture future = Channels.future(ctx.getChannel());
+				future.addListener(new ChannelFutureListener() {
+					@Override
+					public void operationComplete(ChannelFuture future) {
+						for (int i = 0; i < batchFutures.size(); i++) {
+							ChannelFuture f = batchFutures.get(i);
+							Throwable encodeFailure = batch.getFailure(i);
+							if (encodeFailure != null) {
+								f.setFailure(encodeFailure);
+							} else if (future.isSuccess()) {
+								f.setSuccess();
+							} else if (future.isCancelled()) {
+								f.cancel();
+							} else {
+								f.setFailure(future.getCause());
+							}
+						}
+					}
+				});
+				writes.incrementAndGet();
+				totalWrites.incrementAndGet();
+				totalBatches.incrementAndGet();
+				batchedMessages.addAndGet(size);
+				Channels.write(ctx, future, batch);
+			}
+		}
+	}
+
+	/**
+	 * Writes all held messages to the channel and resets the write and message counts for the tick.<br>
+	 * <br>
+	 * This should be called once per tick, at the end of the stages which send messages.
+	 */
+	public void endTick() {
+		flush();
+		lastFlushWrites = writes.getAndSet(0);
+		lastFlushMessages = batchedMessages.getAndSet(0);
+	}
+
+	/**
+	 * Enables or disables batching.<br>
+	 * <br>
+	 * Disabling batching flushes the held messages.
+	 *
+	 * @param batching true to batch messages until the next flush
+	 */
+	public void setBatching(boolean batching) {
+		this.batching = batching;
+		if (!batching) {
+			flush();
+		}
+	}
+
+	public boolean isBatching() {
+		return batching;
+	}
+
+	/**
+	 * Sets if messages of a type are written immediately instead of being batched
+	 *
+	 * @param type the message type
+	 * @param priority true to write messages of the type immediately
+	 */
+	public void setPriority(Class<? extends Message> type, boolean priority) {
+		if (priority) {
+			priorityTypes.add(type);
+		} else {
+			priorityTypes.remove(type);
+		}
+	}
+
+	public boolean isPriority(Class<? extends Message> type) {
+		return priorityTypes.contains(type);
+	}
+
+	/**
+	 * Gets the number of messages waiting for the next flush
+	 *
+	 * @return the number of held messages
+	 */
+	public synchronized int getPendingMessages() {
+		return messages.size();
+	}
+
+	/**
+	 * Gets the number of writes made to the channel during the last tick, counting each batch as one write.<br>
+	 * <br>
+	 * This includes the batches flushed early during the tick.
+	 *
+	 * @return the number of writes in the last tick
+	 */
+	public int getWritesLastTick() {
+		return lastFlushWrites;
+	}
+
+	/**
+	 * Gets the number of messages which were batched during the last tick
+	 *
+	 * @return the number of batched messages in the last tick
+	 */
+	public int getBatchedMessagesLastTick() {
+		return lastFlushMessages;
+	}
+
+	/**
+	 * Gets the total number of writes made to the channel, counting each batch as one write
+	 *
+	 * @return the number of writes
+	 */
+	public long getTotalWrites() {
+		return totalWrites.get();
+	}
+
+	/**
+	 * Gets the total number of batches written
+	 *
+	 * @return the number of batches
+	 */
+	public long getTotalBatches() {
+		return totalBatches.get();
+	}
+
+	@Override
+	public void beforeAdd(ChannelHandlerContext ctx) {
+		this.ctx = ctx;
+	}
+
+	@Override
+	public void afterAdd(ChannelHandlerContext ctx) {
+	}
+
+	@Override
+	public void beforeRemove(ChannelHandlerContext ctx) {
+		flush();
+	}
+
+	@Override
+	public void afterRemove(ChannelHandlerContext ctx) {
+		this.ctx = null;
+	}
+
+	/**
+	 * Gets the batch handler for a channel
+	 *
+	 * @param channel the channel
+	 * @return the handler, or null if the channel's pipeline has no batch handler
+	 */
+	public static OutboundBatchHandler getHandler(Channel channel) {
+		ChannelPipeline pipeline = channel.getPipeline();
+		if (pipeline == null) {
+			return null;
+		}
+		return pipeline.get(OutboundBatchHandler.class);
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+
+/**
+ * A {@link SimpleChannelDownstreamHandler} which measures the outbound traffic of a channel.<br>
+ * <br>
+ * It must be the first handler in the pipeline, so that it sees the encoded buffers as they are handed to the socket.
+ * The number of bytes waiting to be written and the time taken for writes to complete give an estimate of how congested the connection is.
+ */
+public class OutboundTrafficMonitor extends SimpleChannelDownstreamHandler {
+	/**
+	 * The name the monitor is registered under in the pipeline
+	 */
+	public static final String NAME = "trafficMonitor";
+	/**
+	 * The weight of a new write latency sample, as a shift, giving a moving average over roughly 8 writes
+	 */
+	private static final int LATENCY_SHIFT = 3;
+
+	private final AtomicLong pendingBytes = new AtomicLong(0);
+	private final AtomicInteger pendingWrites = new AtomicInteger(0);
+	private final AtomicLong bytesWritten = new AtomicLong(0);
+	private final AtomicLong writesCompleted = new AtomicLong(0);
+	private final AtomicLong writeLatency = new AtomicLong(0);
+
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		Object message = e.getMessage();
+		final int size = message instanceof ChannelBuffer ? ((ChannelBuffer) message).readableBytes() : 0;
+		final long start = System.nanoTime();
+		pendingBytes.addAndGet(size);
+		pendingWrites.incrementAndGet();
+		e.getFuture().addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) {
+				writeComplete(size, System.nanoTime() - start, future.isSuccess());
+			}
+		});
+		super.writeRequested(ctx, e);
+	}
+
+	private void writeComplete(int size, long latency, boolean success) {
+		pendingBytes.addAndGet(-size);
+		pendingWrites.decrementAndGet();
+		if (!success) {
+			return;
+		}
+		bytesWritten.addAndGet(size);
+		writesCompleted.incrementAndGet();
+		while (true) {
+			long old = writeLatency.get();
+			long updated = old + ((latency - old) >> LATENCY_SHIFT);
+			if (writeLatency.compareAndSet(old, updated)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of bytes which have been handed to the channel but not yet written to the socket
+	 *
+	 * @return the number of pending bytes
+	 */
+	public long getPendingBytes() {
+		return pendingBytes.get();
+	}
+
+	/**
+	 * Gets the number of writes which have not yet completed
+	 *
+	 * @return the number of pending writes
+	 */
+	public int getPendingWrites() {
+		return pendingWrites.get();
+	}
+
+	/**
+	 * Gets the total number of bytes successfully written
+	 *
+	 * @return the number of bytes written
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	/**
+	 * Gets the total number of writes which completed successfully
+	 *
+	 * @return the number of writes
+	 */
+	public long getWritesCompleted() {
+		return writesCompleted.get();
+	}
+
+	/**
+	 * Gets the average number of bytes per completed write
+	 *
+	 * @return the average write size, in bytes
+	 */
+	public long getAverageWriteSize() {
+		long writes = writesCompleted.get();
+		return writes == 0 ? 0 : bytesWritten.get() / writes;
+	}
+
+	/**
+	 * Gets the moving average of the time between a write being requested and it completing
+	 *
+	 * @return the average write latency, in nanoseconds
+	 */
+	public long getWriteLatency() {
+		return writeLatency.get();
+	}
+
+	/**
+	 * Gets the traffic monitor for a channel
+	 *
+	 * @param channel the channel
+	 * @return the monitor, or null if the channel's pipeline has no monitor
+	 */
+	public static OutboundTrafficMonitor getMonitor(Channel channel) {
+		ChannelPipeline pipeline = channel.getPipeline();
+		if (pipeline == null) {
+			return null;
+		}
+		return pipeline.get(OutboundTrafficMonitor.class);
+	}
+}
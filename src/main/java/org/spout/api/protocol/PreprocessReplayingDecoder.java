@@ -76,6 +76,10 @@ public abstract class PreprocessReplayingDecoder extends FrameDecoder implements
 			throw new IllegalStateException("Decode attempted when channel was locked");
 		}
 		
+		if (isFramed(c)) {
+			return decodeFramed(ctx, c, buf);
+		}
+
 		frames.clear();
 		Object lastFrame = null;
 		Object newFrame = null;
@@ -111,23 +115,112 @@ public abstract class PreprocessReplayingDecoder extends FrameDecoder implements
 					frames.add(lastFrame);
 					lastFrame = newFrame;
 				}
-				if (newFrame instanceof ProcessorSetupMessage) {
-					ProcessorSetupMessage setupMessage = (ProcessorSetupMessage) newFrame;
-					ChannelProcessor newProcessor = setupMessage.getProcessor();
-					if (newProcessor != null) {
-						setProcessor(newProcessor);
-					}
-					if (setupMessage.isChannelLocking()) {
-						locked.set(true);
-					} else {
-						locked.set(false);
-					}
-					setupMessage.setProcessorHandler(this);
-				}
+				checkForSetupMessage(newFrame);
 				processor = this.processor.get();
 			}
 		} while (newFrame != null && !locked.get());
 
+		compactProcessedBuffer(ctx);
+
+		return getFrames(lastFrame);
+	}
+
+	/**
+	 * Decodes length prefixed frames.<br>
+	 * <br>
+	 * Received data is processed once, as it arrives, and frames are only decoded once they have been fully received.
+	 * The frames are passed to {@link #decodeProcessed(ChannelHandlerContext, Channel, ChannelBuffer)} as slices of the internal buffer, so decoding is never replayed and the data is not copied again.
+	 */
+	private Object decodeFramed(ChannelHandlerContext ctx, Channel c, ChannelBuffer buf) throws Exception {
+		frames.clear();
+		Object lastFrame = null;
+
+		ChannelProcessor processor = this.processor.get();
+
+		while (!locked.get()) {
+			ChannelBuffer liveBuffer;
+			if (processor == null) {
+				liveBuffer = buf;
+			} else {
+				if (buf.readable()) {
+					process(ctx, processor, buf);
+				}
+				liveBuffer = processedBuffer;
+				if (liveBuffer == null) {
+					break;
+				}
+			}
+
+			int length = getFrameLength(c, liveBuffer);
+			if (length < 0 || liveBuffer.readableBytes() < length) {
+				break;
+			}
+			int start = liveBuffer.readerIndex();
+			ChannelBuffer frame = liveBuffer.slice(start, length);
+			liveBuffer.readerIndex(start + length);
+
+			Object newFrame = decodeProcessed(ctx, c, frame);
+			if (newFrame == frame) {
+				// The internal buffer is reused, so frames passed on must not share it
+				newFrame = frame.copy();
+			}
+			if (newFrame != null) {
+				if (lastFrame != null) {
+					frames.add(lastFrame);
+				}
+				lastFrame = newFrame;
+				checkForSetupMessage(newFrame);
+				processor = this.processor.get();
+			}
+		}
+
+		compactProcessedBuffer(ctx);
+
+		return getFrames(lastFrame);
+	}
+
+	/**
+	 * Appends the received data to the processed buffer, after passing it through the processor
+	 */
+	private void process(ChannelHandlerContext ctx, ChannelProcessor processor, ChannelBuffer buf) {
+		if (processor instanceof InPlaceChannelProcessor) {
+			int length = buf.readableBytes();
+			if (processedBuffer == null || processedBuffer instanceof CompositeChannelBuffer || processedBuffer.writableBytes() < length) {
+				int stored = processedBuffer == null ? 0 : processedBuffer.readableBytes();
+				int oldCapacity = processedBuffer == null ? 0 : processedBuffer.capacity();
+				ChannelBuffer newBuffer = getNewBuffer(ctx, Math.max(capacity, Math.max(stored + length, oldCapacity << 1)));
+				if (stored > 0) {
+					newBuffer.writeBytes(processedBuffer);
+				}
+				processedBuffer = newBuffer;
+			}
+			int index = processedBuffer.writerIndex();
+			processedBuffer.writeBytes(buf);
+			((InPlaceChannelProcessor) processor).process(processedBuffer, index, length);
+		} else if (processedBuffer == null) {
+			processedBuffer = processor.write(ctx, buf);
+		} else {
+			processedBuffer = processor.write(ctx, buf, processedBuffer);
+		}
+	}
+
+	private void checkForSetupMessage(Object frame) {
+		if (frame instanceof ProcessorSetupMessage) {
+			ProcessorSetupMessage setupMessage = (ProcessorSetupMessage) frame;
+			ChannelProcessor newProcessor = setupMessage.getProcessor();
+			if (newProcessor != null) {
+				setProcessor(newProcessor);
+			}
+			if (setupMessage.isChannelLocking()) {
+				locked.set(true);
+			} else {
+				locked.set(false);
+			}
+			setupMessage.setProcessorHandler(this);
+		}
+	}
+
+	private void compactProcessedBuffer(ChannelHandlerContext ctx) {
 		if (processedBuffer != null) {
 			if (processedBuffer instanceof CompositeChannelBuffer || (processedBuffer.capacity() > capacity && processedBuffer.writable())) {
 				ChannelBuffer newBuffer = getNewBuffer(ctx, Math.max(capacity, processedBuffer.readableBytes()));
@@ -140,7 +233,9 @@ public abstract class PreprocessReplayingDecoder extends FrameDecoder implements
 			}
 			processedBuffer.discardReadBytes();
 		}
+	}
 
+	private Object getFrames(Object lastFrame) {
 		if (frames.size() > 0) {
 			frames.add(lastFrame);
 			return frames;
@@ -171,6 +266,30 @@ public abstract class PreprocessReplayingDecoder extends FrameDecoder implements
 	 */
 	protected abstract Object decodeProcessed(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception;
 
+	/**
+	 * Gets if the data received on the channel is split into length prefixed frames.<br>
+	 * <br>
+	 * Framed data is decoded using {@link #getFrameLength(Channel, ChannelBuffer)}, and {@link #decodeProcessed(ChannelHandlerContext, Channel, ChannelBuffer)}
+	 * is only called with complete frames. The buffer passed is a slice of an internal buffer, so decoders must not keep a reference to it.
+	 *
+	 * @param channel the channel
+	 * @return true if the data is framed
+	 */
+	protected boolean isFramed(Channel channel) {
+		return false;
+	}
+
+	/**
+	 * Gets the length of the next frame, without changing the reader index of the buffer
+	 *
+	 * @param channel the channel
+	 * @param buffer the processed data
+	 * @return the length of the frame, or -1 if the length is not yet known
+	 */
+	protected int getFrameLength(Channel channel, ChannelBuffer buffer) {
+		return -1;
+	}
+
 	private static ChannelBuffer getNewBuffer(ChannelHandlerContext ctx, int capacity) {
 		return ctx.getChannel().getConfig().getBufferFactory().getBuffer(capacity);
 	}
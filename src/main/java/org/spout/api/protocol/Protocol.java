@@ -52,6 +52,7 @@ public abstract class Protocol {
 	private final HandlerLookupService handlerLookup;
 	private final String name;
 	private final int defaultPort;
+	private final ProtocolMetrics metrics = new ProtocolMetrics();
 
 	public Protocol(String name, int defaultPort, CodecLookupService codecLookup, HandlerLookupService handlerLookup) {
 		this.codecLookup = codecLookup;
@@ -61,6 +62,15 @@ public abstract class Protocol {
 		this.dynamicPacketLookup = new StringMap(null, new MemoryStore<Integer>(), Integer.MAX_VALUE, Integer.MAX_VALUE, this.name + "ProtocolDynamicPackets");
 	}
 
+	/**
+	 * Gets the metrics recorded for all connections using this Protocol
+	 *
+	 * @return the metrics
+	 */
+	public ProtocolMetrics getMetrics() {
+		return metrics;
+	}
+
 	/**
 	 * Gets the handler lookup service associated with this Protocol
 	 *
@@ -158,6 +168,59 @@ public abstract class Protocol {
 	 */
 	public abstract ChannelBuffer writeHeader(MessageCodec<?> codec, ChannelBuffer data);
 
+	/**
+	 * Gets if every packet starts with a header giving the length of the packet.<br>
+	 * <br>
+	 * Length prefixed packets are only decoded once they have been fully received, so decoding never has to be replayed.
+	 *
+	 * @return true if packets are length prefixed
+	 */
+	public boolean isLengthPrefixed() {
+		return false;
+	}
+
+	/**
+	 * Gets the length of the next packet in the buffer, including the header, without changing the reader index.<br>
+	 * <br>
+	 * This is only called if the protocol is {@link #isLengthPrefixed() length prefixed}.
+	 *
+	 * @param buf The buffer to read from
+	 * @return the length of the packet, or -1 if not enough of the header has been received
+	 */
+	public int getPacketLength(ChannelBuffer buf) {
+		throw new UnsupportedOperationException("Protocol " + name + " is not length prefixed");
+	}
+
+	/**
+	 * Gets the maximum size of a packet header written by this protocol.<br>
+	 * <br>
+	 * Protocols which return a size allow messages to be encoded into a single buffer, with the header written directly in front of the data.
+	 *
+	 * @return the maximum header size, or -1 if unknown
+	 */
+	public int getMaxHeaderSize() {
+		return -1;
+	}
+
+	/**
+	 * Writes a packet header directly in front of the data.<br>
+	 * <br>
+	 * The data is the readable bytes of the buffer, and at least {@link #getMaxHeaderSize()} bytes are available before the reader index.
+	 * The header must end at the reader index, and the reader index must be moved back to the start of the header.<br>
+	 * <br>
+	 * The default implementation copies the header created by {@link #writeHeader(MessageCodec, ChannelBuffer)}.
+	 * Protocols should override it to avoid allocating the separate header buffer.
+	 *
+	 * @param codec The codec the message was written with
+	 * @param buffer The buffer containing the data from the encoded message
+	 */
+	public void writeHeaderInPlace(MessageCodec<?> codec, ChannelBuffer buffer) {
+		ChannelBuffer header = writeHeader(codec, buffer);
+		int start = buffer.readerIndex() - header.readableBytes();
+		buffer.setBytes(start, header, header.readerIndex(), header.readableBytes());
+		buffer.readerIndex(start);
+	}
+
 	/**
 	 * Gets a packet for kicking a player
 	 *
@@ -0,0 +1,286 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+
+/**
+ * Counts the messages, bytes and processing time for each opcode of a protocol.<br>
+ * <br>
+ * Each {@link Protocol} keeps metrics for all of its connections, and each connection keeps metrics for its own session.
+ * Recording only uses atomic additions, so it is safe to call from the network threads without locking.
+ * The counters can be polled at any time using {@link #getSnapshot()} or {@link #dump()}.
+ */
+public final class ProtocolMetrics {
+	/**
+	 * The opcode the messages with an opcode outside of the supported range are recorded under
+	 */
+	public static final int UNKNOWN_OPCODE = -1;
+	/**
+	 * The largest opcode which is recorded separately
+	 */
+	public static final int MAX_OPCODE = 0xFFFF;
+	private static final int PAGE_SHIFT = 6;
+	private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+	// The 8 counters of an opcode fill one cache line
+	private static final int STRIDE = 8;
+	private static final int IN_MESSAGES = 0;
+	private static final int IN_BYTES = 1;
+	private static final int IN_NANOS = 2;
+	private static final int OUT_MESSAGES = 3;
+	private static final int OUT_BYTES = 4;
+	private static final int OUT_NANOS = 5;
+	private static final int DISPATCHED = 6;
+	private static final int DISPATCH_NANOS = 7;
+
+	private final AtomicReferenceArray<AtomicLongArray> pages = new AtomicReferenceArray<AtomicLongArray>((MAX_OPCODE >> PAGE_SHIFT) + 1);
+	private final AtomicLongArray unknown = new AtomicLongArray(STRIDE);
+
+	/**
+	 * Records a decoded message
+	 *
+	 * @param opcode the opcode of the message
+	 * @param bytes the number of bytes the message was decoded from, including the header
+	 * @param nanos the time taken to decode the message, in nanoseconds
+	 */
+	public void recordDecode(int opcode, int bytes, long nanos) {
+		record(opcode, IN_MESSAGES, IN_BYTES, bytes, IN_NANOS, nanos);
+	}
+
+	/**
+	 * Records an encoded message
+	 *
+	 * @param opcode the opcode of the message
+	 * @param bytes the number of bytes the message was encoded to, including the header
+	 * @param nanos the time taken to encode the message, in nanoseconds
+	 */
+	public void recordEncode(int opcode, int bytes, long nanos) {
+		record(opcode, OUT_MESSAGES, OUT_BYTES, bytes, OUT_NANOS, nanos);
+	}
+
+	/**
+	 * Records a received message being passed to its session
+	 *
+	 * @param opcode the opcode of the message
+	 * @param nanos the time taken to dispatch the message, in nanoseconds
+	 */
+	public void recordDispatch(int opcode, long nanos) {
+		AtomicLongArray counters = getCounters(opcode);
+		int offset = getOffset(opcode);
+		counters.incrementAndGet(offset + DISPATCHED);
+		counters.addAndGet(offset + DISPATCH_NANOS, nanos);
+	}
+
+	private void record(int opcode, int messages, int bytes, int byteCount, int nanos, long nanoCount) {
+		AtomicLongArray counters = getCounters(opcode);
+		int offset = getOffset(opcode);
+		counters.incrementAndGet(offset + messages);
+		counters.addAndGet(offset + bytes, byteCount);
+		counters.addAndGet(offset + nanos, nanoCount);
+	}
+
+	private AtomicLongArray getCounters(int opcode) {
+		if (opcode < 0 || opcode > MAX_OPCODE) {
+			return unknown;
+		}
+		int page = opcode >> PAGE_SHIFT;
+		AtomicLongArray counters = pages.get(page);
+		if (counters == null) {
+			pages.compareAndSet(page, null, new AtomicLongArray(STRIDE << PAGE_SHIFT));
+			counters = pages.get(page);
+		}
+		return counters;
+	}
+
+	private static int getOffset(int opcode) {
+		if (opcode < 0 || opcode > MAX_OPCODE) {
+			return 0;
+		}
+		return (opcode & PAGE_MASK) * STRIDE;
+	}
+
+	/**
+	 * Gets the metrics for a single opcode
+	 *
+	 * @param opcode the opcode, or {@link #UNKNOWN_OPCODE}
+	 * @return the metrics
+	 */
+	public OpcodeMetrics getMetrics(int opcode) {
+		if (opcode < 0 || opcode > MAX_OPCODE) {
+			return new OpcodeMetrics(UNKNOWN_OPCODE, unknown, 0);
+		}
+		AtomicLongArray counters = pages.get(opcode >> PAGE_SHIFT);
+		if (counters == null) {
+			return new OpcodeMetrics(opcode, new AtomicLongArray(STRIDE), 0);
+		}
+		return new OpcodeMetrics(opcode, counters, getOffset(opcode));
+	}
+
+	/**
+	 * Gets the metrics for every opcode which has been recorded, ordered by opcode.<br>
+	 * <br>
+	 * Each opcode is read separately while recording continues, so the totals of different opcodes may be from slightly different times.
+	 *
+	 * @return the metrics
+	 */
+	public List<OpcodeMetrics> getSnapshot() {
+		List<OpcodeMetrics> snapshot = new ArrayList<OpcodeMetrics>();
+		OpcodeMetrics unknownMetrics = new OpcodeMetrics(UNKNOWN_OPCODE, unknown, 0);
+		if (!unknownMetrics.isEmpty()) {
+			snapshot.add(unknownMetrics);
+		}
+		for (int page = 0; page < pages.length(); page++) {
+			AtomicLongArray counters = pages.get(page);
+			if (counters == null) {
+				continue;
+			}
+			for (int i = 0; i <= PAGE_MASK; i++) {
+				OpcodeMetrics metrics = new OpcodeMetrics((page << PAGE_SHIFT) | i, counters, i * STRIDE);
+				if (!metrics.isEmpty()) {
+					snapshot.add(metrics);
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Writes the metrics as a table, with the opcodes using the most bandwidth first
+	 *
+	 * @return the table
+	 */
+	public String dump() {
+		List<OpcodeMetrics> snapshot = getSnapshot();
+		Collections.sort(snapshot, new Comparator<OpcodeMetrics>() {
+			@Override
+			public int compare(OpcodeMetrics o1, OpcodeMetrics o2) {
+				long b1 = o1.getInboundBytes() + o1.getOutboundBytes();
+				long b2 = o2.getInboundBytes() + o2.getOutboundBytes();
+				return b1 < b2 ? 1 : b1 > b2 ? -1 : o1.getOpcode() - o2.getOpcode();
+			}
+		});
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%6s %10s %12s %10s %10s %12s %10s %10s %10s%n", "opcode", "in msgs", "in bytes", "decode us", "out msgs", "out bytes", "encode us", "handled", "handle us"));
+		for (OpcodeMetrics m : snapshot) {
+			sb.append(String.format("%6s %10d %12d %10d %10d %12d %10d %10d %10d%n",
+					m.getOpcode() == UNKNOWN_OPCODE ? "?" : "0x" + Integer.toHexString(m.getOpcode()),
+					m.getInboundMessages(), m.getInboundBytes(), TimeUnit.NANOSECONDS.toMicros(m.getDecodeNanos()),
+					m.getOutboundMessages(), m.getOutboundBytes(), TimeUnit.NANOSECONDS.toMicros(m.getEncodeNanos()),
+					m.getDispatchedMessages(), TimeUnit.NANOSECONDS.toMicros(m.getDispatchNanos())));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the session metrics of the connection using the given channel
+	 *
+	 * @param channel the channel
+	 * @return the metrics, or null if the channel has no {@link CommonHandler}
+	 */
+	public static ProtocolMetrics getMetrics(Channel channel) {
+		ChannelPipeline pipeline = channel.getPipeline();
+		if (pipeline == null) {
+			return null;
+		}
+		CommonHandler handler = pipeline.get(CommonHandler.class);
+		return handler == null ? null : handler.getMetrics();
+	}
+
+	/**
+	 * The totals recorded for an opcode at the time they were read
+	 */
+	public static final class OpcodeMetrics {
+		private final int opcode;
+		private final long[] counters = new long[STRIDE];
+
+		private OpcodeMetrics(int opcode, AtomicLongArray source, int offset) {
+			this.opcode = opcode;
+			for (int i = 0; i < STRIDE; i++) {
+				counters[i] = source.get(offset + i);
+			}
+		}
+
+		private boolean isEmpty() {
+			for (int i = 0; i < STRIDE; i++) {
+				if (counters[i] != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public int getOpcode() {
+			return opcode;
+		}
+
+		public long getInboundMessages() {
+			return counters[IN_MESSAGES];
+		}
+
+		public long getInboundBytes() {
+			return counters[IN_BYTES];
+		}
+
+		public long getDecodeNanos() {
+			return counters[IN_NANOS];
+		}
+
+		public long getOutboundMessages() {
+			return counters[OUT_MESSAGES];
+		}
+
+		public long getOutboundBytes() {
+			return counters[OUT_BYTES];
+		}
+
+		public long getEncodeNanos() {
+			return counters[OUT_NANOS];
+		}
+
+		public long getDispatchedMessages() {
+			return counters[DISPATCHED];
+		}
+
+		public long getDispatchNanos() {
+			return counters[DISPATCH_NANOS];
+		}
+
+		@Override
+		public String toString() {
+			return "OpcodeMetrics{opcode=" + opcode + ", in=" + getInboundMessages() + "/" + getInboundBytes() + "B, out=" + getOutboundMessages() + "/" + getOutboundBytes() + "B, dispatched=" + getDispatchedMessages() + "}";
+		}
+	}
+}
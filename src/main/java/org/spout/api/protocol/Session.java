@@ -187,6 +187,37 @@ public interface Session {
 	 */
 	public NetworkSynchronizer getNetworkSynchronizer();
 
+	/**
+	 * Gets the monitor measuring the outbound traffic of the primary channel.<br>
+	 * <br>
+	 * The monitor is normally obtained using {@link OutboundTrafficMonitor#getMonitor(Channel)}.
+	 * Sessions which do not install a monitor in their pipeline should return null, and the chunk send rate is then not adjusted for congestion.
+	 *
+	 * @return the monitor, or null if the traffic is not monitored
+	 */
+	public OutboundTrafficMonitor getTrafficMonitor();
+
+	/**
+	 * Gets the handler which batches the messages sent on the primary channel.<br>
+	 * <br>
+	 * The handler is normally obtained using {@link OutboundBatchHandler#getHandler(Channel)}.
+	 * If null is returned, the {@link NetworkSynchronizer} does not flush batches at the end of the tick, so a session must not return null while its pipeline contains a batching handler.
+	 *
+	 * @return the batch handler, or null if messages are not batched
+	 */
+	public OutboundBatchHandler getBatchHandler();
+
+	/**
+	 * Gets the per opcode metrics recorded for this session.<br>
+	 * <br>
+	 * The metrics are normally obtained using {@link ProtocolMetrics#getMetrics(Channel)}.
+	 * The metrics for all sessions using a protocol are available from {@link Protocol#getMetrics()}.
+	 * Sessions created without a {@link CommonPipelineFactory} may return null.
+	 *
+	 * @return the metrics, or null if they are not recorded
+	 */
+	public ProtocolMetrics getMetrics();
+
 	public enum State {
 		/**
 		 * In the exchange handshake state, the server is waiting for the client
@@ -0,0 +1,234 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.spout.api.util.thread.annotation.MainThreadOnly;
+import org.spout.api.util.thread.annotation.Threadsafe;
+
+/**
+ * A queue of sync tasks which are executed in earliest deadline first order within a time budget.<br>
+ * <br>
+ * A task is due once its due time has been reached, and its deadline is its due time plus the {@link TaskPriority#getMaxDeferred()} of its priority.
+ * Due tasks are executed in order of deadline until the budget for the tick is used up, and the rest are deferred to a later tick.
+ * Tasks which have reached their deadline are always executed, even when the budget is used up, so {@link TaskPriority#CRITICAL} tasks are never deferred.<br>
+ * <br>
+ * Tasks may be added from any thread, but the queue must only be executed by the main thread.
+ */
+public class DeadlineTaskQueue {
+	private static final Logger LOGGER = Logger.getLogger(DeadlineTaskQueue.class.getCanonicalName());
+	private static final Comparator<Entry> DUE_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry o1, Entry o2) {
+			return o1.dueTime < o2.dueTime ? -1 : o1.dueTime > o2.dueTime ? 1 : compareSequence(o1, o2);
+		}
+	};
+	private static final Comparator<Entry> DEADLINE_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry o1, Entry o2) {
+			return o1.deadline < o2.deadline ? -1 : o1.deadline > o2.deadline ? 1 : compareSequence(o1, o2);
+		}
+	};
+	private final AtomicLong sequence = new AtomicLong(0);
+	// The waiting and ready queues are only accessed by the main thread, so the number of tasks is counted separately
+	private final AtomicInteger size = new AtomicInteger(0);
+	private final Queue<Entry> incoming = new ConcurrentLinkedQueue<Entry>();
+	private final PriorityQueue<Entry> waiting = new PriorityQueue<Entry>(16, DUE_ORDER);
+	private final PriorityQueue<Entry> ready = new PriorityQueue<Entry>(16, DEADLINE_ORDER);
+	private final ConcurrentMap<TaskPriority, Counters> counters = new ConcurrentHashMap<TaskPriority, Counters>();
+
+	/**
+	 * Adds a task to the queue
+	 *
+	 * @param owner the owner of the task, or null for the engine
+	 * @param task the task
+	 * @param priority the priority of the task
+	 * @param dueTime the time, in ms, when the task becomes due
+	 */
+	@Threadsafe
+	public void add(Object owner, Runnable task, TaskPriority priority, long dueTime) {
+		if (task == null || priority == null) {
+			throw new NullPointerException("The task and priority may not be null");
+		}
+		incoming.add(new Entry(owner, task, priority, dueTime, sequence.getAndIncrement()));
+		size.incrementAndGet();
+	}
+
+	/**
+	 * Executes the due tasks, using the time remaining in the current tick as the budget
+	 *
+	 * @param scheduler the scheduler
+	 * @return the number of tasks executed
+	 */
+	@MainThreadOnly
+	public int execute(Scheduler scheduler) {
+		return execute(System.currentTimeMillis(), scheduler.getRemainingTickTime());
+	}
+
+	/**
+	 * Executes the due tasks in order of deadline until the budget is used up.  Due tasks which have reached their deadline are executed even when the budget is used up.
+	 *
+	 * @param currentTime the current time, in ms
+	 * @param budget the time available to execute tasks, in ms
+	 * @return the number of tasks executed
+	 */
+	@MainThreadOnly
+	public int execute(long currentTime, long budget) {
+		Entry entry;
+		while ((entry = incoming.poll()) != null) {
+			waiting.add(entry);
+		}
+		while ((entry = waiting.peek()) != null && entry.dueTime <= currentTime) {
+			ready.add(waiting.poll());
+		}
+
+		TickProfiler profiler = TickProfiler.getProfiler();
+		long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, budget));
+		int executed = 0;
+		while ((entry = ready.peek()) != null) {
+			boolean expired = entry.deadline <= currentTime;
+			long start = System.nanoTime();
+			if (!expired && start >= end) {
+				break;
+			}
+			ready.poll();
+			size.decrementAndGet();
+			try {
+				entry.task.run();
+			} catch (Throwable t) {
+				LOGGER.log(Level.SEVERE, "Sync task of " + entry.owner + " threw an exception", t);
+			}
+			profiler.recordTask(entry.owner, System.nanoTime() - start);
+			Counters c = getCounters(entry.priority);
+			c.executed.incrementAndGet();
+			if (expired && entry.deadline > entry.dueTime) {
+				c.expired.incrementAndGet();
+			}
+			executed++;
+		}
+		// Tasks are ordered by deadline, so the tasks left have not reached their deadline
+		for (Entry deferred : ready) {
+			getCounters(deferred.priority).deferred.incrementAndGet();
+		}
+		return executed;
+	}
+
+	/**
+	 * Gets the number of tasks in the queue, including those which are not yet due
+	 *
+	 * @return the number of tasks
+	 */
+	@Threadsafe
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * Gets the number of tasks of a priority which have been executed
+	 *
+	 * @param priority the priority
+	 * @return the number of tasks
+	 */
+	@Threadsafe
+	public long getExecutedCount(TaskPriority priority) {
+		return getCounters(priority).executed.get();
+	}
+
+	/**
+	 * Gets the number of times a due task of a priority has been deferred to a later tick because the budget was used up.  A task is counted once for each tick it is deferred.
+	 *
+	 * @param priority the priority
+	 * @return the number of deferrals
+	 */
+	@Threadsafe
+	public long getDeferredCount(TaskPriority priority) {
+		return getCounters(priority).deferred.get();
+	}
+
+	/**
+	 * Gets the number of tasks of a priority which were deferred until they reached their deadline, and so were executed regardless of the budget.
+	 * Tasks with a maximum deferral of zero are not counted.
+	 *
+	 * @param priority the priority
+	 * @return the number of tasks
+	 */
+	@Threadsafe
+	public long getExpiredCount(TaskPriority priority) {
+		return getCounters(priority).expired.get();
+	}
+
+	private Counters getCounters(TaskPriority priority) {
+		Counters c = counters.get(priority);
+		if (c == null) {
+			c = new Counters();
+			Counters previous = counters.putIfAbsent(priority, c);
+			if (previous != null) {
+				c = previous;
+			}
+		}
+		return c;
+	}
+
+	private static int compareSequence(Entry o1, Entry o2) {
+		return o1.sequence < o2.sequence ? -1 : o1.sequence > o2.sequence ? 1 : 0;
+	}
+
+	private static final class Entry {
+		private final Object owner;
+		private final Runnable task;
+		private final TaskPriority priority;
+		private final long dueTime;
+		private final long deadline;
+		private final long sequence;
+
+		public Entry(Object owner, Runnable task, TaskPriority priority, long dueTime, long sequence) {
+			this.owner = owner;
+			this.task = task;
+			this.priority = priority;
+			this.dueTime = dueTime;
+			this.deadline = dueTime + priority.getMaxDeferred();
+			this.sequence = sequence;
+		}
+	}
+
+	private static final class Counters {
+		private final AtomicLong executed = new AtomicLong(0);
+		private final AtomicLong deferred = new AtomicLong(0);
+		private final AtomicLong expired = new AtomicLong(0);
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.spout.api.util.thread.WorkStealingExecutor;
+
+/**
+ * Runs the region instances of a parallel task on a {@link WorkStealingExecutor}.<br>
+ * <br>
+ * Instances which are {@link SplittableParallelRunnable splittable} are split into their tasks, so that idle threads can steal part of the work of a busy region.
+ */
+public class ParallelRegionExecutor {
+	private final WorkStealingExecutor executor;
+
+	public ParallelRegionExecutor(WorkStealingExecutor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Runs the instances created for each region, and waits for them to complete
+	 *
+	 * @param instances the instances, one per region
+	 * @return the time taken for each region, in nanoseconds, in the same order as the instances
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 * @throws ExecutionException if a task threw an exception
+	 */
+	public long[] execute(List<? extends ParallelRunnable> instances) throws InterruptedException, ExecutionException {
+		List<Runnable> tasks = new ArrayList<Runnable>(instances.size());
+		int[] ends = new int[instances.size()];
+		for (int i = 0; i < ends.length; i++) {
+			ParallelRunnable instance = instances.get(i);
+			List<? extends Runnable> split = null;
+			if (instance instanceof SplittableParallelRunnable) {
+				split = ((SplittableParallelRunnable) instance).split();
+			}
+			if (split == null) {
+				tasks.add(instance);
+			} else {
+				tasks.addAll(split);
+			}
+			ends[i] = tasks.size();
+		}
+
+		long[] times = new long[tasks.size()];
+		executor.invokeAll(tasks, times);
+
+		long[] regionTimes = new long[ends.length];
+		int task = 0;
+		for (int i = 0; i < ends.length; i++) {
+			for (; task < ends[i]; task++) {
+				regionTimes[i] += times[task];
+			}
+		}
+		return regionTimes;
+	}
+}
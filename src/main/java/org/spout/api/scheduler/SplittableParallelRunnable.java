@@ -0,0 +1,47 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.List;
+
+import org.spout.api.geo.cuboid.Region;
+
+/**
+ * A {@link ParallelRunnable} whose work for a region can be split into smaller tasks.<br>
+ * <br>
+ * The tasks of all regions are run by a {@link org.spout.api.util.thread.WorkStealingExecutor}, so the work of a busy region is shared between the threads instead of being run by a single thread.
+ */
+public interface SplittableParallelRunnable extends ParallelRunnable {
+	/**
+	 * Splits the work of this instance into tasks which can run in parallel, such as one task per chunk column of the region.<br>
+	 * <br>
+	 * This is called on the instance created for each region by {@link #newInstance(Region, Task)}, instead of running it.
+	 *
+	 * @return the tasks, or null to run this instance as a single task
+	 */
+	public List<? extends Runnable> split();
+}
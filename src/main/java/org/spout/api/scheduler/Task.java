@@ -75,6 +75,18 @@ public interface Task {
 	 */
 	public Task getChildTask(Region region);
 	
+	/**
+	 * Gets the time taken by the last execution of the task.<br>
+	 * <br>
+	 * The child task of each region of a parallel task reports the time taken for that region,
+	 * including all of the tasks the region was split into by a {@link SplittableParallelRunnable}.
+	 * Comparing the child tasks shows how evenly the work is spread between regions.
+	 * Schedulers which do not time their tasks should return 0.
+	 *
+	 * @return the time in nanoseconds, or 0 if the task has not run
+	 */
+	public long getLastExecutionTime();
+
 	/**
 	 * Returns true if the task is a long lived async task
 	 * 
@@ -69,9 +69,11 @@ public class TaskPriority {
 	}
 	
 	/**
-	 * Gets the maximum time that the task can be deferred.
+	 * Gets the maximum time that the task can be deferred.<br>
+	 * <br>
+	 * This is the time allowed between a task becoming due and its deadline in a {@link DeadlineTaskQueue}.
 	 * 
-	 * @return
+	 * @return the maximum deferral, in ms
 	 */
 	public long getMaxDeferred() {
 		return maxDeferred;
@@ -0,0 +1,434 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.spout.api.chat.ChatArguments;
+import org.spout.api.util.Named;
+import org.spout.api.util.thread.annotation.Threadsafe;
+
+/**
+ * Records the wall time spent in each tick stage, by the tasks of each owner and by the event listeners of each owner.<br>
+ * <br>
+ * The time recorded during a tick is added to a rolling window of the last ticks when the next tick starts, which gives the distribution of the time per tick.
+ * Recording only adds to an atomic counter, so the profiler is cheap enough to leave enabled.<br>
+ * <br>
+ * The stage times are recorded by {@link TickStage#setStage(int)} and {@link TickStage#endStages()}, and the listener times by the {@link org.spout.api.event.SimpleEventManager}.
+ * Schedulers should record the time taken by tasks using {@link #recordTask(Object, long)}.
+ */
+public final class TickProfiler {
+	/**
+	 * The number of ticks in the window used by the profiler of the engine, 5 seconds at 20 ticks per second
+	 */
+	public static final int DEFAULT_WINDOW = 100;
+	private static final TickProfiler profiler = new TickProfiler(DEFAULT_WINDOW);
+	private static final Object ENGINE_OWNER = new Object();
+
+	private final int window;
+	private volatile boolean enabled = true;
+	private final Series tick;
+	private final Series idle;
+	private final Series[] stages = new Series[Integer.SIZE];
+	private final ConcurrentMap<Object, Series> tasks = new ConcurrentHashMap<Object, Series>();
+	private final ConcurrentMap<Object, Series> listeners = new ConcurrentHashMap<Object, Series>();
+
+	public TickProfiler(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("The window must contain at least one tick");
+		}
+		this.window = window;
+		this.tick = new Series("Tick", window);
+		this.idle = new Series("Idle", window);
+		for (int i = 0; i < stages.length; i++) {
+			stages[i] = new Series(TickStage.getStage(1 << i), window);
+		}
+	}
+
+	/**
+	 * Gets the profiler of the engine
+	 *
+	 * @return the profiler
+	 */
+	public static TickProfiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Enables or disables the recording of times.  Times recorded before the profiler was disabled are kept.
+	 *
+	 * @param enabled true to record times
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Threadsafe
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Gets the start time for a measurement
+	 *
+	 * @return the current time in nanoseconds, or 0 if the profiler is disabled
+	 */
+	@Threadsafe
+	public long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records the time spent in a tick stage
+	 *
+	 * @param stage the stage
+	 * @param nanos the time, in nanoseconds
+	 */
+	@Threadsafe
+	public void recordStage(int stage, long nanos) {
+		if (enabled && stage != 0) {
+			stages[Integer.numberOfTrailingZeros(stage)].current.addAndGet(nanos);
+		}
+	}
+
+	/**
+	 * Records the time between the end of the final stage of a tick and the start of the next tick
+	 *
+	 * @param nanos the time, in nanoseconds
+	 */
+	@Threadsafe
+	public void recordIdle(long nanos) {
+		if (enabled) {
+			idle.current.addAndGet(nanos);
+		}
+	}
+
+	/**
+	 * Records the time taken by a task
+	 *
+	 * @param owner the owner of the task, or null for the engine
+	 * @param nanos the time, in nanoseconds
+	 */
+	@Threadsafe
+	public void recordTask(Object owner, long nanos) {
+		if (enabled) {
+			getSeries(tasks, owner).current.addAndGet(nanos);
+		}
+	}
+
+	/**
+	 * Records the time taken by an event listener
+	 *
+	 * @param owner the owner of the listener, or null for the engine
+	 * @param nanos the time, in nanoseconds
+	 */
+	@Threadsafe
+	public void recordListener(Object owner, long nanos) {
+		if (enabled) {
+			getSeries(listeners, owner).current.addAndGet(nanos);
+		}
+	}
+
+	private Series getSeries(ConcurrentMap<Object, Series> map, Object owner) {
+		if (owner == null) {
+			owner = ENGINE_OWNER;
+		}
+		Series series = map.get(owner);
+		if (series == null) {
+			series = new Series(getName(owner), window);
+			Series previous = map.putIfAbsent(owner, series);
+			if (previous != null) {
+				series = previous;
+			}
+		}
+		return series;
+	}
+
+	private static String getName(Object owner) {
+		if (owner == ENGINE_OWNER) {
+			return "Engine";
+		} else if (owner instanceof Named) {
+			return ((Named) owner).getName();
+		}
+		return owner.getClass().getName();
+	}
+
+	/**
+	 * Adds the times recorded during the tick which has ended to the window.<br>
+	 * <br>
+	 * This is called by {@link TickStage#setStage(int)} when a new tick starts.
+	 */
+	public void endTick() {
+		long total = 0;
+		for (Series stage : stages) {
+			total += stage.current.get();
+		}
+		tick.current.set(total);
+		tick.roll();
+		idle.roll();
+		for (Series stage : stages) {
+			stage.roll();
+		}
+		for (Series series : tasks.values()) {
+			series.roll();
+		}
+		for (Series series : listeners.values()) {
+			series.roll();
+		}
+	}
+
+	/**
+	 * Gets the statistics for the whole tick
+	 *
+	 * @return the statistics
+	 */
+	@Threadsafe
+	public Statistics getTickStatistics() {
+		return tick.getStatistics();
+	}
+
+	/**
+	 * Gets the statistics for the idle time between ticks, which is not included in the tick statistics.<br>
+	 * <br>
+	 * The idle time is only recorded if the end of the final stage is marked by {@link TickStage#endStages()}.
+	 *
+	 * @return the statistics
+	 */
+	@Threadsafe
+	public Statistics getIdleStatistics() {
+		return idle.getStatistics();
+	}
+
+	/**
+	 * Gets the statistics for each tick stage, in the order of the stages
+	 *
+	 * @return the statistics
+	 */
+	@Threadsafe
+	public List<Statistics> getStageStatistics() {
+		List<Statistics> statistics = new ArrayList<Statistics>();
+		for (int i = 0; i < stages.length; i++) {
+			if (!TickStage.getStage(1 << i).equals("UNKNOWN")) {
+				statistics.add(stages[i].getStatistics());
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Gets the statistics for the tasks of each owner, with the highest mean time first
+	 *
+	 * @return the statistics
+	 */
+	@Threadsafe
+	public List<Statistics> getTaskStatistics() {
+		return getStatistics(tasks);
+	}
+
+	/**
+	 * Gets the statistics for the event listeners of each owner, with the highest mean time first
+	 *
+	 * @return the statistics
+	 */
+	@Threadsafe
+	public List<Statistics> getListenerStatistics() {
+		return getStatistics(listeners);
+	}
+
+	private static List<Statistics> getStatistics(ConcurrentMap<Object, Series> map) {
+		List<Statistics> statistics = new ArrayList<Statistics>();
+		for (Series series : map.values()) {
+			statistics.add(series.getStatistics());
+		}
+		Collections.sort(statistics, new Comparator<Statistics>() {
+			@Override
+			public int compare(Statistics o1, Statistics o2) {
+				return o1.mean < o2.mean ? 1 : o1.mean > o2.mean ? -1 : o1.name.compareTo(o2.name);
+			}
+		});
+		return statistics;
+	}
+
+	/**
+	 * Gets a summary of the tick, stage, task and listener times, suitable for a {@link org.spout.api.gui.DebugHud}
+	 *
+	 * @param entries the maximum number of task and listener owners to include
+	 * @return the summary
+	 */
+	@Threadsafe
+	public ChatArguments getSummary(int entries) {
+		ChatArguments summary = new ChatArguments();
+		summary.append(tick.getStatistics(), "\n");
+		Statistics idleStatistics = idle.getStatistics();
+		if (idleStatistics.getMax() > 0) {
+			summary.append(idleStatistics, "\n");
+		}
+		for (Statistics stage : getStageStatistics()) {
+			if (stage.getMax() > 0) {
+				summary.append(stage, "\n");
+			}
+		}
+		appendSummary(summary, "Tasks", getTaskStatistics(), entries);
+		appendSummary(summary, "Listeners", getListenerStatistics(), entries);
+		return summary;
+	}
+
+	private static void appendSummary(ChatArguments summary, String title, List<Statistics> statistics, int entries) {
+		if (statistics.isEmpty()) {
+			return;
+		}
+		summary.append(title, ":\n");
+		for (int i = 0; i < statistics.size() && i < entries; i++) {
+			summary.append("  ", statistics.get(i), "\n");
+		}
+	}
+
+	/**
+	 * The time per tick recorded over a window of ticks
+	 */
+	private static final class Series {
+		private final String name;
+		private final AtomicLong current = new AtomicLong(0);
+		private final long[] window;
+		private int next = 0;
+		private int samples = 0;
+
+		public Series(String name, int window) {
+			this.name = name;
+			this.window = new long[window];
+		}
+
+		public synchronized void roll() {
+			window[next] = current.getAndSet(0);
+			next = (next + 1) % window.length;
+			if (samples < window.length) {
+				samples++;
+			}
+		}
+
+		public synchronized Statistics getStatistics() {
+			long[] sorted = new long[samples];
+			long last = 0;
+			if (samples > 0) {
+				last = window[(next + window.length - 1) % window.length];
+				System.arraycopy(window, 0, sorted, 0, samples);
+			}
+			return new Statistics(name, last, sorted);
+		}
+	}
+
+	/**
+	 * The distribution of the time per tick, over the window of the profiler.  All times are in nanoseconds.
+	 */
+	public static final class Statistics {
+		private final String name;
+		private final int samples;
+		private final long last;
+		private final long mean;
+		private final long median;
+		private final long percentile95;
+		private final long max;
+
+		private Statistics(String name, long last, long[] values) {
+			this.name = name;
+			this.samples = values.length;
+			this.last = last;
+			Arrays.sort(values);
+			long total = 0;
+			for (long value : values) {
+				total += value;
+			}
+			this.mean = samples == 0 ? 0 : total / samples;
+			this.median = getPercentile(values, 50);
+			this.percentile95 = getPercentile(values, 95);
+			this.max = samples == 0 ? 0 : values[samples - 1];
+		}
+
+		private static long getPercentile(long[] sorted, int percentile) {
+			if (sorted.length == 0) {
+				return 0;
+			}
+			int index = (sorted.length * percentile + 99) / 100 - 1;
+			return sorted[Math.max(0, index)];
+		}
+
+		/**
+		 * Gets the name of the stage or owner
+		 *
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the number of ticks in the window
+		 *
+		 * @return the number of ticks
+		 */
+		public int getSamples() {
+			return samples;
+		}
+
+		public long getLast() {
+			return last;
+		}
+
+		public long getMean() {
+			return mean;
+		}
+
+		public long getMedian() {
+			return median;
+		}
+
+		public long get95thPercentile() {
+			return percentile95;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: mean %.2fms, p95 %.2fms, max %.2fms", name, toMillis(mean), toMillis(percentile95), toMillis(max));
+		}
+
+		private static double toMillis(long nanos) {
+			return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+		}
+	}
+}
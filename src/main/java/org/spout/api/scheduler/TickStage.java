@@ -169,17 +169,67 @@ public class TickStage {
 	}
 
 	private static int stage = TICKSTART;
+	private static long tick = 0;
+	private static long stageStart = 0;
+	private static boolean stagesEnded = false;
 
 	/**
 	 * Sets the current stage. This is not synchronised, so should only be
-	 * called during the stable period between stages.
+	 * called during the stable period between stages.<br>
+	 * <br>
+	 * Entering the TICKSTART stage starts a new tick.<br>
+	 * <br>
+	 * The time spent in the previous stage is recorded by the {@link TickProfiler}.
 	 *
 	 * @param stage the stage
 	 */
 	public static void setStage(int stage) {
+		TickProfiler profiler = TickProfiler.getProfiler();
+		long now = profiler.start();
+		if (stageStart != 0 && now != 0) {
+			if (stagesEnded) {
+				profiler.recordIdle(now - stageStart);
+			} else {
+				profiler.recordStage(TickStage.stage, now - stageStart);
+			}
+		}
+		stageStart = now;
+		stagesEnded = false;
+		if (stage == TICKSTART) {
+			tick++;
+			profiler.endTick();
+		}
 		TickStage.stage = stage;
 	}
 
+	/**
+	 * Marks the end of the final stage of the tick. This is not synchronised, so should only be
+	 * called during the stable period after the final stage.<br>
+	 * <br>
+	 * The time spent in the final stage is recorded by the {@link TickProfiler}, and the time until the next stage is entered is recorded as idle time.
+	 * If this is not called, the idle time is included in the time of the final stage.<br>
+	 * <br>
+	 * The current stage is not changed.
+	 */
+	public static void endStages() {
+		TickProfiler profiler = TickProfiler.getProfiler();
+		long now = profiler.start();
+		if (stageStart != 0 && now != 0 && !stagesEnded) {
+			profiler.recordStage(stage, now - stageStart);
+			stageStart = now;
+			stagesEnded = true;
+		}
+	}
+
+	/**
+	 * Gets the number of the current tick, which increases each time the TICKSTART stage is entered
+	 *
+	 * @return the tick number
+	 */
+	public static long getTick() {
+		return tick;
+	}
+
 	/**
 	 * Checks if the current stages is one of the valid allowed stages.
 	 *
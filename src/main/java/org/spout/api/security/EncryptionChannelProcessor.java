@@ -27,9 +27,11 @@
 package org.spout.api.security;
 
 import org.bouncycastle.crypto.BufferedBlockCipher;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.spout.api.protocol.CommonChannelProcessor;
+import org.spout.api.protocol.InPlaceChannelProcessor;
 
-public class EncryptionChannelProcessor extends CommonChannelProcessor {
+public class EncryptionChannelProcessor extends CommonChannelProcessor implements InPlaceChannelProcessor {
 	
 	private final BufferedBlockCipher cipher;
 	private final byte[] processed;
@@ -65,6 +67,28 @@ public class EncryptionChannelProcessor extends CommonChannelProcessor {
 		}
 	}
 
-	
-	
+	/**
+	 * Decrypts or encrypts a region of a buffer in place.<br>
+	 * <br>
+	 * The output of the cipher must be the same length as the input, so this requires a cipher with a block size of 1, such as AES in CFB8 mode.
+	 *
+	 * @throws IllegalStateException if the cipher buffered part of the input
+	 */
+	@Override
+	public synchronized void process(ChannelBuffer buffer, int index, int length) {
+		int processedLength;
+		if (buffer.hasArray()) {
+			byte[] array = buffer.array();
+			int offset = buffer.arrayOffset() + index;
+			processedLength = cipher.processBytes(array, offset, length, array, offset);
+		} else {
+			byte[] temp = new byte[length];
+			buffer.getBytes(index, temp);
+			processedLength = cipher.processBytes(temp, 0, length, temp, 0);
+			buffer.setBytes(index, temp);
+		}
+		if (processedLength != length) {
+			throw new IllegalStateException("Cipher output length " + processedLength + " does not match the input length " + length);
+		}
+	}
 }
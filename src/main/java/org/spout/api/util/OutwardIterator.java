@@ -90,6 +90,7 @@ public class OutwardIterator extends IntVector3 implements Iterator<IntVector3>
 		} else if (startDistance > 0) {
 			// reset to start at distance
 			super.setY(y + startDistance - 1);
+			distance = startDistance - 1;
 			first = false;
 		}
 	}
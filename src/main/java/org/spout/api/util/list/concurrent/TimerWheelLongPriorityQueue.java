@@ -0,0 +1,274 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.list.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.spout.api.math.GenericMath;
+
+/**
+ * A {@link ConcurrentLongPriorityQueue} backed by a hierarchical hashed timer wheel.<br>
+ * <br>
+ * The priorities are split into buckets of the queue's resolution, as for the skip list based queue.
+ * The buckets are stored in 8 levels of 256 slots, with each level covering 256 times the range of the level below.
+ * Elements are placed into the lowest level which covers their bucket, and are moved to the levels below as the threshold passes through the range of their slot.
+ * Each element is therefore moved at most once per level, and priorities are never boxed.<br>
+ * <br>
+ * Elements may be added and removed from any thread.
+ * Added elements are first appended to a shared queue, and are placed into the wheel by the next call to {@link #poll(long)}.
+ * Only one thread may poll the queue at a time, and the thresholds passed to {@link #poll(long)} should not decrease.<br>
+ * <br>
+ * Elements added with a priority before the last bucket which was polled are returned with the first bucket returned by the next poll, and are not ordered between themselves.<br>
+ * <br>
+ * As with redirection in the skip list based queue, a removal which happens while the element is being moved between slots may fail to find the element.
+ * Removals have to search a slot which may contain several buckets, so they are slower than additions.
+ */
+public class TimerWheelLongPriorityQueue<T extends LongPrioritized> extends ConcurrentLongPriorityQueue<T> {
+	private static final int SLOT_BITS = 8;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	private static final int LEVELS = Long.SIZE / SLOT_BITS;
+	private static final int WORDS = SLOTS / Long.SIZE;
+
+	private final int keyShift;
+	private final long keyStep;
+	private final ConcurrentLinkedQueue<T> incoming = new ConcurrentLinkedQueue<T>();
+	private final AtomicReferenceArray<Bucket<T>> wheel = new AtomicReferenceArray<Bucket<T>>(LEVELS * SLOTS);
+	/**
+	 * A bit set of the slots which may contain elements, for each level
+	 */
+	private final long[] occupied = new long[LEVELS * WORDS];
+	/**
+	 * The bucket currently being polled, shifted so that it is ordered as an unsigned value
+	 */
+	private volatile long cursor = 0;
+
+	public TimerWheelLongPriorityQueue(long resolution) {
+		super(resolution);
+		if (resolution < 1) {
+			resolution = 1;
+		}
+		long step = GenericMath.roundUpPow2(resolution);
+		while (step > resolution) {
+			step = step >> 1;
+		}
+		this.keyStep = step;
+		this.keyShift = Long.numberOfTrailingZeros(step);
+	}
+
+	@Override
+	public boolean add(T o) {
+		return incoming.add(o);
+	}
+
+	@Override
+	public boolean redirect(T o) {
+		return incoming.add(o);
+	}
+
+	@Override
+	public boolean remove(T o) {
+		if (incoming.remove(o)) {
+			return true;
+		}
+		long u = getBucket(o.getPriority());
+		if (remove(0, getSlot(cursor, 0), o)) {
+			return true;
+		}
+		for (int level = 0; level < LEVELS; level++) {
+			if (remove(level, getSlot(u, level), o)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean remove(int level, int slot, T o) {
+		Bucket<T> bucket = wheel.get(level * SLOTS + slot);
+		return bucket != null && bucket.remove(o);
+	}
+
+	/**
+	 * Polls the queue for entries with a priority before or equal to the given threshold.<br>
+	 * The sub-queue returned may have some entries that occur after the threshold and may not include
+	 * all entries that occur before the threshold.  The method returns null if there are no sub-queues before
+	 * the threshold
+	 *
+	 * @param threshold
+	 * @return
+	 */
+	@Override
+	public Queue<T> poll(long threshold) {
+		T next;
+		while ((next = incoming.poll()) != null) {
+			place(next);
+		}
+		long limit = getBucket(threshold);
+		while (true) {
+			long c = cursor;
+			if (c + Long.MIN_VALUE > limit + Long.MIN_VALUE) {
+				return null;
+			}
+			int slot = getSlot(c, 0);
+			Bucket<T> bucket = wheel.get(slot);
+			if (bucket != null && !bucket.isEmpty()) {
+				return bucket;
+			}
+			clearOccupied(0, slot);
+			if (!advance(c, limit)) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Moves the cursor to the next bucket which may contain elements, if that bucket is not after the limit.
+	 *
+	 * @param c the current cursor
+	 * @param limit the bucket of the threshold
+	 * @return true if the cursor was moved to a bucket which may contain elements
+	 */
+	private boolean advance(long c, long limit) {
+		for (int level = 0; level < LEVELS; level++) {
+			int shift = level * SLOT_BITS;
+			int slot = getNextOccupied(level, getSlot(c, level));
+			if (slot < 0) {
+				continue;
+			}
+			long higher = level + 1 < LEVELS ? c & (-1L << (shift + SLOT_BITS)) : 0;
+			long start = higher | ((long) slot << shift);
+			if (start + Long.MIN_VALUE > limit + Long.MIN_VALUE) {
+				break;
+			}
+			cursor = start;
+			if (level > 0) {
+				clearOccupied(level, slot);
+				Bucket<T> bucket = wheel.get(level * SLOTS + slot);
+				T next;
+				while ((next = bucket.poll()) != null) {
+					place(next);
+				}
+			}
+			return true;
+		}
+		// No elements are stored before the limit, so the cursor can skip to it
+		if (c + Long.MIN_VALUE < limit + Long.MIN_VALUE) {
+			cursor = limit;
+		}
+		return false;
+	}
+
+	private void place(T o) {
+		long c = cursor;
+		long u = getBucket(o.getPriority());
+		if (u + Long.MIN_VALUE <= c + Long.MIN_VALUE) {
+			// Overdue elements are added to the current bucket
+			getBucket(0, getSlot(c, 0), c).add(o);
+			return;
+		}
+		int level = (63 - Long.numberOfLeadingZeros(u ^ c)) / SLOT_BITS;
+		int slot = getSlot(u, level);
+		getBucket(level, slot, u & (-1L << (level * SLOT_BITS))).add(o);
+	}
+
+	private Bucket<T> getBucket(int level, int slot, long start) {
+		Bucket<T> bucket = wheel.get(level * SLOTS + slot);
+		if (bucket == null) {
+			bucket = new Bucket<T>();
+			wheel.set(level * SLOTS + slot, bucket);
+		}
+		int word = level * WORDS + (slot >> 6);
+		if ((occupied[word] & (1L << slot)) == 0) {
+			occupied[word] |= 1L << slot;
+			bucket.priority = (start ^ Long.MIN_VALUE) << keyShift;
+		}
+		return bucket;
+	}
+
+	/**
+	 * Gets the first slot after the given slot which may contain elements
+	 *
+	 * @return the slot, or -1 if there are none
+	 */
+	private int getNextOccupied(int level, int slot) {
+		int from = slot + 1;
+		for (int word = from >> 6; word < WORDS; word++) {
+			long bits = occupied[level * WORDS + word];
+			if (word == from >> 6) {
+				bits &= -1L << from;
+			}
+			if (bits != 0) {
+				return (word << 6) | Long.numberOfTrailingZeros(bits);
+			}
+		}
+		return -1;
+	}
+
+	private void clearOccupied(int level, int slot) {
+		occupied[level * WORDS + (slot >> 6)] &= ~(1L << slot);
+	}
+
+	/**
+	 * Gets the bucket for a priority, ordered as an unsigned value so that the slots of the top level are in order
+	 */
+	private long getBucket(long priority) {
+		return (priority >> keyShift) ^ Long.MIN_VALUE;
+	}
+
+	private static int getSlot(long bucket, int level) {
+		return (int) (bucket >>> (level * SLOT_BITS)) & SLOT_MASK;
+	}
+
+	/**
+	 * This method must be called for every sub-queue that is returned by the poll method.
+	 *
+	 * @param queue the queue that is returned
+	 * @param threshold
+	 * @return true if the threshold was covered by this sub-queue, so no further calls to poll() are required
+	 */
+	@Override
+	public boolean complete(Queue<T> queue, long threshold) {
+		return ((Bucket<T>) queue).priority + keyStep > threshold;
+	}
+
+	@Override
+	public boolean isFullyBelowThreshold(Queue<T> queue, long threshold) {
+		return ((Bucket<T>) queue).priority + keyStep <= threshold;
+	}
+
+	private static class Bucket<T> extends ConcurrentLinkedQueue<T> implements LongPrioritized {
+		private static final long serialVersionUID = 1L;
+		private volatile long priority;
+
+		@Override
+		public long getPriority() {
+			return priority;
+		}
+	}
+}
@@ -31,6 +31,7 @@ import gnu.trove.set.hash.TIntHashSet;
 import org.spout.api.material.source.MaterialSource;
 import org.spout.api.math.IntVector3;
 import org.spout.api.math.Vector3;
+import org.spout.api.util.cuboid.CuboidBlockMaterialBuffer;
 
 /**
  * This store stores block data for each chunk. Each block can either store a
@@ -177,6 +178,30 @@ public interface AtomicBlockStore {
 	 */
 	public boolean compareAndSetBlock(int x, int y, int z, short expectId, short expectData, short newId, short newData);
 
+	/**
+	 * Sets a batch of blocks in a single pass.<br>
+	 * <br>
+	 * Blocks are identified by their index, which is (y << (2 * shift)) + (z << shift) + x, where shift is log2 of the side length of the store.  
+	 * The store is locked once for the batch and blocks which do not change are not marked as dirty.
+	 *
+	 * @param indexes the block indexes
+	 * @param states the new full states, as packed by BlockFullState
+	 * @param count the number of blocks to set
+	 */
+	public void setBlocks(int[] indexes, int[] states, int count);
+
+	/**
+	 * Sets the blocks in the region where a buffer overlaps this store, in a single pass.<br>
+	 * <br>
+	 * The base coordinates give the position of block (0, 0, 0) of this store in the coordinate space of the buffer.
+	 *
+	 * @param buffer the buffer
+	 * @param baseX the x coordinate of the base of this store
+	 * @param baseY the y coordinate of the base of this store
+	 * @param baseZ the z coordinate of the base of this store
+	 */
+	public void setBlocks(CuboidBlockMaterialBuffer buffer, int baseX, int baseY, int baseZ);
+
 	/**
 	 * Gets if the store would benefit from compression.<br>
 	 * <br>
@@ -246,6 +271,7 @@ public interface AtomicBlockStore {
 	/**
 	 * Gets if the dirty array has overflowed since the last reset.<br>
 	 * <br>
+	 * After an overflow, the exact set of dirty blocks is still available from getDirtyPositions().
 	 *
 	 * @return true if there was an overflow
 	 */
@@ -316,6 +342,39 @@ public interface AtomicBlockStore {
 	 * @return
 	 */
 	public int getDirtyNewState(int i);
+
+	/**
+	 * Gets if a block has been marked as dirty since the last reset of the dirty arrays.<br>
+	 * <br>
+	 * Dirty blocks are tracked in a bitmap as well as the dirty arrays, so this remains accurate after the dirty arrays overflow.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @return true if the block is dirty
+	 */
+	public boolean isBlockDirty(int x, int y, int z);
+
+	/**
+	 * Counts the blocks which have been marked as dirty since the last reset of the dirty arrays.<br>
+	 * <br>
+	 * Unlike getDirtyBlocks(), the count does not saturate when the dirty arrays overflow.
+	 *
+	 * @return the number of dirty blocks
+	 */
+	public int countDirtyBlocks();
+
+	/**
+	 * Copies the positions of the blocks which have been marked as dirty since the last reset of the dirty arrays, in index order.<br>
+	 * <br>
+	 * This includes all dirty blocks, even after the dirty arrays overflow.  If the arrays are too short, only the first positions are copied.
+	 *
+	 * @param x the array for the x coordinates
+	 * @param y the array for the y coordinates
+	 * @param z the array for the z coordinates
+	 * @return the total number of dirty blocks
+	 */
+	public int getDirtyPositions(int[] x, int[] y, int[] z);
 	
 	/**
 	 * Gets the width of each entry in the packed array
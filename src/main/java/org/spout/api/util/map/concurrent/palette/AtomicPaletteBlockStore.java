@@ -29,12 +29,14 @@ package org.spout.api.util.map.concurrent.palette;
 import gnu.trove.set.hash.TIntHashSet;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.spout.api.material.Material;
 import org.spout.api.material.block.BlockFullState;
 import org.spout.api.material.source.MaterialSource;
 import org.spout.api.math.IntVector3;
 import org.spout.api.math.Vector3;
+import org.spout.api.util.cuboid.CuboidBlockMaterialBuffer;
 import org.spout.api.util.map.concurrent.AtomicBlockStore;
 
 public class AtomicPaletteBlockStore implements AtomicBlockStore {
@@ -60,6 +62,11 @@ public class AtomicPaletteBlockStore implements AtomicBlockStore {
 	
 	private final AtomicInteger dirtyBlocks = new AtomicInteger(0);
 	
+	/**
+	 * A bitmap of dirty block indexes.  Unlike the dirty arrays, this does not overflow.
+	 */
+	private final AtomicLongArray dirtyBits;
+	
 	public AtomicPaletteBlockStore(int shift, boolean storeState, boolean compress) {
 		this(shift, storeState, compress, 10);
 	}
@@ -76,6 +83,7 @@ public class AtomicPaletteBlockStore implements AtomicBlockStore {
 		store = new AtomicShortIntArray(size);
 		this.length = size;
 		this.storeState = storeState;
+		this.dirtyBits = new AtomicLongArray((size + 63) >> 6);
 		dirtyX = new byte[dirtySize];
 		dirtyY = new byte[dirtySize];
 		dirtyZ = new byte[dirtySize];
@@ -181,6 +189,53 @@ public class AtomicPaletteBlockStore implements AtomicBlockStore {
 		return success;
 	}
 
+	@Override
+	public void setBlocks(int[] indexes, int[] states, int count) {
+		int[] oldStates = new int[count];
+		store.set(indexes, states, oldStates, count);
+		markDirty(indexes, oldStates, states, count);
+	}
+
+	@Override
+	public void setBlocks(CuboidBlockMaterialBuffer buffer, int baseX, int baseY, int baseZ) {
+		Vector3 bufferBase = buffer.getBase();
+		Vector3 bufferSize = buffer.getSize();
+		int bufferX = bufferBase.getFloorX() - baseX;
+		int bufferY = bufferBase.getFloorY() - baseY;
+		int bufferZ = bufferBase.getFloorZ() - baseZ;
+		int sizeX = bufferSize.getFloorX();
+		int sizeZ = bufferSize.getFloorZ();
+		
+		int startX = Math.max(0, bufferX);
+		int startY = Math.max(0, bufferY);
+		int startZ = Math.max(0, bufferZ);
+		int endX = Math.min(side, bufferX + sizeX);
+		int endY = Math.min(side, bufferY + bufferSize.getFloorY());
+		int endZ = Math.min(side, bufferZ + sizeZ);
+		if (startX >= endX || startY >= endY || startZ >= endZ) {
+			return;
+		}
+		
+		short[] ids = buffer.getRawId();
+		short[] data = buffer.getRawData();
+		int count = (endX - startX) * (endY - startY) * (endZ - startZ);
+		int[] indexes = new int[count];
+		int[] states = new int[count];
+		int j = 0;
+		for (int y = startY; y < endY; y++) {
+			for (int z = startZ; z < endZ; z++) {
+				int bufferIndex = ((y - bufferY) * sizeZ + (z - bufferZ)) * sizeX + (startX - bufferX);
+				int index = getIndex(startX, y, z);
+				for (int x = startX; x < endX; x++) {
+					indexes[j] = index++;
+					states[j++] = BlockFullState.getPacked(ids[bufferIndex], data[bufferIndex]);
+					bufferIndex++;
+				}
+			}
+		}
+		setBlocks(indexes, states, count);
+	}
+
 	@Override
 	public boolean needsCompression() {
 		// TODO - needs removal or optimisation
@@ -247,6 +302,11 @@ public class AtomicPaletteBlockStore implements AtomicBlockStore {
 		maxX.set(Integer.MIN_VALUE);
 		maxY.set(Integer.MIN_VALUE);
 		maxZ.set(Integer.MIN_VALUE);
+		for (int i = 0; i < dirtyBits.length(); i++) {
+			if (dirtyBits.get(i) != 0) {
+				dirtyBits.set(i, 0);
+			}
+		}
 		return dirtyBlocks.getAndSet(0) > 0;
 	}
 	
@@ -292,7 +352,45 @@ public class AtomicPaletteBlockStore implements AtomicBlockStore {
 		return newState[i];
 	}
 
+	@Override
+	public boolean isBlockDirty(int x, int y, int z) {
+		int index = getIndex(x, y, z);
+		return (dirtyBits.get(index >> 6) & (1L << (index & 63))) != 0;
+	}
+
+	@Override
+	public int countDirtyBlocks() {
+		int count = 0;
+		for (int i = 0; i < dirtyBits.length(); i++) {
+			count += Long.bitCount(dirtyBits.get(i));
+		}
+		return count;
+	}
+
+	@Override
+	public int getDirtyPositions(int[] x, int[] y, int[] z) {
+		int mask = side - 1;
+		int count = 0;
+		for (int i = 0; i < dirtyBits.length(); i++) {
+			long word = dirtyBits.get(i);
+			while (word != 0) {
+				int index = (i << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				if (count < x.length && count < y.length && count < z.length) {
+					x[count] = index & mask;
+					y[count] = index >> doubleShift;
+					z[count] = (index >> shift) & mask;
+				}
+				count++;
+			}
+		}
+		return count;
+	}
+
 	public void markDirty(int x, int y, int z, int oldState, int newState) {
+		int blockIndex = getIndex(x, y, z);
+		setDirtyBits(blockIndex >> 6, 1L << (blockIndex & 63));
+		
 		setAsMax(maxX, x);
 		setAsMin(minX, x);
 		
@@ -314,6 +412,114 @@ public class AtomicPaletteBlockStore implements AtomicBlockStore {
 		}
 	}
 	
+	/**
+	 * Marks the blocks in a batch which changed as dirty.  The dirty bounds are updated once for the batch.
+	 * 
+	 * @param indexes the block indexes
+	 * @param oldStates the old states
+	 * @param newStates the new states
+	 * @param count the number of blocks in the batch
+	 */
+	private void markDirty(int[] indexes, int[] oldStates, int[] newStates, int count) {
+		int mask = side - 1;
+		int lowX = Integer.MAX_VALUE;
+		int lowY = Integer.MAX_VALUE;
+		int lowZ = Integer.MAX_VALUE;
+		int highX = Integer.MIN_VALUE;
+		int highY = Integer.MIN_VALUE;
+		int highZ = Integer.MIN_VALUE;
+		int changed = 0;
+		int word = -1;
+		long bits = 0;
+		for (int j = 0; j < count; j++) {
+			if (oldStates[j] == newStates[j]) {
+				continue;
+			}
+			int index = indexes[j];
+			if ((index >> 6) != word) {
+				if (bits != 0) {
+					setDirtyBits(word, bits);
+				}
+				word = index >> 6;
+				bits = 0;
+			}
+			bits |= 1L << (index & 63);
+			int x = index & mask;
+			int y = index >> doubleShift;
+			int z = (index >> shift) & mask;
+			lowX = Math.min(lowX, x);
+			lowY = Math.min(lowY, y);
+			lowZ = Math.min(lowZ, z);
+			highX = Math.max(highX, x);
+			highY = Math.max(highY, y);
+			highZ = Math.max(highZ, z);
+			changed++;
+		}
+		if (changed == 0) {
+			return;
+		}
+		setDirtyBits(word, bits);
+		
+		setAsMax(maxX, highX);
+		setAsMin(minX, lowX);
+		
+		setAsMax(maxY, highY);
+		setAsMin(minY, lowY);
+		
+		setAsMax(maxZ, highZ);
+		setAsMin(minZ, lowZ);
+		
+		int dirtyIndex = reserveDirtyIndexes(changed);
+		for (int j = 0; j < count && dirtyIndex < dirtyX.length && dirtyIndex >= 0; j++) {
+			if (oldStates[j] == newStates[j]) {
+				continue;
+			}
+			int index = indexes[j];
+			dirtyX[dirtyIndex] = (byte) (index & mask);
+			dirtyY[dirtyIndex] = (byte) (index >> doubleShift);
+			dirtyZ[dirtyIndex] = (byte) ((index >> shift) & mask);
+			if (this.oldState != null) {
+				this.oldState[dirtyIndex] = oldStates[j];
+				this.newState[dirtyIndex] = newStates[j];
+			}
+			dirtyIndex++;
+		}
+	}
+	
+	/**
+	 * Sets bits in a word of the dirty bitmap
+	 * 
+	 * @param word the word index
+	 * @param bits the bits to set
+	 */
+	private void setDirtyBits(int word, long bits) {
+		long old;
+		while (((old = dirtyBits.get(word)) | bits) != old) {
+			if (dirtyBits.compareAndSet(word, old, old | bits)) {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Reserves a range of entries in the dirty arrays
+	 * 
+	 * @param entries the number of entries
+	 * @return the first entry reserved, or -1 if the dirty arrays have overflowed
+	 */
+	private int reserveDirtyIndexes(int entries) {
+		while (true) {
+			int index = dirtyBlocks.get();
+			if (index > dirtyX.length) {
+				return -1;
+			}
+			int next = Math.min(index + entries, dirtyX.length + 1);
+			if (dirtyBlocks.compareAndSet(index, next)) {
+				return index;
+			}
+		}
+	}
+	
 	public int incrementDirtyIndex() {
 		boolean success = false;
 		int index = -1;
@@ -29,8 +29,7 @@ package org.spout.api.util.map.concurrent.palette;
 import gnu.trove.set.hash.TIntHashSet;
 
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.spout.api.Spout;
 
@@ -51,15 +50,14 @@ public class AtomicShortIntArray {
 	
 	/**
 	 * Locks<br>
-	 * A ReadWrite lock is used to managing locking<br>
-	 * When copying to a new store instance, and updating to new the store reference, all updates must be stopped.  The write lock is used as the resize lock.<br>
-	 * When making changes to the data stored in an array instance, multiple threads can access the array concurrently.  The read lock is used for the update lock.
+	 * When copying to a new store instance, and updating to new the store reference, all updates must be stopped.  The resize lock is held while the store is replaced.<br>
+	 * Updates to the data stored in a store instance do not take any lock.  Writers register with the current store, and the resize lock holder seals the store, 
+	 * which prevents new writers registering and waits for writers in progress to complete.  A writer which finds the store sealed waits for the resize lock to be released 
+	 * and then retries with the new store.  The resize lock holder may write to the sealed store directly.<br>
 	 * Reads to the array are atomic and do not require any locking.
 	 * <br>
 	 */
-	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-	private final Lock resizeLock = lock.writeLock();
-	private final Lock updateLock = lock.readLock();
+	private final ReentrantLock resizeLock = new ReentrantLock();
 	
 	public AtomicShortIntArray(int length) {
 		this.length = length;
@@ -121,29 +119,89 @@ public class AtomicShortIntArray {
 	 */
 	public int set(int i, int newValue) {
 		while (true) {
+			AtomicShortIntBackingArray s = store.get();
+			if (s.enterWrite()) {
+				try {
+					return s.set(i, newValue);
+				} catch (PaletteFullException pfe) {
+				} finally {
+					s.exitWrite();
+				}
+			} else if (!resizeLock.isHeldByCurrentThread()) {
+				awaitResize();
+				continue;
+			}
+			lockStore();
 			try {
-				updateLock.lock();
 				try {
 					return store.get().set(i, newValue);
-				} finally {
-					updateLock.unlock();
+				} catch (PaletteFullException pfe) {
+					expandStore();
 				}
-			} catch (PaletteFullException pfe) {
-				resizeLock.lock();
+			} finally {
+				unlockStore();
+			}
+		}
+	}
+	
+	/**
+	 * Sets a batch of elements.<br>
+	 * <br>
+	 * The store is locked once for the whole batch.  If the palette fills, the store is resized once, 
+	 * so that its palette can hold all the values currently in use and all the remaining values in the batch.
+	 * 
+	 * @param indexes the indexes of the elements to set
+	 * @param values the new values
+	 * @param oldValues an array to store the old values in, or null
+	 * @param count the number of elements to set
+	 */
+	public void set(int[] indexes, int[] values, int[] oldValues, int count) {
+		lockStore();
+		try {
+			AtomicShortIntBackingArray s = store.get();
+			boolean resized = false;
+			int j = 0;
+			while (j < count) {
 				try {
-					try {
-						return store.get().set(i, newValue);
-					} catch (PaletteFullException pfe2) {
-						if (store.get().isPaletteMaxSize()) {
-							store.set(new AtomicShortIntDirectBackingArray(store.get()));
-						} else {
-							store.set(new AtomicShortIntPaletteBackingArray(store.get(), true));
-						}		
+					int oldValue = s.set(indexes[j], values[j]);
+					if (oldValues != null) {
+						oldValues[j] = oldValue;
 					}
-				} finally {
-					resizeLock.unlock();
+					j++;
+				} catch (PaletteFullException pfe) {
+					if (resized) {
+						throw new IllegalStateException("Palette filled after resizing for batch, length " + length + ", paletteSize " + s.getPaletteSize());
+					}
+					resizeStore(values, j, count);
+					s = store.get();
+					resized = true;
 				}
 			}
+		} finally {
+			unlockStore();
+		}
+	}
+	
+	/**
+	 * Replaces the store with a store large enough to hold the values in use and a range of new values.  This must be called while holding the resize lock.
+	 * 
+	 * @param values the array containing the new values
+	 * @param start the index of the first new value
+	 * @param end the index after the last new value
+	 */
+	private void resizeStore(int[] values, int start, int end) {
+		AtomicShortIntBackingArray s = store.get();
+		TIntHashSet inUse = new TIntHashSet();
+		int unique = s.getUnique(inUse);
+		for (int j = start; j < end; j++) {
+			if (inUse.add(values[j])) {
+				unique++;
+			}
+		}
+		if (unique > AtomicShortIntPaletteBackingArray.getAllowedPalette(length)) {
+			replaceStore(new AtomicShortIntDirectBackingArray(s));
+		} else {
+			replaceStore(new AtomicShortIntPaletteBackingArray(s, length, true, false, unique));
 		}
 	}
 	
@@ -153,7 +211,7 @@ public class AtomicShortIntArray {
 	 * @param initial the array containing the new values
 	 */
 	public void set(int[] initial) {
-		resizeLock.lock();
+		lockStore();
 		try {
 			if (initial.length != length) {
 				throw new IllegalArgumentException("Array length mismatch, expected " + length + ", got " + initial.length);
@@ -161,14 +219,14 @@ public class AtomicShortIntArray {
 			int unique = AtomicShortIntArray.getUnique(initial);
 			int allowedPalette = AtomicShortIntPaletteBackingArray.getAllowedPalette(length);
 			if (unique == 1) {
-				store.set(new AtomicShortIntUniformBackingArray(length, initial[0]));
+				replaceStore(new AtomicShortIntUniformBackingArray(length, initial[0]));
 			} else if (unique > allowedPalette) {
-				store.set(new AtomicShortIntDirectBackingArray(length, initial));
+				replaceStore(new AtomicShortIntDirectBackingArray(length, initial));
 			} else {
-				store.set(new AtomicShortIntPaletteBackingArray(length, unique, initial));
+				replaceStore(new AtomicShortIntPaletteBackingArray(length, unique, initial));
 			}
 		} finally {
-			resizeLock.unlock();
+			unlockStore();
 		}
 	}
 	
@@ -179,14 +237,14 @@ public class AtomicShortIntArray {
 	 * @param initial the array containing the new values
 	 */
 	public void uncompressedSet(int[] initial) {
-		resizeLock.lock();
+		lockStore();
 		try {
 			if (initial.length != length) {
 				throw new IllegalArgumentException("Array length mismatch, expected " + length + ", got " + initial.length);
 			}
-			store.set(new AtomicShortIntDirectBackingArray(length, initial));
+			replaceStore(new AtomicShortIntDirectBackingArray(length, initial));
 		} finally {
-			resizeLock.unlock();
+			unlockStore();
 		}
 	}
 	
@@ -198,17 +256,17 @@ public class AtomicShortIntArray {
 	 * @param variableWidthBlockArray the array containing the new values, packed into ints
 	 */
 	public void set(int[] palette, int blockArrayWidth, int[] variableWidthBlockArray) {
-		resizeLock.lock();
+		lockStore();
 		try {
 			if (palette.length == 0) {
-				store.set(new AtomicShortIntDirectBackingArray(length, variableWidthBlockArray));
+				replaceStore(new AtomicShortIntDirectBackingArray(length, variableWidthBlockArray));
 			} else if (palette.length == 1) {
-				store.set(new AtomicShortIntUniformBackingArray(length, palette[0]));
+				replaceStore(new AtomicShortIntUniformBackingArray(length, palette[0]));
 			} else {
-				store.set(new AtomicShortIntPaletteBackingArray(length, palette, blockArrayWidth, variableWidthBlockArray));
+				replaceStore(new AtomicShortIntPaletteBackingArray(length, palette, blockArrayWidth, variableWidthBlockArray));
 			}
 		} finally {
-			resizeLock.unlock();
+			unlockStore();
 		}
 	}
 
@@ -222,24 +280,27 @@ public class AtomicShortIntArray {
 	 */
 	public boolean compareAndSet(int i, int expect, int update) {
 		while (true) {
-			try {
-				updateLock.lock();
+			AtomicShortIntBackingArray s = store.get();
+			if (s.enterWrite()) {
 				try {
-					return store.get().compareAndSet(i, expect, update);
+					return s.compareAndSet(i, expect, update);
+				} catch (PaletteFullException pfe) {
 				} finally {
-					updateLock.unlock();
+					s.exitWrite();
 				}
-			} catch (PaletteFullException pfe) {
-				resizeLock.lock();
+			} else if (!resizeLock.isHeldByCurrentThread()) {
+				awaitResize();
+				continue;
+			}
+			lockStore();
+			try {
 				try {
-					if (store.get().isPaletteMaxSize()) {
-						store.set(new AtomicShortIntDirectBackingArray(store.get()));
-					} else {
-						store.set(new AtomicShortIntPaletteBackingArray(store.get(), true));
-					}
-				} finally {
-					resizeLock.unlock();
+					return store.get().compareAndSet(i, expect, update);
+				} catch (PaletteFullException pfe) {
+					expandStore();
 				}
+			} finally {
+				unlockStore();
 			}
 		}
 	}
@@ -257,7 +318,7 @@ public class AtomicShortIntArray {
 	 * @param set to use to store used ids
 	 */
 	public void compress(TIntHashSet inUseSet) {
-		resizeLock.lock();
+		lockStore();
 		try {
 			AtomicShortIntBackingArray s = store.get();
 			if (s instanceof AtomicShortIntUniformBackingArray) {
@@ -271,13 +332,12 @@ public class AtomicShortIntArray {
 				return;
 			}
 			if (unique == 1) {
-				store.set(new AtomicShortIntUniformBackingArray(s));
+				replaceStore(new AtomicShortIntUniformBackingArray(s));
 			} else {
-				store.set(new AtomicShortIntPaletteBackingArray(s, length, true, false, unique));
+				replaceStore(new AtomicShortIntPaletteBackingArray(s, length, true, false, unique));
 			}
-			s = store.get();
 		} finally {
-			resizeLock.unlock();
+			unlockStore();
 		}
 	}
 	
@@ -331,17 +391,17 @@ public class AtomicShortIntArray {
 	}
 	
 	/**
-	 * Locks the store so that reads and writes are prevented
+	 * Locks the store so that writes by other threads are prevented
 	 */
 	public void lock() {
-		resizeLock.lock();
+		lockStore();
 	}
 	
 	/**
 	 * Unlocks the store
 	 */
 	public void unlock() {
-		resizeLock.unlock();
+		unlockStore();
 	}
 	
 	/**
@@ -350,7 +410,61 @@ public class AtomicShortIntArray {
 	 * @return true on success
 	 */
 	public boolean tryLock() {
-		return resizeLock.tryLock();
+		if (!resizeLock.tryLock()) {
+			return false;
+		}
+		store.get().seal();
+		return true;
+	}
+	
+	/**
+	 * Acquires the resize lock and seals the current store.  When this method returns, no other thread is writing to the store.
+	 */
+	private void lockStore() {
+		resizeLock.lock();
+		store.get().seal();
+	}
+	
+	/**
+	 * Releases the resize lock.  The current store is unsealed when the outermost hold is released.
+	 */
+	private void unlockStore() {
+		if (resizeLock.getHoldCount() == 1) {
+			store.get().unseal();
+		}
+		resizeLock.unlock();
+	}
+	
+	/**
+	 * Replaces the store.  This must be called while holding the resize lock.<br>
+	 * <br>
+	 * The new store is sealed until the resize lock is released.  The old store remains sealed, so writers which still hold a reference to it will retry.
+	 * 
+	 * @param newStore the new store
+	 */
+	private void replaceStore(AtomicShortIntBackingArray newStore) {
+		newStore.seal();
+		store.set(newStore);
+	}
+	
+	/**
+	 * Replaces the store with a store with a larger palette.  This must be called while holding the resize lock.
+	 */
+	private void expandStore() {
+		AtomicShortIntBackingArray s = store.get();
+		if (s.isPaletteMaxSize()) {
+			replaceStore(new AtomicShortIntDirectBackingArray(s));
+		} else {
+			replaceStore(new AtomicShortIntPaletteBackingArray(s, true));
+		}
+	}
+	
+	/**
+	 * Waits until the thread holding the resize lock releases it
+	 */
+	private void awaitResize() {
+		resizeLock.lock();
+		resizeLock.unlock();
 	}
 	
 	/**
@@ -28,6 +28,7 @@ package org.spout.api.util.map.concurrent.palette;
 
 import gnu.trove.set.hash.TIntHashSet;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.spout.api.Spout;
@@ -39,8 +40,15 @@ public abstract class AtomicShortIntBackingArray {
 	 */
 	protected final static PaletteFullException paletteFull = new PaletteFullException("Reused exception - information in stack trace is invalid");
 	
+	/**
+	 * The sealed flag for the write state.  The remaining bits hold the number of writers in progress.
+	 */
+	private final static int SEALED = 0x80000000;
+	
 	private final int length;
 	
+	private final AtomicInteger writeState = new AtomicInteger(0);
+	
 	/**
 	 * Creates an AtomicShortIntArray
 	 * 
@@ -155,6 +163,65 @@ public abstract class AtomicShortIntBackingArray {
 	 * @throws PaletteFullException
 	 */
 	
+	/**
+	 * Registers a writer with the array.  This fails if the array is sealed.<br>
+	 * <br>
+	 * Each successful call must be followed by a call to exitWrite().
+	 * 
+	 * @return true if the writer was registered
+	 */
+	final boolean enterWrite() {
+		while (true) {
+			int state = writeState.get();
+			if ((state & SEALED) != 0) {
+				return false;
+			}
+			if (writeState.compareAndSet(state, state + 1)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Unregisters a writer from the array
+	 */
+	final void exitWrite() {
+		writeState.decrementAndGet();
+	}
+	
+	/**
+	 * Seals the array, so that no new writers can be registered, and waits for writers in progress to complete.<br>
+	 * <br>
+	 * Writers only hold the array for the duration of a single non-blocking update, so the wait is short.
+	 */
+	final void seal() {
+		while (true) {
+			int state = writeState.get();
+			if ((state & SEALED) != 0 || writeState.compareAndSet(state, state | SEALED)) {
+				break;
+			}
+		}
+		while (writeState.get() != SEALED) {
+			Thread.yield();
+		}
+	}
+	
+	/**
+	 * Unseals the array, allowing writers to be registered again
+	 */
+	final void unseal() {
+		writeState.set(0);
+	}
+	
+	/**
+	 * Gets if the array is sealed
+	 * 
+	 * @return true if sealed
+	 */
+	final boolean isSealed() {
+		return (writeState.get() & SEALED) != 0;
+	}
+	
 	protected void copyFromPrevious(AtomicShortIntBackingArray previous) throws PaletteFullException {
 		if (previous != null) {
 			for (int i = 0; i < length; i++) {
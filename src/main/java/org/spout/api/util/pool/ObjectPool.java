@@ -40,12 +40,12 @@ public abstract class ObjectPool<T extends PoolableObject> {
 	 * @return
 	 */
 	public T getInstance() {
-		if (pool.isEmpty()) {
+		T obj = pool.poll();
+		if (obj == null) {
 			T t = createNew();
 			t.pool(this);
 			return t;
 		}
-		T obj = pool.poll();
 		obj.isFreed = false;
 		return obj;
 	}
@@ -0,0 +1,425 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.set;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+import gnu.trove.TLongCollection;
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.procedure.TLongProcedure;
+import gnu.trove.set.TLongSet;
+
+/**
+ * A long set which iterates over its elements in the order they were inserted, like a LinkedHashSet.<br>
+ * <br>
+ * Elements are stored in parallel arrays, linked into a list, and indexed by a {@link TLongIntHashMap}.  Adding and removing elements does not allocate objects, 
+ * except when the arrays grow.<br>
+ * <br>
+ * The set must not be modified while it is being iterated over, except by using the iterator's remove method.
+ */
+public class TLongLinkedHashSet implements TLongSet {
+	private static final int NONE = -1;
+	private final TLongIntHashMap slots;
+	private long[] keys;
+	private int[] previous;
+	private int[] next;
+	private int head = NONE;
+	private int tail = NONE;
+	private int freeHead = NONE;
+	private int used = 0;
+	private int size = 0;
+
+	/**
+	 * Creates a new <code>TLongLinkedHashSet</code> instance with an initial capacity of 16.
+	 */
+	public TLongLinkedHashSet() {
+		this(16);
+	}
+
+	/**
+	 * Creates a new <code>TLongLinkedHashSet</code> instance which can hold <code>capacity</code> elements before growing.
+	 *
+	 * @param capacity an <code>int</code> value
+	 */
+	public TLongLinkedHashSet(int capacity) {
+		capacity = Math.max(capacity, 1);
+		slots = new TLongIntHashMap(capacity, 0.5F, 0L, NONE);
+		keys = new long[capacity];
+		previous = new int[capacity];
+		next = new int[capacity];
+	}
+
+	@Override
+	public long getNoEntryValue() {
+		return 0L;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public boolean contains(long key) {
+		return slots.containsKey(key);
+	}
+
+	@Override
+	public boolean add(long key) {
+		if (slots.containsKey(key)) {
+			return false;
+		}
+		int slot = allocateSlot();
+		keys[slot] = key;
+		previous[slot] = tail;
+		next[slot] = NONE;
+		if (tail == NONE) {
+			head = slot;
+		} else {
+			next[tail] = slot;
+		}
+		tail = slot;
+		slots.put(key, slot);
+		size++;
+		return true;
+	}
+
+	@Override
+	public boolean remove(long key) {
+		int slot = slots.remove(key);
+		if (slot == NONE) {
+			return false;
+		}
+		int p = previous[slot];
+		int n = next[slot];
+		if (p == NONE) {
+			head = n;
+		} else {
+			next[p] = n;
+		}
+		if (n == NONE) {
+			tail = p;
+		} else {
+			previous[n] = p;
+		}
+		next[slot] = freeHead;
+		freeHead = slot;
+		size--;
+		return true;
+	}
+
+	private int allocateSlot() {
+		if (freeHead != NONE) {
+			int slot = freeHead;
+			freeHead = next[slot];
+			return slot;
+		}
+		if (used == keys.length) {
+			int newLength = keys.length << 1;
+			keys = Arrays.copyOf(keys, newLength);
+			previous = Arrays.copyOf(previous, newLength);
+			next = Arrays.copyOf(next, newLength);
+		}
+		return used++;
+	}
+
+	@Override
+	public void clear() {
+		if (size == 0 && used == 0) {
+			return;
+		}
+		slots.clear();
+		head = NONE;
+		tail = NONE;
+		freeHead = NONE;
+		used = 0;
+		size = 0;
+	}
+
+	/**
+	 * Gets the first element in insertion order
+	 *
+	 * @return the first element
+	 * @throws NoSuchElementException if the set is empty
+	 */
+	public long first() {
+		if (head == NONE) {
+			throw new NoSuchElementException("The set is empty");
+		}
+		return keys[head];
+	}
+
+	/**
+	 * Creates an iterator over the elements of the set, in insertion order.
+	 * The iterator supports element deletion.
+	 *
+	 * @return an <code>TLongIterator</code> value.
+	 */
+	@Override
+	public TLongIterator iterator() {
+		return new LinkedIterator();
+	}
+
+	@Override
+	public long[] toArray() {
+		return toArray(new long[size]);
+	}
+
+	@Override
+	public long[] toArray(long[] dest) {
+		if (dest.length < size) {
+			dest = new long[size];
+		}
+		int i = 0;
+		for (int slot = head; slot != NONE; slot = next[slot]) {
+			dest[i++] = keys[slot];
+		}
+		if (dest.length > size) {
+			dest[size] = getNoEntryValue();
+		}
+		return dest;
+	}
+
+	@Override
+	public boolean forEach(TLongProcedure procedure) {
+		for (int slot = head; slot != NONE; slot = next[slot]) {
+			if (!procedure.execute(keys[slot])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> collection) {
+		for (Object o : collection) {
+			if (!(o instanceof Long) || !contains(((Long) o).longValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean containsAll(TLongCollection collection) {
+		TLongIterator i = collection.iterator();
+		while (i.hasNext()) {
+			if (!contains(i.next())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean containsAll(long[] array) {
+		for (long key : array) {
+			if (!contains(key)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Long> collection) {
+		boolean changed = false;
+		for (Long key : collection) {
+			changed |= add(key.longValue());
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean addAll(TLongCollection collection) {
+		boolean changed = false;
+		TLongIterator i = collection.iterator();
+		while (i.hasNext()) {
+			changed |= add(i.next());
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean addAll(long[] array) {
+		boolean changed = false;
+		for (long key : array) {
+			changed |= add(key);
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> collection) {
+		boolean changed = false;
+		TLongIterator i = iterator();
+		while (i.hasNext()) {
+			if (!collection.contains(Long.valueOf(i.next()))) {
+				i.remove();
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean retainAll(TLongCollection collection) {
+		if (collection == this) {
+			return false;
+		}
+		boolean changed = false;
+		TLongIterator i = iterator();
+		while (i.hasNext()) {
+			if (!collection.contains(i.next())) {
+				i.remove();
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean retainAll(long[] array) {
+		long[] sorted = array.clone();
+		Arrays.sort(sorted);
+		boolean changed = false;
+		TLongIterator i = iterator();
+		while (i.hasNext()) {
+			if (Arrays.binarySearch(sorted, i.next()) < 0) {
+				i.remove();
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> collection) {
+		boolean changed = false;
+		for (Object o : collection) {
+			if (o instanceof Long) {
+				changed |= remove(((Long) o).longValue());
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean removeAll(TLongCollection collection) {
+		if (collection == this) {
+			boolean changed = !isEmpty();
+			clear();
+			return changed;
+		}
+		boolean changed = false;
+		TLongIterator i = collection.iterator();
+		while (i.hasNext()) {
+			changed |= remove(i.next());
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean removeAll(long[] array) {
+		boolean changed = false;
+		for (long key : array) {
+			changed |= remove(key);
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (!(o instanceof TLongSet)) {
+			return false;
+		}
+		TLongSet other = (TLongSet) o;
+		return other.size() == size && containsAll(other);
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 0;
+		for (int slot = head; slot != NONE; slot = next[slot]) {
+			long key = keys[slot];
+			hash += (int) (key ^ (key >>> 32));
+		}
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("{");
+		for (int slot = head; slot != NONE; slot = next[slot]) {
+			if (slot != head) {
+				builder.append(", ");
+			}
+			builder.append(keys[slot]);
+		}
+		return builder.append("}").toString();
+	}
+
+	private class LinkedIterator implements TLongIterator {
+		private int nextSlot = head;
+		private int lastSlot = NONE;
+
+		@Override
+		public boolean hasNext() {
+			return nextSlot != NONE;
+		}
+
+		@Override
+		public long next() {
+			if (nextSlot == NONE) {
+				throw new NoSuchElementException();
+			}
+			lastSlot = nextSlot;
+			nextSlot = next[lastSlot];
+			return keys[lastSlot];
+		}
+
+		@Override
+		public void remove() {
+			if (lastSlot == NONE) {
+				throw new IllegalStateException();
+			}
+			TLongLinkedHashSet.this.remove(keys[lastSlot]);
+			lastSlot = NONE;
+		}
+	}
+}
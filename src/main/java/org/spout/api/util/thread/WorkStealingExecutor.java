@@ -0,0 +1,260 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.thread;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A pool of daemon threads which runs batches of tasks, with idle threads stealing tasks from busy threads.<br>
+ * <br>
+ * The tasks of a batch are split into contiguous ranges, one per thread, so tasks which are next to each other in the list, such as the chunk columns of a region, normally run on the same thread.
+ * Each thread runs its own tasks from the front of its queue, and once they are done takes tasks from the back of the queues of the other threads.
+ * A single slow task therefore only delays the tasks queued behind it until another thread becomes idle.
+ */
+public class WorkStealingExecutor {
+	private final WorkerThread[] threads;
+	private final Object idle = new Object();
+	private volatile int generation = 0;
+	private volatile boolean shutdown = false;
+
+	public WorkStealingExecutor(String name) {
+		this(name, Runtime.getRuntime().availableProcessors());
+	}
+
+	public WorkStealingExecutor(String name, int threadCount) {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException("Amount of threads can not be lower than 1");
+		}
+		threads = new WorkerThread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			threads[i] = new WorkerThread(name, i);
+		}
+		for (WorkerThread thread : threads) {
+			thread.start();
+		}
+	}
+
+	/**
+	 * Runs all of the tasks, and waits for them to complete.<br>
+	 * <br>
+	 * If tasks throw exceptions, the remaining tasks are still run, and the first exception is thrown once all tasks have completed.
+	 *
+	 * @param tasks the tasks to run
+	 * @param times an array to store the time taken by each task, in nanoseconds, or null
+	 * @throws InterruptedException if the calling thread is interrupted while waiting, the tasks continue to run
+	 * @throws ExecutionException if a task threw an exception
+	 */
+	public void invokeAll(List<? extends Runnable> tasks, long[] times) throws InterruptedException, ExecutionException {
+		if (shutdown) {
+			throw new IllegalStateException("Executor has been shut down");
+		}
+		if (times != null && times.length < tasks.size()) {
+			throw new IllegalArgumentException("Times array is smaller than the number of tasks");
+		}
+		int size = tasks.size();
+		if (size == 0) {
+			return;
+		}
+		Batch batch = new Batch(size, times);
+		for (int i = 0; i < threads.length; i++) {
+			int end = (int) ((long) size * (i + 1) / threads.length);
+			for (int j = (int) ((long) size * i / threads.length); j < end; j++) {
+				threads[i].queue.offerLast(new Job(batch, tasks.get(j), j));
+			}
+		}
+		synchronized (idle) {
+			generation++;
+			idle.notifyAll();
+		}
+		batch.await();
+		Throwable failure = batch.failure.get();
+		if (failure != null) {
+			throw new ExecutionException(failure);
+		}
+	}
+
+	/**
+	 * Gets the number of threads in the pool
+	 *
+	 * @return the number of threads
+	 */
+	public int getThreadCount() {
+		return threads.length;
+	}
+
+	/**
+	 * Gets the number of tasks a thread has run
+	 *
+	 * @param thread the index of the thread
+	 * @return the number of tasks
+	 */
+	public long getExecutedTasks(int thread) {
+		return threads[thread].executed;
+	}
+
+	/**
+	 * Gets the number of tasks a thread has taken from the queues of other threads
+	 *
+	 * @param thread the index of the thread
+	 * @return the number of stolen tasks
+	 */
+	public long getStolenTasks(int thread) {
+		return threads[thread].stolen;
+	}
+
+	/**
+	 * Gets the total time a thread has spent running tasks
+	 *
+	 * @param thread the index of the thread
+	 * @return the busy time, in nanoseconds
+	 */
+	public long getBusyTime(int thread) {
+		return threads[thread].busyTime;
+	}
+
+	/**
+	 * Stops the threads once they have completed their current tasks.  Queued tasks are not run.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		synchronized (idle) {
+			idle.notifyAll();
+		}
+	}
+
+	private static class Batch {
+		private final AtomicInteger remaining;
+		private final long[] times;
+		private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		public Batch(int size, long[] times) {
+			this.remaining = new AtomicInteger(size);
+			this.times = times;
+		}
+
+		public void complete(int index, long time, Throwable t) {
+			if (times != null) {
+				times[index] = time;
+			}
+			if (t != null) {
+				failure.compareAndSet(null, t);
+			}
+			if (remaining.decrementAndGet() == 0) {
+				synchronized (this) {
+					notifyAll();
+				}
+			}
+		}
+
+		public void await() throws InterruptedException {
+			synchronized (this) {
+				while (remaining.get() > 0) {
+					wait();
+				}
+			}
+		}
+	}
+
+	private static class Job {
+		private final Batch batch;
+		private final Runnable task;
+		private final int index;
+
+		public Job(Batch batch, Runnable task, int index) {
+			this.batch = batch;
+			this.task = task;
+			this.index = index;
+		}
+	}
+
+	private class WorkerThread extends Thread {
+		private final int index;
+		private final LinkedBlockingDeque<Job> queue = new LinkedBlockingDeque<Job>();
+		private volatile long executed = 0;
+		private volatile long stolen = 0;
+		private volatile long busyTime = 0;
+
+		public WorkerThread(String name, int index) {
+			super(name + "_Thread" + (index + 1));
+			this.index = index;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!shutdown) {
+				int observed = generation;
+				Job job = queue.pollFirst();
+				if (job == null) {
+					job = steal();
+				}
+				if (job == null) {
+					synchronized (idle) {
+						while (observed == generation && !shutdown) {
+							try {
+								idle.wait();
+							} catch (InterruptedException e) {
+								// Only shutdown stops the thread
+							}
+						}
+					}
+					continue;
+				}
+				run(job);
+			}
+		}
+
+		private Job steal() {
+			for (int i = 1; i < threads.length; i++) {
+				Job job = threads[(index + i) % threads.length].queue.pollLast();
+				if (job != null) {
+					stolen++;
+					return job;
+				}
+			}
+			return null;
+		}
+
+		private void run(Job job) {
+			long start = System.nanoTime();
+			Throwable failure = null;
+			try {
+				job.task.run();
+			} catch (Throwable t) {
+				failure = t;
+			}
+			long time = System.nanoTime() - start;
+			busyTime += time;
+			executed++;
+			job.batch.complete(job.index, time, failure);
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.datatable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class CompactDatatableMapTest {
+	@Test
+	public void testDatatableMap() throws IOException {
+		DatatableMap map1 = new CompactDatatableMap();
+
+		boolean exceptionThrown = false;
+		try {
+			map1.set(new IntegerData(Integer.MAX_VALUE, 7));
+		} catch (IllegalArgumentException e) {
+			exceptionThrown = true;
+		}
+		assertTrue("Invalid key did not cause an exception to be thrown", exceptionThrown);
+
+		map1.set(new IntegerData(map1.getIntKey("Int Value"), 7));
+		map1.set("Float Value", new FloatData(0, 1.234F));
+		map1.set(map1.getIntKey("Bool Value"), new BooleanData(0, true));
+		map1.set(new SerializableData(map1.getIntKey("Serial Value"), new Integer(22)));
+		checkMap(map1);
+
+		// A map written by the compact map can be read by the generic map
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		map1.output(out);
+		DatatableMap map2 = GenericDatatableMap.readMap(new ByteArrayInputStream(out.toByteArray()));
+		checkMap(map2);
+
+		DatatableMap map3 = new CompactDatatableMap();
+		map3.decompress(map2.compress());
+		checkMap(map3);
+
+		assertTrue(map3.get("Missing Value") instanceof NullData);
+		assertTrue(map3.remove("Int Value") instanceof IntegerData);
+		assertFalse(map3.contains("Int Value"));
+		assertEquals(3, map3.size());
+	}
+
+	private void checkMap(DatatableMap map) {
+		assertEquals(4, map.size());
+		IntegerData io = (IntegerData) map.get("Int Value");
+		assertEquals(7, io.get());
+		assertEquals(map.getIntKey("Int Value"), io.hashCode());
+
+		FloatData fo = (FloatData) map.get("Float Value");
+		assertEquals(1.234F, fo.get());
+		assertEquals(map.getIntKey("Float Value"), fo.hashCode());
+
+		BooleanData bo = (BooleanData) map.get("Bool Value");
+		assertEquals(true, bo.get());
+
+		SerializableData so = (SerializableData) map.get("Serial Value");
+		assertEquals(22, so.get());
+		assertEquals(map.getIntKey("Serial Value"), so.hashCode());
+	}
+
+	@Test
+	public void testValues() throws IOException {
+		CompactManagedHashMap map = new CompactManagedHashMap();
+		Serializable[] values = {true, 1.5D, 2.5F, Long.MIN_VALUE, -3, (short) -4, (byte) -5, "Text", new int[] {1, 2}};
+		for (int i = 0; i < values.length; i++) {
+			assertNull(map.put("Compact Value " + i, values[i]));
+		}
+		assertEquals(values.length, map.size());
+		checkValues(map, values);
+
+		// The value of a key can change type
+		assertEquals(-3, map.put("Compact Value 4", "Four"));
+		assertEquals("Four", map.get("Compact Value 4"));
+		assertEquals("Four", map.put("Compact Value 4", -3));
+		assertEquals(-3, map.get("Compact Value 4"));
+
+		assertEquals("Text", map.putIfAbsent("Compact Value 7", "Other"));
+		assertNull(map.putIfAbsent("Missing Value", 12));
+		assertEquals(12, map.remove("Missing Value"));
+		assertNull(map.remove("Missing Value"));
+
+		// Serialized maps can be read by either map
+		ManagedHashMap generic = new ManagedHashMap();
+		generic.deserialize(map.serialize());
+		checkValues(generic, values);
+		CompactManagedHashMap copy = new CompactManagedHashMap();
+		copy.deserialize(generic.serialize());
+		checkValues(copy, values);
+		checkValues((ManagedHashMap) map.deepCopy(), values);
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertTrue(map.entrySet().isEmpty());
+	}
+
+	private void checkValues(ManagedHashMap map, Serializable[] values) {
+		for (int i = 0; i < values.length; i++) {
+			Serializable value = map.get("Compact Value " + i);
+			if (values[i] instanceof int[]) {
+				assertTrue(Arrays.equals((int[]) values[i], (int[]) value));
+			} else {
+				assertEquals(values[i], value);
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentSnapshots() throws Exception {
+		final CompactDatatableMap map = new CompactDatatableMap();
+		final byte[][] states = new byte[2][];
+		for (int i = 0; i < states.length; i++) {
+			CompactDatatableMap state = new CompactDatatableMap();
+			for (int j = 0; j < 9; j++) {
+				state.setValue(state.getIntKey("Compact Value " + j), i);
+			}
+			states[i] = state.compress();
+		}
+		map.decompress(states[0]);
+		final AtomicBoolean done = new AtomicBoolean(false);
+
+		// Each state has the same value for every key, so every snapshot must see equal values
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 20000; i++) {
+						map.decompress(states[i & 1], false);
+					}
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				} finally {
+					done.set(true);
+				}
+			}
+		};
+		writer.start();
+		while (!done.get()) {
+			AbstractData[] data = map.values().toArray(new AbstractData[0]);
+			assertEquals(9, data.length);
+			for (AbstractData value : data) {
+				assertEquals(data[0].get(), value.get());
+			}
+		}
+		writer.join();
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+import org.spout.api.exception.EventException;
+
+public class EventExecutorFactoryTest {
+	@Test
+	public void testGeneratedExecutor() throws Exception {
+		PublicListener listener = new PublicListener();
+		EventExecutor executor = EventExecutorFactory.create(listener, PublicListener.class.getMethod("onEvent", PublicEvent.class));
+		assertTrue(executor instanceof GeneratedEventExecutor);
+
+		executor.execute(new PublicEvent());
+		executor.execute(new PublicEvent());
+		assertEquals(2, listener.calls);
+
+		executor = EventExecutorFactory.create(listener, PublicListener.class.getMethod("onEventWithResult", PublicEvent.class));
+		assertTrue(executor instanceof GeneratedEventExecutor);
+		executor.execute(new PublicEvent());
+		assertEquals(3, listener.calls);
+
+		executor = EventExecutorFactory.create(null, PublicListener.class.getMethod("onStaticEvent", PublicEvent.class));
+		assertTrue(executor instanceof GeneratedEventExecutor);
+		int staticCalls = PublicListener.staticCalls;
+		executor.execute(new PublicEvent());
+		assertEquals(staticCalls + 1, PublicListener.staticCalls);
+	}
+
+	@Test
+	public void testReflectionFallback() throws Exception {
+		Method method = PackageListener.class.getDeclaredMethod("onPackageEvent", PackageEvent.class);
+		PackageListener listener = new PackageListener();
+		EventExecutor executor = EventExecutorFactory.create(listener, method);
+		assertTrue(executor instanceof MethodEventExecutor);
+		executor.execute(new PackageEvent());
+		assertEquals(1, listener.calls);
+	}
+
+	@Test
+	public void testWrongEventType() throws Exception {
+		EventExecutor executor = EventExecutorFactory.create(new PublicListener(), PublicListener.class.getMethod("onEvent", PublicEvent.class));
+		try {
+			executor.execute(new PackageEvent());
+			fail("Executor accepted the wrong event type");
+		} catch (EventException expected) {
+		}
+	}
+
+	@Test
+	public void testExceptionWrapping() throws Exception {
+		PublicListener listener = new PublicListener();
+		EventExecutor executor = EventExecutorFactory.create(listener, PublicListener.class.getMethod("onEventThrowing", PublicEvent.class));
+		assertTrue(executor instanceof GeneratedEventExecutor);
+		try {
+			executor.execute(new PublicEvent());
+			fail("Exception was not passed on");
+		} catch (EventException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+
+		final EventException thrown = new EventException("thrown");
+		listener.toThrow = thrown;
+		try {
+			executor.execute(new PublicEvent());
+			fail("Exception was not passed on");
+		} catch (EventException e) {
+			assertSame(thrown, e);
+		}
+	}
+
+	public static class PublicEvent extends Event {
+		private static final HandlerList HANDLERS = new HandlerList();
+
+		@Override
+		public HandlerList getHandlers() {
+			return HANDLERS;
+		}
+
+		public static HandlerList getHandlerList() {
+			return HANDLERS;
+		}
+	}
+
+	public static class PublicListener implements Listener {
+		public static int staticCalls = 0;
+		public int calls = 0;
+		public EventException toThrow = null;
+
+		public void onEvent(PublicEvent event) {
+			calls++;
+		}
+
+		public long onEventWithResult(PublicEvent event) {
+			return ++calls;
+		}
+
+		public static void onStaticEvent(PublicEvent event) {
+			staticCalls++;
+		}
+
+		public void onEventThrowing(PublicEvent event) throws EventException {
+			if (toThrow != null) {
+				throw toThrow;
+			}
+			throw new IllegalStateException();
+		}
+	}
+
+	static class PackageEvent extends Event {
+		private static final HandlerList HANDLERS = new HandlerList();
+
+		@Override
+		public HandlerList getHandlers() {
+			return HANDLERS;
+		}
+
+		public static HandlerList getHandlerList() {
+			return HANDLERS;
+		}
+	}
+
+	static class PackageListener implements Listener {
+		private int calls = 0;
+
+		void onPackageEvent(PackageEvent event) {
+			calls++;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.event;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class EventPoolTest {
+	@After
+	public void tearDown() {
+		HandlerList.unregisterAll();
+	}
+
+	@Test
+	public void testHasListeners() {
+		EventManager eventManager = new SimpleEventManager();
+		assertFalse(ParentEvent.getHandlerList().hasListeners());
+		assertFalse(ParentSubEvent.getHandlerList().hasListeners());
+
+		eventManager.registerEvents(new ParentListener(), this);
+		assertTrue(ParentEvent.getHandlerList().hasListeners());
+		// Listeners of the parent event also receive the sub event
+		assertTrue(ParentSubEvent.getHandlerList().hasListeners());
+
+		ParentEvent.getHandlerList().unregister(this);
+		assertFalse(ParentEvent.getHandlerList().hasListeners());
+		assertFalse(ParentSubEvent.getHandlerList().hasListeners());
+	}
+
+	@Test
+	public void testPooledEvents() {
+		EventPool<PooledEvent> pool = new PooledEventPool();
+		PooledEvent event = pool.acquire();
+		event.value = 5;
+		event.setCancelled(true);
+		pool.release(event);
+
+		PooledEvent reused = pool.acquire();
+		assertSame(event, reused);
+		assertEquals(0, reused.value);
+		assertFalse(reused.isCancelled());
+		assertFalse(reused.hasBeenCalled());
+
+		PooledEvent second = pool.acquire();
+		assertNotSame(reused, second);
+		pool.release(reused);
+		pool.release(second);
+	}
+
+	@Test
+	public void testReleaseChecks() {
+		EventPool<PooledEvent> pool = new PooledEventPool();
+		PooledEvent event = pool.acquire();
+		pool.release(event);
+		try {
+			pool.release(event);
+			fail("Event was released twice");
+		} catch (IllegalArgumentException expected) {
+		}
+
+		try {
+			pool.release(new PooledEvent());
+			fail("Event which was not pooled was released");
+		} catch (IllegalArgumentException expected) {
+		}
+
+		event = new PooledEventPool().acquire();
+		try {
+			pool.release(event);
+			fail("Event was released to the wrong pool");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	private static class PooledEventPool extends EventPool<PooledEvent> {
+		@Override
+		protected PooledEvent createEvent() {
+			return new PooledEvent();
+		}
+	}
+
+	private static class PooledEvent extends Event implements Cancellable {
+		private static final HandlerList HANDLERS = new HandlerList();
+		private int value;
+
+		@Override
+		public HandlerList getHandlers() {
+			return HANDLERS;
+		}
+
+		@Override
+		public void setCancelled(boolean cancelled) {
+			super.setCancelled(cancelled);
+		}
+
+		@Override
+		protected void reset() {
+			super.reset();
+			value = 0;
+		}
+
+		@SuppressWarnings("unused")
+		public static HandlerList getHandlerList() {
+			return HANDLERS;
+		}
+	}
+
+	public static class ParentEvent extends Event {
+		private static final HandlerList HANDLERS = new HandlerList();
+
+		@Override
+		public HandlerList getHandlers() {
+			return HANDLERS;
+		}
+
+		public static HandlerList getHandlerList() {
+			return HANDLERS;
+		}
+	}
+
+	public static class ParentSubEvent extends ParentEvent {
+		private static final HandlerList HANDLERS = new HandlerList(ParentEvent.getHandlerList());
+
+		@Override
+		public HandlerList getHandlers() {
+			return HANDLERS;
+		}
+
+		public static HandlerList getHandlerList() {
+			return HANDLERS;
+		}
+	}
+
+	public static class ParentListener implements Listener {
+		@EventHandler
+		public void onParentEvent(ParentEvent event) {
+		}
+	}
+}
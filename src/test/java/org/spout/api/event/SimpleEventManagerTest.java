@@ -86,6 +86,37 @@ public class SimpleEventManagerTest {
 			assertEquals(calledOrders.get(order.getIndex()), order);
 		}
 	}
+
+	@Test
+	public void testNonPublicRegistration() {
+		final EventManager eventManager = new SimpleEventManager();
+		final HiddenListener listener = new HiddenListener();
+		eventManager.registerEvents(listener, this);
+		eventManager.callEvent(new HiddenEvent());
+		assertEquals(1, listener.calls);
+	}
+
+	static class HiddenEvent extends Event {
+		private static final HandlerList HANDLERS = new HandlerList();
+
+		@Override
+		public HandlerList getHandlers() {
+			return HANDLERS;
+		}
+
+		public static HandlerList getHandlerList() {
+			return HANDLERS;
+		}
+	}
+
+	static class HiddenListener implements Listener {
+		private int calls = 0;
+
+		@EventHandler
+		private void onHiddenEvent(HiddenEvent event) {
+			calls++;
+		}
+	}
 }
 
 class TestEvent extends Event {
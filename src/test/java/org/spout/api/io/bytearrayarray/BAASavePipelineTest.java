@@ -0,0 +1,151 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.io.bytearrayarray;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class BAASavePipelineTest {
+	private static int entries = 64;
+	private static String filename = "target/pipeline.dat";
+	private static String supersededFilename = "target/pipeline-superseded.dat";
+
+	@Test
+	public void test() throws IOException, InterruptedException, ExecutionException {
+		File file = new File(filename);
+		if (file.exists()) {
+			file.delete();
+		}
+
+		BAAWrapper wrapper = new BAAWrapper(file, 9, entries, 120000);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		BAASavePipeline pipeline = new BAASavePipeline(wrapper, executor);
+
+		byte[][] expected = new byte[entries][];
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		Random r = new Random();
+
+		for (int i = 0; i < entries * 8; i++) {
+			int entry = r.nextInt(entries);
+			byte[] data = new byte[256 + r.nextInt(4096)];
+			for (int j = 0; j < data.length; j += 3) {
+				data[j] = (byte) r.nextInt();
+			}
+			expected[entry] = data;
+			futures.add(pipeline.save(entry, data));
+		}
+
+		for (Future<Boolean> future : futures) {
+			assertTrue("Block save failed", future.get());
+		}
+
+		executor.shutdown();
+
+		for (int i = 0; i < entries; i++) {
+			if (expected[i] == null) {
+				continue;
+			}
+			InputStream in = wrapper.getBlockInputStream(i);
+			assertArrayEquals("Saved block " + i + " did not match the most recently saved data", expected[i], readFully(in));
+		}
+
+		assertTrue("Unable to close file after saving", wrapper.attemptClose());
+
+		file.delete();
+	}
+
+	@Test
+	public void testSupersededResult() throws Exception {
+		File file = new File(supersededFilename);
+		if (file.exists()) {
+			file.delete();
+		}
+
+		for (final boolean writeSucceeds : new boolean[] {true, false}) {
+			BAAWrapper wrapper = new BAAWrapper(file, 9, entries, 120000) {
+				@Override
+				public boolean writeCompressedBlocks(int[] indexes, byte[][] compressed) {
+					return writeSucceeds && super.writeCompressedBlocks(indexes, compressed);
+				}
+			};
+			final List<Runnable> tasks = new ArrayList<Runnable>();
+			BAASavePipeline pipeline = new BAASavePipeline(wrapper, new Executor() {
+				@Override
+				public void execute(Runnable command) {
+					tasks.add(command);
+				}
+			});
+
+			try {
+				Future<Boolean> older = pipeline.save(0, new byte[] {1, 2, 3});
+				Future<Boolean> newer = pipeline.save(0, new byte[] {4, 5, 6});
+
+				// The newer save is compressed and committed before the older save is compressed
+				tasks.remove(1).run();
+				tasks.remove(1).run();
+				assertEquals(writeSucceeds, newer.get());
+				assertFalse(older.isDone());
+
+				tasks.remove(0).run();
+				tasks.remove(0).run();
+				assertTrue(tasks.isEmpty());
+				assertEquals("The older save did not give the result of the newer write", writeSucceeds, older.get());
+			} finally {
+				wrapper.attemptClose();
+				file.delete();
+			}
+		}
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.io.bytearrayarray;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class BAAWrapperTest {
+	private static String filename = "target/wrapper.dat";
+
+	@Test
+	public void testDirectReadDuringOpen() throws Exception {
+		File file = new File(filename);
+		if (file.exists()) {
+			file.delete();
+		}
+		final byte[] data = new byte[1000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		BAAWrapper writer = new BAAWrapper(file, 9, 16, 120000);
+		OutputStream out = writer.getBlockOutputStream(3);
+		out.write(data);
+		out.close();
+		assertTrue("Unable to close file after saving", writer.attemptClose());
+
+		// Many readers race to open the file, so most of them see it while it is being opened
+		for (int attempt = 0; attempt < 20; attempt++) {
+			final BAAWrapper wrapper = new BAAWrapper(file, 9, 16, 120000);
+			final CountDownLatch start = new CountDownLatch(1);
+			ExecutorService executor = Executors.newFixedThreadPool(8);
+			List<Future<byte[]>> reads = new ArrayList<Future<byte[]>>();
+			for (int i = 0; i < 8; i++) {
+				reads.add(executor.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws Exception {
+						start.await();
+						InputStream in = wrapper.getBlockDirectInputStream(3);
+						assertNotNull("Direct read returned no stream while the file was opening", in);
+						try {
+							return readFully(in);
+						} finally {
+							in.close();
+						}
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<byte[]> read : reads) {
+				assertArrayEquals(data, read.get());
+			}
+			executor.shutdown();
+			assertTrue("Unable to close file after reading", wrapper.attemptClose());
+		}
+		file.delete();
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[256];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
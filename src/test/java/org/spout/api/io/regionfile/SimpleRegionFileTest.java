@@ -26,15 +26,22 @@
  */
 package org.spout.api.io.regionfile;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Test;
 
@@ -163,13 +170,306 @@ public class SimpleRegionFileTest {
 		file.delete();
 	}
 
+	@Test
+	public void directReadTest() throws IOException {
+		File file = new File(filename);
+		if (file.exists()) {
+			file.delete();
+		}
+
+		srf = new SimpleRegionFile(file, 9, desiredEntries);
+		dataCache = new byte[desiredEntries][];
+
+		Random r = new Random();
+
+		System.out.println("Randomly writing to the file and reading directly from the mapped file");
+
+		for (int i = 0; i < desiredEntries * 2; i++) {
+			int entry = (r.nextInt() & 0x7FFFFFFF) % desiredEntries;
+			updateEntry(entry, createFakeChunk(chunkBlocks << 3, 0.15F * r.nextFloat()));
+			entry = (r.nextInt() & 0x7FFFFFFF) % desiredEntries;
+			assertTrue("Data read directly from store did not match written data", checkEntryMatch(entry, true));
+			assertTrue("Data read directly from store did not match snapshot data", checkEntryMatch(entry, false));
+		}
+
+		int entry = 0;
+		updateEntry(entry, createFakeChunk(chunkBlocks << 3, 0.5F));
+		InputStream in = srf.getDirectInputStream(entry);
+
+		System.out.println("Trying to close file with a direct input stream open");
+
+		assertTrue("File closed even though direct input stream was open", !srf.attemptClose());
+
+		in.close();
+
+		assertTrue("Unable to close file after direct input stream was closed", srf.attemptClose());
+
+		file.delete();
+	}
+
+	@Test
+	public void concurrentTest() throws IOException, InterruptedException {
+		File file = new File(filename);
+		if (file.exists()) {
+			file.delete();
+		}
+
+		srf = new SimpleRegionFile(file, 9, desiredEntries, 120000, true);
+		dataCache = new byte[desiredEntries][];
+
+		System.out.println("Reading and writing disjoint blocks from multiple threads in concurrent mode");
+
+		final int threadCount = 8;
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		Thread[] threads = new Thread[threadCount];
+
+		for (int t = 0; t < threadCount; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					Random r = new Random();
+					try {
+						for (int i = 0; i < 64; i++) {
+							int entry = offset + threadCount * ((r.nextInt() & 0x7FFFFFFF) % (desiredEntries / threadCount));
+							updateEntry(entry, createFakeChunk(chunkBlocks << 3, 0.15F * r.nextFloat()));
+							if (!checkEntryMatch(entry, (i & 1) == 0)) {
+								failed.set(true);
+							}
+						}
+					} catch (IOException e) {
+						e.printStackTrace();
+						failed.set(true);
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		assertTrue("Data read in concurrent mode did not match written data", !failed.get());
+
+		assertTrue("Unable to close file after concurrent access", srf.attemptClose());
+
+		System.out.println("Opening file again to test that concurrently written data was correctly saved to disk");
+
+		srf = new SimpleRegionFile(file, 9, desiredEntries);
+
+		for (int i = 0; i < desiredEntries; i++) {
+			assertTrue("Data read, after second open, from store did not match concurrently written data", checkEntryMatch(i));
+		}
+
+		assertTrue(srf.attemptClose());
+
+		file.delete();
+	}
+
+	@Test
+	public void replaceFailureTest() throws IOException {
+		File file = new File("target/replace.dat");
+		File missing = new File("target/replace.dat.compact");
+		File backup = new File("target/replace.dat.backup");
+		missing.delete();
+		backup.delete();
+
+		byte[] original = new byte[] {1, 2, 3, 4};
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(original);
+		} finally {
+			out.close();
+		}
+
+		try {
+			SimpleRegionFile.replaceFile(file, missing);
+			fail("Replacing a file with a missing file did not fail");
+		} catch (SRFException e) {
+		}
+
+		assertTrue("The original file was not restored", file.exists());
+		assertFalse("The backup file was not removed", backup.exists());
+		byte[] read = new byte[original.length];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			in.readFully(read);
+		} finally {
+			in.close();
+		}
+		assertArrayEquals("The restored file did not match the original file", original, read);
+
+		file.delete();
+	}
+
+	@Test
+	public void compactionTest() throws IOException {
+		File file = new File(filename);
+		if (file.exists()) {
+			file.delete();
+		}
+
+		SimpleRegionFile regionFile = new SimpleRegionFile(file, 9, desiredEntries);
+		srf = regionFile;
+		dataCache = new byte[desiredEntries][];
+
+		Random r = new Random();
+
+		System.out.println("Writing blocks of varying size and deleting every other block");
+
+		for (int i = 0; i < desiredEntries; i++) {
+			updateEntry(i, createFakeChunk(chunkBlocks << 3, 0.05F + 0.3F * r.nextFloat()));
+		}
+		for (int i = 0; i < desiredEntries; i += 2) {
+			srf.delete(i);
+			dataCache[i] = null;
+		}
+
+		SRFStatistics before = regionFile.getStatistics();
+		assertTrue("Deleting blocks did not leave free runs", before.getFreeRuns() > 0);
+		assertTrue("Deleting blocks did not fragment the free space", before.getFragmentationRatio() > 0);
+
+		System.out.println("Compacting file while open");
+
+		assertTrue("No blocks were moved during compaction", regionFile.compact() > 0);
+
+		SRFStatistics after = regionFile.getStatistics();
+		assertTrue("Online compaction did not reduce wasted space", after.getWastedBytes() < before.getWastedBytes());
+
+		for (int i = 0; i < desiredEntries; i++) {
+			assertTrue("Data read after online compaction did not match written data", checkEntryMatch(i));
+		}
+
+		assertTrue(srf.attemptClose());
+
+		System.out.println("Compacting closed file");
+
+		SRFStatistics compacted = SimpleRegionFile.compact(file, desiredEntries);
+		assertTrue("Offline compaction left free segments", compacted.getFreeSegments() == 0);
+		assertTrue("Offline compaction did not reduce the number of segments", compacted.getFileSegments() < before.getFileSegments());
+
+		srf = new SimpleRegionFile(file, 9, desiredEntries);
+		for (int i = 0; i < desiredEntries; i++) {
+			assertTrue("Data read after offline compaction did not match written data", checkEntryMatch(i));
+		}
+		assertTrue(srf.attemptClose());
+
+		file.delete();
+	}
+
+	@Test
+	public void codecTest() throws IOException {
+		File file = new File(filename);
+
+		Random r = new Random();
+
+		for (SRFCodec codec : new SRFCodec[] {SRFCodec.STORED, SRFCodec.DEFLATE, SRFCodec.LZ}) {
+			if (file.exists()) {
+				file.delete();
+			}
+
+			System.out.println("Writing blocks using " + codec);
+
+			srf = new SimpleRegionFile(file, 9, desiredEntries, 120000, false, codec);
+			dataCache = new byte[desiredEntries][];
+
+			for (int i = 0; i < desiredEntries; i++) {
+				updateEntry(i, createFakeChunk(chunkBlocks << 3, r.nextFloat()));
+			}
+			// Larger than a single LZ chunk
+			updateEntry(0, createFakeChunk(chunkBlocks << 10, 0.2F));
+
+			assertTrue(srf.attemptClose());
+
+			System.out.println("Reopening file with the default codec");
+
+			SimpleRegionFile regionFile = new SimpleRegionFile(file, 9, desiredEntries);
+			srf = regionFile;
+			assertTrue("Codec id was not read from the file header", regionFile.getCodec().getId() == codec.getId());
+
+			for (int i = 0; i < desiredEntries; i++) {
+				assertTrue("Data read using " + codec + " did not match written data", checkEntryMatch(i, false));
+				assertTrue("Direct data read using " + codec + " did not match written data", checkEntryMatch(i, true));
+			}
+
+			assertTrue(srf.attemptClose());
+		}
+
+		file.delete();
+	}
+
+	@Test
+	public void batchWriteTest() throws IOException {
+		File file = new File(filename);
+
+		Random r = new Random();
+
+		for (boolean concurrent : new boolean[] {false, true}) {
+			if (file.exists()) {
+				file.delete();
+			}
+
+			System.out.println("Writing batches of blocks, concurrent " + concurrent);
+
+			SimpleRegionFile regionFile = new SimpleRegionFile(file, 9, desiredEntries, 120000, concurrent);
+			srf = regionFile;
+			dataCache = new byte[desiredEntries][];
+
+			for (int batch = 0; batch < 16; batch++) {
+				// Runs of consecutive blocks, scattered blocks and repeated blocks
+				int count = 1 + r.nextInt(24);
+				int[] indexes = new int[count];
+				byte[][] compressed = new byte[count][];
+				int next = r.nextInt(desiredEntries);
+				for (int j = 0; j < count; j++) {
+					indexes[j] = next;
+					byte[] data = createFakeChunk(chunkBlocks << 3, 0.3F * r.nextFloat());
+					compressed[j] = regionFile.compress(data);
+					dataCache[next] = data;
+					int step = r.nextInt(4);
+					next = (step == 0 ? r.nextInt(desiredEntries) : next + step - 1) % desiredEntries;
+				}
+				regionFile.writeCompressed(indexes, compressed);
+			}
+
+			for (int i = 0; i < desiredEntries; i++) {
+				assertTrue("Data read after batch writes did not match written data", checkEntryMatch(i));
+			}
+
+			assertTrue(srf.attemptClose());
+
+			System.out.println("Opening file again to test that the batch FAT entries were saved to disk");
+
+			srf = new SimpleRegionFile(file, 9, desiredEntries);
+			for (int i = 0; i < desiredEntries; i++) {
+				assertTrue("Data read, after second open, did not match batch written data", checkEntryMatch(i));
+			}
+			assertTrue(srf.attemptClose());
+		}
+
+		file.delete();
+	}
+
 	private boolean checkEntryMatch(int entry) throws IOException {
+		return checkEntryMatch(entry, false);
+	}
+
+	private boolean checkEntryMatch(int entry, boolean direct) throws IOException {
 		byte[] expected = dataCache[entry];
 		if (expected == null) {
 			return true;
 		}
 		//System.out.println("Checking entry " + entry);
-		DataInputStream in = new DataInputStream(srf.getInputStream(entry));
+		DataInputStream in = new DataInputStream(direct ? srf.getDirectInputStream(entry) : srf.getInputStream(entry));
+		try {
+			return checkStreamMatch(in, expected);
+		} finally {
+			in.close();
+		}
+	}
+
+	private boolean checkStreamMatch(DataInputStream in, byte[] expected) throws IOException {
 		for (int i = 0; ; ++i) {
 			final byte b;
 			try {
@@ -0,0 +1,177 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.spout.api.entity.Entity;
+import org.spout.api.geo.discrete.Transform;
+import org.spout.api.protocol.reposition.NullRepositionManager;
+import org.spout.api.protocol.reposition.RepositionManager;
+import org.spout.api.scheduler.TickStage;
+
+public class CachedEntityProtocolTest {
+	@Test
+	public void testSharedWithinTick() {
+		CountingProtocol counting = new CountingProtocol();
+		CachedEntityProtocol cached = new CachedEntityProtocol(counting);
+		Entity entity = mockEntity(1);
+		Entity other = mockEntity(2);
+		RepositionManager rm = NullRepositionManager.getInstance();
+
+		TickStage.setStage(TickStage.TICKSTART);
+		List<Message> first = cached.getUpdateMessages(entity, null, rm, false);
+		assertSame(first, cached.getUpdateMessages(entity, null, rm, false));
+		assertEquals(1, counting.updates);
+
+		// Forced updates are cached separately
+		List<Message> forced = cached.getUpdateMessages(entity, null, rm, true);
+		assertNotSame(first, forced);
+		assertSame(forced, cached.getUpdateMessages(entity, null, rm, true));
+		assertSame(first, cached.getUpdateMessages(entity, null, rm, false));
+		assertEquals(2, counting.updates);
+
+		// A different reposition manager bypasses the cache
+		cached.getUpdateMessages(entity, null, mock(RepositionManager.class), false);
+		assertEquals(3, counting.updates);
+		assertSame(first, cached.getUpdateMessages(entity, null, rm, false));
+
+		// Other entities have their own entries
+		List<Message> otherFirst = cached.getUpdateMessages(other, null, rm, false);
+		assertEquals(4, counting.updates);
+		assertSame(first, cached.getUpdateMessages(entity, null, rm, false));
+		assertSame(otherFirst, cached.getUpdateMessages(other, null, rm, false));
+		assertEquals(4, counting.updates);
+
+		TickStage.setStage(TickStage.TICKSTART);
+		assertNotSame(first, cached.getUpdateMessages(entity, null, rm, false));
+		assertEquals(5, counting.updates);
+	}
+
+	@Test
+	public void testInterleavedObservers() throws Exception {
+		final CountingProtocol counting = new CountingProtocol();
+		final CachedEntityProtocol cached = new CachedEntityProtocol(counting);
+		final RepositionManager rm = NullRepositionManager.getInstance();
+		final Entity[] entities = new Entity[32];
+		for (int i = 0; i < entities.length; i++) {
+			entities[i] = mockEntity(i);
+		}
+
+		TickStage.setStage(TickStage.TICKSTART);
+		// Each observer thread walks every entity, as the region threads do for their players
+		Thread[] observers = new Thread[4];
+		for (int t = 0; t < observers.length; t++) {
+			final int offset = t;
+			observers[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int observer = 0; observer < 8; observer++) {
+						for (int i = 0; i < entities.length; i++) {
+							Entity entity = entities[(i + offset * 7 + observer) % entities.length];
+							cached.getUpdateMessages(entity, null, rm, false);
+							cached.getUpdateMessages(entity, null, rm, true);
+						}
+					}
+				}
+			};
+			observers[t].start();
+		}
+		for (Thread observer : observers) {
+			observer.join();
+		}
+		// Each entity is computed once per force flag
+		assertEquals(entities.length * 2, counting.getUpdates());
+		for (Entity entity : entities) {
+			assertEquals(2, counting.getUpdates(entity));
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testUnmodifiable() {
+		CachedEntityProtocol cached = new CachedEntityProtocol(new CountingProtocol());
+		cached.getUpdateMessages(mockEntity(1), null, NullRepositionManager.getInstance(), false).clear();
+	}
+
+	@Test
+	public void testStoreWraps() {
+		EntityProtocolStore store = new EntityProtocolStore();
+		CountingProtocol counting = new CountingProtocol();
+		store.setEntityProtocol(0, counting);
+		assertTrue(store.getEntityProtocol(0) instanceof CachedEntityProtocol);
+		assertSame(counting, ((CachedEntityProtocol) store.getEntityProtocol(0)).getProtocol());
+		assertSame(counting, store.getRegisteredProtocol(0));
+	}
+
+	private static Entity mockEntity(int id) {
+		Entity entity = mock(Entity.class);
+		when(entity.getId()).thenReturn(id);
+		return entity;
+	}
+
+	private static class CountingProtocol implements EntityProtocol {
+		private int updates = 0;
+		private final Map<Entity, Integer> entityUpdates = new HashMap<Entity, Integer>();
+
+		public synchronized int getUpdates() {
+			return updates;
+		}
+
+		public synchronized int getUpdates(Entity entity) {
+			Integer count = entityUpdates.get(entity);
+			return count == null ? 0 : count;
+		}
+
+		@Override
+		public List<Message> getSpawnMessages(Entity entity, RepositionManager rm) {
+			return new ArrayList<Message>();
+		}
+
+		@Override
+		public List<Message> getDestroyMessages(Entity entity) {
+			return new ArrayList<Message>();
+		}
+
+		@Override
+		public synchronized List<Message> getUpdateMessages(Entity entity, Transform liveTransform, RepositionManager rm, boolean force) {
+			updates++;
+			entityUpdates.put(entity, getUpdates(entity) + 1);
+			return new ArrayList<Message>();
+		}
+	}
+}
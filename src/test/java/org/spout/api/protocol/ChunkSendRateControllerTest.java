@@ -0,0 +1,108 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ChunkSendRateControllerTest {
+	private static final long QUEUE_LIMIT = 1000;
+	private static final long LATENCY_LIMIT = 1000;
+	private static final int HOLD_TICKS = 3;
+
+	private ChunkSendRateController create() {
+		return new ChunkSendRateController(20, 2, 40, 1, 0.5F, QUEUE_LIMIT, LATENCY_LIMIT, HOLD_TICKS);
+	}
+
+	@Test
+	public void testAdditiveIncrease() {
+		ChunkSendRateController c = create();
+		assertEquals(20, c.update(0, 0));
+		c.chunksSent(20, true);
+		assertEquals(21, c.update(0, 0));
+		c.chunksSent(21, true);
+		assertEquals(22, c.update(0, 0));
+		long sent = 41;
+		for (int i = 0; i < 100; i++) {
+			sent += c.getBudget();
+			c.chunksSent(c.getBudget(), true);
+			c.update(0, 0);
+		}
+		assertEquals(40, c.getBudget());
+		assertEquals(sent, c.getTotalChunksSent());
+		assertFalse(c.isCongested());
+	}
+
+	@Test
+	public void testNoIncreaseWhenNotLimited() {
+		ChunkSendRateController c = create();
+		c.update(0, 0);
+		for (int i = 0; i < 10; i++) {
+			c.chunksSent(5, false);
+			assertEquals(20, c.update(0, 0));
+		}
+	}
+
+	@Test
+	public void testMultiplicativeDecrease() {
+		ChunkSendRateController c = create();
+		assertEquals(10, c.update(QUEUE_LIMIT + 1, 0));
+		assertTrue(c.isCongested());
+		assertEquals(QUEUE_LIMIT + 1, c.getQueuedBytes());
+
+		// Further decreases are held off while the previous one takes effect
+		for (int i = 1; i < HOLD_TICKS; i++) {
+			assertEquals(10, c.update(QUEUE_LIMIT + 1, 0));
+		}
+		assertEquals(5, c.update(0, LATENCY_LIMIT + 1));
+		assertEquals(2, c.getDecreaseCount());
+
+		for (int i = 0; i < 10 * HOLD_TICKS; i++) {
+			c.update(QUEUE_LIMIT + 1, 0);
+		}
+		assertEquals(2, c.getBudget());
+
+		c.chunksSent(2, true);
+		assertEquals(3, c.update(0, 0));
+		assertFalse(c.isCongested());
+	}
+
+	@Test
+	public void testNoMonitor() {
+		ChunkSendRateController c = create();
+		c.chunksSent(20, true);
+		assertEquals(20, c.update(null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRange() {
+		new ChunkSendRateController(20, 10, 5);
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.junit.Test;
+import org.spout.api.chat.ChatArguments;
+import org.spout.api.command.Command;
+import org.spout.api.exception.UnknownPacketException;
+
+public class CommonEncoderTest {
+	private static final int HEADER_SIZE = 5;
+
+	@Test
+	public void testSingleBufferEncoding() throws Exception {
+		Random r = new Random(1);
+		for (int length : new int[] {0, 1, 17, 100, 4096}) {
+			byte[] data = new byte[length];
+			r.nextBytes(data);
+
+			// The sized codec estimates half the real size, so the buffer must grow
+			byte[] sized = encode(new TestProtocol(true, false), new TestMessage(data));
+			byte[] inPlace = encode(new TestProtocol(true, true), new TestMessage(data));
+			byte[] legacy = encode(new TestProtocol(true, true), new LegacyMessage(data));
+			byte[] composite = encode(new TestProtocol(false, false), new TestMessage(data));
+
+			assertEquals(HEADER_SIZE + length, composite.length);
+			assertEquals(TestCodec.OPCODE, composite[0]);
+			assertEquals(length, ChannelBuffers.wrappedBuffer(composite).getInt(1));
+			assertTrue(Arrays.equals(data, Arrays.copyOfRange(composite, HEADER_SIZE, composite.length)));
+			assertTrue(Arrays.equals(composite, sized));
+			assertTrue(Arrays.equals(composite, inPlace));
+			assertEquals(LegacyCodec.OPCODE, legacy[0]);
+			assertTrue(Arrays.equals(Arrays.copyOfRange(composite, 1, composite.length), Arrays.copyOfRange(legacy, 1, legacy.length)));
+		}
+	}
+
+	@Test
+	public void testBatchEncoding() throws Exception {
+		Protocol protocol = new TestProtocol(true, true);
+		Message first = new TestMessage(new byte[] {1, 2, 3});
+		Message second = new LegacyMessage(new byte[] {4, 5});
+		byte[] firstBytes = encode(protocol, first);
+		byte[] secondBytes = encode(protocol, second);
+		byte[] expected = Arrays.copyOf(firstBytes, firstBytes.length + secondBytes.length);
+		System.arraycopy(secondBytes, 0, expected, firstBytes.length, secondBytes.length);
+		byte[] batch = encode(protocol, new MessageBatch(Arrays.asList(first, second)));
+		assertTrue(Arrays.equals(expected, batch));
+
+		ProtocolMetrics.OpcodeMetrics metrics = protocol.getMetrics().getMetrics(TestCodec.OPCODE);
+		assertEquals(2, metrics.getOutboundMessages());
+		assertEquals(2 * firstBytes.length, metrics.getOutboundBytes());
+		assertEquals(2, protocol.getMetrics().getMetrics(LegacyCodec.OPCODE).getOutboundMessages());
+	}
+
+	@Test
+	public void testBatchEncodeFailure() throws Exception {
+		Protocol protocol = new TestProtocol(true, true);
+		Message first = new TestMessage(new byte[] {1, 2, 3});
+		Message unknown = new Message() {
+			@Override
+			public boolean isAsync() {
+				return false;
+			}
+
+			@Override
+			public int getChannelId() {
+				return DEFAULT_CHANNEL;
+			}
+		};
+		Message second = new TestMessage(new byte[] {4, 5});
+		byte[] firstBytes = encode(protocol, first);
+		byte[] secondBytes = encode(protocol, second);
+		byte[] expected = Arrays.copyOf(firstBytes, firstBytes.length + secondBytes.length);
+		System.arraycopy(secondBytes, 0, expected, firstBytes.length, secondBytes.length);
+
+		MessageBatch batch = new MessageBatch(Arrays.asList(first, unknown, second));
+		assertTrue(Arrays.equals(expected, encode(protocol, batch)));
+		assertNull(batch.getFailure(0));
+		assertTrue(batch.getFailure(1) instanceof IOException);
+		assertNull(batch.getFailure(2));
+	}
+
+	private byte[] encode(Protocol protocol, Object message) throws Exception {
+		CommonEncoder encoder = new CommonEncoder(false, HeapChannelBufferFactory.getInstance());
+		encoder.setProtocol(protocol);
+		ChannelBuffer buf = (ChannelBuffer) encoder.encode(null, null, message);
+		byte[] bytes = new byte[buf.readableBytes()];
+		buf.readBytes(bytes);
+		return bytes;
+	}
+
+	private static class TestMessage implements Message {
+		private final byte[] data;
+
+		public TestMessage(byte[] data) {
+			this.data = data;
+		}
+
+		public byte[] getData() {
+			return data;
+		}
+
+		@Override
+		public boolean isAsync() {
+			return false;
+		}
+
+		@Override
+		public int getChannelId() {
+			return DEFAULT_CHANNEL;
+		}
+	}
+
+	private static class LegacyMessage extends TestMessage {
+		public LegacyMessage(byte[] data) {
+			super(data);
+		}
+	}
+
+	public static class TestCodec extends MessageCodec<TestMessage> {
+		public static final int OPCODE = 1;
+
+		public TestCodec() {
+			super(TestMessage.class, OPCODE);
+		}
+
+		@Override
+		public ChannelBuffer encode(TestMessage message) {
+			return ChannelBuffers.wrappedBuffer(message.getData());
+		}
+
+		@Override
+		public int getEncodedSize(boolean upstream, TestMessage message) {
+			return message.getData().length / 2;
+		}
+
+		@Override
+		public void encode(boolean upstream, TestMessage message, ChannelBuffer buffer) {
+			buffer.writeBytes(message.getData());
+		}
+	}
+
+	public static class LegacyCodec extends MessageCodec<LegacyMessage> {
+		public static final int OPCODE = 2;
+
+		public LegacyCodec() {
+			super(LegacyMessage.class, OPCODE);
+		}
+
+		@Override
+		public ChannelBuffer encode(LegacyMessage message) {
+			return ChannelBuffers.wrappedBuffer(message.getData());
+		}
+	}
+
+	private static class TestProtocol extends Protocol {
+		private final boolean singleBuffer;
+		private final boolean inPlaceHeader;
+
+		public TestProtocol(boolean singleBuffer, boolean inPlaceHeader) {
+			super("Test", 0, new TestCodecLookupService(), new HandlerLookupService() {});
+			this.singleBuffer = singleBuffer;
+			this.inPlaceHeader = inPlaceHeader;
+		}
+
+		@Override
+		public MessageCodec<?> readHeader(ChannelBuffer buf) throws UnknownPacketException {
+			return null;
+		}
+
+		@Override
+		public ChannelBuffer writeHeader(MessageCodec<?> codec, ChannelBuffer data) {
+			ChannelBuffer header = ChannelBuffers.buffer(HEADER_SIZE);
+			header.writeByte(codec.getOpcode());
+			header.writeInt(data.readableBytes());
+			return header;
+		}
+
+		@Override
+		public int getMaxHeaderSize() {
+			return singleBuffer ? HEADER_SIZE : -1;
+		}
+
+		@Override
+		public void writeHeaderInPlace(MessageCodec<?> codec, ChannelBuffer buffer) {
+			if (!inPlaceHeader) {
+				super.writeHeaderInPlace(codec, buffer);
+				return;
+			}
+			int start = buffer.readerIndex() - HEADER_SIZE;
+			buffer.setByte(start, codec.getOpcode());
+			buffer.setInt(start + 1, buffer.readableBytes());
+			buffer.readerIndex(start);
+		}
+
+		@Override
+		public Message getKickMessage(ChatArguments message) {
+			return null;
+		}
+
+		@Override
+		public Message getCommandMessage(Command command, ChatArguments arguments) {
+			return null;
+		}
+
+		@Override
+		public Message getIntroductionMessage(String playerName, InetSocketAddress addr) {
+			return null;
+		}
+
+		@Override
+		public void initializeSession(Session session) {
+		}
+	}
+
+	private static class TestCodecLookupService extends CodecLookupService {
+		public TestCodecLookupService() {
+			super(4);
+			try {
+				bind(TestCodec.class);
+				bind(LegacyCodec.class);
+			} catch (InstantiationException e) {
+				throw new RuntimeException(e);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			} catch (InvocationTargetException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.jboss.netty.channel.MessageEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.spout.api.Engine;
+
+public class CommonHandlerTest {
+	private Session session;
+	private Session.UncaughtExceptionHandler exceptionHandler;
+	private TestHandler mainThreadHandler;
+	private TestHandler threadSafeHandler;
+	private TestHandler failingHandler;
+
+	@Before
+	public void setup() {
+		mainThreadHandler = new TestHandler(false, false);
+		threadSafeHandler = new TestHandler(true, false);
+		failingHandler = new TestHandler(true, true);
+		HandlerLookupService lookup = new HandlerLookupService() {
+			{
+				handlers.put(MainThreadMessage.class, mainThreadHandler);
+				handlers.put(ThreadSafeMessage.class, threadSafeHandler);
+				handlers.put(FailingMessage.class, failingHandler);
+			}
+		};
+
+		Protocol protocol = mock(Protocol.class);
+		when(protocol.getHandlerLookupService()).thenReturn(lookup);
+		when(protocol.getCodecLookupService()).thenReturn(mock(CodecLookupService.class));
+		when(protocol.getMetrics()).thenReturn(new ProtocolMetrics());
+		exceptionHandler = mock(Session.UncaughtExceptionHandler.class);
+		session = mock(Session.class);
+		when(session.getProtocol()).thenReturn(protocol);
+		when(session.getUncaughtExceptionHandler()).thenReturn(exceptionHandler);
+	}
+
+	@Test
+	public void testMainThreadHandler() {
+		CommonHandler handler = createHandler(null);
+		TestMessage message = new MainThreadMessage();
+		handler.messageReceived(null, event(message));
+
+		verify(session).messageReceived(false, message);
+		assertNull(mainThreadHandler.handled);
+		assertEquals(1, handler.getMetrics().getMetrics(ProtocolMetrics.UNKNOWN_OPCODE).getDispatchedMessages());
+	}
+
+	@Test
+	public void testNoProtocol() {
+		when(session.getProtocol()).thenReturn(null);
+		CommonHandler handler = createHandler(null);
+		TestMessage message = new ThreadSafeMessage();
+		handler.messageReceived(null, event(message));
+
+		verify(session).messageReceived(false, message);
+		assertNull(threadSafeHandler.handled);
+		assertEquals(0, handler.getMetrics().getMetrics(ProtocolMetrics.UNKNOWN_OPCODE).getDispatchedMessages());
+	}
+
+	@Test
+	public void testThreadSafeHandler() {
+		CommonHandler handler = createHandler(null);
+		TestMessage message = new ThreadSafeMessage();
+		handler.messageReceived(null, event(message));
+
+		verify(session, never()).messageReceived(any(Boolean.class), any(Message.class));
+		assertSame(message, threadSafeHandler.handled);
+		assertSame(Thread.currentThread(), threadSafeHandler.thread);
+	}
+
+	@Test
+	public void testHandlerExecutor() {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		CommonHandler handler = createHandler(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				tasks.add(command);
+			}
+		});
+		TestMessage message = new ThreadSafeMessage();
+		handler.messageReceived(null, event(message));
+		assertEquals(1, tasks.size());
+		assertNull(threadSafeHandler.handled);
+
+		tasks.get(0).run();
+		assertSame(message, threadSafeHandler.handled);
+		verify(session, never()).messageReceived(any(Boolean.class), any(Message.class));
+	}
+
+	@Test
+	public void testHandlerException() {
+		CommonHandler handler = createHandler(null);
+		TestMessage message = new FailingMessage();
+		handler.messageReceived(null, event(message));
+
+		verify(exceptionHandler).uncaughtException(eq(message), eq(failingHandler), any(IllegalStateException.class));
+	}
+
+	private CommonHandler createHandler(Executor executor) {
+		CommonHandler handler = new CommonHandler(mock(Engine.class), new CommonEncoder(false), new CommonDecoder(false), false, new ProtocolMetrics(), executor);
+		handler.setSession(session);
+		return handler;
+	}
+
+	private static MessageEvent event(Message message) {
+		MessageEvent event = mock(MessageEvent.class);
+		when(event.getMessage()).thenReturn(message);
+		return event;
+	}
+
+	private static class TestHandler extends MessageHandler<TestMessage> {
+		private final boolean threadSafe;
+		private final boolean fail;
+		private TestMessage handled;
+		private Thread thread;
+
+		public TestHandler(boolean threadSafe, boolean fail) {
+			this.threadSafe = threadSafe;
+			this.fail = fail;
+		}
+
+		@Override
+		public boolean isThreadSafe() {
+			return threadSafe;
+		}
+
+		@Override
+		public void handleServer(Session session, TestMessage message) {
+			if (fail) {
+				throw new IllegalStateException();
+			}
+			handled = message;
+			thread = Thread.currentThread();
+		}
+	}
+
+	private static class TestMessage implements Message {
+		@Override
+		public boolean isAsync() {
+			return false;
+		}
+
+		@Override
+		public int getChannelId() {
+			return DEFAULT_CHANNEL;
+		}
+	}
+
+	private static class MainThreadMessage extends TestMessage {
+	}
+
+	private static class ThreadSafeMessage extends TestMessage {
+	}
+
+	private static class FailingMessage extends TestMessage {
+	}
+}
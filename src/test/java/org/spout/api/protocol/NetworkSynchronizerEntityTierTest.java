@@ -0,0 +1,138 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.spout.api.component.impl.SceneComponent;
+import org.spout.api.entity.Entity;
+import org.spout.api.entity.Player;
+import org.spout.api.geo.World;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.geo.discrete.Transform;
+import org.spout.api.math.Quaternion;
+import org.spout.api.math.Vector3;
+import org.spout.api.protocol.reposition.RepositionManager;
+
+public class NetworkSynchronizerEntityTierTest {
+	private World world;
+	private NetworkSynchronizer synchronizer;
+
+	@Before
+	public void setup() {
+		world = mock(World.class);
+		Player player = mock(Player.class);
+		SceneComponent scene = mock(SceneComponent.class);
+		when(player.getScene()).thenReturn(scene);
+		when(scene.getPosition()).thenReturn(new Point(world, 0, 0, 0));
+		Session session = mock(Session.class);
+		when(session.getPlayer()).thenReturn(player);
+		synchronizer = new NetworkSynchronizer(session, 3) {};
+	}
+
+	@Test
+	public void testIntervals() {
+		Transform near = transform(10);
+		Transform middle = transform(40);
+		Transform far = transform(100);
+		Entity e = mock(Entity.class);
+
+		assertEquals(1, synchronizer.getEntityUpdateInterval(e, far));
+
+		synchronizer.setEntityUpdateInterval(64, 4);
+		synchronizer.setEntityUpdateInterval(32, 2);
+		assertEquals(1, synchronizer.getEntityUpdateInterval(e, near));
+		assertEquals(2, synchronizer.getEntityUpdateInterval(e, middle));
+		assertEquals(4, synchronizer.getEntityUpdateInterval(e, far));
+
+		synchronizer.setEntityUpdateInterval(32, 1);
+		assertEquals(1, synchronizer.getEntityUpdateInterval(e, middle));
+		assertEquals(4, synchronizer.getEntityUpdateInterval(e, far));
+
+		Transform otherWorld = new Transform(new Point(mock(World.class), 100, 0, 0), Quaternion.IDENTITY, Vector3.ONE);
+		assertEquals(1, synchronizer.getEntityUpdateInterval(e, otherWorld));
+	}
+
+	@Test
+	public void testUpdateMessages() {
+		synchronizer.setEntityUpdateInterval(64, 4);
+		Entity e = mock(Entity.class);
+		when(e.getId()).thenReturn(1);
+		EntityProtocol protocol = mock(EntityProtocol.class);
+
+		int due = 0;
+		for (int tick = 0; tick < 8; tick++) {
+			Transform far = transform(100 + tick);
+			if (synchronizer.isEntityUpdateDue(e, far)) {
+				due++;
+			}
+			synchronizer.getEntityUpdateMessages(protocol, e, far, false);
+			synchronizer.tickCounter++;
+		}
+		assertEquals(2, due);
+		// Skipped movement is caught up by forcing the update
+		verify(protocol, never()).getUpdateMessages(eq(e), any(Transform.class), any(RepositionManager.class), eq(false));
+		verify(protocol, times(2)).getUpdateMessages(eq(e), any(Transform.class), any(RepositionManager.class), eq(true));
+
+		Transform near = transform(10);
+		assertTrue(synchronizer.isEntityUpdateDue(e, near));
+		synchronizer.getEntityUpdateMessages(protocol, e, near, false);
+		verify(protocol).getUpdateMessages(eq(e), eq(near), any(RepositionManager.class), eq(false));
+		assertFalse(synchronizer.getEntityUpdateMessages(protocol, e, near, false) == null);
+	}
+
+	@Test
+	public void testStationaryUpdateMessages() {
+		synchronizer.setEntityUpdateInterval(64, 4);
+		Entity e = mock(Entity.class);
+		when(e.getId()).thenReturn(1);
+		EntityProtocol protocol = mock(EntityProtocol.class);
+
+		for (int tick = 0; tick < 12; tick++) {
+			synchronizer.getEntityUpdateMessages(protocol, e, transform(100), false);
+			synchronizer.tickCounter++;
+		}
+		// Only the first update is forced, since the entity has not moved since
+		verify(protocol, times(1)).getUpdateMessages(eq(e), any(Transform.class), any(RepositionManager.class), eq(true));
+		verify(protocol, times(2)).getUpdateMessages(eq(e), any(Transform.class), any(RepositionManager.class), eq(false));
+	}
+
+	private Transform transform(float x) {
+		return new Transform(new Point(world, x, 0, 0), Quaternion.IDENTITY, Vector3.ONE);
+	}
+}
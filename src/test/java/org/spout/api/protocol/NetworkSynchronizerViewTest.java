@@ -0,0 +1,194 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Random;
+import java.util.TreeSet;
+
+import gnu.trove.iterator.TLongIterator;
+
+import org.junit.Test;
+import org.spout.api.component.impl.SceneComponent;
+import org.spout.api.entity.Player;
+import org.spout.api.geo.World;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.util.hashing.Int21TripleHashed;
+import org.spout.api.util.set.TLongLinkedHashSet;
+
+/**
+ * Checks that the incremental view update gives the same chunk queues as recalculating the whole view volume
+ */
+public class NetworkSynchronizerViewTest {
+	private static final String[] QUEUES = {"chunkInitQueue", "priorityChunkSendQueue", "chunkSendQueue", "chunkFreeQueue", "heldChunks"};
+	private static final int MIN_VIEW_DISTANCE = 2;
+	private static final int STEPS = 300;
+
+	private final World world = mock(World.class);
+
+	@Test
+	public void testIncrementalMatchesRecalculation() throws Exception {
+		for (int viewDistance : new int[] {1, 2, 3, 5, 8}) {
+			testViewDistance(viewDistance, new Random(viewDistance));
+		}
+	}
+
+	@Test
+	public void testPointViewVolumeOverride() throws Exception {
+		Session session = createSession(2);
+		NetworkSynchronizer cube = new NetworkSynchronizer(session, MIN_VIEW_DISTANCE) {
+			@SuppressWarnings("deprecation")
+			@Override
+			public boolean isInViewVolume(Point playerChunkBase, Point testChunkBase, int viewDistance) {
+				return testChunkBase.getMaxDistance(playerChunkBase) <= (viewDistance << Chunk.BLOCKS.BITS);
+			}
+		};
+		assertFalse(cube.isIncrementalViewUpdates());
+		getField("chunkWorld").set(cube, world);
+
+		long inCube = Int21TripleHashed.key(2, 2, 0);
+		long outside = Int21TripleHashed.key(3, 0, 0);
+		getQueue(cube, "initializedChunks").add(inCube);
+		getQueue(cube, "initializedChunks").add(outside);
+
+		checkChunkUpdates(cube, new Point(world, 8, 8, 8), null);
+		assertFalse(getQueue(cube, "chunkFreeQueue").contains(inCube));
+		assertTrue(getQueue(cube, "chunkFreeQueue").contains(outside));
+	}
+
+	private void testViewDistance(int viewDistance, Random r) throws Exception {
+		NetworkSynchronizer incremental = createSynchronizer(viewDistance);
+		NetworkSynchronizer full = createSynchronizer(viewDistance);
+		full.setIncrementalViewUpdates(false);
+		assertTrue(incremental.isIncrementalViewUpdates());
+
+		// Start next to the corner of a region, so the walk crosses chunk and region boundaries in both directions
+		int x = -8;
+		int y = 8;
+		int z = Chunk.BLOCKS.SIZE * 16 - 8;
+		Point holding = null;
+		for (int step = 0; step < STEPS; step++) {
+			int jump = r.nextInt(20) == 0 ? viewDistance * 2 + 1 : 2;
+			x += (r.nextInt(2 * jump + 1) - jump) * Chunk.BLOCKS.SIZE / 2;
+			y += (r.nextInt(3) - 1) * Chunk.BLOCKS.SIZE / 2;
+			z += (r.nextInt(2 * jump + 1) - jump) * Chunk.BLOCKS.SIZE / 2;
+			Point position = new Point(world, x, y, z);
+			if (holding == null || r.nextInt(4) != 0) {
+				holding = position;
+			}
+
+			checkChunkUpdates(incremental, position, holding);
+			checkChunkUpdates(full, position, holding);
+			for (String queue : QUEUES) {
+				assertEquals("Mismatch in " + queue + " at step " + step + " with view distance " + viewDistance, getKeys(full, queue), getKeys(incremental, queue));
+			}
+
+			int seed = r.nextInt();
+			processQueues(incremental, seed);
+			processQueues(full, seed);
+		}
+	}
+
+	private NetworkSynchronizer createSynchronizer(int viewDistance) throws Exception {
+		NetworkSynchronizer synchronizer = new NetworkSynchronizer(createSession(viewDistance), MIN_VIEW_DISTANCE) {};
+		getField("chunkWorld").set(synchronizer, world);
+		return synchronizer;
+	}
+
+	private static Session createSession(int viewDistance) {
+		Player player = mock(Player.class);
+		when(player.getViewDistance()).thenReturn(viewDistance * Chunk.BLOCKS.SIZE);
+		when(player.getScene()).thenReturn(mock(SceneComponent.class));
+		Session session = mock(Session.class);
+		when(session.getPlayer()).thenReturn(player);
+		return session;
+	}
+
+	private void checkChunkUpdates(NetworkSynchronizer synchronizer, Point position, Point holding) throws Exception {
+		getField("holdingPosition").set(synchronizer, holding);
+		Method check = NetworkSynchronizer.class.getDeclaredMethod("checkChunkUpdates", Point.class);
+		check.setAccessible(true);
+		check.invoke(synchronizer, position);
+	}
+
+	/**
+	 * Applies the changes made by the pre-snapshot stage: queued chunks are initialized or freed, and some of the chunks in the send queues are sent
+	 */
+	private void processQueues(NetworkSynchronizer synchronizer, int seed) throws Exception {
+		TLongLinkedHashSet initialized = getQueue(synchronizer, "initializedChunks");
+		TLongLinkedHashSet active = getQueue(synchronizer, "activeChunks");
+
+		TLongIterator i = getQueue(synchronizer, "chunkFreeQueue").iterator();
+		while (i.hasNext()) {
+			long key = i.next();
+			initialized.remove(key);
+			active.remove(key);
+		}
+		getQueue(synchronizer, "chunkFreeQueue").clear();
+
+		initialized.addAll(getQueue(synchronizer, "chunkInitQueue"));
+		getQueue(synchronizer, "chunkInitQueue").clear();
+
+		for (String name : new String[] {"priorityChunkSendQueue", "chunkSendQueue"}) {
+			i = getQueue(synchronizer, name).iterator();
+			while (i.hasNext()) {
+				long key = i.next();
+				if (new Random(key ^ seed).nextInt(3) != 0) {
+					active.add(key);
+					i.remove();
+				}
+			}
+		}
+	}
+
+	private static TreeSet<Long> getKeys(NetworkSynchronizer synchronizer, String name) throws Exception {
+		TreeSet<Long> keys = new TreeSet<Long>();
+		TLongIterator i = getQueue(synchronizer, name).iterator();
+		while (i.hasNext()) {
+			keys.add(i.next());
+		}
+		return keys;
+	}
+
+	private static TLongLinkedHashSet getQueue(NetworkSynchronizer synchronizer, String name) throws Exception {
+		return (TLongLinkedHashSet) getField(name).get(synchronizer);
+	}
+
+	private static Field getField(String name) throws Exception {
+		Field field = NetworkSynchronizer.class.getDeclaredField(name);
+		field.setAccessible(true);
+		return field;
+	}
+}
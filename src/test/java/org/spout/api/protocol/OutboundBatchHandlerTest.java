@@ -0,0 +1,183 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.spout.api.protocol.fake.FakeChannelHandlerContext;
+
+public class OutboundBatchHandlerTest {
+	private final List<ChannelEvent> events = new ArrayList<ChannelEvent>();
+	private ChannelHandlerContext ctx;
+	private OutboundBatchHandler handler;
+
+	@Before
+	public void setup() {
+		events.clear();
+		ctx = new FakeChannelHandlerContext(events);
+		handler = new OutboundBatchHandler(3);
+		handler.beforeAdd(ctx);
+	}
+
+	@Test
+	public void testPassthrough() throws Exception {
+		Message message = new TestMessage();
+		write(message);
+		assertEquals(1, events.size());
+		assertSame(message, ((MessageEvent) events.get(0)).getMessage());
+	}
+
+	@Test
+	public void testBatching() throws Exception {
+		handler.setBatching(true);
+		handler.setPriority(PriorityMessage.class, true);
+
+		Message first = new TestMessage();
+		Message second = new TestMessage();
+		Message priority = new PriorityMessage();
+		ChannelFuture firstFuture = write(first);
+		ChannelFuture secondFuture = write(second);
+		assertTrue(events.isEmpty());
+		assertEquals(2, handler.getPendingMessages());
+
+		write(priority);
+		assertEquals(1, events.size());
+		assertSame(priority, ((MessageEvent) events.get(0)).getMessage());
+
+		handler.endTick();
+		assertEquals(2, events.size());
+		MessageEvent batchEvent = (MessageEvent) events.get(1);
+		MessageBatch batch = (MessageBatch) batchEvent.getMessage();
+		assertEquals(Arrays.asList(first, second), batch.getMessages());
+		assertEquals(0, handler.getPendingMessages());
+		assertEquals(2, handler.getWritesLastTick());
+		assertEquals(2, handler.getBatchedMessagesLastTick());
+
+		assertFalse(firstFuture.isDone());
+		batchEvent.getFuture().setSuccess();
+		assertTrue(firstFuture.isSuccess());
+		assertTrue(secondFuture.isSuccess());
+
+		handler.endTick();
+		assertEquals(2, events.size());
+		assertEquals(0, handler.getWritesLastTick());
+		assertEquals(2, handler.getTotalWrites());
+		assertEquals(1, handler.getTotalBatches());
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		handler.setBatching(true);
+		ChannelFuture future = write(new TestMessage());
+		handler.flush();
+		Exception cause = new Exception("Write failed");
+		((MessageEvent) events.get(0)).getFuture().setFailure(cause);
+		assertSame(cause, future.getCause());
+	}
+
+	@Test
+	public void testEncodeFailure() throws Exception {
+		handler.setBatching(true);
+		ChannelFuture first = write(new TestMessage());
+		ChannelFuture second = write(new TestMessage());
+		handler.flush();
+		MessageEvent batchEvent = (MessageEvent) events.get(0);
+		Exception cause = new Exception("Encode failed");
+		((MessageBatch) batchEvent.getMessage()).setFailure(0, cause);
+		batchEvent.getFuture().setSuccess();
+		assertSame(cause, first.getCause());
+		assertTrue(second.isSuccess());
+	}
+
+	@Test
+	public void testTickCounts() throws Exception {
+		handler.setBatching(true);
+		for (int i = 0; i < 7; i++) {
+			write(new TestMessage());
+		}
+		// Two full batches were flushed early
+		assertEquals(2, events.size());
+		assertEquals(0, handler.getWritesLastTick());
+		handler.endTick();
+		assertEquals(3, events.size());
+		assertEquals(3, handler.getWritesLastTick());
+		assertEquals(7, handler.getBatchedMessagesLastTick());
+	}
+
+	@Test
+	public void testEarlyFlush() throws Exception {
+		handler.setBatching(true);
+		write(new TestMessage());
+		write(new TestMessage());
+		assertTrue(events.isEmpty());
+		write(new TestMessage());
+		assertEquals(1, events.size());
+		assertEquals(3, ((MessageBatch) ((MessageEvent) events.get(0)).getMessage()).getMessages().size());
+
+		write(new TestMessage());
+		handler.setBatching(false);
+		assertEquals(2, events.size());
+		write(new TestMessage());
+		assertEquals(3, events.size());
+	}
+
+	private ChannelFuture write(Message message) throws Exception {
+		ChannelFuture future = Channels.future(ctx.getChannel());
+		handler.writeRequested(ctx, new DownstreamMessageEvent(ctx.getChannel(), future, message, null));
+		return future;
+	}
+
+	private static class TestMessage implements Message {
+		@Override
+		public boolean isAsync() {
+			return false;
+		}
+
+		@Override
+		public int getChannelId() {
+			return DEFAULT_CHANNEL;
+		}
+	}
+
+	private static class PriorityMessage extends TestMessage {
+	}
+}
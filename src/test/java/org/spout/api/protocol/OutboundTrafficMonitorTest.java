@@ -0,0 +1,67 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.DefaultChannelFuture;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.junit.Test;
+import org.spout.api.protocol.fake.FakeChannelHandlerContext;
+
+public class OutboundTrafficMonitorTest {
+	@Test
+	public void testPendingAndCompleted() throws Exception {
+		ChannelHandlerContext ctx = new FakeChannelHandlerContext();
+		OutboundTrafficMonitor monitor = new OutboundTrafficMonitor();
+
+		DefaultChannelFuture first = new DefaultChannelFuture(ctx.getChannel(), false);
+		DefaultChannelFuture second = new DefaultChannelFuture(ctx.getChannel(), false);
+		monitor.writeRequested(ctx, new DownstreamMessageEvent(ctx.getChannel(), first, ChannelBuffers.wrappedBuffer(new byte[100]), null));
+		monitor.writeRequested(ctx, new DownstreamMessageEvent(ctx.getChannel(), second, ChannelBuffers.wrappedBuffer(new byte[50]), null));
+
+		assertEquals(150, monitor.getPendingBytes());
+		assertEquals(2, monitor.getPendingWrites());
+
+		Thread.sleep(5);
+		first.setSuccess();
+		assertEquals(50, monitor.getPendingBytes());
+		assertEquals(1, monitor.getPendingWrites());
+		assertEquals(100, monitor.getBytesWritten());
+		assertEquals(1, monitor.getWritesCompleted());
+		assertTrue(monitor.getWriteLatency() > 0);
+
+		second.setFailure(new Exception("Write failed"));
+		assertEquals(0, monitor.getPendingBytes());
+		assertEquals(0, monitor.getPendingWrites());
+		assertEquals(100, monitor.getBytesWritten());
+		assertEquals(1, monitor.getWritesCompleted());
+	}
+}
@@ -26,9 +26,12 @@
  */
 package org.spout.api.protocol;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
@@ -51,8 +54,17 @@ public class PreprocessReplayingDecoderTest {
 
 	@Test
 	public void test() throws Exception {
+		test(new NegatingProcessor(512));
+	}
+
+	@Test
+	public void testInPlaceUnframed() throws Exception {
+		test(new NegatingInPlaceProcessor());
+	}
+
+	private void test(ChannelProcessor processor) throws Exception {
 
-		Preprocessor p = new Preprocessor(512, BREAK, LENGTH);
+		Preprocessor p = new Preprocessor(512, BREAK, LENGTH, processor);
 
 		List<ChannelEvent> outputList = new LinkedList<ChannelEvent>();
 
@@ -137,19 +149,116 @@ public class PreprocessReplayingDecoderTest {
 
 	}
 
+	@Test
+	public void testFramedInPlace() throws Exception {
+		testFramed(new NegatingInPlaceProcessor());
+	}
+
+	@Test
+	public void testFramedCopying() throws Exception {
+		testFramed(new NegatingProcessor(512));
+	}
+
+	private void testFramed(ChannelProcessor processor) throws Exception {
+		Random r = new Random();
+		int frameCount = 500;
+		int breakFrame = 200;
+
+		List<byte[]> payloads = new ArrayList<byte[]>();
+		ChannelBuffer stream = ChannelBuffers.dynamicBuffer();
+		for (int i = 0; i < frameCount; i++) {
+			byte[] payload = new byte[r.nextInt(10) == 0 ? r.nextInt(4000) : r.nextInt(100)];
+			r.nextBytes(payload);
+			payloads.add(payload);
+			int start = stream.writerIndex();
+			stream.writeShort(payload.length);
+			stream.writeBytes(payload);
+			if (i > breakFrame) {
+				for (int j = start; j < stream.writerIndex(); j++) {
+					stream.setByte(j, ~stream.getByte(j));
+				}
+			}
+		}
+
+		FramedPreprocessor p = new FramedPreprocessor(512, breakFrame, processor);
+		List<ChannelEvent> outputList = new LinkedList<ChannelEvent>();
+		ChannelHandlerContext fake = new FakeChannelHandlerContext(outputList);
+		while (stream.readable()) {
+			int burstSize = Math.min(stream.readableBytes(), r.nextInt(10) == 0 ? r.nextInt(5000) : r.nextInt(200));
+			final ChannelBuffer buf = ChannelBuffers.buffer(burstSize);
+			stream.readBytes(buf, burstSize);
+			p.messageReceived(fake, new UpstreamMessageEvent(fake.getChannel(), buf, null));
+		}
+
+		assertEquals(frameCount, outputList.size());
+		assertEquals(frameCount, p.calls);
+		for (int i = 0; i < frameCount; i++) {
+			byte[] array = (byte[]) ((UpstreamMessageEvent) outputList.get(i)).getMessage();
+			assertTrue("Payload mismatch for frame " + i, Arrays.equals(payloads.get(i), array));
+		}
+	}
+
+	private static class FramedPreprocessor extends PreprocessReplayingDecoder {
+		private final int breakFrame;
+		private final ChannelProcessor processor;
+		private int calls = 0;
+
+		public FramedPreprocessor(int capacity, int breakFrame, ChannelProcessor processor) {
+			super(capacity);
+			this.breakFrame = breakFrame;
+			this.processor = processor;
+		}
+
+		@Override
+		protected boolean isFramed(Channel channel) {
+			return true;
+		}
+
+		@Override
+		protected int getFrameLength(Channel channel, ChannelBuffer buffer) {
+			if (buffer.readableBytes() < 2) {
+				return -1;
+			}
+			return 2 + buffer.getUnsignedShort(buffer.readerIndex());
+		}
+
+		@Override
+		public Object decodeProcessed(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+			int length = buffer.readUnsignedShort();
+			assertEquals(length, buffer.readableBytes());
+			byte[] payload = new byte[length];
+			buffer.readBytes(payload);
+			if (calls++ == breakFrame) {
+				setProcessor(processor);
+			}
+			return payload;
+		}
+	}
+
+	private static class NegatingInPlaceProcessor extends CommonInPlaceChannelProcessor {
+		@Override
+		public void process(ChannelBuffer buffer, int index, int length) {
+			for (int i = index; i < index + length; i++) {
+				buffer.setByte(i, ~buffer.getByte(i));
+			}
+		}
+	}
+
 	private static class Preprocessor extends PreprocessReplayingDecoder {
 
 		private final int breakPoint;
 		private final int length;
+		private final ChannelProcessor processor;
 		private int position = 0;
 		private boolean breakOccured;
 
 		private Random r = new Random();
 
-		public Preprocessor(int capacity, int breakPoint, int length) {
+		public Preprocessor(int capacity, int breakPoint, int length, ChannelProcessor processor) {
 			super(capacity);
 			this.breakPoint = breakPoint;
 			this.length = length;
+			this.processor = processor;
 		}
 
 		@Override
@@ -178,7 +287,7 @@ public class PreprocessReplayingDecoderTest {
 			position += packetSize;
 
 			if (position == breakPoint) {
-				this.setProcessor(new NegatingProcessor(512));
+				this.setProcessor(processor);
 				breakOccured = true;
 			}
 			
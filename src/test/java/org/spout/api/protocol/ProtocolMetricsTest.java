@@ -0,0 +1,104 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ProtocolMetricsTest {
+	@Test
+	public void testRecording() {
+		ProtocolMetrics metrics = new ProtocolMetrics();
+		metrics.recordDecode(3, 10, 100);
+		metrics.recordDecode(3, 20, 50);
+		metrics.recordEncode(3, 5, 7);
+		metrics.recordDispatch(3, 1000);
+		metrics.recordEncode(200, 4000, 1);
+		metrics.recordDecode(-5, 1, 1);
+		metrics.recordDecode(ProtocolMetrics.MAX_OPCODE + 1, 1, 1);
+
+		ProtocolMetrics.OpcodeMetrics three = metrics.getMetrics(3);
+		assertEquals(2, three.getInboundMessages());
+		assertEquals(30, three.getInboundBytes());
+		assertEquals(150, three.getDecodeNanos());
+		assertEquals(1, three.getOutboundMessages());
+		assertEquals(5, three.getOutboundBytes());
+		assertEquals(7, three.getEncodeNanos());
+		assertEquals(1, three.getDispatchedMessages());
+		assertEquals(1000, three.getDispatchNanos());
+
+		assertEquals(0, metrics.getMetrics(4).getInboundMessages());
+		assertEquals(0, metrics.getMetrics(5000).getInboundMessages());
+		assertEquals(2, metrics.getMetrics(ProtocolMetrics.UNKNOWN_OPCODE).getInboundMessages());
+
+		List<ProtocolMetrics.OpcodeMetrics> snapshot = metrics.getSnapshot();
+		assertEquals(3, snapshot.size());
+		assertEquals(ProtocolMetrics.UNKNOWN_OPCODE, snapshot.get(0).getOpcode());
+		assertEquals(3, snapshot.get(1).getOpcode());
+		assertEquals(200, snapshot.get(2).getOpcode());
+
+		// The opcode using the most bandwidth is listed first
+		String[] lines = metrics.dump().split("\n");
+		assertEquals(4, lines.length);
+		assertTrue(lines[1].trim().startsWith("0xc8"));
+		assertTrue(lines[2].trim().startsWith("0x3"));
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final ProtocolMetrics metrics = new ProtocolMetrics();
+		final int perThread = 10000;
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < perThread; j++) {
+						metrics.recordDecode(j & 127, 2, 1);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		long messages = 0;
+		long bytes = 0;
+		for (ProtocolMetrics.OpcodeMetrics opcode : metrics.getSnapshot()) {
+			messages += opcode.getInboundMessages();
+			bytes += opcode.getInboundBytes();
+		}
+		assertEquals(threads.length * perThread, messages);
+		assertEquals(2L * threads.length * perThread, bytes);
+	}
+}
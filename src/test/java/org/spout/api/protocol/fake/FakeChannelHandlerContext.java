@@ -96,7 +96,9 @@ public class FakeChannelHandlerContext implements ChannelHandlerContext {
 
 	@Override
 	public void sendDownstream(ChannelEvent e) {
-
+		if (list != null) {
+			list.add(e);
+		}
 	}
 
 	@Override
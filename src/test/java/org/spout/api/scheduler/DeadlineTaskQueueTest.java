@@ -0,0 +1,156 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class DeadlineTaskQueueTest {
+	@Test
+	public void testDeadlineOrder() {
+		DeadlineTaskQueue queue = new DeadlineTaskQueue();
+		List<String> order = new ArrayList<String>();
+		queue.add(null, new RecordingTask(order, "low"), TaskPriority.LOW, 0);
+		queue.add(null, new RecordingTask(order, "high"), TaskPriority.HIGH, 100);
+		queue.add(null, new RecordingTask(order, "medium"), TaskPriority.MEDIUM, 0);
+		queue.add(null, new RecordingTask(order, "later"), TaskPriority.CRITICAL, 1000);
+
+		assertEquals(3, queue.execute(100, 1000));
+		assertEquals(Arrays.asList("high", "medium", "low"), order);
+		assertEquals(1, queue.size());
+	}
+
+	@Test
+	public void testBudget() {
+		DeadlineTaskQueue queue = new DeadlineTaskQueue();
+		List<String> order = new ArrayList<String>();
+		queue.add(null, new RecordingTask(order, "critical"), TaskPriority.CRITICAL, 0);
+		queue.add(null, new RecordingTask(order, "lowest"), TaskPriority.LOWEST, 0);
+		queue.add(null, new RecordingTask(order, "low"), TaskPriority.LOW, 0);
+
+		// With no budget only the critical task runs
+		assertEquals(1, queue.execute(0, 0));
+		assertEquals(Arrays.asList("critical"), order);
+		assertEquals(1, queue.getDeferredCount(TaskPriority.LOW));
+		assertEquals(1, queue.getDeferredCount(TaskPriority.LOWEST));
+		assertEquals(0, queue.getExpiredCount(TaskPriority.CRITICAL));
+
+		// The low task reaches its deadline and runs regardless of the budget
+		assertEquals(1, queue.execute(1500, 0));
+		assertEquals(Arrays.asList("critical", "low"), order);
+		assertEquals(1, queue.getExpiredCount(TaskPriority.LOW));
+		assertEquals(2, queue.getDeferredCount(TaskPriority.LOWEST));
+
+		assertEquals(1, queue.execute(1600, 1000));
+		assertEquals(Arrays.asList("critical", "low", "lowest"), order);
+		assertEquals(0, queue.getExpiredCount(TaskPriority.LOWEST));
+		assertEquals(1, queue.getExecutedCount(TaskPriority.LOWEST));
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testException() {
+		DeadlineTaskQueue queue = new DeadlineTaskQueue();
+		List<String> order = new ArrayList<String>();
+		queue.add(null, new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException("Test exception");
+			}
+		}, TaskPriority.CRITICAL, 0);
+		queue.add(null, new RecordingTask(order, "next"), TaskPriority.CRITICAL, 0);
+
+		assertEquals(2, queue.execute(0, 0));
+		assertEquals(Arrays.asList("next"), order);
+	}
+
+	@Test
+	public void testConcurrentSize() throws InterruptedException {
+		final DeadlineTaskQueue queue = new DeadlineTaskQueue();
+		final int tasks = 10000;
+		final Runnable task = new Runnable() {
+			@Override
+			public void run() {
+			}
+		};
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < tasks; i++) {
+					queue.add(null, task, TaskPriority.CRITICAL, 0);
+				}
+			}
+		};
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicBoolean invalid = new AtomicBoolean(false);
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				while (running.get()) {
+					int size = queue.size();
+					if (size < 0 || size > tasks) {
+						invalid.set(true);
+					}
+				}
+			}
+		};
+		producer.start();
+		reader.start();
+		int executed = 0;
+		while (producer.isAlive() || executed < tasks) {
+			executed += queue.execute(0, 0);
+		}
+		running.set(false);
+		reader.join();
+
+		assertEquals(tasks, executed);
+		assertEquals(0, queue.size());
+		assertFalse(invalid.get());
+	}
+
+	private static class RecordingTask implements Runnable {
+		private final List<String> order;
+		private final String name;
+
+		public RecordingTask(List<String> order, String name) {
+			this.order = order;
+			this.name = name;
+		}
+
+		@Override
+		public void run() {
+			order.add(name);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.spout.api.geo.cuboid.Region;
+import org.spout.api.util.thread.WorkStealingExecutor;
+
+public class ParallelRegionExecutorTest {
+	@Test
+	public void testExecute() throws Exception {
+		WorkStealingExecutor executor = new WorkStealingExecutor("ParallelRegionExecutorTest", 2);
+		try {
+			AtomicInteger runs = new AtomicInteger();
+			List<ParallelRunnable> instances = new ArrayList<ParallelRunnable>();
+			instances.add(new CountingRunnable(runs, 0));
+			instances.add(new CountingRunnable(runs, 16));
+			instances.add(new CountingRunnable(runs, 0));
+
+			long[] times = new ParallelRegionExecutor(executor).execute(instances);
+			assertEquals(3, times.length);
+			assertEquals(1 + 16 + 1, runs.get());
+			// The split region ran 16 tasks which each take at least a millisecond
+			assertTrue(Arrays.toString(times), times[1] >= 16000000L);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static class CountingRunnable implements SplittableParallelRunnable {
+		private final AtomicInteger runs;
+		private final int columns;
+
+		public CountingRunnable(AtomicInteger runs, int columns) {
+			this.runs = runs;
+			this.columns = columns;
+		}
+
+		@Override
+		public void run() {
+			runs.incrementAndGet();
+		}
+
+		@Override
+		public ParallelRunnable newInstance(Region r, Task t) {
+			return this;
+		}
+
+		@Override
+		public List<? extends Runnable> split() {
+			if (columns == 0) {
+				return null;
+			}
+			List<Runnable> tasks = new ArrayList<Runnable>();
+			for (int i = 0; i < columns; i++) {
+				tasks.add(new Runnable() {
+					@Override
+					public void run() {
+						runs.incrementAndGet();
+						try {
+							Thread.sleep(1);
+						} catch (InterruptedException e) {
+						}
+					}
+				});
+			}
+			return tasks;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.spout.api.scheduler.TickProfiler.Statistics;
+import org.spout.api.util.Named;
+
+public class TickProfilerTest {
+	@Test
+	public void testStages() {
+		TickProfiler profiler = new TickProfiler(10);
+		for (int i = 1; i <= 20; i++) {
+			profiler.recordStage(TickStage.STAGE1, i * 100L);
+			profiler.recordStage(TickStage.FINALIZE, 50L);
+			profiler.endTick();
+		}
+
+		Statistics tick = profiler.getTickStatistics();
+		// Only the last 10 ticks are in the window
+		assertEquals(10, tick.getSamples());
+		assertEquals(2050L, tick.getLast());
+		assertEquals(2050L, tick.getMax());
+		assertEquals(1550L + 50L, tick.getMean());
+
+		Statistics stage1 = null;
+		for (Statistics stage : profiler.getStageStatistics()) {
+			if (stage.getName().equals("STAGE1")) {
+				stage1 = stage;
+			}
+		}
+		assertEquals(1500L, stage1.getMedian());
+		assertEquals(2000L, stage1.get95thPercentile());
+	}
+
+	@Test
+	public void testOwners() {
+		TickProfiler profiler = new TickProfiler(4);
+		Named plugin = new Named() {
+			@Override
+			public String getName() {
+				return "TestPlugin";
+			}
+		};
+		profiler.recordTask(plugin, 300L);
+		profiler.recordTask(plugin, 200L);
+		profiler.recordTask(null, 100L);
+		profiler.recordListener(this, 50L);
+		profiler.endTick();
+
+		List<Statistics> tasks = profiler.getTaskStatistics();
+		assertEquals(2, tasks.size());
+		assertEquals("TestPlugin", tasks.get(0).getName());
+		assertEquals(500L, tasks.get(0).getLast());
+		assertEquals("Engine", tasks.get(1).getName());
+
+		List<Statistics> listeners = profiler.getListenerStatistics();
+		assertEquals(1, listeners.size());
+		assertEquals(TickProfilerTest.class.getName(), listeners.get(0).getName());
+
+		String summary = profiler.getSummary(1).getPlainString();
+		assertTrue(summary, summary.contains("TestPlugin"));
+		assertTrue(summary, !summary.contains("Engine"));
+	}
+
+	@Test
+	public void testIdleAfterSnapshot() throws InterruptedException {
+		long sleep = TimeUnit.MILLISECONDS.toNanos(50);
+		TickProfiler profiler = TickProfiler.getProfiler();
+		TickStage.setStage(TickStage.TICKSTART);
+		TickStage.setStage(TickStage.SNAPSHOT);
+		TickStage.endStages();
+		Thread.sleep(TimeUnit.NANOSECONDS.toMillis(sleep));
+		TickStage.setStage(TickStage.TICKSTART);
+
+		Statistics snapshot = null;
+		for (Statistics stage : profiler.getStageStatistics()) {
+			if (stage.getName().equals("SNAPSHOT")) {
+				snapshot = stage;
+			}
+		}
+		assertTrue("The sleep was charged to SNAPSHOT", snapshot.getLast() < sleep);
+		assertTrue(profiler.getTickStatistics().getLast() < sleep);
+		assertTrue(profiler.getIdleStatistics().getLast() >= sleep);
+	}
+
+	@Test
+	public void testDisabled() {
+		TickProfiler profiler = new TickProfiler(4);
+		profiler.setEnabled(false);
+		assertEquals(0L, profiler.start());
+		profiler.recordTask(null, 100L);
+		profiler.recordStage(TickStage.STAGE1, 100L);
+		profiler.endTick();
+		assertTrue(profiler.getTaskStatistics().isEmpty());
+		assertEquals(0L, profiler.getTickStatistics().getMax());
+	}
+}
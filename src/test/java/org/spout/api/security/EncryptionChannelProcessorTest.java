@@ -0,0 +1,113 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.security;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.bouncycastle.crypto.BufferedBlockCipher;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.CFBBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.junit.Test;
+import org.spout.api.protocol.fake.FakeChannelHandlerContext;
+
+public class EncryptionChannelProcessorTest {
+	private static final int LENGTH = 20000;
+
+	private final Random r = new Random();
+	private final byte[] key = new byte[16];
+
+	public EncryptionChannelProcessorTest() {
+		r.nextBytes(key);
+	}
+
+	@Test
+	public void testProcessInPlace() {
+		byte[] plain = new byte[LENGTH];
+		r.nextBytes(plain);
+		byte[] encrypted = encrypt(plain);
+
+		testProcess(plain, ChannelBuffers.wrappedBuffer(encrypted.clone()));
+		testProcess(plain, ChannelBuffers.wrappedBuffer(ChannelBuffers.wrappedBuffer(encrypted.clone(), 0, 100), ChannelBuffers.wrappedBuffer(encrypted.clone(), 100, LENGTH - 100)));
+		ChannelBuffer direct = ChannelBuffers.directBuffer(LENGTH);
+		direct.writeBytes(encrypted);
+		testProcess(plain, direct);
+	}
+
+	private void testProcess(byte[] plain, ChannelBuffer buffer) {
+		EncryptionChannelProcessor processor = new EncryptionChannelProcessor(getCipher(false), 512);
+		int index = 0;
+		while (index < LENGTH) {
+			int length = Math.min(LENGTH - index, r.nextInt(1000));
+			processor.process(buffer, index, length);
+			index += length;
+		}
+		byte[] output = new byte[LENGTH];
+		buffer.getBytes(0, output);
+		assertArrayEquals(plain, output);
+	}
+
+	@Test
+	public void testWrite() {
+		byte[] plain = new byte[LENGTH];
+		r.nextBytes(plain);
+		byte[] encrypted = encrypt(plain);
+
+		EncryptionChannelProcessor processor = new EncryptionChannelProcessor(getCipher(false), 512);
+		ChannelHandlerContext ctx = new FakeChannelHandlerContext(new ArrayList<ChannelEvent>());
+		ChannelBuffer input = ChannelBuffers.wrappedBuffer(encrypted);
+		ChannelBuffer output = null;
+		while (input.readable()) {
+			ChannelBuffer burst = input.readBytes(Math.min(input.readableBytes(), r.nextInt(2000)));
+			output = output == null ? processor.write(ctx, burst) : processor.write(ctx, burst, output);
+		}
+		byte[] decrypted = new byte[LENGTH];
+		output.readBytes(decrypted);
+		assertArrayEquals(plain, decrypted);
+	}
+
+	private byte[] encrypt(byte[] plain) {
+		BufferedBlockCipher cipher = getCipher(true);
+		byte[] encrypted = new byte[plain.length];
+		cipher.processBytes(plain, 0, plain.length, encrypted, 0);
+		return encrypted;
+	}
+
+	private BufferedBlockCipher getCipher(boolean encrypt) {
+		BufferedBlockCipher cipher = new BufferedBlockCipher(new CFBBlockCipher(new AESEngine(), 8));
+		cipher.init(encrypt, new ParametersWithIV(new KeyParameter(key), key));
+		return cipher;
+	}
+}
@@ -63,6 +63,32 @@ public class OutwardIteratorTest {
 		
 	}
 	
+	@Test
+	public void testShell() {
+		OutwardIterator itr = new OutwardIterator();
+		for (int start = 0; start <= DIST; start += 3) {
+			for (int end = start; end <= DIST; end += 4) {
+				itr.reset(center.getX(), center.getY(), center.getZ(), start, end);
+				int[][][] shellHits = new int[SIZE][SIZE][SIZE];
+				while (itr.hasNext()) {
+					IntVector3 next = itr.next();
+					int dist = getDistance(center, next);
+					assertTrue("Distance readback is incorrect", dist == itr.getDistance());
+					assertTrue("Coordinate outside shell " + next, dist >= start && dist <= end);
+					assertFalse("Coordinate hit more than once " + next, (shellHits[next.getX()][next.getY()][next.getZ()]++) > 0);
+				}
+				for (int x = 0; x < SIZE; x++) {
+					for (int y = 0; y < SIZE; y++) {
+						for (int z = 0; z < SIZE; z++) {
+							int distance = getDistance(center, new IntVector3(x, y, z));
+							assertTrue("Location missed " + x + " " + y + " " + z, distance < start || distance > end || shellHits[x][y][z] == 1);
+						}
+					}
+				}
+			}
+		}
+	}
+
 	private int getDistance(IntVector3 a, IntVector3 b) {
 		return Math.abs(a.getX() - b.getX()) + Math.abs(a.getY() - b.getY()) + Math.abs(a.getZ() - b.getZ());
 		
@@ -0,0 +1,210 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.list.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class TimerWheelLongPriorityQueueTest {
+	private static final int BINSIZE = 4;
+
+	@Test
+	public void testOrdering() {
+		Random r = new Random(1);
+		TimerWheelLongPriorityQueue<Item> queue = new TimerWheelLongPriorityQueue<Item>(BINSIZE);
+		List<Item> items = new ArrayList<Item>();
+		for (int i = 0; i < 20000; i++) {
+			long priority;
+			switch (i % 4) {
+				case 0:
+					priority = r.nextInt(1000);
+					break;
+				case 1:
+					priority = r.nextInt(1000000) - 500000;
+					break;
+				case 2:
+					priority = r.nextLong();
+					break;
+				default:
+					priority = i % 8 == 3 ? Long.MIN_VALUE : Long.MAX_VALUE;
+			}
+			Item item = new Item(priority);
+			items.add(item);
+			queue.add(item);
+		}
+
+		List<Item> output = new ArrayList<Item>();
+		long[] thresholds = {Long.MIN_VALUE, -1000000, -3, 0, 1, 16, 17, 500, 999999, Long.MAX_VALUE / 2, Long.MAX_VALUE};
+		for (long threshold : thresholds) {
+			readFromQueue(queue, threshold, output);
+		}
+		assertNull(queue.poll(Long.MAX_VALUE));
+		assertEquals(items.size(), output.size());
+		for (Item item : items) {
+			assertEquals(1, item.polled);
+		}
+	}
+
+	@Test
+	public void testOverdue() {
+		TimerWheelLongPriorityQueue<Item> queue = new TimerWheelLongPriorityQueue<Item>(BINSIZE);
+		List<Item> output = new ArrayList<Item>();
+		queue.add(new Item(100));
+		readFromQueue(queue, 50, output);
+		assertEquals(0, output.size());
+
+		queue.add(new Item(10));
+		queue.add(new Item(49));
+		readFromQueue(queue, 50, output);
+		assertEquals(2, output.size());
+
+		// Added after the threshold has passed, so returned by the next poll
+		queue.add(new Item(20));
+		readFromQueue(queue, 60, output);
+		assertEquals(3, output.size());
+		readFromQueue(queue, 100, output);
+		assertEquals(4, output.size());
+	}
+
+	@Test
+	public void testRemove() {
+		TimerWheelLongPriorityQueue<Item> queue = new TimerWheelLongPriorityQueue<Item>(BINSIZE);
+		Item near = new Item(5);
+		Item far = new Item(1 << 20);
+		Item other = new Item(1 << 20);
+		queue.add(near);
+		queue.add(far);
+		queue.add(other);
+		assertTrue(queue.remove(near));
+		assertFalse(queue.remove(near));
+
+		List<Item> output = new ArrayList<Item>();
+		readFromQueue(queue, 10, output);
+		assertEquals(0, output.size());
+		assertTrue(queue.remove(far));
+		readFromQueue(queue, Long.MAX_VALUE, output);
+		assertEquals(1, output.size());
+		assertEquals(1, other.polled);
+		assertEquals(0, far.polled);
+	}
+
+	@Test
+	public void testConcurrentAdd() throws InterruptedException {
+		final TimerWheelLongPriorityQueue<Item> queue = new TimerWheelLongPriorityQueue<Item>(BINSIZE);
+		final int perThread = 50000;
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final List<Item> items = new ArrayList<Item>();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final List<Item> threadItems = new ArrayList<Item>();
+			final Random r = new Random(t);
+			for (int i = 0; i < perThread; i++) {
+				threadItems.add(new Item(r.nextInt(100000)));
+			}
+			items.addAll(threadItems);
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (Item item : threadItems) {
+						queue.add(item);
+					}
+				}
+			};
+		}
+
+		List<Item> output = new ArrayList<Item>();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		long threshold = 0;
+		while (running.get()) {
+			boolean alive = false;
+			for (Thread thread : threads) {
+				alive |= thread.isAlive();
+			}
+			running.set(alive);
+			readFromQueue(queue, threshold, output);
+			threshold += 100;
+		}
+		readFromQueue(queue, Long.MAX_VALUE, output);
+
+		assertEquals(items.size(), output.size());
+		for (Item item : items) {
+			assertEquals(1, item.polled);
+		}
+	}
+
+	private void readFromQueue(TimerWheelLongPriorityQueue<Item> queue, long threshold, List<Item> output) {
+		Queue<Item> q;
+		long max = Long.MIN_VALUE;
+		while ((q = queue.poll(threshold)) != null) {
+			boolean checkRequired = !queue.isFullyBelowThreshold(q, threshold);
+			Iterator<Item> itr = q.iterator();
+			while (itr.hasNext()) {
+				Item item = itr.next();
+				if (checkRequired && item.getPriority() > threshold) {
+					continue;
+				}
+				long p = item.getPriority();
+				assertTrue("Output exceeds threshold: " + p + " > " + threshold, p <= threshold);
+				assertTrue("Output is not monotonic increasing", max == Long.MIN_VALUE || p >= max - BINSIZE + 1 || ((LongPrioritized) q).getPriority() > p);
+				max = Math.max(max, p);
+				item.polled++;
+				output.add(item);
+				itr.remove();
+			}
+			if (queue.complete(q, threshold)) {
+				break;
+			}
+		}
+	}
+
+	private static class Item implements LongPrioritized {
+		private final long priority;
+		private int polled;
+
+		public Item(long priority) {
+			this.priority = priority;
+		}
+
+		@Override
+		public long getPriority() {
+			return priority;
+		}
+	}
+}
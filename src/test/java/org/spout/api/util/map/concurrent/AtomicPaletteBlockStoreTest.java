@@ -0,0 +1,140 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.map.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.spout.api.material.block.BlockFullState;
+import org.spout.api.math.IntVector3;
+import org.spout.api.util.cuboid.CuboidBlockMaterialBuffer;
+import org.spout.api.util.map.concurrent.palette.AtomicPaletteBlockStore;
+
+public class AtomicPaletteBlockStoreTest {
+	
+	private static final int SHIFT = 4;
+	private static final int SIDE = 1 << SHIFT;
+	
+	@Test
+	public void sparseBatch() {
+		AtomicPaletteBlockStore store = new AtomicPaletteBlockStore(SHIFT, true, true, 64);
+		store.resetDirtyArrays();
+		
+		Random r = new Random();
+		int count = 1024;
+		int[] indexes = new int[count];
+		int[] states = new int[count];
+		int[] expected = new int[SIDE * SIDE * SIDE];
+		
+		// Enough unique states to force the palette to grow to a direct store
+		for (int j = 0; j < count; j++) {
+			indexes[j] = r.nextInt(expected.length);
+			states[j] = BlockFullState.getPacked((short) (1 + r.nextInt(2047)), (short) 0);
+			expected[indexes[j]] = states[j];
+		}
+		
+		store.setBlocks(indexes, states, count);
+		
+		int changed = 0;
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals("Block state mismatch at index " + i, expected[i], store.getFullData(i));
+			if (expected[i] != 0) {
+				changed++;
+			}
+		}
+		
+		assertTrue("Batch was not marked dirty", store.isDirty());
+		assertTrue("Dirty arrays did not overflow", store.isDirtyOverflow());
+		assertEquals("Dirty bitmap count did not match changed blocks", changed, store.countDirtyBlocks());
+		
+		int[] x = new int[changed];
+		int[] y = new int[changed];
+		int[] z = new int[changed];
+		assertEquals("Wrong number of dirty positions", changed, store.getDirtyPositions(x, y, z));
+		int last = -1;
+		for (int j = 0; j < changed; j++) {
+			int index = (y[j] << (SHIFT << 1)) + (z[j] << SHIFT) + x[j];
+			assertTrue("Dirty positions were not in index order", index > last);
+			assertTrue("Unchanged block reported as dirty at index " + index, expected[index] != 0);
+			assertTrue("Dirty bitmap did not match dirty positions", store.isBlockDirty(x[j], y[j], z[j]));
+			last = index;
+		}
+		
+		store.resetDirtyArrays();
+		assertEquals("Dirty bitmap was not cleared", 0, store.countDirtyBlocks());
+	}
+	
+	@Test
+	public void cuboidBatch() {
+		AtomicPaletteBlockStore store = new AtomicPaletteBlockStore(SHIFT, true, true, 64);
+		store.resetDirtyArrays();
+		
+		int baseX = 32;
+		int baseY = 64;
+		int baseZ = -16;
+		
+		// The buffer overlaps the store from (12, 2, 0) to (15, 4, 1)
+		CuboidBlockMaterialBuffer buffer = new CuboidBlockMaterialBuffer(baseX + 12, baseY + 2, baseZ - 3, 8, 3, 5);
+		for (int x = 0; x < 8; x++) {
+			for (int y = 0; y < 3; y++) {
+				for (int z = 0; z < 5; z++) {
+					buffer.set(baseX + 12 + x, baseY + 2 + y, baseZ - 3 + z, (short) (1 + x + (y << 3) + (z << 5)), (short) 1);
+				}
+			}
+		}
+		
+		store.setBlocks(buffer, baseX, baseY, baseZ);
+		
+		for (int x = 0; x < SIDE; x++) {
+			for (int y = 0; y < SIDE; y++) {
+				for (int z = 0; z < SIDE; z++) {
+					boolean inside = x >= 12 && y >= 2 && y < 5 && z < 2;
+					int expectedId = inside ? buffer.getId(baseX + x, baseY + y, baseZ + z) : 0;
+					int expectedData = inside ? 1 : 0;
+					assertEquals("Block id mismatch at (" + x + ", " + y + ", " + z + ")", expectedId, store.getBlockId(x, y, z));
+					assertEquals("Block data mismatch at (" + x + ", " + y + ", " + z + ")", expectedData, store.getData(x, y, z));
+				}
+			}
+		}
+		
+		assertEquals("Wrong number of dirty blocks", 4 * 3 * 2, store.getDirtyBlocks());
+		checkVector("Wrong minimum dirty position", 12, 2, 0, store.getMinDirty());
+		checkVector("Wrong maximum dirty position", 15, 4, 1, store.getMaxDirty());
+		
+		store.resetDirtyArrays();
+		store.setBlocks(buffer, baseX, baseY, baseZ);
+		
+		assertTrue("Unchanged blocks were marked dirty", !store.isDirty());
+	}
+	
+	private static void checkVector(String message, int x, int y, int z, IntVector3 v) {
+		assertTrue(message + ", expected (" + x + ", " + y + ", " + z + "), got " + v, v.getX() == x && v.getY() == y && v.getZ() == z);
+	}
+}
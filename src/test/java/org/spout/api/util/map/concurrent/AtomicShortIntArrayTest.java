@@ -306,6 +306,112 @@ public class AtomicShortIntArrayTest {
 		
 	}
 	
+	@Test
+	public void parallelGrowth() throws InterruptedException {
+		
+		printTest("Parallel Growth Test");
+		
+		for (int repeat = 0; repeat < THREAD_REPEATS; repeat++) {
+			final AtomicShortIntArray array = new AtomicShortIntArray(4096);
+			final int base = repeat << 16;
+			
+			Thread[] thread = new Thread[THREADS];
+			
+			// Each thread writes a unique value to each of its entries, so the palette grows from uniform to direct while writes are in progress
+			for (int t = 0; t < THREADS; t++) {
+				final int offset = t;
+				thread[t] = new Thread() {
+					public void run() {
+						try {
+							for (int i = offset; i < array.length(); i += THREADS) {
+								array.set(i, base + i);
+								if ((i & 511) == offset) {
+									array.compress();
+								}
+							}
+						} catch (Error err) {
+							err.printStackTrace();
+							parallelError = err;
+						}
+					}
+				};
+			}
+			
+			runThreads(thread);
+			
+			for (int i = 0; i < array.length(); i++) {
+				assertTrue("Write lost during palette growth at " + i + " got=" + array.get(i) + ", exp=" + (base + i), array.get(i) == base + i);
+			}
+		}
+		
+		System.out.println("No writes lost during palette growth");
+	}
+	
+	@Test
+	public void parallelCompareAndSet() throws InterruptedException {
+		
+		printTest("Parallel Compare and Set Test");
+		
+		final AtomicShortIntArray array = new AtomicShortIntArray(256);
+		final int increments = 4096;
+		
+		Thread[] thread = new Thread[THREADS];
+		
+		// All threads increment all entries, each increment adds a new value to the palette
+		for (int t = 0; t < THREADS; t++) {
+			thread[t] = new Thread() {
+				public void run() {
+					try {
+						Random r = new Random();
+						for (int j = 0; j < increments; j++) {
+							int i = r.nextInt(array.length());
+							while (true) {
+								int old = array.get(i);
+								if (array.compareAndSet(i, old, old + 1)) {
+									break;
+								}
+							}
+							if ((j & 1023) == 0) {
+								array.lock();
+								try {
+									array.set(i, array.get(i));
+								} finally {
+									array.unlock();
+								}
+							}
+						}
+					} catch (Error err) {
+						err.printStackTrace();
+						parallelError = err;
+					}
+				}
+			};
+		}
+		
+		runThreads(thread);
+		
+		long total = 0;
+		for (int i = 0; i < array.length(); i++) {
+			total += array.get(i);
+		}
+		
+		assertTrue("Increments lost during palette growth, got " + total + ", exp " + (THREADS * increments), total == THREADS * increments);
+	}
+	
+	private void runThreads(Thread[] thread) throws InterruptedException {
+		for (int i = 0; i < thread.length; i++) {
+			thread[i].start();
+		}
+		
+		for (int i = 0; i < thread.length; i++) {
+			thread[i].join();
+		}
+		
+		if (parallelError != null) {
+			throw new RuntimeException("Error thrown by thread", parallelError);
+		}
+	}
+	
 	private void printPaletteUse(String message) {
 		System.out.println("Palette usage " + message + " " + a.getPaletteUsage() + " / " + a.getPaletteSize());
 	}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.set;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+import gnu.trove.iterator.TLongIterator;
+
+import org.junit.Test;
+
+public class TLongLinkedHashSetTest {
+	private static final int OPERATIONS = 100000;
+
+	@Test
+	public void testInsertionOrder() {
+		Random r = new Random(1);
+		TLongLinkedHashSet set = new TLongLinkedHashSet(4);
+		LinkedHashSet<Long> reference = new LinkedHashSet<Long>();
+
+		for (int i = 0; i < OPERATIONS; i++) {
+			long key = r.nextInt(512) - 256;
+			switch (r.nextInt(4)) {
+				case 0:
+				case 1:
+					assertEquals(reference.add(key), set.add(key));
+					break;
+				case 2:
+					assertEquals(reference.remove(key), set.remove(key));
+					break;
+				default:
+					assertEquals(reference.contains(key), set.contains(key));
+			}
+			if (i % 10000 == 0) {
+				checkOrder(reference, set);
+			}
+		}
+		checkOrder(reference, set);
+
+		set.clear();
+		reference.clear();
+		assertTrue(set.isEmpty());
+		assertFalse(set.iterator().hasNext());
+		set.add(7L);
+		set.add(3L);
+		assertEquals(7L, set.first());
+		assertArrayEquals(new long[] {7L, 3L}, set.toArray());
+	}
+
+	@Test
+	public void testIteratorRemove() {
+		TLongLinkedHashSet set = new TLongLinkedHashSet();
+		for (long i = 0; i < 10; i++) {
+			set.add(i);
+		}
+		TLongIterator i = set.iterator();
+		while (i.hasNext()) {
+			if ((i.next() & 1) == 0) {
+				i.remove();
+			}
+		}
+		assertArrayEquals(new long[] {1L, 3L, 5L, 7L, 9L}, set.toArray());
+
+		// Removed slots are reused, but new elements are still added at the end
+		set.add(0L);
+		set.add(2L);
+		assertArrayEquals(new long[] {1L, 3L, 5L, 7L, 9L, 0L, 2L}, set.toArray());
+	}
+
+	private static void checkOrder(LinkedHashSet<Long> reference, TLongLinkedHashSet set) {
+		assertEquals(reference.size(), set.size());
+		TLongIterator i = set.iterator();
+		for (Long key : reference) {
+			assertTrue(i.hasNext());
+			assertEquals(key.longValue(), i.next());
+		}
+		assertFalse(i.hasNext());
+	}
+}
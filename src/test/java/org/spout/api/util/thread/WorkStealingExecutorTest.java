@@ -0,0 +1,160 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * SpoutAPI is licensed under the Spout License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.api.util.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkStealingExecutorTest {
+	private static final int THREADS = 4;
+	private WorkStealingExecutor executor;
+
+	@Before
+	public void setup() {
+		executor = new WorkStealingExecutor("WorkStealingExecutorTest", THREADS);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void testAllTasksRun() throws Exception {
+		final AtomicIntegerArray runs = new AtomicIntegerArray(1000);
+		for (int batch = 0; batch < 20; batch++) {
+			List<Runnable> tasks = new ArrayList<Runnable>();
+			for (int i = 0; i < runs.length(); i++) {
+				final int index = i;
+				tasks.add(new Runnable() {
+					@Override
+					public void run() {
+						runs.incrementAndGet(index);
+					}
+				});
+			}
+			long[] times = new long[tasks.size()];
+			executor.invokeAll(tasks, times);
+			for (int i = 0; i < runs.length(); i++) {
+				assertEquals(batch + 1, runs.get(i));
+				assertTrue(times[i] >= 0);
+			}
+		}
+		long executed = 0;
+		for (int i = 0; i < executor.getThreadCount(); i++) {
+			executed += executor.getExecutedTasks(i);
+		}
+		assertEquals(20 * runs.length(), executed);
+	}
+
+	@Test
+	public void testStealing() throws Exception {
+		// The first thread is blocked by its first task, so the rest of its tasks must be stolen
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch stolen = new CountDownLatch(THREADS * 4 - 1);
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		tasks.add(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		for (int i = 1; i < THREADS * 4; i++) {
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					stolen.countDown();
+				}
+			});
+		}
+		Thread releaser = new Thread() {
+			@Override
+			public void run() {
+				try {
+					stolen.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+				}
+				release.countDown();
+			}
+		};
+		releaser.start();
+		executor.invokeAll(tasks, null);
+		releaser.join();
+
+		assertEquals(0, stolen.getCount());
+		long steals = 0;
+		for (int i = 0; i < executor.getThreadCount(); i++) {
+			steals += executor.getStolenTasks(i);
+		}
+		assertTrue(steals >= 3);
+	}
+
+	@Test
+	public void testException() throws Exception {
+		final IllegalStateException exception = new IllegalStateException();
+		final AtomicIntegerArray runs = new AtomicIntegerArray(10);
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int i = 0; i < runs.length(); i++) {
+			final int index = i;
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					runs.incrementAndGet(index);
+					if (index == 3) {
+						throw exception;
+					}
+				}
+			});
+		}
+		try {
+			executor.invokeAll(tasks, null);
+			fail("Exception was not thrown");
+		} catch (ExecutionException e) {
+			assertSame(exception, e.getCause());
+		}
+		for (int i = 0; i < runs.length(); i++) {
+			assertEquals(1, runs.get(i));
+		}
+	}
+}